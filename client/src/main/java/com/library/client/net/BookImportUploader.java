@@ -0,0 +1,124 @@
+package com.library.client.net;
+
+import com.library.common.protocol.OpCode;
+import com.library.common.protocol.Request;
+import com.library.common.protocol.Response;
+import com.library.common.util.JsonUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 分块导入上传器
+ * 开启导入会话后逐行追加CSV数据，攒够一块即发送，最后提交。
+ * 客户端只缓存当前一块的数据
+ */
+public class BookImportUploader {
+    private static final Logger logger = LoggerFactory.getLogger(BookImportUploader.class);
+
+    // 每块的行数与字符数上限（任一达到即发送）
+    private static final int CHUNK_ROWS = 2000;
+    private static final int CHUNK_CHARS = 1024 * 1024;
+
+    private final SocketClient client;
+    private final String token;
+    private final Consumer<JsonNode> progressListener;
+    private final StringBuilder buffer = new StringBuilder();
+    private int bufferedRows = 0;
+    private String sessionId;
+
+    /**
+     * @param progressListener 每块发送成功后回调，参数为服务器返回的进度（rowCount、acceptedCount、failCount等）
+     */
+    public BookImportUploader(SocketClient client, String token, Consumer<JsonNode> progressListener) {
+        this.client = client;
+        this.token = token;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * 开启导入会话
+     */
+    public void begin(String fileType) throws IOException {
+        Response response = send(OpCode.ADMIN_IMPORT_BEGIN, null, fileType);
+        sessionId = response.getData().get("sessionId").asText();
+        logger.info("开启导入会话: sessionId={}", sessionId);
+    }
+
+    /**
+     * 追加一行CSV数据（isbn,title,author,category,publisher,description,totalCount）
+     */
+    public void addRow(String line) throws IOException {
+        buffer.append(line).append('\n');
+        bufferedRows++;
+        if (bufferedRows >= CHUNK_ROWS || buffer.length() >= CHUNK_CHARS) {
+            flush();
+        }
+    }
+
+    /**
+     * 发送剩余数据并提交导入
+     */
+    public Response commit() throws IOException {
+        flush();
+        Response response = send(OpCode.ADMIN_IMPORT_COMMIT, null, null);
+        sessionId = null;
+        return response;
+    }
+
+    /**
+     * 取消导入（服务器回滚已接收的数据），失败时忽略
+     */
+    public void abort() {
+        if (sessionId == null) {
+            return;
+        }
+        try {
+            send(OpCode.ADMIN_IMPORT_ABORT, null, null);
+        } catch (Exception e) {
+            logger.warn("取消导入会话失败: sessionId={}", sessionId, e);
+        }
+        sessionId = null;
+    }
+
+    private void flush() throws IOException {
+        if (bufferedRows == 0) {
+            return;
+        }
+        Response response = send(OpCode.ADMIN_IMPORT_CHUNK, buffer.toString(), null);
+        buffer.setLength(0);
+        bufferedRows = 0;
+        if (progressListener != null) {
+            progressListener.accept(response.getData());
+        }
+    }
+
+    private Response send(OpCode opCode, String content, String fileType) throws IOException {
+        Request request = new Request();
+        request.setRequestId(UUID.randomUUID().toString());
+        request.setOpCode(opCode);
+        request.setToken(token);
+        ObjectNode payload = JsonUtil.createObjectNode();
+        if (sessionId != null) {
+            payload.put("sessionId", sessionId);
+        }
+        if (content != null) {
+            payload.put("content", content);
+        }
+        if (fileType != null) {
+            payload.put("fileType", fileType);
+        }
+        request.setPayload(payload);
+
+        Response response = client.send(request);
+        if (response == null || !response.isSuccess()) {
+            throw new IOException(response != null ? response.getMessage() : "服务器无响应");
+        }
+        return response;
+    }
+}
@@ -2,6 +2,7 @@ package com.library.client.view;
 
 import com.library.client.ClientApp;
 import com.library.client.model.Session;
+import com.library.client.net.BookImportUploader;
 import com.library.client.net.SocketClient;
 import com.library.common.protocol.OpCode;
 import com.library.common.protocol.Request;
@@ -28,13 +29,29 @@ import javafx.scene.media.MediaView;
 import javafx.stage.FileChooser;
 import java.net.URL;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import javafx.application.Platform;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
 /**
  * 管理员主界面
@@ -54,6 +71,13 @@ public class AdminHomeView {
     private ComboBox<String> usersStatusFilter;
     private ObservableList<UserItem> allUsersList; // 保存所有用户数据用于筛选
     private Label statusLabel;
+    // 欠费列表每页的用户数
+    private static final int FINE_PAGE_SIZE = 500;
+    // 欠费列表当前页的起始位置
+    private int fineOffset = 0;
+    private Label finePageLabel;
+    private Button finePrevButton;
+    private Button fineNextButton;
     private MediaPlayer mediaPlayer;
     
     public AdminHomeView(ClientApp app, SocketClient client, Session session) {
@@ -682,36 +706,44 @@ public class AdminHomeView {
             return;
         }
         
-        try {
-            String fileName = file.getName().toLowerCase();
-            String content;
-            String fileType;
-            
-            // 根据文件扩展名判断文件类型
-            if (fileName.endsWith(".xlsx") || fileName.endsWith(".xls")) {
-                // 读取EXCEL文件并转换为CSV格式
-                content = readExcelFile(file);
-                fileType = "excel";
-            } else if (fileName.endsWith(".csv") || fileName.endsWith(".txt")) {
-                // 读取CSV/TXT文件
-                content = new String(Files.readAllBytes(file.toPath()), "UTF-8");
-                fileType = fileName.endsWith(".csv") ? "csv" : "txt";
-            } else {
-                // 默认按TXT处理
-                content = new String(Files.readAllBytes(file.toPath()), "UTF-8");
-                fileType = "txt";
-            }
-            
-            Request request = new Request();
-            request.setRequestId(java.util.UUID.randomUUID().toString());
-            request.setOpCode(OpCode.ADMIN_IMPORT_BOOKS);
-            request.setToken(session.getToken());
-            request.setPayload(JsonUtil.createObjectNode()
-                    .put("content", content)
-                    .put("fileType", fileType));
-            
-            Response response = client.send(request);
-            if (response.isSuccess()) {
+        String fileName = file.getName().toLowerCase();
+        String fileType;
+        if (fileName.endsWith(".xlsx") || fileName.endsWith(".xls")) {
+            fileType = "excel";
+        } else if (fileName.endsWith(".csv")) {
+            fileType = "csv";
+        } else {
+            // 默认按TXT处理
+            fileType = "txt";
+        }
+        
+        if (statusLabel != null) {
+            statusLabel.setText("正在导入: " + file.getName());
+        }
+        
+        // 分块上传：边读取边发送，不把整个文件读入内存
+        new Thread(() -> {
+            BookImportUploader uploader = new BookImportUploader(client, session.getToken(), progress -> 
+                Platform.runLater(() -> {
+                    if (statusLabel != null && progress != null) {
+                        statusLabel.setText(String.format("正在导入: 已处理%d行，失败%d行", 
+                                progress.path("rowCount").asInt(), progress.path("failCount").asInt()));
+                    }
+                }));
+            try {
+                uploader.begin(fileType);
+                if ("excel".equals(fileType)) {
+                    readExcelRows(file, uploader::addRow);
+                } else {
+                    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            uploader.addRow(line);
+                        }
+                    }
+                }
+                Response response = uploader.commit();
+                
                 String message = "导入成功";
                 if (response.getData() != null) {
                     int successCount = response.getData().has("successCount") ? 
@@ -721,51 +753,57 @@ public class AdminHomeView {
                     message = String.format("导入完成：成功%d本，失败%d本", successCount, failCount);
                 }
                 
-                Alert alert = new Alert(Alert.AlertType.INFORMATION);
-                alert.setTitle("导入完成");
-                alert.setHeaderText(null);
-                alert.setContentText(message);
-                alert.showAndWait();
-                
-                if (statusLabel != null) {
-                    statusLabel.setText(message);
-                }
-                loadAllBooks();
-            } else {
-                Alert errorAlert = new Alert(Alert.AlertType.ERROR);
-                errorAlert.setTitle("导入失败");
-                errorAlert.setHeaderText(null);
-                errorAlert.setContentText("导入失败: " + response.getMessage());
-                errorAlert.showAndWait();
-                
-                if (statusLabel != null) {
-                    statusLabel.setText("导入失败: " + response.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            Alert errorAlert = new Alert(Alert.AlertType.ERROR);
-            errorAlert.setTitle("导入失败");
-            errorAlert.setHeaderText(null);
-            errorAlert.setContentText("导入失败: " + e.getMessage());
-            errorAlert.showAndWait();
-            
-            if (statusLabel != null) {
-                statusLabel.setText("导入失败: " + e.getMessage());
+                final String finalMessage = message;
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                    alert.setTitle("导入完成");
+                    alert.setHeaderText(null);
+                    alert.setContentText(finalMessage);
+                    alert.showAndWait();
+                    
+                    if (statusLabel != null) {
+                        statusLabel.setText(finalMessage);
+                    }
+                    loadAllBooks();
+                });
+            } catch (Exception e) {
+                uploader.abort();
+                Platform.runLater(() -> {
+                    Alert errorAlert = new Alert(Alert.AlertType.ERROR);
+                    errorAlert.setTitle("导入失败");
+                    errorAlert.setHeaderText(null);
+                    errorAlert.setContentText("导入失败: " + e.getMessage());
+                    errorAlert.showAndWait();
+                    
+                    if (statusLabel != null) {
+                        statusLabel.setText("导入失败: " + e.getMessage());
+                    }
+                });
             }
-        }
+        }, "BookImportUploader").start();
+    }
+    
+    /**
+     * 行处理回调
+     */
+    @FunctionalInterface
+    private interface RowHandler {
+        void handle(String csvLine) throws IOException;
     }
     
     /**
-     * 读取EXCEL文件并转换为CSV格式字符串
+     * 逐行读取EXCEL文件第一个工作表，转换为CSV行交给handler
      * 格式：isbn,title,author,category,publisher,description,totalCount
+     * xlsx使用SAX流式解析，不加载整个工作簿；xls格式本身最多65536行，仍按工作簿读取
      */
-    private String readExcelFile(File file) throws Exception {
-        StringBuilder csvContent = new StringBuilder();
+    private void readExcelRows(File file, RowHandler handler) throws Exception {
+        if (file.getName().toLowerCase().endsWith(".xlsx")) {
+            readXlsxRows(file, handler);
+            return;
+        }
         
         try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = file.getName().toLowerCase().endsWith(".xlsx") 
-                     ? new XSSFWorkbook(fis) 
-                     : new HSSFWorkbook(fis)) {
+             Workbook workbook = new HSSFWorkbook(fis)) {
             
             Sheet sheet = workbook.getSheetAt(0); // 读取第一个工作表
             
@@ -792,6 +830,7 @@ public class AdminHomeView {
                 
                 // 读取7列：isbn,title,author,category,publisher,description,totalCount
                 String[] values = new String[7];
+                java.util.Arrays.fill(values, "");
                 for (int j = 0; j < 7 && j < row.getLastCellNum(); j++) {
                     org.apache.poi.ss.usermodel.Cell cell = row.getCell(j);
                     values[j] = getCellValueAsString(cell);
@@ -801,17 +840,67 @@ public class AdminHomeView {
                 }
                 
                 // 如果第一列（ISBN）为空，跳过这一行
-                if (values[0] == null || values[0].trim().isEmpty()) {
+                if (values[0].trim().isEmpty()) {
                     continue;
                 }
                 
-                // 构建CSV行
-                csvContent.append(String.join(",", values));
-                csvContent.append("\n");
+                handler.handle(String.join(",", values));
+            }
+        }
+    }
+    
+    /**
+     * 使用SAX事件模型流式读取xlsx第一个工作表
+     */
+    private void readXlsxRows(File file, RowHandler handler) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = xssfReader.getStylesTable();
+            
+            String[] values = new String[7];
+            XSSFSheetXMLHandler.SheetContentsHandler contentsHandler = new XSSFSheetXMLHandler.SheetContentsHandler() {
+                @Override
+                public void startRow(int rowNum) {
+                    java.util.Arrays.fill(values, "");
+                }
+                
+                @Override
+                public void endRow(int rowNum) {
+                    // 如果第一列（ISBN）为空，或第一行是"isbn"表头，跳过这一行
+                    if (values[0].trim().isEmpty() || 
+                            (rowNum == 0 && values[0].toLowerCase().contains("isbn"))) {
+                        return;
+                    }
+                    try {
+                        handler.handle(String.join(",", values));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                
+                @Override
+                public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+                    int col = new CellReference(cellReference).getCol();
+                    if (col < values.length && formattedValue != null) {
+                        values[col] = formattedValue;
+                    }
+                }
+            };
+            
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings, 
+                        contentsHandler, new DataFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
         }
-        
-        return csvContent.toString();
     }
     
     /**
@@ -1365,7 +1454,26 @@ public class AdminHomeView {
         sendReminderButton.getStyleClass().addAll("action-button", "success-button");
         sendReminderButton.setOnAction(e -> sendReminder());
         
-        buttonBox.getChildren().addAll(refreshButton, sendReminderButton);
+        // 欠费用户按欠费总额降序分页
+        finePrevButton = new Button("上一页");
+        finePrevButton.getStyleClass().add("action-button");
+        finePrevButton.setDisable(true);
+        finePrevButton.setOnAction(e -> {
+            fineOffset = Math.max(0, fineOffset - FINE_PAGE_SIZE);
+            loadAllFines();
+        });
+        
+        fineNextButton = new Button("下一页");
+        fineNextButton.getStyleClass().add("action-button");
+        fineNextButton.setDisable(true);
+        fineNextButton.setOnAction(e -> {
+            fineOffset += FINE_PAGE_SIZE;
+            loadAllFines();
+        });
+        
+        finePageLabel = new Label();
+        
+        buttonBox.getChildren().addAll(refreshButton, sendReminderButton, finePrevButton, fineNextButton, finePageLabel);
         
         fineTable = new TableView<>();
         fineTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
@@ -1409,7 +1517,10 @@ public class AdminHomeView {
             request.setRequestId(java.util.UUID.randomUUID().toString());
             request.setOpCode(OpCode.ADMIN_ALL_USERS_FINE);
             request.setToken(session.getToken());
-            request.setPayload(JsonUtil.createObjectNode());
+            // 服务端按欠费总额降序分页返回
+            request.setPayload(JsonUtil.createObjectNode()
+                    .put("limit", FINE_PAGE_SIZE)
+                    .put("offset", fineOffset));
             
             Response response = client.send(request);
             
@@ -1430,9 +1541,23 @@ public class AdminHomeView {
                     }
                 }
                 
+                int total = response.getData().path("total").asInt(fineOffset + fines.size());
+                // 欠费用户减少后当前页可能已超出范围，回到最后一页
+                if (fines.isEmpty() && fineOffset > 0 && total > 0) {
+                    fineOffset = (total - 1) / FINE_PAGE_SIZE * FINE_PAGE_SIZE;
+                    loadAllFines();
+                    return;
+                }
+                
                 fineTable.setItems(fines);
+                int pageCount = Math.max(1, (total + FINE_PAGE_SIZE - 1) / FINE_PAGE_SIZE);
+                finePageLabel.setText(String.format("第 %d/%d 页，共 %d 个欠费用户",
+                        fineOffset / FINE_PAGE_SIZE + 1, pageCount, total));
+                finePrevButton.setDisable(fineOffset == 0);
+                fineNextButton.setDisable(fineOffset + fines.size() >= total);
                 if (statusLabel != null) {
-                    statusLabel.setText("加载了 " + fines.size() + " 个欠费用户");
+                    statusLabel.setText(String.format("加载了第 %d-%d 个欠费用户（共 %d 个）",
+                            fines.isEmpty() ? 0 : fineOffset + 1, fineOffset + fines.size(), total));
                 }
             } else {
                 if (statusLabel != null) {
@@ -8,11 +8,18 @@ public enum OpCode {
     BORROW_BOOK,
     RETURN_BOOK,
     MY_RECORDS,
+    PLACE_HOLD,
+    CANCEL_HOLD,
+    MY_HOLDS,
     RECOMMEND,
     ADMIN_ADD_BOOK,
     ADMIN_UPDATE_BOOK,
     ADMIN_DELETE_BOOK,
     ADMIN_IMPORT_BOOKS,
+    ADMIN_IMPORT_BEGIN,
+    ADMIN_IMPORT_CHUNK,
+    ADMIN_IMPORT_COMMIT,
+    ADMIN_IMPORT_ABORT,
     ADMIN_USER_FREEZE,
     ADMIN_USER_UNFREEZE,
     ADMIN_ALL_RECORDS,
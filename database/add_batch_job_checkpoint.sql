@@ -0,0 +1,12 @@
+-- 批处理作业检查点
+-- 维护类批处理作业（如全量逾期对账）按主键分块执行，每块提交时在同一事务中记录已处理到的主键，
+-- 作业中断后下次从检查点继续
+CREATE TABLE IF NOT EXISTS batch_job_checkpoints (
+    job_name VARCHAR(100) PRIMARY KEY,
+    last_key BIGINT NOT NULL DEFAULT 0,
+    status VARCHAR(20) NOT NULL,
+    scanned_count BIGINT NOT NULL DEFAULT 0,
+    affected_count BIGINT NOT NULL DEFAULT 0,
+    started_at TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,354 @@
+-- 图书预约队列
+-- 库存为0时读者可以预约，每本书按预约先后排队（FIFO）；还书时若有人排队，副本直接分配给队首读者（READY）
+-- 而不回到可借库存，读者在取书期限内借阅即可，不必反复查询和重试借书
+-- 依赖 add_circulation_functions.sql（本脚本替换其中的 circulation_borrow / circulation_return）
+
+CREATE TABLE IF NOT EXISTS book_holds (
+    id BIGSERIAL PRIMARY KEY,
+    book_id BIGINT NOT NULL REFERENCES books(id) ON DELETE CASCADE,
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    status VARCHAR(20) NOT NULL DEFAULT 'WAITING',  -- WAITING / READY / FULFILLED / CANCELLED / EXPIRED
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    ready_at TIMESTAMP,      -- 分配到副本的时间
+    expires_at TIMESTAMP     -- 取书期限，过期未借阅则副本转给下一位
+);
+
+-- 每个读者对同一本书最多一个有效预约
+CREATE UNIQUE INDEX IF NOT EXISTS uq_book_holds_active ON book_holds(book_id, user_id)
+    WHERE status IN ('WAITING', 'READY');
+-- 队列顺序（按id先后）
+CREATE INDEX IF NOT EXISTS idx_book_holds_queue ON book_holds(book_id, id) WHERE status = 'WAITING';
+CREATE INDEX IF NOT EXISTS idx_book_holds_user ON book_holds(user_id) WHERE status IN ('WAITING', 'READY');
+CREATE INDEX IF NOT EXISTS idx_book_holds_expiry ON book_holds(expires_at) WHERE status = 'READY';
+
+-- 释放一个副本：有人排队时分配给队首（标记READY），否则恢复可借库存
+-- 先锁图书行，与预约入队串行，避免"刚恢复库存时有人入队"导致排队者等不到副本
+CREATE OR REPLACE FUNCTION circulation_release_copy(
+    p_book_id BIGINT,
+    p_pickup_days INTEGER DEFAULT 3,
+    OUT hold_user_id BIGINT,
+    OUT stock_restored BOOLEAN
+) AS $$
+DECLARE
+    v_hold_id BIGINT;
+BEGIN
+    stock_restored := FALSE;
+    PERFORM 1 FROM books b WHERE b.id = p_book_id FOR UPDATE;
+
+    SELECT h.id, h.user_id INTO v_hold_id, hold_user_id
+    FROM book_holds h
+    WHERE h.book_id = p_book_id AND h.status = 'WAITING'
+    ORDER BY h.id
+    LIMIT 1
+    FOR UPDATE SKIP LOCKED;
+
+    IF FOUND THEN
+        UPDATE book_holds h
+        SET status = 'READY', ready_at = LOCALTIMESTAMP,
+            expires_at = LOCALTIMESTAMP + make_interval(days => p_pickup_days)
+        WHERE h.id = v_hold_id;
+    ELSE
+        UPDATE books b SET available_count = b.available_count + 1
+        WHERE b.id = p_book_id AND b.available_count < b.total_count;
+        stock_restored := FOUND;
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 释放多个副本（图书增加副本时调用）：bookIds[i]释放counts[i]个副本，逐个经circulation_release_copy分配给排队读者或恢复库存
+CREATE OR REPLACE FUNCTION circulation_release_copies(
+    p_book_ids BIGINT[],
+    p_counts INTEGER[],
+    p_pickup_days INTEGER DEFAULT 3
+)
+RETURNS TABLE (
+    book_id BIGINT,
+    stock_restored BOOLEAN,
+    hold_user_id BIGINT
+) AS $$
+DECLARE
+    v_item RECORD;
+    v_release RECORD;
+BEGIN
+    FOR v_item IN
+        SELECT t.book_id, t.copies FROM unnest(p_book_ids, p_counts) AS t(book_id, copies) ORDER BY t.book_id
+    LOOP
+        FOR i IN 1..v_item.copies LOOP
+            SELECT * INTO v_release FROM circulation_release_copy(v_item.book_id, p_pickup_days);
+            RETURN QUERY SELECT v_item.book_id, v_release.stock_restored, v_release.hold_user_id;
+        END LOOP;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 借书：在原有逻辑上增加预约取书——读者有该书的READY预约时直接借出分配给他的副本，不扣可借库存
+-- 取书期限已过但尚未被过期任务处理的预约仍然有效；返回值增加from_hold（是否借出的是预约副本，未扣可借库存）
+DROP FUNCTION IF EXISTS circulation_borrow(BIGINT, BIGINT, INTEGER);
+CREATE FUNCTION circulation_borrow(
+    p_user_id BIGINT,
+    p_book_id BIGINT,
+    p_due_days INTEGER DEFAULT 30
+)
+RETURNS TABLE (
+    result_code VARCHAR,
+    record_id BIGINT,
+    book_title VARCHAR,
+    borrow_time TIMESTAMP,
+    due_time TIMESTAMP,
+    from_hold BOOLEAN
+) AS $$
+DECLARE
+    v_role VARCHAR;
+    v_title VARCHAR;
+    v_now TIMESTAMP := LOCALTIMESTAMP;
+    v_record_id BIGINT;
+    v_from_hold BOOLEAN := FALSE;
+BEGIN
+    SELECT u.role INTO v_role FROM users u WHERE u.id = p_user_id;
+    IF NOT FOUND THEN
+        RETURN QUERY SELECT 'USER_NOT_FOUND'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP, FALSE;
+        RETURN;
+    END IF;
+    IF v_role = 'ADMIN' THEN
+        RETURN QUERY SELECT 'ADMIN_FORBIDDEN'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP, FALSE;
+        RETURN;
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM borrow_records br
+               WHERE br.user_id = p_user_id AND br.status IN ('BORROWED', 'OVERDUE')
+                 AND br.due_time < CURRENT_TIMESTAMP) THEN
+        RETURN QUERY SELECT 'OVERDUE'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP, FALSE;
+        RETURN;
+    END IF;
+
+    UPDATE book_holds h SET status = 'FULFILLED'
+    WHERE h.book_id = p_book_id AND h.user_id = p_user_id AND h.status = 'READY';
+    IF FOUND THEN
+        v_from_hold := TRUE;
+        SELECT b.title INTO v_title FROM books b WHERE b.id = p_book_id;
+    ELSE
+        UPDATE books b SET available_count = b.available_count - 1
+        WHERE b.id = p_book_id AND b.available_count > 0
+        RETURNING b.title INTO v_title;
+        IF NOT FOUND THEN
+            IF EXISTS (SELECT 1 FROM books b WHERE b.id = p_book_id) THEN
+                RETURN QUERY SELECT 'NO_STOCK'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP, FALSE;
+            ELSE
+                RETURN QUERY SELECT 'BOOK_NOT_FOUND'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP, FALSE;
+            END IF;
+            RETURN;
+        END IF;
+        -- 排队期间从可借库存借到了书，排队预约随之完成
+        UPDATE book_holds h SET status = 'FULFILLED'
+        WHERE h.book_id = p_book_id AND h.user_id = p_user_id AND h.status = 'WAITING';
+    END IF;
+
+    INSERT INTO borrow_records (user_id, book_id, borrow_time, due_time, status, created_at)
+    VALUES (p_user_id, p_book_id, v_now, v_now + make_interval(days => p_due_days), 'BORROWED', v_now)
+    RETURNING id INTO v_record_id;
+
+    RETURN QUERY SELECT 'OK'::VARCHAR, v_record_id, v_title, v_now, v_now + make_interval(days => p_due_days), v_from_hold;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 还书：在原有逻辑上改为通过circulation_release_copy释放副本，返回值增加hold_user_id（副本分配给的预约读者）
+DROP FUNCTION IF EXISTS circulation_return(BIGINT, BIGINT, BIGINT[], BIGINT[], FLOAT8[], FLOAT8[]);
+CREATE FUNCTION circulation_return(
+    p_user_id BIGINT,
+    p_record_id BIGINT,
+    p_tier_start_days BIGINT[],
+    p_tier_end_days BIGINT[],
+    p_tier_base_fines FLOAT8[],
+    p_tier_rates FLOAT8[]
+)
+RETURNS TABLE (
+    result_code VARCHAR,
+    book_id BIGINT,
+    return_time TIMESTAMP,
+    overdue_days BIGINT,
+    fine_amount FLOAT8,
+    stock_restored BOOLEAN,
+    hold_user_id BIGINT
+) AS $$
+DECLARE
+    v_user_id BIGINT;
+    v_book_id BIGINT;
+    v_status VARCHAR;
+    v_due_time TIMESTAMP;
+    v_now TIMESTAMP := LOCALTIMESTAMP;
+    v_days BIGINT := 0;
+    v_fine FLOAT8 := 0;
+    v_release RECORD;
+BEGIN
+    SELECT br.user_id, br.book_id, br.status, br.due_time
+    INTO v_user_id, v_book_id, v_status, v_due_time
+    FROM borrow_records br
+    WHERE br.id = p_record_id
+    FOR UPDATE;
+    IF NOT FOUND THEN
+        RETURN QUERY SELECT 'RECORD_NOT_FOUND'::VARCHAR, NULL::BIGINT, NULL::TIMESTAMP, NULL::BIGINT, NULL::FLOAT8, FALSE, NULL::BIGINT;
+        RETURN;
+    END IF;
+    IF v_user_id <> p_user_id THEN
+        RETURN QUERY SELECT 'NOT_OWNER'::VARCHAR, NULL::BIGINT, NULL::TIMESTAMP, NULL::BIGINT, NULL::FLOAT8, FALSE, NULL::BIGINT;
+        RETURN;
+    END IF;
+    IF v_status = 'RETURNED' THEN
+        RETURN QUERY SELECT 'ALREADY_RETURNED'::VARCHAR, NULL::BIGINT, NULL::TIMESTAMP, NULL::BIGINT, NULL::FLOAT8, FALSE, NULL::BIGINT;
+        RETURN;
+    END IF;
+
+    IF v_due_time < v_now THEN
+        v_days := FLOOR(EXTRACT(EPOCH FROM (v_now - v_due_time)) / 86400)::BIGINT;
+    END IF;
+    IF v_days > 0 THEN
+        SELECT COALESCE(SUM(t.base_fine + (v_days - t.start_days) * t.rate), 0) INTO v_fine
+        FROM unnest(p_tier_start_days, p_tier_end_days, p_tier_base_fines, p_tier_rates)
+             AS t(start_days, end_days, base_fine, rate)
+        WHERE v_days > t.start_days AND (t.end_days IS NULL OR v_days <= t.end_days);
+    END IF;
+
+    UPDATE borrow_records br
+    SET return_time = v_now, status = 'RETURNED', fine_amount = v_fine
+    WHERE br.id = p_record_id;
+
+    IF v_fine > 0 THEN
+        UPDATE users u SET fine_amount = COALESCE(u.fine_amount, 0) + v_fine WHERE u.id = p_user_id;
+    END IF;
+
+    SELECT * INTO v_release FROM circulation_release_copy(v_book_id);
+
+    RETURN QUERY SELECT 'OK'::VARCHAR, v_book_id, v_now, v_days, v_fine, v_release.stock_restored, v_release.hold_user_id;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 预约：仅在库存为0时入队
+-- result_code: OK / USER_NOT_FOUND / ADMIN_FORBIDDEN / BOOK_NOT_FOUND / AVAILABLE（有库存，直接借阅）/
+--              ALREADY_BORROWED / ALREADY_HELD
+CREATE OR REPLACE FUNCTION circulation_place_hold(
+    p_user_id BIGINT,
+    p_book_id BIGINT
+)
+RETURNS TABLE (
+    result_code VARCHAR,
+    hold_id BIGINT,
+    queue_position BIGINT
+) AS $$
+DECLARE
+    v_role VARCHAR;
+    v_available INTEGER;
+    v_hold_id BIGINT;
+BEGIN
+    SELECT u.role INTO v_role FROM users u WHERE u.id = p_user_id;
+    IF NOT FOUND THEN
+        RETURN QUERY SELECT 'USER_NOT_FOUND'::VARCHAR, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+    IF v_role = 'ADMIN' THEN
+        RETURN QUERY SELECT 'ADMIN_FORBIDDEN'::VARCHAR, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+
+    SELECT b.available_count INTO v_available FROM books b WHERE b.id = p_book_id FOR UPDATE;
+    IF NOT FOUND THEN
+        RETURN QUERY SELECT 'BOOK_NOT_FOUND'::VARCHAR, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+    IF v_available > 0 THEN
+        RETURN QUERY SELECT 'AVAILABLE'::VARCHAR, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+    IF EXISTS (SELECT 1 FROM borrow_records br
+               WHERE br.user_id = p_user_id AND br.book_id = p_book_id
+                 AND br.status IN ('BORROWED', 'OVERDUE')) THEN
+        RETURN QUERY SELECT 'ALREADY_BORROWED'::VARCHAR, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+
+    INSERT INTO book_holds (book_id, user_id, status, created_at)
+    VALUES (p_book_id, p_user_id, 'WAITING', LOCALTIMESTAMP)
+    ON CONFLICT (book_id, user_id) WHERE status IN ('WAITING', 'READY') DO NOTHING
+    RETURNING id INTO v_hold_id;
+    IF v_hold_id IS NULL THEN
+        RETURN QUERY SELECT 'ALREADY_HELD'::VARCHAR, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+
+    RETURN QUERY SELECT 'OK'::VARCHAR, v_hold_id,
+        (SELECT COUNT(*) FROM book_holds h
+         WHERE h.book_id = p_book_id AND h.status = 'WAITING' AND h.id <= v_hold_id);
+END;
+$$ LANGUAGE plpgsql;
+
+-- 取消预约：已分配副本（READY）的预约取消后副本转给下一位或恢复库存
+-- result_code: OK / HOLD_NOT_FOUND / NOT_OWNER / HOLD_NOT_ACTIVE
+CREATE OR REPLACE FUNCTION circulation_cancel_hold(
+    p_user_id BIGINT,
+    p_hold_id BIGINT
+)
+RETURNS TABLE (
+    result_code VARCHAR,
+    book_id BIGINT,
+    stock_restored BOOLEAN,
+    hold_user_id BIGINT
+) AS $$
+DECLARE
+    v_user_id BIGINT;
+    v_book_id BIGINT;
+    v_status VARCHAR;
+    v_release RECORD;
+BEGIN
+    SELECT h.user_id, h.book_id, h.status INTO v_user_id, v_book_id, v_status
+    FROM book_holds h WHERE h.id = p_hold_id
+    FOR UPDATE;
+    IF NOT FOUND THEN
+        RETURN QUERY SELECT 'HOLD_NOT_FOUND'::VARCHAR, NULL::BIGINT, FALSE, NULL::BIGINT;
+        RETURN;
+    END IF;
+    IF v_user_id <> p_user_id THEN
+        RETURN QUERY SELECT 'NOT_OWNER'::VARCHAR, NULL::BIGINT, FALSE, NULL::BIGINT;
+        RETURN;
+    END IF;
+    IF v_status NOT IN ('WAITING', 'READY') THEN
+        RETURN QUERY SELECT 'HOLD_NOT_ACTIVE'::VARCHAR, NULL::BIGINT, FALSE, NULL::BIGINT;
+        RETURN;
+    END IF;
+
+    UPDATE book_holds h SET status = 'CANCELLED' WHERE h.id = p_hold_id;
+    IF v_status = 'READY' THEN
+        SELECT * INTO v_release FROM circulation_release_copy(v_book_id);
+        RETURN QUERY SELECT 'OK'::VARCHAR, v_book_id, v_release.stock_restored, v_release.hold_user_id;
+    ELSE
+        RETURN QUERY SELECT 'OK'::VARCHAR, v_book_id, FALSE, NULL::BIGINT;
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 处理取书期限已过的预约：标记EXPIRED，副本转给下一位或恢复库存
+-- 每次最多处理p_limit条，返回每个释放的副本去向
+CREATE OR REPLACE FUNCTION expire_book_holds(
+    p_limit INTEGER DEFAULT 500
+)
+RETURNS TABLE (
+    book_id BIGINT,
+    expired_user_id BIGINT,
+    stock_restored BOOLEAN,
+    hold_user_id BIGINT
+) AS $$
+DECLARE
+    v_hold RECORD;
+    v_release RECORD;
+BEGIN
+    FOR v_hold IN
+        SELECT h.id, h.book_id, h.user_id FROM book_holds h
+        WHERE h.status = 'READY' AND h.expires_at < LOCALTIMESTAMP
+        ORDER BY h.expires_at
+        LIMIT p_limit
+        FOR UPDATE SKIP LOCKED
+    LOOP
+        UPDATE book_holds h SET status = 'EXPIRED' WHERE h.id = v_hold.id;
+        SELECT * INTO v_release FROM circulation_release_copy(v_hold.book_id);
+        RETURN QUERY SELECT v_hold.book_id, v_hold.user_id, v_release.stock_restored, v_release.hold_user_id;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
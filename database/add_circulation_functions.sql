@@ -0,0 +1,133 @@
+-- 借还书服务端函数
+-- 借书/还书的全部校验与写入在一次函数调用（一次往返）内完成，业务失败以result_code返回而不抛异常，
+-- 以便多个借书请求可以在同一条语句中批量执行而互不影响
+-- result_code: OK / USER_NOT_FOUND / ADMIN_FORBIDDEN / OVERDUE / BOOK_NOT_FOUND / NO_STOCK /
+--              RECORD_NOT_FOUND / NOT_OWNER / ALREADY_RETURNED
+
+-- 借书：管理员检查、逾期检查、库存扣减、插入借阅记录
+CREATE OR REPLACE FUNCTION circulation_borrow(
+    p_user_id BIGINT,
+    p_book_id BIGINT,
+    p_due_days INTEGER DEFAULT 30
+)
+RETURNS TABLE (
+    result_code VARCHAR,
+    record_id BIGINT,
+    book_title VARCHAR,
+    borrow_time TIMESTAMP,
+    due_time TIMESTAMP
+) AS $$
+DECLARE
+    v_role VARCHAR;
+    v_title VARCHAR;
+    v_now TIMESTAMP := LOCALTIMESTAMP;
+    v_record_id BIGINT;
+BEGIN
+    SELECT u.role INTO v_role FROM users u WHERE u.id = p_user_id;
+    IF NOT FOUND THEN
+        RETURN QUERY SELECT 'USER_NOT_FOUND'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP;
+        RETURN;
+    END IF;
+    IF v_role = 'ADMIN' THEN
+        RETURN QUERY SELECT 'ADMIN_FORBIDDEN'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP;
+        RETURN;
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM borrow_records br
+               WHERE br.user_id = p_user_id AND br.status IN ('BORROWED', 'OVERDUE')
+                 AND br.due_time < CURRENT_TIMESTAMP) THEN
+        RETURN QUERY SELECT 'OVERDUE'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP;
+        RETURN;
+    END IF;
+
+    UPDATE books b SET available_count = b.available_count - 1
+    WHERE b.id = p_book_id AND b.available_count > 0
+    RETURNING b.title INTO v_title;
+    IF NOT FOUND THEN
+        IF EXISTS (SELECT 1 FROM books b WHERE b.id = p_book_id) THEN
+            RETURN QUERY SELECT 'NO_STOCK'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP;
+        ELSE
+            RETURN QUERY SELECT 'BOOK_NOT_FOUND'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::TIMESTAMP;
+        END IF;
+        RETURN;
+    END IF;
+
+    INSERT INTO borrow_records (user_id, book_id, borrow_time, due_time, status, created_at)
+    VALUES (p_user_id, p_book_id, v_now, v_now + make_interval(days => p_due_days), 'BORROWED', v_now)
+    RETURNING id INTO v_record_id;
+
+    RETURN QUERY SELECT 'OK'::VARCHAR, v_record_id, v_title, v_now, v_now + make_interval(days => p_due_days);
+END;
+$$ LANGUAGE plpgsql;
+
+-- 还书：归属检查、标记归还、按梯度表计算罚款并累加到用户、恢复库存
+-- 梯度参数与应用端FineSchedule.getTierStartDays/getTierEndDays/getTierBaseFines/getTierRates一致
+CREATE OR REPLACE FUNCTION circulation_return(
+    p_user_id BIGINT,
+    p_record_id BIGINT,
+    p_tier_start_days BIGINT[],
+    p_tier_end_days BIGINT[],
+    p_tier_base_fines FLOAT8[],
+    p_tier_rates FLOAT8[]
+)
+RETURNS TABLE (
+    result_code VARCHAR,
+    book_id BIGINT,
+    return_time TIMESTAMP,
+    overdue_days BIGINT,
+    fine_amount FLOAT8,
+    stock_restored BOOLEAN
+) AS $$
+DECLARE
+    v_user_id BIGINT;
+    v_book_id BIGINT;
+    v_status VARCHAR;
+    v_due_time TIMESTAMP;
+    v_now TIMESTAMP := LOCALTIMESTAMP;
+    v_days BIGINT := 0;
+    v_fine FLOAT8 := 0;
+    v_restored BOOLEAN;
+BEGIN
+    SELECT br.user_id, br.book_id, br.status, br.due_time
+    INTO v_user_id, v_book_id, v_status, v_due_time
+    FROM borrow_records br
+    WHERE br.id = p_record_id
+    FOR UPDATE;
+    IF NOT FOUND THEN
+        RETURN QUERY SELECT 'RECORD_NOT_FOUND'::VARCHAR, NULL::BIGINT, NULL::TIMESTAMP, NULL::BIGINT, NULL::FLOAT8, FALSE;
+        RETURN;
+    END IF;
+    IF v_user_id <> p_user_id THEN
+        RETURN QUERY SELECT 'NOT_OWNER'::VARCHAR, NULL::BIGINT, NULL::TIMESTAMP, NULL::BIGINT, NULL::FLOAT8, FALSE;
+        RETURN;
+    END IF;
+    IF v_status = 'RETURNED' THEN
+        RETURN QUERY SELECT 'ALREADY_RETURNED'::VARCHAR, NULL::BIGINT, NULL::TIMESTAMP, NULL::BIGINT, NULL::FLOAT8, FALSE;
+        RETURN;
+    END IF;
+
+    IF v_due_time < v_now THEN
+        v_days := FLOOR(EXTRACT(EPOCH FROM (v_now - v_due_time)) / 86400)::BIGINT;
+    END IF;
+    IF v_days > 0 THEN
+        SELECT COALESCE(SUM(t.base_fine + (v_days - t.start_days) * t.rate), 0) INTO v_fine
+        FROM unnest(p_tier_start_days, p_tier_end_days, p_tier_base_fines, p_tier_rates)
+             AS t(start_days, end_days, base_fine, rate)
+        WHERE v_days > t.start_days AND (t.end_days IS NULL OR v_days <= t.end_days);
+    END IF;
+
+    UPDATE borrow_records br
+    SET return_time = v_now, status = 'RETURNED', fine_amount = v_fine
+    WHERE br.id = p_record_id;
+
+    IF v_fine > 0 THEN
+        UPDATE users u SET fine_amount = COALESCE(u.fine_amount, 0) + v_fine WHERE u.id = p_user_id;
+    END IF;
+
+    UPDATE books b SET available_count = b.available_count + 1
+    WHERE b.id = v_book_id AND b.available_count < b.total_count;
+    v_restored := FOUND;
+
+    RETURN QUERY SELECT 'OK'::VARCHAR, v_book_id, v_now, v_days, v_fine, v_restored;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,83 @@
+-- 罚款台账
+-- 逾期扫描按梯度表增量计提未归还逾期借阅的罚款，写入fine_ledger（每条借阅一行），
+-- 并把变化量累加到user_fine_totals（每个用户一行），欠费查询和管理员欠费报表直接读取累计值。
+-- 借阅归还时由触发器从台账移除该借阅并扣减用户累计（归还时的罚款结算到users.fine_amount），
+-- 删除借阅记录时同样先扣减累计再移除台账行。脚本可重复执行
+
+CREATE TABLE IF NOT EXISTS fine_ledger (
+    record_id BIGINT PRIMARY KEY REFERENCES borrow_records(id) ON DELETE CASCADE,
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    overdue_days BIGINT NOT NULL,
+    accrued_fine DOUBLE PRECISION NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_fine_ledger_user ON fine_ledger(user_id);
+
+CREATE TABLE IF NOT EXISTS user_fine_totals (
+    user_id BIGINT PRIMARY KEY REFERENCES users(id) ON DELETE CASCADE,
+    overdue_count INTEGER NOT NULL DEFAULT 0,
+    accrued_fine DOUBLE PRECISION NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE OR REPLACE FUNCTION fine_ledger_settle()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_fine DOUBLE PRECISION;
+BEGIN
+    -- 删除借阅记录：在级联删除台账行之前扣减用户累计
+    IF TG_OP = 'DELETE' THEN
+        DELETE FROM fine_ledger WHERE record_id = OLD.id
+        RETURNING accrued_fine INTO v_fine;
+        IF FOUND THEN
+            UPDATE user_fine_totals
+            SET overdue_count = overdue_count - 1,
+                accrued_fine = accrued_fine - v_fine,
+                updated_at = CURRENT_TIMESTAMP
+            WHERE user_id = OLD.user_id;
+        END IF;
+        RETURN OLD;
+    END IF;
+
+    IF NEW.status = 'RETURNED' AND OLD.status <> 'RETURNED' THEN
+        DELETE FROM fine_ledger WHERE record_id = NEW.id
+        RETURNING accrued_fine INTO v_fine;
+        IF FOUND THEN
+            UPDATE user_fine_totals
+            SET overdue_count = overdue_count - 1,
+                accrued_fine = accrued_fine - v_fine,
+                updated_at = CURRENT_TIMESTAMP
+            WHERE user_id = NEW.user_id;
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_fine_ledger_settle ON borrow_records;
+CREATE TRIGGER trg_fine_ledger_settle
+    AFTER UPDATE OF status ON borrow_records
+    FOR EACH ROW
+    EXECUTE FUNCTION fine_ledger_settle();
+
+-- 外键的级联删除在AFTER阶段执行，删除借阅记录需在BEFORE阶段处理台账
+DROP TRIGGER IF EXISTS trg_fine_ledger_settle_delete ON borrow_records;
+CREATE TRIGGER trg_fine_ledger_settle_delete
+    BEFORE DELETE ON borrow_records
+    FOR EACH ROW
+    EXECUTE FUNCTION fine_ledger_settle();
+
+-- 按台账校正用户累计（修正此前删除借阅记录造成的偏差）
+UPDATE user_fine_totals t
+SET overdue_count = COALESCE(s.overdue_count, 0),
+    accrued_fine = COALESCE(s.accrued_fine, 0),
+    updated_at = CURRENT_TIMESTAMP
+FROM user_fine_totals u
+LEFT JOIN (
+    SELECT user_id, COUNT(*) AS overdue_count, SUM(accrued_fine) AS accrued_fine
+    FROM fine_ledger
+    GROUP BY user_id
+) s ON s.user_id = u.user_id
+WHERE t.user_id = u.user_id
+  AND (t.overdue_count <> COALESCE(s.overdue_count, 0) OR t.accrued_fine <> COALESCE(s.accrued_fine, 0));
@@ -0,0 +1,6 @@
+-- 欠费报表索引
+-- 管理员欠费列表在数据库端聚合所有未归还且已逾期的借阅记录，
+-- 部分索引只覆盖未归还记录，按due_time范围扫描并直接取得user_id
+CREATE INDEX IF NOT EXISTS idx_borrow_records_open_due_user
+    ON borrow_records(due_time) INCLUDE (user_id)
+    WHERE status IN ('BORROWED', 'OVERDUE');
@@ -8,6 +8,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 
 /**
  * 基础DAO类
@@ -16,9 +18,12 @@ import java.sql.SQLException;
 public abstract class BaseDao {
     protected static final Logger logger = LoggerFactory.getLogger(BaseDao.class);
     protected final DataSource dataSource;
+    protected final JdbcTemplate jdbc;
     
     protected BaseDao() {
-        this.dataSource = DataSourceProvider.getDataSource();
+        // 路由数据源：默认走主库，ReadOnlyScope内走只读副本
+        this.dataSource = DataSourceProvider.getReadDataSource();
+        this.jdbc = new JdbcTemplate(dataSource);
     }
     
     /**
@@ -84,6 +89,13 @@ public abstract class BaseDao {
         close(conn);
     }
     
+    /**
+     * Timestamp转LocalDateTime（null安全）
+     */
+    protected static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+    
     /**
      * 回滚事务
      */
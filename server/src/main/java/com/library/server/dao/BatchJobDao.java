@@ -0,0 +1,93 @@
+package com.library.server.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * 批处理作业检查点数据访问对象
+ */
+public class BatchJobDao extends BaseDao {
+    private static final Logger logger = LoggerFactory.getLogger(BatchJobDao.class);
+    
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    
+    /**
+     * 作业检查点
+     */
+    public static class Checkpoint {
+        private String jobName;
+        private long lastKey;
+        private String status;
+        private long scannedCount;
+        private long affectedCount;
+        private LocalDateTime startedAt;
+        private LocalDateTime updatedAt;
+        
+        public String getJobName() { return jobName; }
+        public void setJobName(String jobName) { this.jobName = jobName; }
+        public long getLastKey() { return lastKey; }
+        public void setLastKey(long lastKey) { this.lastKey = lastKey; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public long getScannedCount() { return scannedCount; }
+        public void setScannedCount(long scannedCount) { this.scannedCount = scannedCount; }
+        public long getAffectedCount() { return affectedCount; }
+        public void setAffectedCount(long affectedCount) { this.affectedCount = affectedCount; }
+        public LocalDateTime getStartedAt() { return startedAt; }
+        public void setStartedAt(LocalDateTime startedAt) { this.startedAt = startedAt; }
+        public LocalDateTime getUpdatedAt() { return updatedAt; }
+        public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    }
+    
+    /**
+     * 查找作业检查点，不存在返回null
+     */
+    public Checkpoint find(String jobName) {
+        String sql = "SELECT job_name, last_key, status, scanned_count, affected_count, started_at, updated_at " +
+                     "FROM batch_job_checkpoints WHERE job_name = ?";
+        
+        try {
+            return jdbc.queryOne(sql, this::mapResultSetToCheckpoint, jobName);
+        } catch (SQLException e) {
+            logger.error("查询作业检查点失败: jobName={}", jobName, e);
+            throw new RuntimeException("查询作业检查点失败", e);
+        }
+    }
+    
+    /**
+     * 保存作业检查点（在调用方事务中执行，与该块的数据修改一起提交）
+     */
+    public void save(Connection conn, Checkpoint checkpoint) throws SQLException {
+        String sql = "INSERT INTO batch_job_checkpoints " +
+                     "(job_name, last_key, status, scanned_count, affected_count, started_at, updated_at) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP) " +
+                     "ON CONFLICT (job_name) DO UPDATE SET " +
+                     "last_key = EXCLUDED.last_key, status = EXCLUDED.status, " +
+                     "scanned_count = EXCLUDED.scanned_count, affected_count = EXCLUDED.affected_count, " +
+                     "started_at = EXCLUDED.started_at, updated_at = CURRENT_TIMESTAMP";
+        
+        jdbc.update(conn, sql, checkpoint.getJobName(), checkpoint.getLastKey(), checkpoint.getStatus(),
+                checkpoint.getScannedCount(), checkpoint.getAffectedCount(), checkpoint.getStartedAt());
+    }
+    
+    /**
+     * 将ResultSet映射为Checkpoint对象
+     */
+    private Checkpoint mapResultSetToCheckpoint(ResultSet rs) throws SQLException {
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setJobName(rs.getString("job_name"));
+        checkpoint.setLastKey(rs.getLong("last_key"));
+        checkpoint.setStatus(rs.getString("status"));
+        checkpoint.setScannedCount(rs.getLong("scanned_count"));
+        checkpoint.setAffectedCount(rs.getLong("affected_count"));
+        checkpoint.setStartedAt(toLocalDateTime(rs.getTimestamp("started_at")));
+        checkpoint.setUpdatedAt(toLocalDateTime(rs.getTimestamp("updated_at")));
+        return checkpoint;
+    }
+}
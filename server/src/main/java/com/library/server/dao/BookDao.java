@@ -1,17 +1,21 @@
 package com.library.server.dao;
 
 import com.library.server.model.Book;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 图书数据访问对象
@@ -19,33 +23,50 @@ import java.util.List;
 public class BookDao extends BaseDao {
     private static final Logger logger = LoggerFactory.getLogger(BookDao.class);
     
+    // COPY写入缓冲区大小，超过后刷新到服务端
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    
+    private static final String BOOK_COLUMNS = "id, isbn, title, author, category, publisher, description, " +
+                                               "cover_image_path, total_count, available_count, created_at";
+    
+    private final HoldDao holdDao = new HoldDao();
+    
     /**
      * 根据ID查找图书
      */
     public Book findById(Long id) {
-        String sql = "SELECT id, isbn, title, author, category, publisher, description, " +
-                     "cover_image_path, total_count, available_count, created_at " +
-                     "FROM books WHERE id = ?";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE id = ?";
         
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, id);
-            rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                return mapResultSetToBook(rs);
-            }
-            return null;
+            return jdbc.queryOne(sql, this::mapResultSetToBook, id);
         } catch (SQLException e) {
             logger.error("查找图书失败: id={}", id, e);
             throw new RuntimeException("查找图书失败", e);
-        } finally {
-            close(conn, stmt, rs);
+        }
+    }
+    
+    /**
+     * 批量查找图书：图书ID -> 图书，已删除的图书不在结果中
+     */
+    public Map<Long, Book> findByIds(long[] ids) {
+        Map<Long, Book> books = new HashMap<>();
+        if (ids.length == 0) {
+            return books;
+        }
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE id = ANY(?)";
+        Long[] params = new Long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            params[i] = ids[i];
+        }
+        
+        try {
+            for (Book book : jdbc.query(sql, this::mapResultSetToBook, (Object) params)) {
+                books.put(book.getId(), book);
+            }
+            return books;
+        } catch (SQLException e) {
+            logger.error("批量查找图书失败: count={}", ids.length, e);
+            throw new RuntimeException("批量查找图书失败", e);
         }
     }
     
@@ -53,29 +74,13 @@ public class BookDao extends BaseDao {
      * 根据ISBN查找图书
      */
     public Book findByIsbn(String isbn) {
-        String sql = "SELECT id, isbn, title, author, category, publisher, description, " +
-                     "cover_image_path, total_count, available_count, created_at " +
-                     "FROM books WHERE isbn = ?";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE isbn = ?";
         
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setString(1, isbn);
-            rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                return mapResultSetToBook(rs);
-            }
-            return null;
+            return jdbc.queryOne(sql, this::mapResultSetToBook, isbn);
         } catch (SQLException e) {
             logger.error("查找图书失败: isbn={}", isbn, e);
             throw new RuntimeException("查找图书失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -87,11 +92,7 @@ public class BookDao extends BaseDao {
      * @param offset 偏移量
      */
     public List<Book> searchBooks(String keyword, String category, int limit, int offset) {
-        StringBuilder sql = new StringBuilder(
-            "SELECT id, isbn, title, author, category, publisher, description, " +
-            "cover_image_path, total_count, available_count, created_at " +
-            "FROM books WHERE 1=1"
-        );
+        StringBuilder sql = new StringBuilder("SELECT " + BOOK_COLUMNS + " FROM books WHERE 1=1");
         List<Object> params = new ArrayList<>();
         
         if (keyword != null && !keyword.trim().isEmpty()) {
@@ -111,28 +112,11 @@ public class BookDao extends BaseDao {
         params.add(limit);
         params.add(offset);
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        List<Book> books = new ArrayList<>();
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql.toString());
-            for (int i = 0; i < params.size(); i++) {
-                stmt.setObject(i + 1, params.get(i));
-            }
-            rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                books.add(mapResultSetToBook(rs));
-            }
-            return books;
+            return jdbc.query(sql.toString(), this::mapResultSetToBook, params.toArray());
         } catch (SQLException e) {
             logger.error("搜索图书失败: keyword={}, category={}", keyword, category, e);
             throw new RuntimeException("搜索图书失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -144,33 +128,10 @@ public class BookDao extends BaseDao {
      * @return 是否更新成功
      */
     public boolean updateBookStock(Connection conn, Long bookId, int delta) {
-        if (conn == null) {
-            Connection ownConn = null;
-            try {
-                ownConn = getConnection();
-                ownConn.setAutoCommit(false);
-                boolean result = updateBookStockInternal(ownConn, bookId, delta);
-                ownConn.commit();
-                return result;
-            } catch (SQLException e) {
-                if (ownConn != null) {
-                    rollback(ownConn);
-                }
-                logger.error("更新图书库存失败: bookId={}, delta={}", bookId, delta, e);
-                throw new RuntimeException("更新图书库存失败", e);
-            } finally {
-                if (ownConn != null) {
-                    try {
-                        ownConn.setAutoCommit(true);
-                    } catch (SQLException e) {
-                        logger.error("恢复自动提交失败", e);
-                    }
-                }
-                close(ownConn);
-            }
-        }
-        
         try {
+            if (conn == null) {
+                return jdbc.inTransaction(ownConn -> updateBookStockInternal(ownConn, bookId, delta));
+            }
             return updateBookStockInternal(conn, bookId, delta);
         } catch (SQLException e) {
             logger.error("更新图书库存失败: bookId={}, delta={}", bookId, delta, e);
@@ -185,16 +146,9 @@ public class BookDao extends BaseDao {
         String sql = "UPDATE books SET available_count = available_count + ? " +
                      "WHERE id = ? AND available_count + ? >= 0 AND available_count + ? <= total_count";
         
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, delta);
-            stmt.setLong(2, bookId);
-            stmt.setInt(3, delta);
-            stmt.setInt(4, delta);
-            
-            int rows = stmt.executeUpdate();
-            logger.info("更新图书库存: bookId={}, delta={}, affectedRows={}", bookId, delta, rows);
-            return rows > 0;
-        }
+        int rows = jdbc.update(conn, sql, delta, bookId, delta, delta);
+        logger.info("更新图书库存: bookId={}, delta={}, affectedRows={}", bookId, delta, rows);
+        return rows > 0;
     }
     
     /**
@@ -205,37 +159,20 @@ public class BookDao extends BaseDao {
                      "cover_image_path, total_count, available_count, created_at) " +
                      "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) RETURNING id";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setString(1, book.getIsbn());
-            stmt.setString(2, book.getTitle());
-            stmt.setString(3, book.getAuthor());
-            stmt.setString(4, book.getCategory());
-            stmt.setString(5, book.getPublisher());
-            stmt.setString(6, book.getDescription());
-            stmt.setString(7, book.getCoverImagePath());
-            stmt.setInt(8, book.getTotalCount());
-            stmt.setInt(9, book.getAvailableCount());
-            stmt.setTimestamp(10, Timestamp.valueOf(
-                book.getCreatedAt() != null ? book.getCreatedAt() : LocalDateTime.now()));
-            
-            rs = stmt.executeQuery();
-            if (rs.next()) {
-                Long id = rs.getLong("id");
-                logger.info("插入图书成功: id={}, title={}", id, book.getTitle());
-                return id;
+            Long id = jdbc.queryOne(sql, rs -> rs.getLong("id"),
+                book.getIsbn(), book.getTitle(), book.getAuthor(), book.getCategory(),
+                book.getPublisher(), book.getDescription(), book.getCoverImagePath(),
+                book.getTotalCount(), book.getAvailableCount(),
+                book.getCreatedAt() != null ? book.getCreatedAt() : LocalDateTime.now());
+            if (id == null) {
+                throw new RuntimeException("插入图书失败：未返回ID");
             }
-            throw new RuntimeException("插入图书失败：未返回ID");
+            logger.info("插入图书成功: id={}, title={}", id, book.getTitle());
+            return id;
         } catch (SQLException e) {
             logger.error("插入图书失败: title={}", book.getTitle(), e);
             throw new RuntimeException("插入图书失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -247,32 +184,17 @@ public class BookDao extends BaseDao {
                      "publisher = ?, description = ?, cover_image_path = ?, " +
                      "total_count = ?, available_count = ? WHERE id = ?";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setString(1, book.getIsbn());
-            stmt.setString(2, book.getTitle());
-            stmt.setString(3, book.getAuthor());
-            stmt.setString(4, book.getCategory());
-            stmt.setString(5, book.getPublisher());
-            stmt.setString(6, book.getDescription());
-            stmt.setString(7, book.getCoverImagePath());
-            stmt.setInt(8, book.getTotalCount());
-            stmt.setInt(9, book.getAvailableCount());
-            stmt.setLong(10, book.getId());
-            
-            int rows = stmt.executeUpdate();
-            logger.info("更新图书: id={}, title={}, affectedRows={}", 
+            int rows = jdbc.update(sql,
+                book.getIsbn(), book.getTitle(), book.getAuthor(), book.getCategory(),
+                book.getPublisher(), book.getDescription(), book.getCoverImagePath(),
+                book.getTotalCount(), book.getAvailableCount(), book.getId());
+            logger.info("更新图书: id={}, title={}, affectedRows={}",
                 book.getId(), book.getTitle(), rows);
             return rows > 0;
         } catch (SQLException e) {
             logger.error("更新图书失败: id={}", book.getId(), e);
             throw new RuntimeException("更新图书失败", e);
-        } finally {
-            close(conn, stmt);
         }
     }
     
@@ -282,23 +204,200 @@ public class BookDao extends BaseDao {
     public boolean deleteBook(Long bookId) {
         String sql = "DELETE FROM books WHERE id = ?";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, bookId);
-            
-            int rows = stmt.executeUpdate();
+            int rows = jdbc.update(sql, bookId);
             logger.info("删除图书: id={}, affectedRows={}", bookId, rows);
             return rows > 0;
         } catch (SQLException e) {
             logger.error("删除图书失败: id={}", bookId, e);
             throw new RuntimeException("删除图书失败", e);
+        }
+    }
+    
+    /**
+     * 批量导入（按ISBN插入或更新）
+     * 在一个事务中依次执行createImportTable、copyToImportTable和mergeImportTable
+     * @param books 已通过字段校验的图书（按需迭代，不要求全部加载到内存）
+     */
+    public BulkImportResult bulkUpsert(Iterator<Book> books) {
+        try {
+            return jdbc.inTransaction(conn -> {
+                createImportTable(conn);
+                copyToImportTable(conn, books, 0);
+                return mergeImportTable(conn);
+            });
+        } catch (SQLException e) {
+            logger.error("批量导入图书失败", e);
+            throw new RuntimeException("批量导入图书失败: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 创建导入临时表（事务中调用，事务结束时自动删除）
+     */
+    public void createImportTable(Connection conn) throws SQLException {
+        jdbc.update(conn, "CREATE TEMP TABLE book_import (" +
+            "line_no INTEGER NOT NULL, isbn VARCHAR(20) NOT NULL, title VARCHAR(200) NOT NULL, " +
+            "author VARCHAR(100) NOT NULL, category VARCHAR(50) NOT NULL, publisher VARCHAR(100), " +
+            "description TEXT, total_count INTEGER NOT NULL) ON COMMIT DROP");
+    }
+    
+    /**
+     * 通过COPY将图书流式写入导入临时表（事务中调用，可多次调用追加）
+     * @param lineOffset 已写入的行数，本次写入的行号从lineOffset + 1开始
+     * @return 本次写入的行数
+     */
+    public int copyToImportTable(Connection conn, Iterator<Book> books, int lineOffset) throws SQLException {
+        CopyIn copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(
+            "COPY book_import (line_no, isbn, title, author, category, publisher, description, total_count) " +
+            "FROM STDIN WITH (FORMAT csv)");
+        int lineNo = lineOffset;
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 1024);
+            while (books.hasNext()) {
+                Book book = books.next();
+                buffer.append(++lineNo).append(',');
+                appendCsvField(buffer, book.getIsbn()).append(',');
+                appendCsvField(buffer, book.getTitle()).append(',');
+                appendCsvField(buffer, book.getAuthor()).append(',');
+                appendCsvField(buffer, book.getCategory()).append(',');
+                appendCsvField(buffer, book.getPublisher()).append(',');
+                appendCsvField(buffer, book.getDescription()).append(',');
+                buffer.append(book.getTotalCount() != null ? book.getTotalCount() : 0).append('\n');
+                if (buffer.length() >= COPY_BUFFER_SIZE) {
+                    writeToCopy(copyIn, buffer);
+                }
+            }
+            writeToCopy(copyIn, buffer);
+            copyIn.endCopy();
+            return lineNo - lineOffset;
         } finally {
-            close(conn, stmt);
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+    
+    /**
+     * 将导入临时表合并到books表（事务中调用）
+     * 剔除总数量小于已借出数量的行后，用一条INSERT ... ON CONFLICT (isbn) DO UPDATE合并，
+     * 已存在图书的可用数量随总数量的变化同步调整；有人排队的图书新增的副本不直接计入可用数量，
+     * 而是经circulation_release_copy依次分配给排队读者（见getReleases）。同一ISBN出现多次时以最后一行为准，
+     * 被覆盖的行计入rejected，不算作成功
+     */
+    public BulkImportResult mergeImportTable(Connection conn) throws SQLException {
+        BulkImportResult result = new BulkImportResult();
+        Integer accepted = jdbc.queryOne(conn, "SELECT COUNT(*) FROM book_import", rs -> rs.getInt(1));
+        result.acceptedCount = accepted != null ? accepted : 0;
+        jdbc.update(conn, "ANALYZE book_import");
+        
+        // 总数量不能小于已借出数量，否则可用数量会变为负数
+        result.rejected.addAll(jdbc.query(conn,
+            "SELECT i.isbn, i.total_count, b.total_count - b.available_count AS borrowed " +
+            "FROM book_import i JOIN books b ON b.isbn = i.isbn " +
+            "WHERE i.total_count < b.total_count - b.available_count ORDER BY i.line_no",
+            rs -> String.format("ISBN %s: 总数量%d小于已借出数量%d",
+                rs.getString("isbn"), rs.getInt("total_count"), rs.getInt("borrowed"))));
+        if (!result.rejected.isEmpty()) {
+            jdbc.update(conn, "DELETE FROM book_import i USING books b " +
+                "WHERE b.isbn = i.isbn AND i.total_count < b.total_count - b.available_count");
+        }
+        
+        // 同一ISBN只有最后一行会被合并，之前的行记为重复
+        result.rejected.addAll(jdbc.query(conn,
+            "SELECT isbn FROM (SELECT isbn, line_no, " +
+            "MAX(line_no) OVER (PARTITION BY isbn) AS last_line_no FROM book_import) d " +
+            "WHERE line_no < last_line_no ORDER BY line_no",
+            rs -> String.format("ISBN %s: 与后面的行重复，已忽略", rs.getString("isbn"))));
+        
+        // 有人排队且副本增加的图书，锁定后在合并时不调整可用数量，新增副本随后逐个释放给排队读者
+        List<long[]> heldAdds = jdbc.query(conn,
+            "SELECT b.id, s.total_count - b.total_count AS added FROM books b " +
+            "JOIN (SELECT DISTINCT ON (isbn) isbn, total_count FROM book_import ORDER BY isbn, line_no DESC) s " +
+            "ON s.isbn = b.isbn " +
+            "WHERE s.total_count > b.total_count " +
+            "AND EXISTS (SELECT 1 FROM book_holds h WHERE h.book_id = b.id AND h.status = 'WAITING') " +
+            "ORDER BY b.id FOR UPDATE OF b",
+            rs -> new long[] {rs.getLong("id"), rs.getLong("added")});
+        Long[] heldBookIds = new Long[heldAdds.size()];
+        Integer[] addedCopies = new Integer[heldAdds.size()];
+        for (int i = 0; i < heldAdds.size(); i++) {
+            heldBookIds[i] = heldAdds.get(i)[0];
+            addedCopies[i] = (int) heldAdds.get(i)[1];
+        }
+        
+        String mergeSql = "WITH merged AS (" +
+            "INSERT INTO books (isbn, title, author, category, publisher, description, " +
+            "total_count, available_count, created_at) " +
+            "SELECT DISTINCT ON (isbn) isbn, title, author, category, publisher, description, " +
+            "total_count, total_count, CURRENT_TIMESTAMP " +
+            "FROM book_import ORDER BY isbn, line_no DESC " +
+            "ON CONFLICT (isbn) DO UPDATE SET title = EXCLUDED.title, author = EXCLUDED.author, " +
+            "category = EXCLUDED.category, publisher = EXCLUDED.publisher, " +
+            "description = EXCLUDED.description, total_count = EXCLUDED.total_count, " +
+            "available_count = books.available_count + CASE WHEN books.id = ANY(?::bigint[]) THEN 0 " +
+            "ELSE EXCLUDED.total_count - books.total_count END " +
+            "RETURNING (xmax = 0) AS inserted) " +
+            "SELECT COUNT(*) FILTER (WHERE inserted), COUNT(*) FILTER (WHERE NOT inserted) FROM merged";
+        jdbc.queryOne(conn, mergeSql, rs -> {
+            result.insertedCount = rs.getInt(1);
+            result.updatedCount = rs.getInt(2);
+            return null;
+        }, (Object) heldBookIds);
+        if (heldBookIds.length > 0) {
+            result.releases.addAll(holdDao.releaseCopies(conn, heldBookIds, addedCopies));
+        }
+        
+        logger.info("批量导入图书完成: accepted={}, inserted={}, updated={}, rejected={}",
+            result.acceptedCount, result.insertedCount, result.updatedCount, result.rejected.size());
+        return result;
+    }
+    
+    private static void writeToCopy(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.length() == 0) {
+            return;
         }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+    
+    /**
+     * 追加一个CSV字段：null写为空（COPY视为NULL），其余加引号并转义
+     */
+    private static StringBuilder appendCsvField(StringBuilder buffer, String value) {
+        if (value == null) {
+            return buffer;
+        }
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                buffer.append('"');
+            }
+            buffer.append(c);
+        }
+        return buffer.append('"');
+    }
+    
+    /**
+     * 批量导入结果
+     */
+    public static class BulkImportResult {
+        private int acceptedCount;
+        private int insertedCount;
+        private int updatedCount;
+        private final List<String> rejected = new ArrayList<>();
+        private final List<HoldDao.Release> releases = new ArrayList<>();
+        
+        public int getAcceptedCount() { return acceptedCount; }
+        public int getInsertedCount() { return insertedCount; }
+        public int getUpdatedCount() { return updatedCount; }
+        /** 实际插入或合并的行数 */
+        public int getSuccessCount() { return insertedCount + updatedCount; }
+        public List<String> getRejected() { return rejected; }
+        /** 新增副本分配给排队读者的结果，提交后由调用方通知读者 */
+        public List<HoldDao.Release> getReleases() { return releases; }
     }
     
     /**
@@ -316,9 +415,8 @@ public class BookDao extends BaseDao {
         book.setCoverImagePath(rs.getString("cover_image_path"));
         book.setTotalCount(rs.getInt("total_count"));
         book.setAvailableCount(rs.getInt("available_count"));
-        Timestamp timestamp = rs.getTimestamp("created_at");
-        book.setCreatedAt(timestamp != null ? timestamp.toLocalDateTime() : null);
+        book.setCreatedAt(toLocalDateTime(rs.getTimestamp("created_at")));
         return book;
     }
-    
+
 }
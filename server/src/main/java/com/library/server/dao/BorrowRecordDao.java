@@ -5,13 +5,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,32 +18,20 @@ import java.util.Map;
 public class BorrowRecordDao extends BaseDao {
     private static final Logger logger = LoggerFactory.getLogger(BorrowRecordDao.class);
     
+    private static final String RECORD_COLUMNS = "id, user_id, book_id, borrow_time, due_time, return_time, " +
+                                                 "status, fine_amount, created_at";
+    
     /**
      * 根据ID查找借阅记录
      */
     public BorrowRecord findById(Long id) {
-        String sql = "SELECT id, user_id, book_id, borrow_time, due_time, return_time, " +
-                     "status, fine_amount, created_at FROM borrow_records WHERE id = ?";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
+        String sql = "SELECT " + RECORD_COLUMNS + " FROM borrow_records WHERE id = ?";
         
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, id);
-            rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                return mapResultSetToRecord(rs);
-            }
-            return null;
+            return jdbc.queryOne(sql, this::mapResultSetToRecord, id);
         } catch (SQLException e) {
             logger.error("查找借阅记录失败: id={}", id, e);
             throw new RuntimeException("查找借阅记录失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -55,31 +39,14 @@ public class BorrowRecordDao extends BaseDao {
      * 根据用户ID和状态查找借阅记录
      */
     public List<BorrowRecord> findByUserIdAndStatus(Long userId, String status) {
-        String sql = "SELECT id, user_id, book_id, borrow_time, due_time, return_time, " +
-                     "status, fine_amount, created_at FROM borrow_records WHERE user_id = ? AND status = ? " +
+        String sql = "SELECT " + RECORD_COLUMNS + " FROM borrow_records WHERE user_id = ? AND status = ? " +
                      "ORDER BY borrow_time DESC";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, userId);
-            stmt.setString(2, status);
-            rs = stmt.executeQuery();
-            
-            List<BorrowRecord> records = new ArrayList<>();
-            while (rs.next()) {
-                records.add(mapResultSetToRecord(rs));
-            }
-            return records;
+            return jdbc.query(sql, this::mapResultSetToRecord, userId, status);
         } catch (SQLException e) {
             logger.error("查找借阅记录失败: userId={}, status={}", userId, status, e);
             throw new RuntimeException("查找借阅记录失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -87,30 +54,33 @@ public class BorrowRecordDao extends BaseDao {
      * 根据用户ID查找所有借阅记录
      */
     public List<BorrowRecord> findByUserId(Long userId) {
-        String sql = "SELECT id, user_id, book_id, borrow_time, due_time, return_time, " +
-                     "status, fine_amount, created_at FROM borrow_records WHERE user_id = ? " +
+        String sql = "SELECT " + RECORD_COLUMNS + " FROM borrow_records WHERE user_id = ? " +
                      "ORDER BY borrow_time DESC";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, userId);
-            rs = stmt.executeQuery();
-            
-            List<BorrowRecord> records = new ArrayList<>();
-            while (rs.next()) {
-                records.add(mapResultSetToRecord(rs));
-            }
-            return records;
+            return jdbc.query(sql, this::mapResultSetToRecord, userId);
         } catch (SQLException e) {
             logger.error("查找借阅记录失败: userId={}", userId, e);
             throw new RuntimeException("查找借阅记录失败", e);
-        } finally {
-            close(conn, stmt, rs);
+        }
+    }
+    
+    /**
+     * 用户借过的图书ID（去重、升序），用于推荐时排除已借图书
+     */
+    public long[] findBorrowedBookIds(Long userId) {
+        String sql = "SELECT DISTINCT book_id FROM borrow_records WHERE user_id = ? ORDER BY book_id";
+        
+        try {
+            List<Long> bookIds = jdbc.query(sql, rs -> rs.getLong("book_id"), userId);
+            long[] result = new long[bookIds.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = bookIds.get(i);
+            }
+            return result;
+        } catch (SQLException e) {
+            logger.error("查找用户借过的图书失败: userId={}", userId, e);
+            throw new RuntimeException("查找用户借过的图书失败", e);
         }
     }
     
@@ -118,30 +88,14 @@ public class BorrowRecordDao extends BaseDao {
      * 根据图书ID查找所有借阅记录
      */
     public List<BorrowRecord> findByBookId(Long bookId) {
-        String sql = "SELECT id, user_id, book_id, borrow_time, due_time, return_time, " +
-                     "status, fine_amount, created_at FROM borrow_records WHERE book_id = ? " +
+        String sql = "SELECT " + RECORD_COLUMNS + " FROM borrow_records WHERE book_id = ? " +
                      "ORDER BY borrow_time DESC";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, bookId);
-            rs = stmt.executeQuery();
-            
-            List<BorrowRecord> records = new ArrayList<>();
-            while (rs.next()) {
-                records.add(mapResultSetToRecord(rs));
-            }
-            return records;
+            return jdbc.query(sql, this::mapResultSetToRecord, bookId);
         } catch (SQLException e) {
             logger.error("查找借阅记录失败: bookId={}", bookId, e);
             throw new RuntimeException("查找借阅记录失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -152,31 +106,16 @@ public class BorrowRecordDao extends BaseDao {
         String sql = "INSERT INTO borrow_records (user_id, book_id, borrow_time, due_time, status, created_at) " +
                      "VALUES (?, ?, ?, ?, ?, ?) RETURNING id";
         
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
-        try {
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, record.getUserId());
-            stmt.setLong(2, record.getBookId());
-            stmt.setTimestamp(3, Timestamp.valueOf(record.getBorrowTime()));
-            stmt.setTimestamp(4, Timestamp.valueOf(record.getDueTime()));
-            stmt.setString(5, record.getStatus());
-            stmt.setTimestamp(6, Timestamp.valueOf(
-                record.getCreatedAt() != null ? record.getCreatedAt() : LocalDateTime.now()));
-            
-            rs = stmt.executeQuery();
-            if (rs.next()) {
-                Long id = rs.getLong("id");
-                logger.info("插入借阅记录成功: id={}, userId={}, bookId={}", 
-                    id, record.getUserId(), record.getBookId());
-                return id;
-            }
+        Long id = jdbc.queryOne(conn, sql, rs -> rs.getLong("id"),
+            record.getUserId(), record.getBookId(), record.getBorrowTime(), record.getDueTime(),
+            record.getStatus(),
+            record.getCreatedAt() != null ? record.getCreatedAt() : LocalDateTime.now());
+        if (id == null) {
             throw new RuntimeException("插入借阅记录失败：未返回ID");
-        } finally {
-            if (rs != null) rs.close();
-            if (stmt != null) stmt.close();
         }
+        logger.info("插入借阅记录成功: id={}, userId={}, bookId={}",
+            id, record.getUserId(), record.getBookId());
+        return id;
     }
     
     /**
@@ -185,21 +124,9 @@ public class BorrowRecordDao extends BaseDao {
     public boolean markReturned(Connection conn, Long recordId, Double fineAmount) throws SQLException {
         String sql = "UPDATE borrow_records SET return_time = ?, status = ?, fine_amount = ? WHERE id = ?";
         
-        PreparedStatement stmt = null;
-        
-        try {
-            stmt = conn.prepareStatement(sql);
-            stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
-            stmt.setString(2, "RETURNED");
-            stmt.setObject(3, fineAmount);
-            stmt.setLong(4, recordId);
-            
-            int rows = stmt.executeUpdate();
-            logger.info("标记归还成功: recordId={}, fineAmount={}, affectedRows={}", recordId, fineAmount, rows);
-            return rows > 0;
-        } finally {
-            if (stmt != null) stmt.close();
-        }
+        int rows = jdbc.update(conn, sql, LocalDateTime.now(), "RETURNED", fineAmount, recordId);
+        logger.info("标记归还成功: recordId={}, fineAmount={}, affectedRows={}", recordId, fineAmount, rows);
+        return rows > 0;
     }
     
     public boolean markReturned(Connection conn, Long recordId) throws SQLException {
@@ -210,29 +137,16 @@ public class BorrowRecordDao extends BaseDao {
      * 检查用户是否有逾期图书
      */
     public boolean hasOverdueBooks(Long userId) {
-        String sql = "SELECT COUNT(*) FROM borrow_records " +
+        String sql = "SELECT EXISTS (SELECT 1 FROM borrow_records " +
                      "WHERE user_id = ? AND status IN ('BORROWED', 'OVERDUE') " +
-                     "AND due_time < CURRENT_TIMESTAMP";
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
+                     "AND due_time < CURRENT_TIMESTAMP)";
         
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, userId);
-            rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
-            }
-            return false;
+            Boolean exists = jdbc.queryOne(sql, rs -> rs.getBoolean(1), userId);
+            return exists != null && exists;
         } catch (SQLException e) {
             logger.error("检查逾期图书失败: userId={}", userId, e);
             throw new RuntimeException("检查逾期图书失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -240,28 +154,11 @@ public class BorrowRecordDao extends BaseDao {
      * 插入借阅记录（独立调用，自己管理连接）
      */
     public Long insertRecord(BorrowRecord record) {
-        Connection conn = null;
         try {
-            conn = getConnection();
-            conn.setAutoCommit(false);
-            Long id = insertBorrowRecord(conn, record);
-            conn.commit();
-            return id;
+            return jdbc.inTransaction(conn -> insertBorrowRecord(conn, record));
         } catch (SQLException e) {
-            if (conn != null) {
-                rollback(conn);
-            }
             logger.error("插入借阅记录失败", e);
             throw new RuntimeException("插入借阅记录失败", e);
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                } catch (SQLException e) {
-                    logger.error("恢复自动提交失败", e);
-                }
-            }
-            close(conn);
         }
     }
     
@@ -277,27 +174,11 @@ public class BorrowRecordDao extends BaseDao {
                      "WHERE u.role != 'ADMIN' " +
                      "ORDER BY br.borrow_time DESC LIMIT ? OFFSET ?";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, limit);
-            stmt.setInt(2, offset);
-            rs = stmt.executeQuery();
-            
-            List<BorrowRecord> records = new ArrayList<>();
-            while (rs.next()) {
-                records.add(mapResultSetToRecord(rs));
-            }
-            return records;
+            return jdbc.query(sql, this::mapResultSetToRecord, limit, offset);
         } catch (SQLException e) {
             logger.error("查找所有借阅记录失败", e);
             throw new RuntimeException("查找所有借阅记录失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -313,28 +194,11 @@ public class BorrowRecordDao extends BaseDao {
                      "WHERE br.status = ? AND u.role != 'ADMIN' " +
                      "ORDER BY br.borrow_time DESC LIMIT ? OFFSET ?";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setString(1, status);
-            stmt.setInt(2, limit);
-            stmt.setInt(3, offset);
-            rs = stmt.executeQuery();
-            
-            List<BorrowRecord> records = new ArrayList<>();
-            while (rs.next()) {
-                records.add(mapResultSetToRecord(rs));
-            }
-            return records;
+            return jdbc.query(sql, this::mapResultSetToRecord, status, limit, offset);
         } catch (SQLException e) {
             logger.error("根据状态查找借阅记录失败: status={}", status, e);
             throw new RuntimeException("根据状态查找借阅记录失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -346,76 +210,174 @@ public class BorrowRecordDao extends BaseDao {
         record.setId(rs.getLong("id"));
         record.setUserId(rs.getLong("user_id"));
         record.setBookId(rs.getLong("book_id"));
-        Timestamp borrowTime = rs.getTimestamp("borrow_time");
-        record.setBorrowTime(borrowTime != null ? borrowTime.toLocalDateTime() : null);
-        Timestamp dueTime = rs.getTimestamp("due_time");
-        record.setDueTime(dueTime != null ? dueTime.toLocalDateTime() : null);
-        Timestamp returnTime = rs.getTimestamp("return_time");
-        record.setReturnTime(returnTime != null ? returnTime.toLocalDateTime() : null);
+        record.setBorrowTime(toLocalDateTime(rs.getTimestamp("borrow_time")));
+        record.setDueTime(toLocalDateTime(rs.getTimestamp("due_time")));
+        record.setReturnTime(toLocalDateTime(rs.getTimestamp("return_time")));
         record.setStatus(rs.getString("status"));
         if (rs.getObject("fine_amount") != null) {
             record.setFineAmount(rs.getDouble("fine_amount"));
         }
-        Timestamp createdAt = rs.getTimestamp("created_at");
-        record.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+        record.setCreatedAt(toLocalDateTime(rs.getTimestamp("created_at")));
         return record;
     }
     
     public List<BorrowRecord> findOverdueRecordsByUserId(Long userId) {
-        String sql = "SELECT id, user_id, book_id, borrow_time, due_time, return_time, " +
-                     "status, fine_amount, created_at FROM borrow_records " +
+        String sql = "SELECT " + RECORD_COLUMNS + " FROM borrow_records " +
                      "WHERE user_id = ? AND status IN ('BORROWED', 'OVERDUE') " +
                      "AND due_time < CURRENT_TIMESTAMP " +
                      "ORDER BY due_time ASC";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, userId);
-            rs = stmt.executeQuery();
-            
-            List<BorrowRecord> records = new ArrayList<>();
-            while (rs.next()) {
-                records.add(mapResultSetToRecord(rs));
-            }
-            return records;
+            return jdbc.query(sql, this::mapResultSetToRecord, userId);
         } catch (SQLException e) {
             logger.error("查找逾期记录失败: userId={}", userId, e);
             throw new RuntimeException("查找逾期记录失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
+    /**
+     * 查找到期时间在(from, to]内的未归还借阅记录（用于装载逾期时间轮）
+     */
+    public List<BorrowRecord> findBorrowedDueBetween(LocalDateTime from, LocalDateTime to) {
+        String sql = "SELECT " + RECORD_COLUMNS + " FROM borrow_records " +
+                     "WHERE status = 'BORROWED' AND return_time IS NULL " +
+                     "AND due_time > ? AND due_time <= ?";
+        
+        try {
+            return jdbc.query(sql, this::mapResultSetToRecord, from, to);
+        } catch (SQLException e) {
+            logger.error("查找即将到期的借阅记录失败: from={}, to={}", from, to, e);
+            throw new RuntimeException("查找即将到期的借阅记录失败", e);
+        }
+    }
+    
+    /**
+     * 流式扫描全部借阅的（记录ID, 用户, 图书, 借阅时间），用于构建推荐图，不把整表装入内存
+     */
+    public void forEachBorrow(BorrowVisitor visitor) {
+        String sql = "SELECT id, user_id, book_id, borrow_time FROM borrow_records";
+        
+        try {
+            // 读主库：推荐图按扫描到的记录ID丢弃待合并的新借阅，只读副本尚未复制的借阅会被丢弃却不在图中
+            jdbc.forEach(sql, 5000, rs -> visitBorrow(rs, visitor));
+        } catch (SQLException e) {
+            logger.error("扫描借阅记录失败", e);
+            throw new RuntimeException("扫描借阅记录失败", e);
+        }
+    }
+    
+    /**
+     * 流式扫描记录ID大于afterId的借阅，用于加载推荐图快照后补齐快照之后的新借阅
+     */
+    public void forEachBorrowAfter(long afterId, BorrowVisitor visitor) {
+        String sql = "SELECT id, user_id, book_id, borrow_time FROM borrow_records WHERE id > ?";
+        
+        try {
+            // 读主库：只读副本的复制延迟会漏掉重启前刚提交的借阅，而快照之后的借阅不会再被补齐
+            jdbc.forEach(sql, 5000, rs -> visitBorrow(rs, visitor), afterId);
+        } catch (SQLException e) {
+            logger.error("扫描新增借阅记录失败: afterId={}", afterId, e);
+            throw new RuntimeException("扫描新增借阅记录失败", e);
+        }
+    }
+    
+    private void visitBorrow(ResultSet rs, BorrowVisitor visitor) throws SQLException {
+        visitor.visit(rs.getLong("id"), rs.getLong("user_id"), rs.getLong("book_id"),
+                toLocalDateTime(rs.getTimestamp("borrow_time")));
+    }
+    
+    /**
+     * 借阅扫描回调
+     */
+    public interface BorrowVisitor {
+        void visit(long recordId, long userId, long bookId, LocalDateTime borrowTime);
+    }
+    
+    /**
+     * 查找since之后借过书的用户ID（用于预计算推荐的活跃用户）
+     */
+    public List<Long> findBorrowerIdsSince(LocalDateTime since) {
+        String sql = "SELECT DISTINCT user_id FROM borrow_records WHERE borrow_time >= ?";
+        
+        try {
+            return ReadOnlyScope.call(() -> jdbc.query(sql, rs -> rs.getLong("user_id"), since));
+        } catch (SQLException e) {
+            logger.error("查找活跃借阅用户失败: since={}", since, e);
+            throw new RuntimeException("查找活跃借阅用户失败", e);
+        }
+    }
+    
+    /**
+     * 将指定记录中已到期且未归还的标记为OVERDUE，返回更新行数
+     */
+    public int markOverdue(List<Long> recordIds, LocalDateTime now) {
+        if (recordIds == null || recordIds.isEmpty()) {
+            return 0;
+        }
+        String sql = "UPDATE borrow_records SET status = 'OVERDUE' " +
+                     "WHERE id = ANY(?) AND status = 'BORROWED' AND return_time IS NULL AND due_time <= ?";
+        
+        try {
+            return jdbc.update(sql, recordIds.toArray(new Long[0]), now);
+        } catch (SQLException e) {
+            logger.error("标记逾期失败: count={}", recordIds.size(), e);
+            throw new RuntimeException("标记逾期失败", e);
+        }
+    }
+    
+    /**
+     * 按主键顺序标记一块逾期记录：取id > afterId的前limit条未归还且due_time < cutoff的记录标记为OVERDUE
+     * 已被其他事务（如还书）锁定的行直接跳过，由下次对账或增量检测处理
+     */
+    public OverdueChunk markOverdueChunk(Connection conn, long afterId, LocalDateTime cutoff, int limit) throws SQLException {
+        String sql = "WITH chunk AS (" +
+                     "    SELECT id FROM borrow_records " +
+                     "    WHERE id > ? AND status = 'BORROWED' AND return_time IS NULL AND due_time < ? " +
+                     "    ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED" +
+                     "), updated AS (" +
+                     "    UPDATE borrow_records br SET status = 'OVERDUE' FROM chunk " +
+                     "    WHERE br.id = chunk.id RETURNING br.id" +
+                     ") " +
+                     "SELECT (SELECT COUNT(*) FROM chunk) AS scanned, " +
+                     "       (SELECT COALESCE(MAX(id), 0) FROM chunk) AS last_id, " +
+                     "       (SELECT COUNT(*) FROM updated) AS updated";
+        
+        return jdbc.queryOne(conn, sql,
+                rs -> new OverdueChunk(rs.getInt("scanned"), rs.getLong("last_id"), rs.getInt("updated")),
+                afterId, cutoff, limit);
+    }
+    
+    /**
+     * 一块逾期标记的结果
+     */
+    public static class OverdueChunk {
+        private final int scanned;
+        private final long lastId;
+        private final int updated;
+        
+        public OverdueChunk(int scanned, long lastId, int updated) {
+            this.scanned = scanned;
+            this.lastId = lastId;
+            this.updated = updated;
+        }
+        
+        public int getScanned() { return scanned; }
+        public long getLastId() { return lastId; }
+        public int getUpdated() { return updated; }
+    }
+    
     /**
      * 获取图书的借阅次数
      */
     public int getBorrowCountByBookId(Long bookId) {
         String sql = "SELECT COUNT(*) FROM borrow_records WHERE book_id = ?";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, bookId);
-            rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-            return 0;
+            Integer count = jdbc.queryOne(sql, rs -> rs.getInt(1), bookId);
+            return count != null ? count : 0;
         } catch (SQLException e) {
             logger.error("获取图书借阅次数失败: bookId={}", bookId, e);
             return 0;
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -428,32 +390,19 @@ public class BorrowRecordDao extends BaseDao {
             return result;
         }
         
-        String placeholders = String.join(",", Collections.nCopies(bookIds.size(), "?"));
-        String sql = String.format(
-            "SELECT book_id, COUNT(*) as borrow_count " +
-            "FROM borrow_records " +
-            "WHERE book_id IN (%s) " +
-            "GROUP BY book_id",
-            placeholders
-        );
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
+        // 使用数组参数代替动态IN列表，使语句文本固定以便复用预编译语句
+        String sql = "SELECT book_id, COUNT(*) as borrow_count " +
+                     "FROM borrow_records " +
+                     "WHERE book_id = ANY(?) " +
+                     "GROUP BY book_id";
         
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            for (int i = 0; i < bookIds.size(); i++) {
-                stmt.setLong(i + 1, bookIds.get(i));
-            }
-            rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                Long bookId = rs.getLong("book_id");
-                int count = rs.getInt("borrow_count");
-                result.put(bookId, count);
-            }
+            // 借阅次数仅用于推荐排序，允许读取只读副本
+            ReadOnlyScope.call(() -> {
+                jdbc.forEach(sql, rs -> result.put(rs.getLong("book_id"), rs.getInt("borrow_count")),
+                        (Object) bookIds.toArray(new Long[0]));
+                return null;
+            });
             
             // 为没有借阅记录的图书设置0
             for (Long bookId : bookIds) {
@@ -470,26 +419,6 @@ public class BorrowRecordDao extends BaseDao {
                 result.put(bookId, 0);
             }
             return result;
-        } finally {
-            close(conn, stmt, rs);
         }
     }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
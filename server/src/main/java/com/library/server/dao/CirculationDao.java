@@ -0,0 +1,146 @@
+package com.library.server.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 借还书数据访问对象
+ * 调用数据库函数circulation_borrow/circulation_return（database/add_circulation_functions.sql，由add_book_holds.sql替换为预约版本），
+ * 校验与写入在一次往返内完成，业务失败通过resultCode返回
+ */
+public class CirculationDao extends BaseDao {
+    private static final Logger logger = LoggerFactory.getLogger(CirculationDao.class);
+    
+    public static final String RESULT_OK = "OK";
+    public static final String RESULT_NO_STOCK = "NO_STOCK";
+    
+    private static final String RETURN_SQL = 
+        "SELECT result_code, book_id, return_time, overdue_days, fine_amount, stock_restored, hold_user_id " +
+        "FROM circulation_return(?, ?, ?::bigint[], ?::bigint[], ?::float8[], ?::float8[])";
+    
+    /**
+     * 借书结果
+     */
+    public static class BorrowOutcome {
+        private String resultCode;
+        private Long recordId;
+        private String bookTitle;
+        private LocalDateTime borrowTime;
+        private LocalDateTime dueTime;
+        private boolean fromHold;
+        
+        public boolean isOk() { return RESULT_OK.equals(resultCode); }
+        public String getResultCode() { return resultCode; }
+        public Long getRecordId() { return recordId; }
+        public String getBookTitle() { return bookTitle; }
+        public LocalDateTime getBorrowTime() { return borrowTime; }
+        public LocalDateTime getDueTime() { return dueTime; }
+        /**
+         * 借出的是分配给该读者的预约副本（未扣减可借库存）
+         */
+        public boolean isFromHold() { return fromHold; }
+    }
+    
+    /**
+     * 还书结果
+     */
+    public static class ReturnOutcome {
+        private String resultCode;
+        private Long bookId;
+        private LocalDateTime returnTime;
+        private long overdueDays;
+        private double fineAmount;
+        private boolean stockRestored;
+        private Long holdUserId;
+        
+        public boolean isOk() { return RESULT_OK.equals(resultCode); }
+        public String getResultCode() { return resultCode; }
+        public Long getBookId() { return bookId; }
+        public LocalDateTime getReturnTime() { return returnTime; }
+        public long getOverdueDays() { return overdueDays; }
+        public double getFineAmount() { return fineAmount; }
+        public boolean isStockRestored() { return stockRestored; }
+        /**
+         * 副本分配给的预约读者（database/add_book_holds.sql），没有人排队时为null
+         */
+        public Long getHoldUserId() { return holdUserId; }
+    }
+    
+    /**
+     * 批量借书（事务中调用）：userIds[i]借bookIds[i]，一条语句内依次执行，结果与输入顺序一致
+     * 调用方应按bookId排序，使并发批次以相同顺序锁定图书行
+     */
+    public List<BorrowOutcome> borrowBatch(Connection conn, Long[] userIds, Long[] bookIds, int dueDays) throws SQLException {
+        String sql = "SELECT r.result_code, r.record_id, r.book_title, r.borrow_time, r.due_time, r.from_hold " +
+                     "FROM unnest(?::bigint[], ?::bigint[]) WITH ORDINALITY AS t(user_id, book_id, ord) " +
+                     "CROSS JOIN LATERAL circulation_borrow(t.user_id, t.book_id, ?) r " +
+                     "ORDER BY t.ord";
+        
+        List<BorrowOutcome> outcomes = jdbc.query(conn, sql, this::mapResultSetToBorrowOutcome, userIds, bookIds, dueDays);
+        if (outcomes.size() != userIds.length) {
+            throw new SQLException("借书结果数量不一致: expected=" + userIds.length + ", actual=" + outcomes.size());
+        }
+        return outcomes;
+    }
+    
+    /**
+     * 还书并按梯度表结算罚款（梯度参数含义见FineSchedule.getTierStartDays）
+     */
+    public ReturnOutcome returnBook(Long userId, Long recordId, Long[] tierStartDays, Long[] tierEndDays,
+                                    Double[] tierBaseFines, Double[] tierRates) {
+        try {
+            return jdbc.queryOne(RETURN_SQL, this::mapResultSetToReturnOutcome,
+                userId, recordId, tierStartDays, tierEndDays, tierBaseFines, tierRates);
+        } catch (SQLException e) {
+            logger.error("还书失败: userId={}, recordId={}", userId, recordId, e);
+            throw new RuntimeException("还书失败", e);
+        }
+    }
+    
+    /**
+     * 还书（事务中调用）
+     */
+    public ReturnOutcome returnBook(Connection conn, Long userId, Long recordId, Long[] tierStartDays, Long[] tierEndDays,
+                                    Double[] tierBaseFines, Double[] tierRates) throws SQLException {
+        return jdbc.queryOne(conn, RETURN_SQL, this::mapResultSetToReturnOutcome,
+            userId, recordId, tierStartDays, tierEndDays, tierBaseFines, tierRates);
+    }
+    
+    /**
+     * 将ResultSet映射为BorrowOutcome对象
+     */
+    private BorrowOutcome mapResultSetToBorrowOutcome(ResultSet rs) throws SQLException {
+        BorrowOutcome outcome = new BorrowOutcome();
+        outcome.resultCode = rs.getString("result_code");
+        long recordId = rs.getLong("record_id");
+        outcome.recordId = rs.wasNull() ? null : recordId;
+        outcome.bookTitle = rs.getString("book_title");
+        outcome.borrowTime = toLocalDateTime(rs.getTimestamp("borrow_time"));
+        outcome.dueTime = toLocalDateTime(rs.getTimestamp("due_time"));
+        outcome.fromHold = rs.getBoolean("from_hold");
+        return outcome;
+    }
+    
+    /**
+     * 将ResultSet映射为ReturnOutcome对象
+     */
+    private ReturnOutcome mapResultSetToReturnOutcome(ResultSet rs) throws SQLException {
+        ReturnOutcome outcome = new ReturnOutcome();
+        outcome.resultCode = rs.getString("result_code");
+        long bookId = rs.getLong("book_id");
+        outcome.bookId = rs.wasNull() ? null : bookId;
+        outcome.returnTime = toLocalDateTime(rs.getTimestamp("return_time"));
+        outcome.overdueDays = rs.getLong("overdue_days");
+        outcome.fineAmount = rs.getDouble("fine_amount");
+        outcome.stockRestored = rs.getBoolean("stock_restored");
+        long holdUserId = rs.getLong("hold_user_id");
+        outcome.holdUserId = rs.wasNull() ? null : holdUserId;
+        return outcome;
+    }
+}
@@ -16,6 +16,9 @@ import java.util.Properties;
 public class DataSourceProvider {
     private static final Logger logger = LoggerFactory.getLogger(DataSourceProvider.class);
     private static volatile HikariDataSource dataSource;
+    private static volatile HikariDataSource replicaDataSource;
+    private static volatile ReplicaRoutingDataSource readDataSource;
+    private static final PoolMetrics poolMetrics = new PoolMetrics();
     
     private static final String DEFAULT_URL = "jdbc:postgresql://localhost:5432/library_db";
     private static final String DEFAULT_USERNAME = "postgres";
@@ -25,6 +28,17 @@ public class DataSourceProvider {
     private static final long DEFAULT_CONNECTION_TIMEOUT = 30000;
     private static final long DEFAULT_IDLE_TIMEOUT = 600000;
     private static final long DEFAULT_MAX_LIFETIME = 1800000;
+    private static final long DEFAULT_SLOW_QUERY_MILLIS = 200;
+    private static final int DEFAULT_REPLICA_MAX_POOL_SIZE = 10;
+    private static final double DEFAULT_REPLICA_MAX_LAG_SECONDS = 5.0;
+    private static final long DEFAULT_REPLICA_LAG_CHECK_INTERVAL = 5000;
+    
+    // 数据源配置档：default 保持原有行为，tuned 启用语句缓存与JDBC4校验
+    private static final String PROFILE_DEFAULT = "default";
+    private static final String PROFILE_TUNED = "tuned";
+    private static final String DEFAULT_PREPARE_THRESHOLD = "3";
+    private static final String DEFAULT_STATEMENT_CACHE_QUERIES = "256";
+    private static final String DEFAULT_STATEMENT_CACHE_SIZE_MIB = "5";
     
     /**
      * 获取数据源（单例模式）
@@ -40,6 +54,22 @@ public class DataSourceProvider {
         return dataSource;
     }
     
+    /**
+     * 获取读数据源
+     * 在ReadOnlyScope内获取的连接路由到只读副本（未配置db.replica.url、副本不可用或延迟超预算时使用主库），
+     * 作用域外与getDataSource()等价
+     */
+    public static DataSource getReadDataSource() {
+        if (readDataSource == null) {
+            synchronized (DataSourceProvider.class) {
+                if (readDataSource == null) {
+                    readDataSource = createReadDataSource((HikariDataSource) getDataSource());
+                }
+            }
+        }
+        return readDataSource;
+    }
+    
     /**
      * 创建数据源
      */
@@ -66,24 +96,102 @@ public class DataSourceProvider {
         config.setMaxLifetime(Long.parseLong(props.getProperty("db.pool.max.lifetime", 
                 String.valueOf(DEFAULT_MAX_LIFETIME))));
         config.setPoolName("LibraryHikariPool");
-        config.setConnectionTestQuery("SELECT 1");
+        config.setMetricsTrackerFactory(poolMetrics);
+        
+        SqlMetrics.setSlowQueryMillis(Long.parseLong(props.getProperty("db.slowQueryMillis", 
+                String.valueOf(DEFAULT_SLOW_QUERY_MILLIS))));
+        
+        String profile = props.getProperty("db.profile", PROFILE_DEFAULT).trim();
+        if (PROFILE_TUNED.equalsIgnoreCase(profile)) {
+            applyTunedProfile(config, props);
+        } else {
+            config.setConnectionTestQuery("SELECT 1");
+        }
         
-        logger.info("初始化HikariCP连接池: url={}, username={}, poolSize=[{}, {}]", 
-                url, username, config.getMinimumIdle(), config.getMaximumPoolSize());
+        logger.info("初始化HikariCP连接池: url={}, username={}, poolSize=[{}, {}], profile={}", 
+                url, username, config.getMinimumIdle(), config.getMaximumPoolSize(), profile);
         
         return new HikariDataSource(config);
     }
     
     /**
-     * 加载配置文件
+     * 创建读写路由数据源，配置了db.replica.url时创建只读副本连接池
      */
-    private static Properties loadProperties() {
+    private static ReplicaRoutingDataSource createReadDataSource(HikariDataSource primary) {
+        Properties props = loadProperties();
+        double maxLagSeconds = Double.parseDouble(props.getProperty("db.replica.maxLagSeconds", 
+                String.valueOf(DEFAULT_REPLICA_MAX_LAG_SECONDS)));
+        long lagCheckInterval = Long.parseLong(props.getProperty("db.replica.lagCheckIntervalMillis", 
+                String.valueOf(DEFAULT_REPLICA_LAG_CHECK_INTERVAL)));
+        
+        String replicaUrl = props.getProperty("db.replica.url", "").trim();
+        if (!replicaUrl.isEmpty()) {
+            HikariConfig config = new HikariConfig();
+            config.setJdbcUrl(replicaUrl);
+            config.setUsername(props.getProperty("db.replica.username", primary.getUsername()));
+            config.setPassword(props.getProperty("db.replica.password", primary.getPassword()));
+            config.setDriverClassName("org.postgresql.Driver");
+            config.setMinimumIdle(primary.getMinimumIdle());
+            config.setMaximumPoolSize(Integer.parseInt(props.getProperty("db.replica.pool.size.maximum", 
+                    String.valueOf(DEFAULT_REPLICA_MAX_POOL_SIZE))));
+            config.setConnectionTimeout(primary.getConnectionTimeout());
+            config.setIdleTimeout(primary.getIdleTimeout());
+            config.setMaxLifetime(primary.getMaxLifetime());
+            config.setReadOnly(true);
+            // 副本不可用时不阻塞启动，由路由数据源回退主库
+            config.setInitializationFailTimeout(-1);
+            config.setPoolName("LibraryReplicaPool");
+            
+            String profile = props.getProperty("db.profile", PROFILE_DEFAULT).trim();
+            if (PROFILE_TUNED.equalsIgnoreCase(profile)) {
+                applyTunedProfile(config, props);
+            } else {
+                config.setConnectionTestQuery("SELECT 1");
+            }
+            
+            logger.info("初始化只读副本连接池: url={}, maxPoolSize={}, maxLagSeconds={}", 
+                    replicaUrl, config.getMaximumPoolSize(), maxLagSeconds);
+            replicaDataSource = new HikariDataSource(config);
+        } else {
+            logger.info("未配置db.replica.url，只读查询使用主库");
+        }
+        
+        return new ReplicaRoutingDataSource(primary, replicaDataSource, maxLagSeconds, lagCheckInterval);
+    }
+    
+    /**
+     * 应用tuned配置档
+     * 不设置connectionTestQuery，HikariCP将使用JDBC4的Connection.isValid()校验连接，
+     * 并开启pgJDBC服务端预编译语句缓存和批量插入重写
+     */
+    private static void applyTunedProfile(HikariConfig config, Properties props) {
+        config.addDataSourceProperty("prepareThreshold", 
+                props.getProperty("db.pgjdbc.prepareThreshold", DEFAULT_PREPARE_THRESHOLD));
+        config.addDataSourceProperty("preparedStatementCacheQueries", 
+                props.getProperty("db.pgjdbc.preparedStatementCacheQueries", DEFAULT_STATEMENT_CACHE_QUERIES));
+        config.addDataSourceProperty("preparedStatementCacheSizeMiB", 
+                props.getProperty("db.pgjdbc.preparedStatementCacheSizeMiB", DEFAULT_STATEMENT_CACHE_SIZE_MIB));
+        config.addDataSourceProperty("reWriteBatchedInserts", 
+                props.getProperty("db.pgjdbc.reWriteBatchedInserts", "true"));
+    }
+    
+    /**
+     * 获取连接池指标快照（活跃、空闲、等待线程数及获取连接等待时间）
+     */
+    public static PoolMetrics.Snapshot getPoolMetrics() {
+        return poolMetrics.snapshot();
+    }
+    
+    /**
+     * 加载application.properties，各组件读取自己的配置项也通过这里，每次返回新的Properties
+     */
+    public static Properties loadProperties() {
         Properties props = new Properties();
         try (InputStream is = DataSourceProvider.class.getClassLoader()
                 .getResourceAsStream("application.properties")) {
             if (is != null) {
                 props.load(is);
-                logger.info("成功加载application.properties配置文件");
+                logger.debug("成功加载application.properties配置文件");
             } else {
                 logger.warn("未找到application.properties，使用默认配置");
             }
@@ -101,6 +209,10 @@ public class DataSourceProvider {
             dataSource.close();
             logger.info("HikariCP连接池已关闭");
         }
+        if (replicaDataSource != null && !replicaDataSource.isClosed()) {
+            replicaDataSource.close();
+            logger.info("只读副本连接池已关闭");
+        }
     }
 }
 
@@ -24,10 +24,10 @@ public class EmbeddingDao extends BaseDao {
      * 检查是否支持pgvector
      */
     private static boolean checkPgVectorSupport() {
-        try (Connection conn = DataSourceProvider.getDataSource().getConnection()) {
-            PreparedStatement stmt = conn.prepareStatement(
-                "SELECT EXISTS(SELECT 1 FROM pg_extension WHERE extname = 'vector')");
-            ResultSet rs = stmt.executeQuery();
+        try (Connection conn = DataSourceProvider.getDataSource().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                 "SELECT EXISTS(SELECT 1 FROM pg_extension WHERE extname = 'vector')");
+             ResultSet rs = stmt.executeQuery()) {
             if (rs.next() && rs.getBoolean(1)) {
                 logger.info("检测到pgvector扩展，使用vector类型");
                 return true;
@@ -68,6 +68,8 @@ public class EmbeddingDao extends BaseDao {
         Connection conn = null;
         PreparedStatement stmt = null;
         
+        long start = System.nanoTime();
+        boolean failed = true;
         try {
             conn = getConnection();
             stmt = conn.prepareStatement(sql);
@@ -92,12 +94,14 @@ public class EmbeddingDao extends BaseDao {
             }
             
             int rows = stmt.executeUpdate();
+            failed = false;
             logger.info("插入/更新向量嵌入: bookId={}, model={}, affectedRows={}", bookId, modelName, rows);
             return rows > 0;
         } catch (SQLException e) {
             logger.error("插入/更新向量嵌入失败: bookId={}", bookId, e);
             throw new RuntimeException("插入/更新向量嵌入失败", e);
         } finally {
+            SqlMetrics.record(sql, System.nanoTime() - start, failed);
             close(conn, stmt);
         }
     }
@@ -128,6 +132,8 @@ public class EmbeddingDao extends BaseDao {
         ResultSet rs = null;
         List<SimilarBook> results = new ArrayList<>();
         
+        long start = System.nanoTime();
+        boolean failed = true;
         try {
             conn = getConnection();
             stmt = conn.prepareStatement(sql);
@@ -137,6 +143,7 @@ public class EmbeddingDao extends BaseDao {
             stmt.setInt(3, topK);
             
             rs = stmt.executeQuery();
+            failed = false;
             while (rs.next()) {
                 SimilarBook similarBook = new SimilarBook();
                 similarBook.bookId = rs.getLong("book_id");
@@ -149,6 +156,7 @@ public class EmbeddingDao extends BaseDao {
             logger.error("pgvector相似度查询失败", e);
             throw new RuntimeException("pgvector相似度查询失败", e);
         } finally {
+            SqlMetrics.record(sql, System.nanoTime() - start, failed);
             close(conn, stmt, rs);
         }
     }
@@ -166,10 +174,13 @@ public class EmbeddingDao extends BaseDao {
         ResultSet rs = null;
         List<SimilarBook> results = new ArrayList<>();
         
+        long start = System.nanoTime();
+        boolean failed = true;
         try {
             conn = getConnection();
             stmt = conn.prepareStatement(sql);
             rs = stmt.executeQuery();
+            failed = false;
             
             while (rs.next()) {
                 Long bookId = rs.getLong("book_id");
@@ -196,6 +207,7 @@ public class EmbeddingDao extends BaseDao {
             logger.error("cosine相似度查询失败", e);
             throw new RuntimeException("cosine相似度查询失败", e);
         } finally {
+            SqlMetrics.record(sql, System.nanoTime() - start, failed);
             close(conn, stmt, rs);
         }
     }
@@ -272,11 +284,14 @@ public class EmbeddingDao extends BaseDao {
         PreparedStatement stmt = null;
         ResultSet rs = null;
         
+        long start = System.nanoTime();
+        boolean failed = true;
         try {
             conn = getConnection();
             stmt = conn.prepareStatement(sql);
             stmt.setLong(1, bookId);
             rs = stmt.executeQuery();
+            failed = false;
             
             if (rs.next()) {
                 if (USE_PGVECTOR) {
@@ -295,6 +310,7 @@ public class EmbeddingDao extends BaseDao {
             logger.error("获取向量失败: bookId={}", bookId, e);
             throw new RuntimeException("获取向量失败", e);
         } finally {
+            SqlMetrics.record(sql, System.nanoTime() - start, failed);
             close(conn, stmt, rs);
         }
     }
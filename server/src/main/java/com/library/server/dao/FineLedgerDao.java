@@ -0,0 +1,167 @@
+package com.library.server.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 罚款台账数据访问对象（fine_ledger / user_fine_totals，见database/add_fine_ledger.sql）
+ */
+public class FineLedgerDao extends BaseDao {
+    private static final Logger logger = LoggerFactory.getLogger(FineLedgerDao.class);
+    
+    /**
+     * 台账中的一条逾期借阅
+     */
+    public static class LedgerEntry {
+        private Long recordId;
+        private Long bookId;
+        private LocalDateTime dueTime;
+        private long overdueDays;
+        private double accruedFine;
+        private LocalDateTime accruedUntil;
+        
+        public Long getRecordId() { return recordId; }
+        public Long getBookId() { return bookId; }
+        public LocalDateTime getDueTime() { return dueTime; }
+        public long getOverdueDays() { return overdueDays; }
+        public double getAccruedFine() { return accruedFine; }
+        public LocalDateTime getAccruedUntil() { return accruedUntil; }
+    }
+    
+    /**
+     * 用户的逾期累计
+     */
+    public static class UserFineTotal {
+        private int overdueCount;
+        private double accruedFine;
+        
+        public int getOverdueCount() { return overdueCount; }
+        public double getAccruedFine() { return accruedFine; }
+    }
+    
+    /**
+     * 一块计提的结果
+     */
+    public static class AccrualChunk {
+        private final int scanned;
+        private final long lastId;
+        private final int changed;
+        
+        public AccrualChunk(int scanned, long lastId, int changed) {
+            this.scanned = scanned;
+            this.lastId = lastId;
+            this.changed = changed;
+        }
+        
+        public int getScanned() { return scanned; }
+        public long getLastId() { return lastId; }
+        public int getChanged() { return changed; }
+    }
+    
+    /**
+     * 按id顺序计提一块逾期借阅（事务中调用）
+     * 取id > afterId的前limit条未归还且due_time < now的借阅，按梯度表计算截至now的罚款写入台账，
+     * 与台账原值的差额累加到用户累计。正在被还书事务锁定的行跳过，下次计提时处理
+     * 梯度参数含义见FineSchedule.getTierStartDays
+     */
+    public AccrualChunk accrueChunk(Connection conn, long afterId, LocalDateTime now, int limit,
+                                    Long[] tierStartDays, Long[] tierEndDays,
+                                    Double[] tierBaseFines, Double[] tierRates) throws SQLException {
+        String sql = "WITH tiers AS (" +
+                     "  SELECT * FROM unnest(?::bigint[], ?::bigint[], ?::float8[], ?::float8[]) " +
+                     "  AS t(start_days, end_days, base_fine, rate)" +
+                     "), chunk AS (" +
+                     "  SELECT br.id, br.user_id, " +
+                     "         FLOOR(EXTRACT(EPOCH FROM (?::timestamp - br.due_time)) / 86400)::bigint AS days " +
+                     "  FROM borrow_records br " +
+                     "  WHERE br.id > ? AND br.status IN ('BORROWED', 'OVERDUE') AND br.due_time < ?::timestamp " +
+                     "  ORDER BY br.id LIMIT ? FOR SHARE SKIP LOCKED" +
+                     "), fines AS (" +
+                     "  SELECT c.id, c.user_id, c.days, " +
+                     "         COALESCE(t.base_fine + (c.days - t.start_days) * t.rate, 0) AS fine " +
+                     "  FROM chunk c LEFT JOIN tiers t " +
+                     "    ON c.days > t.start_days AND (t.end_days IS NULL OR c.days <= t.end_days)" +
+                     "), changes AS (" +
+                     "  SELECT f.id, f.user_id, f.days, f.fine, " +
+                     "         f.fine - COALESCE(l.accrued_fine, 0) AS delta, " +
+                     "         CASE WHEN l.record_id IS NULL THEN 1 ELSE 0 END AS new_item " +
+                     "  FROM fines f LEFT JOIN fine_ledger l ON l.record_id = f.id " +
+                     "  WHERE l.record_id IS NULL OR l.overdue_days <> f.days OR l.accrued_fine <> f.fine" +
+                     "), upserted AS (" +
+                     "  INSERT INTO fine_ledger (record_id, user_id, overdue_days, accrued_fine, updated_at) " +
+                     "  SELECT id, user_id, days, fine, ?::timestamp FROM changes " +
+                     "  ON CONFLICT (record_id) DO UPDATE SET overdue_days = EXCLUDED.overdue_days, " +
+                     "    accrued_fine = EXCLUDED.accrued_fine, updated_at = EXCLUDED.updated_at " +
+                     "  RETURNING record_id" +
+                     "), totals AS (" +
+                     "  INSERT INTO user_fine_totals (user_id, overdue_count, accrued_fine, updated_at) " +
+                     "  SELECT user_id, SUM(new_item), SUM(delta), ?::timestamp FROM changes GROUP BY user_id " +
+                     "  ON CONFLICT (user_id) DO UPDATE SET " +
+                     "    overdue_count = user_fine_totals.overdue_count + EXCLUDED.overdue_count, " +
+                     "    accrued_fine = user_fine_totals.accrued_fine + EXCLUDED.accrued_fine, " +
+                     "    updated_at = EXCLUDED.updated_at" +
+                     ") " +
+                     "SELECT (SELECT COUNT(*) FROM chunk) AS scanned, " +
+                     "       (SELECT COALESCE(MAX(id), 0) FROM chunk) AS last_id, " +
+                     "       (SELECT COUNT(*) FROM upserted) AS changed";
+        
+        return jdbc.queryOne(conn, sql,
+                rs -> new AccrualChunk(rs.getInt("scanned"), rs.getLong("last_id"), rs.getInt("changed")),
+                tierStartDays, tierEndDays, tierBaseFines, tierRates, now, afterId, now, limit, now, now);
+    }
+    
+    /**
+     * 查询所有用户的逾期累计：userId -> 累计
+     */
+    public Map<Long, UserFineTotal> findAllUserTotals() {
+        String sql = "SELECT user_id, overdue_count, accrued_fine FROM user_fine_totals";
+        
+        Map<Long, UserFineTotal> totals = new HashMap<>();
+        try {
+            jdbc.forEach(sql, 1000, rs -> {
+                UserFineTotal total = new UserFineTotal();
+                total.overdueCount = rs.getInt("overdue_count");
+                total.accruedFine = rs.getDouble("accrued_fine");
+                totals.put(rs.getLong("user_id"), total);
+            });
+            return totals;
+        } catch (SQLException e) {
+            logger.error("查询用户逾期累计失败", e);
+            throw new RuntimeException("查询用户逾期累计失败", e);
+        }
+    }
+    
+    /**
+     * 查询用户未归还的逾期借阅及其台账计提值（按到期时间排序）
+     * 尚未被逾期扫描计提的借阅accruedFine为0、accruedUntil为null
+     */
+    public List<LedgerEntry> findOverdueByUser(Long userId) {
+        String sql = "SELECT br.id, br.book_id, br.due_time, l.overdue_days, l.accrued_fine, l.updated_at " +
+                     "FROM borrow_records br LEFT JOIN fine_ledger l ON l.record_id = br.id " +
+                     "WHERE br.user_id = ? AND br.status IN ('BORROWED', 'OVERDUE') " +
+                     "AND br.due_time < CURRENT_TIMESTAMP ORDER BY br.due_time";
+        
+        try {
+            return jdbc.query(sql, rs -> {
+                LedgerEntry entry = new LedgerEntry();
+                entry.recordId = rs.getLong("id");
+                entry.bookId = rs.getLong("book_id");
+                entry.dueTime = toLocalDateTime(rs.getTimestamp("due_time"));
+                entry.overdueDays = rs.getLong("overdue_days");
+                entry.accruedFine = rs.getDouble("accrued_fine");
+                entry.accruedUntil = toLocalDateTime(rs.getTimestamp("updated_at"));
+                return entry;
+            }, userId);
+        } catch (SQLException e) {
+            logger.error("查询逾期借阅失败: userId={}", userId, e);
+            throw new RuntimeException("查询逾期借阅失败", e);
+        }
+    }
+}
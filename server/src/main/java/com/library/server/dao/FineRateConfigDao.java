@@ -48,34 +48,11 @@ public class FineRateConfigDao extends BaseDao {
         String sql = "SELECT id, day_range_start, day_range_end, rate_per_day, description, display_order " +
                      "FROM fine_rate_config ORDER BY display_order ASC, day_range_start ASC";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        List<FineRateConfig> configs = new ArrayList<>();
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                FineRateConfig config = new FineRateConfig();
-                config.setId(rs.getLong("id"));
-                config.setDayRangeStart(rs.getInt("day_range_start"));
-                Integer dayRangeEnd = rs.getObject("day_range_end", Integer.class);
-                config.setDayRangeEnd(dayRangeEnd);
-                config.setRatePerDay(rs.getDouble("rate_per_day"));
-                config.setDescription(rs.getString("description"));
-                config.setDisplayOrder(rs.getInt("display_order"));
-                configs.add(config);
-            }
-            
-            return configs;
+            return jdbc.query(sql, this::mapResultSetToConfig);
         } catch (SQLException e) {
             logger.error("查询罚款梯度配置失败", e);
             throw new RuntimeException("查询罚款梯度配置失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
@@ -86,36 +63,28 @@ public class FineRateConfigDao extends BaseDao {
         String sql = "SELECT id, day_range_start, day_range_end, rate_per_day, description, display_order " +
                      "FROM fine_rate_config WHERE id = ?";
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        
         try {
-            conn = getConnection();
-            stmt = conn.prepareStatement(sql);
-            stmt.setLong(1, id);
-            rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                FineRateConfig config = new FineRateConfig();
-                config.setId(rs.getLong("id"));
-                config.setDayRangeStart(rs.getInt("day_range_start"));
-                Integer dayRangeEnd = rs.getObject("day_range_end", Integer.class);
-                config.setDayRangeEnd(dayRangeEnd);
-                config.setRatePerDay(rs.getDouble("rate_per_day"));
-                config.setDescription(rs.getString("description"));
-                config.setDisplayOrder(rs.getInt("display_order"));
-                return config;
-            }
-            return null;
+            return jdbc.queryOne(sql, this::mapResultSetToConfig, id);
         } catch (SQLException e) {
             logger.error("查找罚款梯度配置失败: id={}", id, e);
             throw new RuntimeException("查找罚款梯度配置失败", e);
-        } finally {
-            close(conn, stmt, rs);
         }
     }
     
+    /**
+     * 将ResultSet映射为FineRateConfig对象
+     */
+    private FineRateConfig mapResultSetToConfig(ResultSet rs) throws SQLException {
+        FineRateConfig config = new FineRateConfig();
+        config.setId(rs.getLong("id"));
+        config.setDayRangeStart(rs.getInt("day_range_start"));
+        config.setDayRangeEnd(rs.getObject("day_range_end", Integer.class));
+        config.setRatePerDay(rs.getDouble("rate_per_day"));
+        config.setDescription(rs.getString("description"));
+        config.setDisplayOrder(rs.getInt("display_order"));
+        return config;
+    }
+    
     /**
      * 更新配置
      */
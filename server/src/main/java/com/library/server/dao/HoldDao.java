@@ -0,0 +1,217 @@
+package com.library.server.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 图书预约数据访问对象
+ * 入队、取消和过期处理调用数据库函数（database/add_book_holds.sql），业务失败通过resultCode返回
+ */
+public class HoldDao extends BaseDao {
+    private static final Logger logger = LoggerFactory.getLogger(HoldDao.class);
+    
+    public static final String STATUS_WAITING = "WAITING";
+    public static final String STATUS_READY = "READY";
+    
+    /**
+     * 查询图书的有效预约（WAITING/READY），按排队先后排序
+     */
+    public List<Hold> findActiveByBook(Long bookId) {
+        String sql = "SELECT h.id, h.book_id, h.user_id, h.status, h.created_at, h.expires_at, " +
+                     "       NULL::varchar AS book_title, NULL::bigint AS queue_position " +
+                     "FROM book_holds h " +
+                     "WHERE h.book_id = ? AND h.status IN ('WAITING', 'READY') " +
+                     "ORDER BY h.id";
+        
+        try {
+            return jdbc.query(sql, this::mapResultSetToHold, bookId);
+        } catch (SQLException e) {
+            logger.error("查询图书预约失败: bookId={}", bookId, e);
+            throw new RuntimeException("查询图书预约失败", e);
+        }
+    }
+    
+    /**
+     * 查询用户的有效预约（含书名和排队位置，READY的位置为0），按预约时间排序
+     */
+    public List<Hold> findActiveByUser(Long userId) {
+        String sql = "SELECT h.id, h.book_id, h.user_id, h.status, h.created_at, h.expires_at, " +
+                     "       b.title AS book_title, " +
+                     "       CASE WHEN h.status = 'WAITING' THEN " +
+                     "           (SELECT COUNT(*) FROM book_holds q " +
+                     "            WHERE q.book_id = h.book_id AND q.status = 'WAITING' AND q.id <= h.id) " +
+                     "       ELSE 0 END AS queue_position " +
+                     "FROM book_holds h JOIN books b ON b.id = h.book_id " +
+                     "WHERE h.user_id = ? AND h.status IN ('WAITING', 'READY') " +
+                     "ORDER BY h.id";
+        
+        try {
+            return jdbc.query(sql, this::mapResultSetToHold, userId);
+        } catch (SQLException e) {
+            logger.error("查询用户预约失败: userId={}", userId, e);
+            throw new RuntimeException("查询用户预约失败", e);
+        }
+    }
+    
+    /**
+     * 预约图书（仅库存为0时入队）
+     */
+    public PlaceOutcome placeHold(Long userId, Long bookId) {
+        String sql = "SELECT result_code, hold_id, queue_position FROM circulation_place_hold(?, ?)";
+        
+        try {
+            return jdbc.queryOne(sql, rs -> {
+                PlaceOutcome outcome = new PlaceOutcome();
+                outcome.resultCode = rs.getString("result_code");
+                long holdId = rs.getLong("hold_id");
+                outcome.holdId = rs.wasNull() ? null : holdId;
+                outcome.queuePosition = rs.getLong("queue_position");
+                return outcome;
+            }, userId, bookId);
+        } catch (SQLException e) {
+            logger.error("预约图书失败: userId={}, bookId={}", userId, bookId, e);
+            throw new RuntimeException("预约图书失败", e);
+        }
+    }
+    
+    /**
+     * 取消预约，已分配副本的预约取消后副本转给下一位或恢复库存
+     */
+    public Release cancelHold(Long userId, Long holdId) {
+        String sql = "SELECT result_code, book_id, stock_restored, hold_user_id FROM circulation_cancel_hold(?, ?)";
+        
+        try {
+            return jdbc.queryOne(sql, rs -> {
+                Release release = mapResultSetToRelease(rs);
+                release.resultCode = rs.getString("result_code");
+                return release;
+            }, userId, holdId);
+        } catch (SQLException e) {
+            logger.error("取消预约失败: userId={}, holdId={}", userId, holdId, e);
+            throw new RuntimeException("取消预约失败", e);
+        }
+    }
+    
+    /**
+     * 处理取书期限已过的预约，返回每个释放副本的去向
+     */
+    public List<Release> expireReadyHolds(int limit) {
+        String sql = "SELECT book_id, expired_user_id, stock_restored, hold_user_id FROM expire_book_holds(?)";
+        
+        try {
+            return jdbc.query(sql, rs -> {
+                Release release = mapResultSetToRelease(rs);
+                release.expiredUserId = rs.getLong("expired_user_id");
+                return release;
+            }, limit);
+        } catch (SQLException e) {
+            logger.error("处理过期预约失败", e);
+            throw new RuntimeException("处理过期预约失败", e);
+        }
+    }
+    
+    /**
+     * 释放新增的副本（事务中调用）：bookIds[i]新增counts[i]个副本，逐个分配给排队读者，无人排队时恢复可借库存
+     */
+    public List<Release> releaseCopies(Connection conn, Long[] bookIds, Integer[] counts) throws SQLException {
+        String sql = "SELECT book_id, stock_restored, hold_user_id " +
+                     "FROM circulation_release_copies(?::bigint[], ?::int[])";
+        return jdbc.query(conn, sql, this::mapResultSetToRelease, bookIds, counts);
+    }
+    
+    private Hold mapResultSetToHold(ResultSet rs) throws SQLException {
+        Hold hold = new Hold();
+        hold.id = rs.getLong("id");
+        hold.bookId = rs.getLong("book_id");
+        hold.userId = rs.getLong("user_id");
+        hold.status = rs.getString("status");
+        hold.createdAt = toLocalDateTime(rs.getTimestamp("created_at"));
+        hold.expiresAt = toLocalDateTime(rs.getTimestamp("expires_at"));
+        hold.bookTitle = rs.getString("book_title");
+        hold.queuePosition = rs.getLong("queue_position");
+        return hold;
+    }
+    
+    private Release mapResultSetToRelease(ResultSet rs) throws SQLException {
+        Release release = new Release();
+        long bookId = rs.getLong("book_id");
+        release.bookId = rs.wasNull() ? null : bookId;
+        release.stockRestored = rs.getBoolean("stock_restored");
+        long holdUserId = rs.getLong("hold_user_id");
+        release.holdUserId = rs.wasNull() ? null : holdUserId;
+        return release;
+    }
+    
+    /**
+     * 预约
+     */
+    public static class Hold {
+        private Long id;
+        private Long bookId;
+        private Long userId;
+        private String status;
+        private LocalDateTime createdAt;
+        private LocalDateTime expiresAt;
+        private String bookTitle;
+        private long queuePosition;
+        
+        public Long getId() { return id; }
+        public Long getBookId() { return bookId; }
+        public Long getUserId() { return userId; }
+        public String getStatus() { return status; }
+        public LocalDateTime getCreatedAt() { return createdAt; }
+        /**
+         * 取书期限（仅READY）
+         */
+        public LocalDateTime getExpiresAt() { return expiresAt; }
+        public String getBookTitle() { return bookTitle; }
+        public long getQueuePosition() { return queuePosition; }
+    }
+    
+    /**
+     * 预约结果
+     */
+    public static class PlaceOutcome {
+        private String resultCode;
+        private Long holdId;
+        private long queuePosition;
+        
+        public boolean isOk() { return CirculationDao.RESULT_OK.equals(resultCode); }
+        public String getResultCode() { return resultCode; }
+        public Long getHoldId() { return holdId; }
+        /**
+         * 排队位置（从1开始）
+         */
+        public long getQueuePosition() { return queuePosition; }
+    }
+    
+    /**
+     * 副本释放结果（取消或过期）：副本分配给了下一位预约读者，或恢复为可借库存
+     */
+    public static class Release {
+        private String resultCode;
+        private Long bookId;
+        private Long expiredUserId;
+        private boolean stockRestored;
+        private Long holdUserId;
+        
+        public boolean isOk() { return CirculationDao.RESULT_OK.equals(resultCode); }
+        public String getResultCode() { return resultCode; }
+        public Long getBookId() { return bookId; }
+        /**
+         * 预约过期的读者（仅过期处理）
+         */
+        public Long getExpiredUserId() { return expiredUserId; }
+        public boolean isStockRestored() { return stockRestored; }
+        /**
+         * 副本分配给的读者，没有人排队时为null
+         */
+        public Long getHoldUserId() { return holdUserId; }
+    }
+}
@@ -0,0 +1,378 @@
+package com.library.server.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JDBC模板
+ * 统一管理Connection/PreparedStatement/ResultSet的获取与释放，
+ * 提供行映射、参数绑定、批量执行、流式遍历和事务回调，并记录每条SQL的耗时
+ *
+ * 在inTransaction回调内执行的所有操作（包括其他DAO的调用）复用同一个连接
+ */
+public class JdbcTemplate {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcTemplate.class);
+    
+    // 当前线程绑定的事务连接
+    private static final ThreadLocal<Connection> TRANSACTION_CONNECTION = new ThreadLocal<>();
+    
+    private final DataSource dataSource;
+    
+    public JdbcTemplate(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+    
+    /**
+     * 行映射器
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T mapRow(ResultSet rs) throws SQLException;
+    }
+    
+    /**
+     * 参数绑定器（批量执行时为每个元素绑定参数）
+     */
+    @FunctionalInterface
+    public interface ParameterBinder<T> {
+        void bind(PreparedStatement stmt, T item) throws SQLException;
+    }
+    
+    /**
+     * 行回调（流式遍历）
+     */
+    @FunctionalInterface
+    public interface RowCallback {
+        void processRow(ResultSet rs) throws SQLException;
+    }
+    
+    /**
+     * 事务回调
+     */
+    @FunctionalInterface
+    public interface TransactionCallback<T> {
+        T doInTransaction(Connection conn) throws SQLException;
+    }
+    
+    /**
+     * 查询多行
+     */
+    public <T> List<T> query(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        Connection conn = acquire();
+        try {
+            return query(conn, sql, mapper, params);
+        } finally {
+            release(conn);
+        }
+    }
+    
+    /**
+     * 使用指定连接查询多行
+     */
+    public <T> List<T> query(Connection conn, String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindParams(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<T> results = new ArrayList<>();
+                while (rs.next()) {
+                    results.add(mapper.mapRow(rs));
+                }
+                failed = false;
+                return results;
+            }
+        } finally {
+            SqlMetrics.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+    
+    /**
+     * 查询单行，无结果时返回null
+     */
+    public <T> T queryOne(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        Connection conn = acquire();
+        try {
+            return queryOne(conn, sql, mapper, params);
+        } finally {
+            release(conn);
+        }
+    }
+    
+    /**
+     * 使用指定连接查询单行，无结果时返回null
+     */
+    public <T> T queryOne(Connection conn, String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindParams(stmt, params);
+            stmt.setMaxRows(1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                T result = rs.next() ? mapper.mapRow(rs) : null;
+                failed = false;
+                return result;
+            }
+        } finally {
+            SqlMetrics.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+    
+    /**
+     * 执行INSERT/UPDATE/DELETE，返回影响行数
+     */
+    public int update(String sql, Object... params) throws SQLException {
+        Connection conn = acquire();
+        try {
+            return update(conn, sql, params);
+        } finally {
+            release(conn);
+        }
+    }
+    
+    /**
+     * 使用指定连接执行INSERT/UPDATE/DELETE
+     */
+    public int update(Connection conn, String sql, Object... params) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindParams(stmt, params);
+            int rows = stmt.executeUpdate();
+            failed = false;
+            return rows;
+        } finally {
+            SqlMetrics.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+    
+    /**
+     * 批量执行同一条语句
+     * 配合reWriteBatchedInserts，INSERT会被驱动改写为多值插入
+     */
+    public <T> int[] batchUpdate(String sql, List<T> items, ParameterBinder<T> binder) throws SQLException {
+        Connection conn = acquire();
+        try {
+            return batchUpdate(conn, sql, items, binder);
+        } finally {
+            release(conn);
+        }
+    }
+    
+    /**
+     * 使用指定连接批量执行同一条语句
+     */
+    public <T> int[] batchUpdate(Connection conn, String sql, List<T> items, ParameterBinder<T> binder) throws SQLException {
+        if (items == null || items.isEmpty()) {
+            return new int[0];
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (T item : items) {
+                binder.bind(stmt, item);
+                stmt.addBatch();
+            }
+            int[] rows = stmt.executeBatch();
+            failed = false;
+            return rows;
+        } finally {
+            SqlMetrics.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+    
+    /**
+     * 逐行处理查询结果（结果集较小，不使用游标）
+     */
+    public void forEach(String sql, RowCallback callback, Object... params) throws SQLException {
+        Connection conn = acquire();
+        try {
+            forEach(conn, sql, 0, callback, params);
+        } finally {
+            release(conn);
+        }
+    }
+    
+    /**
+     * 流式遍历查询结果
+     * PostgreSQL只有在非自动提交模式且fetchSize大于0时才使用游标分批读取
+     */
+    public void forEach(String sql, int fetchSize, RowCallback callback, Object... params) throws SQLException {
+        Connection conn = acquire();
+        boolean restoreAutoCommit = false;
+        try {
+            if (conn.getAutoCommit()) {
+                conn.setAutoCommit(false);
+                restoreAutoCommit = true;
+            }
+            forEach(conn, sql, fetchSize, callback, params);
+            if (restoreAutoCommit) {
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            if (restoreAutoCommit) {
+                rollbackQuietly(conn);
+            }
+            throw e;
+        } finally {
+            if (restoreAutoCommit) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    logger.error("恢复自动提交失败", e);
+                }
+            }
+            release(conn);
+        }
+    }
+    
+    /**
+     * 使用指定连接流式遍历查询结果
+     */
+    public void forEach(Connection conn, String sql, int fetchSize, RowCallback callback, Object... params) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setFetchSize(fetchSize);
+            bindParams(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    callback.processRow(rs);
+                }
+            }
+            failed = false;
+        } finally {
+            SqlMetrics.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+    
+    /**
+     * 在事务中执行回调
+     * 若当前线程已处于事务中，则直接复用该事务的连接（由最外层负责提交/回滚）
+     */
+    public <T> T inTransaction(TransactionCallback<T> callback) throws SQLException {
+        Connection existing = TRANSACTION_CONNECTION.get();
+        if (existing != null) {
+            return callback.doInTransaction(existing);
+        }
+        
+        Connection conn = dataSource.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            TRANSACTION_CONNECTION.set(conn);
+            T result = callback.doInTransaction(conn);
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            rollbackQuietly(conn);
+            throw e;
+        } finally {
+            TRANSACTION_CONNECTION.remove();
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("恢复自动提交失败", e);
+            }
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                logger.error("关闭Connection失败", e);
+            }
+        }
+    }
+    
+    /**
+     * 当前线程是否处于inTransaction回调中
+     */
+    public static boolean isInTransaction() {
+        return TRANSACTION_CONNECTION.get() != null;
+    }
+    
+    /**
+     * 获取连接：优先复用当前线程的事务连接
+     */
+    private Connection acquire() throws SQLException {
+        Connection bound = TRANSACTION_CONNECTION.get();
+        return bound != null ? bound : dataSource.getConnection();
+    }
+    
+    /**
+     * 释放连接：事务连接由inTransaction负责关闭
+     */
+    private void release(Connection conn) {
+        if (conn == null || conn == TRANSACTION_CONNECTION.get()) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            logger.error("关闭Connection失败", e);
+        }
+    }
+    
+    private void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.error("回滚事务失败", e);
+        }
+    }
+    
+    /**
+     * 按参数的Java类型绑定到PreparedStatement
+     */
+    public static void bindParams(PreparedStatement stmt, Object... params) throws SQLException {
+        if (params == null) {
+            return;
+        }
+        for (int i = 0; i < params.length; i++) {
+            bindParam(stmt, i + 1, params[i]);
+        }
+    }
+    
+    /**
+     * 绑定单个参数
+     */
+    public static void bindParam(PreparedStatement stmt, int index, Object value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(index, Types.NULL);
+        } else if (value instanceof String) {
+            stmt.setString(index, (String) value);
+        } else if (value instanceof Long) {
+            stmt.setLong(index, (Long) value);
+        } else if (value instanceof Integer) {
+            stmt.setInt(index, (Integer) value);
+        } else if (value instanceof Double) {
+            stmt.setDouble(index, (Double) value);
+        } else if (value instanceof Boolean) {
+            stmt.setBoolean(index, (Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            stmt.setBigDecimal(index, (BigDecimal) value);
+        } else if (value instanceof LocalDateTime) {
+            stmt.setTimestamp(index, Timestamp.valueOf((LocalDateTime) value));
+        } else if (value instanceof LocalDate) {
+            stmt.setDate(index, java.sql.Date.valueOf((LocalDate) value));
+        } else if (value instanceof Long[]) {
+            stmt.setArray(index, stmt.getConnection().createArrayOf("bigint", (Long[]) value));
+        } else if (value instanceof Integer[]) {
+            stmt.setArray(index, stmt.getConnection().createArrayOf("integer", (Integer[]) value));
+        } else if (value instanceof Double[]) {
+            stmt.setArray(index, stmt.getConnection().createArrayOf("float8", (Double[]) value));
+        } else {
+            stmt.setObject(index, value);
+        }
+    }
+}
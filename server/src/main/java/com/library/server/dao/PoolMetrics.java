@@ -0,0 +1,91 @@
+package com.library.server.dao;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * 连接池指标
+ * 通过HikariCP的MetricsTrackerFactory收集活跃/空闲/等待连接数及获取连接的等待时间
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+    private volatile PoolStats poolStats;
+    
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong acquireNanosTotal = new AtomicLong();
+    private final LongAccumulator acquireNanosMax = new LongAccumulator(Math::max, 0L);
+    private final AtomicLong usageMillisTotal = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireCount.incrementAndGet();
+                acquireNanosTotal.addAndGet(elapsedAcquiredNanos);
+                acquireNanosMax.accumulate(elapsedAcquiredNanos);
+            }
+            
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageMillisTotal.addAndGet(elapsedBorrowedMillis);
+            }
+            
+            @Override
+            public void recordConnectionTimeout() {
+                timeoutCount.incrementAndGet();
+            }
+        };
+    }
+    
+    /**
+     * 获取当前指标快照
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        PoolStats stats = poolStats;
+        if (stats != null) {
+            snapshot.active = stats.getActiveConnections();
+            snapshot.idle = stats.getIdleConnections();
+            snapshot.total = stats.getTotalConnections();
+            snapshot.pending = stats.getPendingThreads();
+            snapshot.max = stats.getMaxConnections();
+        }
+        long count = acquireCount.get();
+        snapshot.acquireCount = count;
+        snapshot.avgWaitMillis = count > 0 ? acquireNanosTotal.get() / 1_000_000.0 / count : 0.0;
+        snapshot.maxWaitMillis = acquireNanosMax.get() / 1_000_000.0;
+        snapshot.avgUsageMillis = count > 0 ? (double) usageMillisTotal.get() / count : 0.0;
+        snapshot.timeoutCount = timeoutCount.get();
+        return snapshot;
+    }
+    
+    /**
+     * 连接池指标快照
+     */
+    public static class Snapshot {
+        public int active;
+        public int idle;
+        public int total;
+        public int pending;
+        public int max;
+        public long acquireCount;
+        public double avgWaitMillis;
+        public double maxWaitMillis;
+        public double avgUsageMillis;
+        public long timeoutCount;
+        
+        @Override
+        public String toString() {
+            return String.format("active=%d, idle=%d, total=%d/%d, pending=%d, acquired=%d, " +
+                    "avgWait=%.2fms, maxWait=%.2fms, avgUsage=%.2fms, timeouts=%d",
+                    active, idle, total, max, pending, acquireCount,
+                    avgWaitMillis, maxWaitMillis, avgUsageMillis, timeoutCount);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.library.server.dao;
+
+/**
+ * 只读作用域
+ * 在作用域内通过BaseDao/getReadDataSource()获取的连接会被路由到只读副本（副本不可用或延迟过大时回退主库）。
+ * 适用于统计、榜单、推荐等可以容忍轻微延迟的查询；借还书等事务操作不要放在作用域内
+ */
+public final class ReadOnlyScope {
+    private static final ThreadLocal<Boolean> READ_ONLY = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    
+    private ReadOnlyScope() {
+    }
+    
+    /**
+     * 作用域内执行的操作
+     */
+    @FunctionalInterface
+    public interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+    
+    /**
+     * 在只读作用域内执行操作，支持嵌套
+     */
+    public static <T, E extends Exception> T call(Action<T, E> action) throws E {
+        Boolean previous = READ_ONLY.get();
+        READ_ONLY.set(Boolean.TRUE);
+        try {
+            return action.run();
+        } finally {
+            READ_ONLY.set(previous);
+        }
+    }
+    
+    /**
+     * 当前线程是否处于只读作用域中
+     */
+    public static boolean isActive() {
+        return READ_ONLY.get();
+    }
+}
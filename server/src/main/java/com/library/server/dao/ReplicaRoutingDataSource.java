@@ -0,0 +1,147 @@
+package com.library.server.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * 读写路由数据源
+ * 只读作用域内的连接优先取自只读副本，其余情况一律使用主库。
+ * 副本按固定间隔检查复制延迟，超过延迟预算或获取连接失败时回退主库，直到下次检查恢复
+ */
+public class ReplicaRoutingDataSource implements DataSource {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    
+    // 副本与主库WAL已同步时延迟为0，否则取最后一次回放事务的时间差
+    private static final String REPLICATION_LAG_SQL =
+        "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+        "ELSE COALESCE(EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())), 0) END";
+    
+    private final DataSource primary;
+    private final DataSource replica;
+    private final double maxLagSeconds;
+    private final long lagCheckIntervalMillis;
+    
+    private volatile boolean replicaHealthy = true;
+    private volatile long lastCheckMillis = 0;
+    
+    /**
+     * @param primary 主库数据源
+     * @param replica 只读副本数据源（为null表示未配置副本）
+     * @param maxLagSeconds 允许的最大复制延迟（秒）
+     * @param lagCheckIntervalMillis 复制延迟检查间隔（毫秒）
+     */
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica,
+                                    double maxLagSeconds, long lagCheckIntervalMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagSeconds = maxLagSeconds;
+        this.lagCheckIntervalMillis = lagCheckIntervalMillis;
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (ReadOnlyScope.isActive() && isReplicaUsable()) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                replicaHealthy = false;
+                lastCheckMillis = System.currentTimeMillis();
+                logger.warn("获取只读副本连接失败，回退主库: {}", e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+    
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+    
+    /**
+     * 副本是否可用（已配置、可连接且复制延迟在预算内）
+     */
+    private boolean isReplicaUsable() {
+        if (replica == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastCheckMillis >= lagCheckIntervalMillis) {
+            synchronized (this) {
+                if (now - lastCheckMillis >= lagCheckIntervalMillis) {
+                    checkReplica();
+                    lastCheckMillis = System.currentTimeMillis();
+                }
+            }
+        }
+        return replicaHealthy;
+    }
+    
+    /**
+     * 检查副本复制延迟
+     */
+    private void checkReplica() {
+        boolean healthy;
+        try (Connection conn = replica.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(REPLICATION_LAG_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            double lagSeconds = rs.next() ? rs.getDouble(1) : 0;
+            healthy = lagSeconds <= maxLagSeconds;
+            if (!healthy) {
+                logger.warn("只读副本复制延迟{}s超过预算{}s，读请求回退主库", lagSeconds, maxLagSeconds);
+            }
+        } catch (SQLException e) {
+            healthy = false;
+            logger.warn("检查只读副本失败，读请求回退主库: {}", e.getMessage());
+        }
+        if (healthy && !replicaHealthy) {
+            logger.info("只读副本已恢复，读请求重新路由到副本");
+        }
+        replicaHealthy = healthy;
+    }
+    
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+    
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+    
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+    
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+    
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+    
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return primary.unwrap(iface);
+    }
+    
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,109 @@
+package com.library.server.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * SQL执行耗时统计
+ * 按SQL语句聚合执行次数、总耗时和最大耗时，超过阈值的语句记录慢查询日志
+ */
+public class SqlMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(SqlMetrics.class);
+    private static final long DEFAULT_SLOW_QUERY_MILLIS = 200;
+    private static final int MAX_TRACKED_STATEMENTS = 1000;
+    
+    private static final Map<String, StatementStats> stats = new ConcurrentHashMap<>();
+    // 累计执行的语句数（含未单独统计的"<other>"），供按请求统计查询次数
+    private static final AtomicLong totalCount = new AtomicLong();
+    private static volatile long slowQueryMillis = DEFAULT_SLOW_QUERY_MILLIS;
+    
+    /**
+     * 设置慢查询阈值（毫秒）
+     */
+    public static void setSlowQueryMillis(long millis) {
+        slowQueryMillis = millis;
+    }
+    
+    /**
+     * 记录一次SQL执行
+     */
+    public static void record(String sql, long elapsedNanos, boolean failed) {
+        StatementStats stat = stats.get(sql);
+        if (stat == null) {
+            if (stats.size() >= MAX_TRACKED_STATEMENTS) {
+                // 动态拼接的SQL过多时不再新增统计项，避免无限增长
+                stat = stats.computeIfAbsent("<other>", StatementStats::new);
+            } else {
+                stat = stats.computeIfAbsent(sql, StatementStats::new);
+            }
+        }
+        stat.count.incrementAndGet();
+        totalCount.incrementAndGet();
+        stat.totalNanos.addAndGet(elapsedNanos);
+        stat.maxNanos.accumulate(elapsedNanos);
+        if (failed) {
+            stat.errorCount.incrementAndGet();
+        }
+        
+        long elapsedMillis = elapsedNanos / 1_000_000;
+        if (elapsedMillis >= slowQueryMillis) {
+            logger.warn("慢查询: {}ms, sql={}", elapsedMillis, sql);
+        }
+    }
+    
+    /**
+     * 获取总耗时最高的前N条语句
+     */
+    public static List<StatementStats> top(int n) {
+        List<StatementStats> list = new ArrayList<>(stats.values());
+        list.sort(Comparator.comparingLong((StatementStats s) -> s.totalNanos.get()).reversed());
+        return list.size() > n ? list.subList(0, n) : list;
+    }
+    
+    /**
+     * 累计执行的语句数（reset不清零），前后两次读数之差即为期间执行的语句数
+     */
+    public static long totalCount() {
+        return totalCount.get();
+    }
+    
+    /**
+     * 清空统计
+     */
+    public static void reset() {
+        stats.clear();
+    }
+    
+    /**
+     * 单条语句的统计
+     */
+    public static class StatementStats {
+        private final String sql;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+        
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+        
+        public String getSql() { return sql; }
+        public long getCount() { return count.get(); }
+        public long getErrorCount() { return errorCount.get(); }
+        public double getTotalMillis() { return totalNanos.get() / 1_000_000.0; }
+        public double getMaxMillis() { return maxNanos.get() / 1_000_000.0; }
+        public double getAvgMillis() {
+            long c = count.get();
+            return c > 0 ? totalNanos.get() / 1_000_000.0 / c : 0.0;
+        }
+    }
+}
@@ -11,7 +11,9 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 用户数据访问对象
@@ -203,4 +205,116 @@ public class UserDao extends BaseDao {
             return rows > 0;
         }
     }
+    
+    /**
+     * 分页查询欠费用户（已产生罚款 + 逾期累计罚款 > 0），按欠费总额降序
+     * 逾期罚款读取罚款台账的用户累计（user_fine_totals），不再按借阅记录逐条计算
+     */
+    public FineDebtorPage findFineDebtors(int limit, int offset) {
+        String sql = "SELECT u.id, u.username, COALESCE(u.fine_amount, 0) AS total_fine, " +
+                     "       COALESCE(t.overdue_count, 0) AS overdue_count, " +
+                     "       COALESCE(t.accrued_fine, 0) AS overdue_fine, " +
+                     "       COALESCE(u.fine_amount, 0) + COALESCE(t.accrued_fine, 0) AS total_owed, " +
+                     "       COUNT(*) OVER () AS total_rows " +
+                     "FROM users u LEFT JOIN user_fine_totals t ON t.user_id = u.id " +
+                     "WHERE u.role != 'ADMIN' AND COALESCE(u.fine_amount, 0) + COALESCE(t.accrued_fine, 0) > 0 " +
+                     "ORDER BY total_owed DESC, u.id " +
+                     "LIMIT ? OFFSET ?";
+        
+        FineDebtorPage page = new FineDebtorPage();
+        try {
+            page.debtors = jdbc.query(sql, rs -> {
+                page.total = rs.getInt("total_rows");
+                FineDebtor debtor = new FineDebtor();
+                debtor.userId = rs.getLong("id");
+                debtor.username = rs.getString("username");
+                debtor.totalFine = rs.getDouble("total_fine");
+                debtor.currentOverdueFine = rs.getDouble("overdue_fine");
+                debtor.totalOwed = rs.getDouble("total_owed");
+                debtor.overdueCount = rs.getInt("overdue_count");
+                return debtor;
+            }, limit, offset);
+            return page;
+        } catch (SQLException e) {
+            logger.error("查询欠费用户失败", e);
+            throw new RuntimeException("查询欠费用户失败", e);
+        }
+    }
+    
+    /**
+     * 查询用户的借阅状态（角色、已产生罚款、未归还借阅及其到期时间），用户不存在返回null
+     */
+    public CirculationState findCirculationState(Long userId) {
+        String sql = "SELECT u.role, COALESCE(u.fine_amount, 0) AS fine_amount, br.id AS record_id, br.due_time " +
+                     "FROM users u " +
+                     "LEFT JOIN borrow_records br ON br.user_id = u.id AND br.status IN ('BORROWED', 'OVERDUE') " +
+                     "WHERE u.id = ?";
+        
+        CirculationState state = new CirculationState();
+        boolean[] found = new boolean[1];
+        try {
+            jdbc.forEach(sql, rs -> {
+                found[0] = true;
+                state.admin = "ADMIN".equals(rs.getString("role"));
+                state.fineAmount = rs.getDouble("fine_amount");
+                long recordId = rs.getLong("record_id");
+                if (!rs.wasNull()) {
+                    state.openLoans.put(recordId, toLocalDateTime(rs.getTimestamp("due_time")));
+                }
+            }, userId);
+            return found[0] ? state : null;
+        } catch (SQLException e) {
+            logger.error("查询用户借阅状态失败: userId={}", userId, e);
+            throw new RuntimeException("查询用户借阅状态失败", e);
+        }
+    }
+    
+    /**
+     * 用户借阅状态
+     */
+    public static class CirculationState {
+        private boolean admin;
+        private double fineAmount;
+        private final Map<Long, LocalDateTime> openLoans = new HashMap<>();
+        
+        public boolean isAdmin() { return admin; }
+        public double getFineAmount() { return fineAmount; }
+        /**
+         * 未归还借阅：记录ID -> 到期时间
+         */
+        public Map<Long, LocalDateTime> getOpenLoans() { return openLoans; }
+    }
+    
+    /**
+     * 欠费用户
+     */
+    public static class FineDebtor {
+        private Long userId;
+        private String username;
+        private double totalFine;
+        private double currentOverdueFine;
+        private double totalOwed;
+        private int overdueCount;
+        
+        public Long getUserId() { return userId; }
+        public String getUsername() { return username; }
+        public double getTotalFine() { return totalFine; }
+        public double getCurrentOverdueFine() { return currentOverdueFine; }
+        public double getTotalOwed() { return totalOwed; }
+        public int getOverdueCount() { return overdueCount; }
+    }
+    
+    /**
+     * 欠费用户分页结果
+     */
+    public static class FineDebtorPage {
+        private List<FineDebtor> debtors = new ArrayList<>();
+        private int total;
+        
+        public List<FineDebtor> getDebtors() { return debtors; }
+        /**
+         * 欠费用户总数（不受分页影响；当前页为空时为0）
+         */
+        public int getTotal() { return total; }
+    }
 }
@@ -1,7 +1,10 @@
 package com.library.server.net;
 
 import com.library.server.dao.DataSourceProvider;
+import com.library.server.recommend.BorrowGraph;
+import com.library.server.recommend.CoBorrowIndex;
 import com.library.server.service.OverdueScheduler;
+import com.library.server.service.RecommendationPrecomputer;
 import com.library.server.service.RequestDispatcher;
 import com.library.server.service.TokenService;
 import org.slf4j.Logger;
@@ -47,6 +50,9 @@ public class SocketServer {
         running.set(true);
         
         overdueScheduler.start();
+        BorrowGraph.start();
+        CoBorrowIndex.start();
+        RecommendationPrecomputer.start();
         logger.info("Socket服务器启动: port={}, threadPoolSize={}", port, threadPoolSize);
         
         Thread acceptThread = new Thread(this::acceptConnections, "ServerAcceptThread");
@@ -0,0 +1,1079 @@
+package com.library.server.recommend;
+
+import com.library.server.dao.BorrowRecordDao;
+import com.library.server.dao.DataSourceProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 全局User-Book借阅二部图（CSR压缩稀疏行存储）
+ * 用户和图书重新编号为连续的节点号（用户在前、图书在后），邻接表存为int[] offsets / int[] neighbors / float[] logWeights，
+ * 同一用户多次借阅同一本书合并为一条边、权重累加，另记最近一次借阅日（PPR子图按基线只取最近一次借阅的权重）。
+ * 时间衰减：每条边为DECAY_LAMBDAS中的每个衰减档位各存一份相对基准日的对数权重（多年前的借阅权重小到float会下溢为0，
+ * 取对数后仍可区分），使用方按行减去最大值或出边权重之和的对数再取指数归一化；查询时加上统一的偏移即为当前权重，
+ * 请求指定的lambda取最接近的档位（withDecay），不必按请求重新计算边权重；基准日每RENORMALIZE_DAYS天整体前移一次，
+ * 对数权重统一平移，时间推移本身不需要重建图。
+ * 启动时从borrow_records流式构建一次；借书后新边进入待合并队列，由后台线程每MERGE_INTERVAL_SECONDS秒增量并入新快照
+ * （不访问数据库，只改写新边涉及的行），每天从数据库全量重建一次。快照不可变，推荐请求直接读取当前快照，无需加锁也不访问数据库。
+ * 从数据库构建的快照连同已读到的最大借阅记录ID（高水位）写入recommend.graph.snapshotFile指定的文件，
+ * 之后每PERSIST_INTERVAL_MINUTES分钟把合并了新借阅的快照连同已合并的最大借阅记录ID再写入一次；
+ * 重启时内存映射该文件，只补读高水位之后的借阅，不必全表扫描
+ */
+public final class BorrowGraph {
+    private static final Logger logger = LoggerFactory.getLogger(BorrowGraph.class);
+    
+    // 时间衰减档位：边权重 = exp(-lambda * 借阅距今天数)
+    private static final double[] DECAY_LAMBDAS = {0.01, 0.02, 0.05, 0.1};
+    // 默认档位（lambda = 0.05）
+    private static final int DEFAULT_PROFILE = 2;
+    // 新借阅合并间隔（秒）
+    private static final long MERGE_INTERVAL_SECONDS = 5;
+    // 全量重建间隔（小时），纠正删除等未经借书路径的变化
+    private static final long REBUILD_INTERVAL_HOURS = 24;
+    // 基准日前移间隔（天）：新借阅的对数权重最大为lambda * 该天数，前移后回到0以内
+    private static final long RENORMALIZE_DAYS = 7;
+    // 检查是否需要前移基准日的间隔（小时）
+    private static final long RENORMALIZE_CHECK_HOURS = 1;
+    // 合并新借阅后写入快照文件的间隔（分钟）
+    private static final long PERSIST_INTERVAL_MINUTES = 60;
+    
+    // 快照文件格式：魔数、版本、基准日、高水位、构建时间、用户数、图书数、邻接条目数、档位数，
+    // 之后依次为各档位lambda、userIds、bookIds、offsets、neighbors、lastBorrowDays、各档位对数权重
+    private static final int FILE_MAGIC = 0x42475246;
+    private static final int FILE_VERSION = 2;
+    private static final int HEADER_BYTES = 48;
+    
+    private static volatile BorrowGraph current;
+    private static final Queue<PendingEdge> pending = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean started = new AtomicBoolean(false);
+    private static final ScheduledExecutorService maintainer = Executors.newSingleThreadScheduledExecutor(
+            r -> {
+                Thread t = new Thread(r, "BorrowGraphMaintainer");
+                t.setDaemon(true);
+                return t;
+            }
+    );
+    private static Path snapshotFile;
+    // 当前快照已包含的借阅记录，合并时据此丢弃重复的待合并边（由类锁保护）
+    private static Coverage coverage;
+    // 当前快照包含的最大借阅记录ID（扫描高水位与已合并借阅的最大值），写入文件后重启时只补读其后的借阅（由类锁保护）
+    private static long mergedHighWaterMark;
+    // 上次写入文件之后是否合并过新借阅（由类锁保护）
+    private static boolean unpersisted;
+    
+    // 权重基准日：logWeights[e] = -lambda * (baseDay - 借阅日)（多次借阅为各次权重之和的对数）。
+    // 当前的衰减权重与exp(logWeights[e])只差全图统一的因子exp(-lambda * (今天 - baseDay))，
+    // PPR按节点出边权重归一化时该因子约掉，所以直接使用对数权重，日期推移时无需改写快照；
+    // 基准日之后的借阅对数权重为正并随时间增大，由renormalize定期前移基准日
+    private final long baseDay;
+    // 升序，节点i（i < userIds.length）对应userIds[i]
+    private final long[] userIds;
+    // 升序，节点userIds.length + j对应bookIds[j]
+    private final long[] bookIds;
+    // 节点i的邻接边为[offsets[i], offsets[i + 1])，每行按邻居节点号升序
+    private final int[] offsets;
+    private final int[] neighbors;
+    // 每条边最近一次借阅的日期（epoch day）
+    private final int[] lastBorrowDays;
+    // 各档位的边对数权重和节点出边权重之和的对数：[档位][边]、[档位][节点]，所有档位视图共享；没有边的节点为负无穷
+    private final float[][] profileLogWeights;
+    private final float[][] profileLogWeightSums;
+    // 本视图使用的档位
+    private final int profile;
+    private final float[] logWeights;
+    private final float[] logWeightSums;
+    
+    private BorrowGraph(long baseDay, long[] userIds, long[] bookIds, int[] offsets, int[] neighbors,
+                        int[] lastBorrowDays, float[][] profileLogWeights, float[][] profileLogWeightSums,
+                        int profile) {
+        this.baseDay = baseDay;
+        this.userIds = userIds;
+        this.bookIds = bookIds;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.lastBorrowDays = lastBorrowDays;
+        this.profileLogWeights = profileLogWeights;
+        this.profileLogWeightSums = profileLogWeightSums;
+        this.profile = profile;
+        this.logWeights = profileLogWeights[profile];
+        this.logWeightSums = profileLogWeightSums[profile];
+    }
+    
+    /**
+     * 由各档位的边对数权重创建默认档位的快照，计算节点出边权重之和的对数
+     */
+    private static BorrowGraph create(long baseDay, long[] userIds, long[] bookIds, int[] offsets, int[] neighbors,
+                                      int[] lastBorrowDays, float[][] profileLogWeights) {
+        int nodeCount = offsets.length - 1;
+        float[][] profileLogWeightSums = new float[profileLogWeights.length][nodeCount];
+        for (int p = 0; p < profileLogWeights.length; p++) {
+            for (int node = 0; node < nodeCount; node++) {
+                profileLogWeightSums[p][node] = logSum(profileLogWeights[p], offsets[node], offsets[node + 1]);
+            }
+        }
+        return new BorrowGraph(baseDay, userIds, bookIds, offsets, neighbors, lastBorrowDays, profileLogWeights,
+                profileLogWeightSums, DEFAULT_PROFILE);
+    }
+    
+    /**
+     * 启动：后台加载快照文件（没有则全量构建），之后定期合并新借阅、每天全量重建（服务器启动时调用一次）
+     */
+    public static void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        String path = DataSourceProvider.loadProperties().getProperty("recommend.graph.snapshotFile", "").trim();
+        snapshotFile = path.isEmpty() ? null : Paths.get(path);
+        
+        maintainer.execute(BorrowGraph::initialize);
+        maintainer.scheduleWithFixedDelay(BorrowGraph::mergePending,
+                MERGE_INTERVAL_SECONDS, MERGE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        maintainer.scheduleAtFixedRate(BorrowGraph::rebuild,
+                REBUILD_INTERVAL_HOURS, REBUILD_INTERVAL_HOURS, TimeUnit.HOURS);
+        maintainer.scheduleWithFixedDelay(BorrowGraph::renormalize,
+                RENORMALIZE_CHECK_HOURS, RENORMALIZE_CHECK_HOURS, TimeUnit.HOURS);
+        maintainer.scheduleWithFixedDelay(BorrowGraph::persistMerged,
+                PERSIST_INTERVAL_MINUTES, PERSIST_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+    
+    /**
+     * 获取当前快照；初始快照尚未构建完成时在调用线程同步构建
+     */
+    public static BorrowGraph get() {
+        BorrowGraph graph = current;
+        if (graph != null) {
+            return graph;
+        }
+        synchronized (BorrowGraph.class) {
+            initialize();
+            return current != null ? current : empty();
+        }
+    }
+    
+    /**
+     * 替换当前快照（离线评估时安装由训练集构建的图；后台维护未启动时才有意义）
+     */
+    public static void install(BorrowGraph graph) {
+        synchronized (BorrowGraph.class) {
+            current = graph;
+        }
+    }
+    
+    /**
+     * 登记一次借阅（借书事务提交后调用），下次合并后生效
+     */
+    public static void onBorrowed(Long recordId, Long userId, Long bookId, LocalDateTime borrowTime) {
+        if (recordId == null || userId == null || bookId == null || borrowTime == null) {
+            return;
+        }
+        pending.add(new PendingEdge(recordId, userId, bookId, borrowTime.toLocalDate().toEpochDay()));
+    }
+    
+    /**
+     * 构建初始快照：优先加载快照文件并补读之后的借阅，失败时从数据库全量重建
+     */
+    private static synchronized void initialize() {
+        if (current != null) {
+            return;
+        }
+        if (!restore()) {
+            rebuild();
+        }
+        renormalize();
+    }
+    
+    /**
+     * 从数据库（主库）全量重建快照。
+     * 不清空待合并队列：扫描期间提交的借阅不一定被扫描到，只有扫描到的记录在之后合并时丢弃
+     */
+    private static synchronized void rebuild() {
+        try {
+            long start = System.currentTimeMillis();
+            long today = LocalDate.now().toEpochDay();
+            EdgeList edges = new EdgeList();
+            RecordIds scanned = new RecordIds();
+            new BorrowRecordDao().forEachBorrow((recordId, userId, bookId, borrowTime) -> {
+                edges.addBorrow(userId, bookId, today, borrowTime.toLocalDate().toEpochDay());
+                scanned.add(recordId);
+            });
+            BorrowGraph graph = build(today, edges);
+            current = graph;
+            coverage = Coverage.after(0, scanned);
+            mergedHighWaterMark = coverage.highWaterMark;
+            unpersisted = false;
+            logger.info("借阅图构建完成: users={}, books={}, edges={}, 耗时{}ms",
+                    graph.userIds.length, graph.bookIds.length, graph.neighbors.length / 2,
+                    System.currentTimeMillis() - start);
+            persist(graph, coverage.highWaterMark);
+        } catch (Exception e) {
+            logger.error("构建借阅图失败", e);
+        }
+    }
+    
+    /**
+     * 加载快照文件并补读高水位之后的借阅，成功返回true。
+     * 扫描期间尚未提交、记录ID却低于高水位的借阅会被漏掉，由每天的全量重建纠正
+     */
+    private static boolean restore() {
+        long start = System.currentTimeMillis();
+        Snapshot snapshot = load();
+        if (snapshot == null) {
+            return false;
+        }
+        try {
+            BorrowGraph graph = snapshot.graph;
+            long baseDay = graph.baseDay;
+            EdgeList replayed = new EdgeList();
+            RecordIds scanned = new RecordIds();
+            new BorrowRecordDao().forEachBorrowAfter(snapshot.highWaterMark, (recordId, userId, bookId, borrowTime) -> {
+                replayed.addBorrow(userId, bookId, baseDay, borrowTime.toLocalDate().toEpochDay());
+                scanned.add(recordId);
+            });
+            if (replayed.size > 0) {
+                graph = merge(graph, replayed);
+            }
+            current = graph;
+            coverage = Coverage.after(snapshot.highWaterMark, scanned);
+            mergedHighWaterMark = coverage.highWaterMark;
+            unpersisted = false;
+            logger.info("借阅图从快照恢复: users={}, books={}, edges={}, 补读借阅{}条, 耗时{}ms",
+                    graph.userIds.length, graph.bookIds.length, graph.neighbors.length / 2, replayed.size,
+                    System.currentTimeMillis() - start);
+            if (replayed.size > 0) {
+                persist(graph, coverage.highWaterMark);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("补读快照之后的借阅失败，改为全量重建", e);
+            return false;
+        }
+    }
+    
+    /**
+     * 内存映射读取快照文件，文件不存在、格式或衰减档位不符时返回null
+     */
+    private static Snapshot load() {
+        if (snapshotFile == null || !Files.isRegularFile(snapshotFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < HEADER_BYTES || buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION) {
+                logger.warn("借阅图快照文件格式不符，忽略: file={}", snapshotFile);
+                return null;
+            }
+            long baseDay = buffer.getLong(8);
+            long highWaterMark = buffer.getLong(16);
+            long builtAt = buffer.getLong(24);
+            int userCount = buffer.getInt(32);
+            int bookCount = buffer.getInt(36);
+            int entryCount = buffer.getInt(40);
+            int profileCount = buffer.getInt(44);
+            if (channel.size() != fileSize(userCount, bookCount, entryCount, profileCount)) {
+                logger.warn("借阅图快照文件长度不符，忽略: file={}", snapshotFile);
+                return null;
+            }
+            buffer.position(HEADER_BYTES);
+            double[] lambdas = new double[profileCount];
+            buffer.asDoubleBuffer().get(lambdas);
+            if (!Arrays.equals(lambdas, DECAY_LAMBDAS)) {
+                logger.warn("借阅图快照的衰减档位与当前配置不符，忽略: file={}", snapshotFile);
+                return null;
+            }
+            buffer.position(buffer.position() + 8 * profileCount);
+            
+            // 整段批量拷贝到堆数组：PPR等热循环按下标直接读原始类型数组
+            long[] userIds = new long[userCount];
+            buffer.asLongBuffer().get(userIds);
+            buffer.position(buffer.position() + 8 * userCount);
+            long[] bookIds = new long[bookCount];
+            buffer.asLongBuffer().get(bookIds);
+            buffer.position(buffer.position() + 8 * bookCount);
+            int[] offsets = new int[userCount + bookCount + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + 4 * offsets.length);
+            int[] neighbors = new int[entryCount];
+            buffer.asIntBuffer().get(neighbors);
+            buffer.position(buffer.position() + 4 * entryCount);
+            int[] lastBorrowDays = new int[entryCount];
+            buffer.asIntBuffer().get(lastBorrowDays);
+            buffer.position(buffer.position() + 4 * entryCount);
+            float[][] weights = new float[profileCount][entryCount];
+            for (int p = 0; p < profileCount; p++) {
+                buffer.asFloatBuffer().get(weights[p]);
+                buffer.position(buffer.position() + 4 * entryCount);
+            }
+            
+            logger.info("加载借阅图快照: file={}, 构建于{}, 高水位={}", snapshotFile,
+                    Instant.ofEpochMilli(builtAt), highWaterMark);
+            return new Snapshot(create(baseDay, userIds, bookIds, offsets, neighbors, lastBorrowDays, weights),
+                    highWaterMark);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("加载借阅图快照失败: file={}", snapshotFile, e);
+            return null;
+        }
+    }
+    
+    /**
+     * 写入临时文件后原子替换，失败只记录日志（快照仍在内存中可用）
+     */
+    private static void persist(BorrowGraph graph, long highWaterMark) {
+        if (snapshotFile == null) {
+            return;
+        }
+        int entryCount = graph.neighbors.length;
+        long size = fileSize(graph.userIds.length, graph.bookIds.length, entryCount, DECAY_LAMBDAS.length);
+        if (size > Integer.MAX_VALUE) {
+            logger.warn("借阅图快照超过2GB，不写入文件: size={}", size);
+            return;
+        }
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            Path dir = snapshotFile.toAbsolutePath().getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION).putLong(graph.baseDay).putLong(highWaterMark)
+                        .putLong(System.currentTimeMillis()).putInt(graph.userIds.length).putInt(graph.bookIds.length)
+                        .putInt(entryCount).putInt(DECAY_LAMBDAS.length);
+                buffer.asDoubleBuffer().put(DECAY_LAMBDAS);
+                buffer.position(buffer.position() + 8 * DECAY_LAMBDAS.length);
+                buffer.asLongBuffer().put(graph.userIds);
+                buffer.position(buffer.position() + 8 * graph.userIds.length);
+                buffer.asLongBuffer().put(graph.bookIds);
+                buffer.position(buffer.position() + 8 * graph.bookIds.length);
+                buffer.asIntBuffer().put(graph.offsets);
+                buffer.position(buffer.position() + 4 * graph.offsets.length);
+                buffer.asIntBuffer().put(graph.neighbors);
+                buffer.position(buffer.position() + 4 * entryCount);
+                buffer.asIntBuffer().put(graph.lastBorrowDays);
+                buffer.position(buffer.position() + 4 * entryCount);
+                for (float[] weights : graph.profileLogWeights) {
+                    buffer.asFloatBuffer().put(weights);
+                    buffer.position(buffer.position() + 4 * entryCount);
+                }
+                buffer.force();
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("借阅图快照已保存: file={}, 高水位={}", snapshotFile, highWaterMark);
+        } catch (IOException e) {
+            logger.warn("保存借阅图快照失败: file={}", snapshotFile, e);
+        }
+    }
+    
+    private static long fileSize(int userCount, int bookCount, int entryCount, int profileCount) {
+        return HEADER_BYTES + 8L * profileCount + 8L * (userCount + bookCount)
+                + 4L * (userCount + bookCount + 1) + 4L * entryCount * (2 + profileCount);
+    }
+    
+    /**
+     * 把待合并的新借阅增量并入当前快照，生成新快照（不访问数据库）；快照已包含的借阅直接丢弃
+     */
+    private static synchronized void mergePending() {
+        BorrowGraph graph = current;
+        if (graph == null || pending.isEmpty()) {
+            return;
+        }
+        try {
+            EdgeList edges = new EdgeList();
+            long maxRecordId = mergedHighWaterMark;
+            int skipped = 0;
+            PendingEdge edge;
+            while ((edge = pending.poll()) != null) {
+                if (coverage != null && coverage.covers(edge.recordId)) {
+                    skipped++;
+                    continue;
+                }
+                edges.addBorrow(edge.userId, edge.bookId, graph.baseDay, edge.borrowDay);
+                maxRecordId = Math.max(maxRecordId, edge.recordId);
+            }
+            if (edges.size > 0) {
+                current = merge(graph, edges);
+                mergedHighWaterMark = maxRecordId;
+                unpersisted = true;
+            }
+            logger.debug("借阅图合并新借阅: {}条, 已在快照中{}条", edges.size, skipped);
+        } catch (Exception e) {
+            logger.error("合并借阅图失败", e);
+        }
+    }
+    
+    /**
+     * 把合并了新借阅的当前快照写入文件，高水位取已合并的最大借阅记录ID：
+     * 高水位之后的借阅都不在快照中，重启补读时不会重复计入；
+     * 低于高水位但尚未合并的借阅（提交顺序与ID顺序不一致）在重启时漏掉，与restore相同，由每天的全量重建纠正
+     */
+    private static synchronized void persistMerged() {
+        if (!unpersisted || current == null) {
+            return;
+        }
+        persist(current, mergedHighWaterMark);
+        unpersisted = false;
+    }
+    
+    /**
+     * 基准日距今超过RENORMALIZE_DAYS天时前移到今天：各档位对数权重统一减去lambda * 前移天数，拓扑不变
+     */
+    private static synchronized void renormalize() {
+        BorrowGraph graph = current;
+        long today = LocalDate.now().toEpochDay();
+        if (graph == null || today - graph.baseDay < RENORMALIZE_DAYS) {
+            return;
+        }
+        try {
+            current = rebase(graph, today);
+            logger.info("借阅图权重基准日前移: {} -> {}", LocalDate.ofEpochDay(graph.baseDay), LocalDate.ofEpochDay(today));
+        } catch (Exception e) {
+            logger.error("借阅图权重基准日前移失败", e);
+        }
+    }
+    
+    /**
+     * 把快照的基准日移到baseDay：各档位对数权重统一减去lambda * 移动天数，拓扑不变
+     */
+    static BorrowGraph rebase(BorrowGraph graph, long baseDay) {
+        float[][] rescaled = new float[DECAY_LAMBDAS.length][];
+        for (int p = 0; p < DECAY_LAMBDAS.length; p++) {
+            float shift = (float) (DECAY_LAMBDAS[p] * (baseDay - graph.baseDay));
+            rescaled[p] = new float[graph.neighbors.length];
+            for (int e = 0; e < rescaled[p].length; e++) {
+                rescaled[p][e] = graph.profileLogWeights[p][e] - shift;
+            }
+        }
+        return create(baseDay, graph.userIds, graph.bookIds, graph.offsets, graph.neighbors, graph.lastBorrowDays,
+                rescaled);
+    }
+    
+    private static float logRelativeWeight(double lambda, long baseDay, long borrowDay) {
+        return (float) (-lambda * (baseDay - borrowDay));
+    }
+    
+    /**
+     * 两个对数权重之和的对数：log(exp(a) + exp(b))
+     */
+    private static float logAdd(float a, float b) {
+        float max = Math.max(a, b);
+        if (max == Float.NEGATIVE_INFINITY) {
+            return max;
+        }
+        return (float) (max + Math.log1p(Math.exp(Math.min(a, b) - max)));
+    }
+    
+    /**
+     * logWeights[from, to)的权重之和的对数，先减去最大值再取指数，不会下溢；区间为空时返回负无穷
+     */
+    private static float logSum(float[] logWeights, int from, int to) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int e = from; e < to; e++) {
+            max = Math.max(max, logWeights[e]);
+        }
+        if (max == Float.NEGATIVE_INFINITY) {
+            return max;
+        }
+        double sum = 0;
+        for (int e = from; e < to; e++) {
+            sum += Math.exp(logWeights[e] - max);
+        }
+        return (float) (max + Math.log(sum));
+    }
+    
+    private static BorrowGraph empty() {
+        return create(LocalDate.now().toEpochDay(), new long[0], new long[0], new int[1], new int[0], new int[0],
+                new float[DECAY_LAMBDAS.length][0]);
+    }
+    
+    /**
+     * 由边表构建CSR快照：重新编号、按度数分配空间、双向填边，再逐行按邻居排序并合并重复边
+     */
+    private static BorrowGraph build(long baseDay, EdgeList edges) {
+        long[] userIds = distinctSorted(edges.users, edges.size);
+        long[] bookIds = distinctSorted(edges.books, edges.size);
+        int userCount = userIds.length;
+        int nodeCount = userCount + bookIds.length;
+        
+        int[] from = new int[edges.size];
+        int[] to = new int[edges.size];
+        int[] degree = new int[nodeCount];
+        for (int i = 0; i < edges.size; i++) {
+            from[i] = Arrays.binarySearch(userIds, edges.users[i]);
+            to[i] = userCount + Arrays.binarySearch(bookIds, edges.books[i]);
+            degree[from[i]]++;
+            degree[to[i]]++;
+        }
+        
+        int[] offsets = new int[nodeCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            offsets[node + 1] = offsets[node] + degree[node];
+        }
+        int[] cursor = Arrays.copyOf(offsets, nodeCount);
+        int[] neighbors = new int[offsets[nodeCount]];
+        // 每条边对应的边表下标，排序合并时据此取各档位权重
+        int[] sources = new int[offsets[nodeCount]];
+        for (int i = 0; i < edges.size; i++) {
+            int e = cursor[from[i]]++;
+            neighbors[e] = to[i];
+            sources[e] = i;
+            e = cursor[to[i]]++;
+            neighbors[e] = from[i];
+            sources[e] = i;
+        }
+        
+        // 逐行排序并合并重复边：邻居节点号放高32位、边表下标放低32位，排序long即按邻居排序
+        int maxDegree = 0;
+        for (int d : degree) {
+            maxDegree = Math.max(maxDegree, d);
+        }
+        long[] row = new long[maxDegree];
+        int[] compactOffsets = new int[nodeCount + 1];
+        float[][] weights = new float[DECAY_LAMBDAS.length][offsets[nodeCount]];
+        int[] lastBorrowDays = new int[offsets[nodeCount]];
+        int write = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            int begin = offsets[node];
+            int length = offsets[node + 1] - begin;
+            for (int k = 0; k < length; k++) {
+                row[k] = ((long) neighbors[begin + k] << 32) | sources[begin + k];
+            }
+            Arrays.sort(row, 0, length);
+            compactOffsets[node] = write;
+            for (int k = 0; k < length; k++) {
+                int neighbor = (int) (row[k] >>> 32);
+                int source = (int) row[k];
+                if (write > compactOffsets[node] && neighbors[write - 1] == neighbor) {
+                    for (int p = 0; p < weights.length; p++) {
+                        weights[p][write - 1] = logAdd(weights[p][write - 1], edges.weights[p][source]);
+                    }
+                    lastBorrowDays[write - 1] = Math.max(lastBorrowDays[write - 1], edges.days[source]);
+                } else {
+                    neighbors[write] = neighbor;
+                    for (int p = 0; p < weights.length; p++) {
+                        weights[p][write] = edges.weights[p][source];
+                    }
+                    lastBorrowDays[write] = edges.days[source];
+                    write++;
+                }
+            }
+        }
+        compactOffsets[nodeCount] = write;
+        for (int p = 0; p < weights.length; p++) {
+            weights[p] = Arrays.copyOf(weights[p], write);
+        }
+        
+        return create(baseDay, userIds, bookIds, compactOffsets, Arrays.copyOf(neighbors, write),
+                Arrays.copyOf(lastBorrowDays, write), weights);
+    }
+    
+    private static long[] distinctSorted(long[] values, int size) {
+        long[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+    
+    /**
+     * 把边表（权重相对graph的基准日）增量并入快照：新用户、新图书按序插入节点号，原有各行不重新排序；
+     * 只有新边涉及的行与新边按邻居归并并重新计算出边权重之和。没有新节点时，其余连续的行整段拷贝；
+     * 有新节点时节点号整体平移，原有邻居按单调的映射改写（映射后行内仍有序）
+     */
+    private static BorrowGraph merge(BorrowGraph graph, EdgeList delta) {
+        long[] userIds = union(graph.userIds, delta.users, delta.size);
+        long[] bookIds = union(graph.bookIds, delta.books, delta.size);
+        int userCount = userIds.length;
+        int nodeCount = userCount + bookIds.length;
+        int oldUserCount = graph.userIds.length;
+        boolean renumbered = nodeCount != graph.getNodeCount();
+        
+        // 旧节点号 -> 新节点号；新节点号 -> 旧节点号（新节点为-1）
+        int[] newOf = null;
+        int[] oldOf = null;
+        if (renumbered) {
+            newOf = new int[graph.getNodeCount()];
+            oldOf = new int[nodeCount];
+            Arrays.fill(oldOf, -1);
+            for (int i = 0, j = 0; i < oldUserCount; i++, j++) {
+                while (userIds[j] != graph.userIds[i]) {
+                    j++;
+                }
+                newOf[i] = j;
+                oldOf[j] = i;
+            }
+            for (int i = 0, j = 0; i < graph.bookIds.length; i++, j++) {
+                while (bookIds[j] != graph.bookIds[i]) {
+                    j++;
+                }
+                newOf[oldUserCount + i] = userCount + j;
+                oldOf[userCount + j] = oldUserCount + i;
+            }
+        }
+        
+        // 新边按(用户节点, 图书节点)合并权重，再展开为双向的邻接条目：行节点号放高32位、邻居放低32位，排序即按行、行内按邻居
+        Map<Long, AddedEdge> added = new HashMap<>();
+        for (int i = 0; i < delta.size; i++) {
+            long user = Arrays.binarySearch(userIds, delta.users[i]);
+            long book = userCount + Arrays.binarySearch(bookIds, delta.books[i]);
+            AddedEdge edge = added.computeIfAbsent((user << 32) | book, key -> new AddedEdge());
+            for (int p = 0; p < edge.weights.length; p++) {
+                edge.weights[p] = logAdd(edge.weights[p], delta.weights[p][i]);
+            }
+            edge.lastBorrowDay = Math.max(edge.lastBorrowDay, delta.days[i]);
+        }
+        long[] entries = new long[added.size() * 2];
+        int count = 0;
+        for (long key : added.keySet()) {
+            entries[count++] = key;
+            entries[count++] = swap(key);
+        }
+        Arrays.sort(entries);
+        
+        int profiles = DECAY_LAMBDAS.length;
+        int[] offsets = new int[nodeCount + 1];
+        int[] neighbors = new int[graph.neighbors.length + entries.length];
+        int[] lastBorrowDays = new int[neighbors.length];
+        float[][] weights = new float[profiles][neighbors.length];
+        float[][] weightSums = new float[profiles][nodeCount];
+        int write = 0;
+        int next = 0;
+        int node = 0;
+        while (node < nodeCount) {
+            int nextRow = next < entries.length ? (int) (entries[next] >>> 32) : nodeCount;
+            if (!renumbered && node < nextRow) {
+                // 没有新边的连续行整段拷贝，行偏移统一平移
+                int begin = graph.offsets[node];
+                int length = graph.offsets[nextRow] - begin;
+                System.arraycopy(graph.neighbors, begin, neighbors, write, length);
+                System.arraycopy(graph.lastBorrowDays, begin, lastBorrowDays, write, length);
+                for (int p = 0; p < profiles; p++) {
+                    System.arraycopy(graph.profileLogWeights[p], begin, weights[p], write, length);
+                    System.arraycopy(graph.profileLogWeightSums[p], node, weightSums[p], node, nextRow - node);
+                }
+                for (; node < nextRow; node++) {
+                    offsets[node] = graph.offsets[node] - begin + write;
+                }
+                write += length;
+                continue;
+            }
+            
+            offsets[node] = write;
+            int old = renumbered ? oldOf[node] : node;
+            int e = old >= 0 ? graph.offsets[old] : 0;
+            int end = old >= 0 ? graph.offsets[old + 1] : 0;
+            if (node < nextRow) {
+                // 没有新边的行只改写邻居节点号
+                for (; e < end; e++, write++) {
+                    neighbors[write] = newOf[graph.neighbors[e]];
+                    lastBorrowDays[write] = graph.lastBorrowDays[e];
+                    for (int p = 0; p < profiles; p++) {
+                        weights[p][write] = graph.profileLogWeights[p][e];
+                    }
+                }
+                for (int p = 0; p < profiles; p++) {
+                    weightSums[p][node] = old >= 0 ? graph.profileLogWeightSums[p][old] : Float.NEGATIVE_INFINITY;
+                }
+                node++;
+                continue;
+            }
+            
+            // 原有的行与新边按邻居归并，同一邻居的权重相加
+            while (e < end || next < entries.length && (int) (entries[next] >>> 32) == node) {
+                int existing = e < end ? (renumbered ? newOf[graph.neighbors[e]] : graph.neighbors[e]) : Integer.MAX_VALUE;
+                int incoming = next < entries.length && (int) (entries[next] >>> 32) == node
+                        ? (int) entries[next] : Integer.MAX_VALUE;
+                neighbors[write] = Math.min(existing, incoming);
+                if (existing <= incoming) {
+                    for (int p = 0; p < profiles; p++) {
+                        weights[p][write] = graph.profileLogWeights[p][e];
+                    }
+                    lastBorrowDays[write] = graph.lastBorrowDays[e];
+                    e++;
+                }
+                if (incoming <= existing) {
+                    AddedEdge edge = added.get(node < userCount ? entries[next] : swap(entries[next]));
+                    for (int p = 0; p < profiles; p++) {
+                        weights[p][write] = existing == incoming
+                                ? logAdd(weights[p][write], edge.weights[p]) : edge.weights[p];
+                    }
+                    lastBorrowDays[write] = Math.max(lastBorrowDays[write], edge.lastBorrowDay);
+                    next++;
+                }
+                write++;
+            }
+            for (int p = 0; p < profiles; p++) {
+                weightSums[p][node] = logSum(weights[p], offsets[node], write);
+            }
+            node++;
+        }
+        offsets[nodeCount] = write;
+        for (int p = 0; p < profiles; p++) {
+            weights[p] = Arrays.copyOf(weights[p], write);
+        }
+        
+        return new BorrowGraph(graph.baseDay, userIds, bookIds, offsets, Arrays.copyOf(neighbors, write),
+                Arrays.copyOf(lastBorrowDays, write), weights, weightSums, DEFAULT_PROFILE);
+    }
+    
+    /**
+     * 交换高低32位（行节点号与邻居互换）
+     */
+    private static long swap(long entry) {
+        return (entry << 32) | (entry >>> 32);
+    }
+    
+    /**
+     * 升序数组并入另一组ID后的升序去重结果，没有新ID时返回原数组
+     */
+    private static long[] union(long[] sorted, long[] values, int size) {
+        long[] added = distinctSorted(values, size);
+        long[] result = new long[sorted.length + added.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < sorted.length || j < added.length) {
+            if (j == added.length || i < sorted.length && sorted[i] < added[j]) {
+                result[k++] = sorted[i++];
+            } else if (i == sorted.length || added[j] < sorted[i]) {
+                result[k++] = added[j++];
+            } else {
+                result[k++] = sorted[i++];
+                j++;
+            }
+        }
+        return k == sorted.length ? sorted : Arrays.copyOf(result, k);
+    }
+    
+    /**
+     * 按lambda取最接近的衰减档位视图（与当前快照共享拓扑和权重数组）
+     */
+    public BorrowGraph withDecay(double lambda) {
+        int nearest = 0;
+        for (int p = 1; p < DECAY_LAMBDAS.length; p++) {
+            if (Math.abs(Math.log(DECAY_LAMBDAS[p] / lambda)) < Math.abs(Math.log(DECAY_LAMBDAS[nearest] / lambda))) {
+                nearest = p;
+            }
+        }
+        if (nearest == profile) {
+            return this;
+        }
+        return new BorrowGraph(baseDay, userIds, bookIds, offsets, neighbors, lastBorrowDays, profileLogWeights,
+                profileLogWeightSums, nearest);
+    }
+    
+    /**
+     * 本视图使用的衰减参数
+     */
+    public double getDecayLambda() {
+        return DECAY_LAMBDAS[profile];
+    }
+    
+    /**
+     * 节点总数
+     */
+    public int getNodeCount() {
+        return logWeightSums.length;
+    }
+    
+    /**
+     * 边数（每条用户-图书边计一次）
+     */
+    public int getEdgeCount() {
+        return neighbors.length / 2;
+    }
+    
+    /**
+     * 图中是否有该用户（即该用户有借阅记录）
+     */
+    public boolean containsUser(Long userId) {
+        return userNode(userId) >= 0;
+    }
+    
+    /**
+     * 用户对应的节点号，不存在返回-1
+     */
+    int userNode(long userId) {
+        int index = Arrays.binarySearch(userIds, userId);
+        return index >= 0 ? index : -1;
+    }
+    
+    /**
+     * 图书对应的节点号，不存在返回-1
+     */
+    int bookNode(long bookId) {
+        int index = Arrays.binarySearch(bookIds, bookId);
+        return index >= 0 ? userIds.length + index : -1;
+    }
+    
+    /**
+     * 第一个图书节点号，图书节点为[firstBookNode(), getNodeCount())
+     */
+    int firstBookNode() {
+        return userIds.length;
+    }
+    
+    int bookCount() {
+        return bookIds.length;
+    }
+    
+    boolean isBook(int node) {
+        return node >= userIds.length;
+    }
+    
+    long bookId(int node) {
+        return bookIds[node - userIds.length];
+    }
+    
+    int edgeBegin(int node) {
+        return offsets[node];
+    }
+    
+    int edgeEnd(int node) {
+        return offsets[node + 1];
+    }
+    
+    int neighbor(int edge) {
+        return neighbors[edge];
+    }
+    
+    /**
+     * 边的对数权重（多次借阅为各次权重之和的对数），相对基准日
+     */
+    float logWeight(int edge) {
+        return logWeights[edge];
+    }
+    
+    /**
+     * 边上最近一次借阅的对数权重（多次借阅不累加），与logWeight(edge)相对同一基准日
+     */
+    float latestLogWeight(int edge) {
+        return logRelativeWeight(DECAY_LAMBDAS[profile], baseDay, lastBorrowDays[edge]);
+    }
+    
+    /**
+     * 节点出边权重之和的对数，没有出边时为负无穷
+     */
+    float logWeightSum(int node) {
+        return logWeightSums[node];
+    }
+    
+    /**
+     * from到to的边号，不相邻返回-1（每行按邻居升序，二分查找）
+     */
+    int findEdge(int from, int to) {
+        int index = Arrays.binarySearch(neighbors, offsets[from], offsets[from + 1], to);
+        return index >= 0 ? index : -1;
+    }
+    
+    /**
+     * 由给定借阅构建快照（离线评估按时间切分的训练集），不访问数据库
+     */
+    public static final class Builder {
+        private final long baseDay;
+        private final EdgeList edges = new EdgeList();
+        
+        /**
+         * @param baseDate 权重基准日，通常取最后一次借阅的日期
+         */
+        public Builder(LocalDate baseDate) {
+            this.baseDay = baseDate.toEpochDay();
+        }
+        
+        public Builder add(long userId, long bookId, LocalDate borrowDate) {
+            edges.addBorrow(userId, bookId, baseDay, borrowDate.toEpochDay());
+            return this;
+        }
+        
+        public BorrowGraph build() {
+            return edges.size == 0 ? empty() : BorrowGraph.build(baseDay, edges);
+        }
+        
+        /**
+         * 把添加的借阅增量并入graph（与合并新借阅相同的路径），graph须使用相同的基准日
+         */
+        BorrowGraph mergeInto(BorrowGraph graph) {
+            if (graph.baseDay != baseDay) {
+                throw new IllegalArgumentException("基准日不一致: " + graph.baseDay + " != " + baseDay);
+            }
+            return edges.size == 0 ? graph : merge(graph, edges);
+        }
+    }
+    
+    /**
+     * 可增长的原始类型边表
+     */
+    private static class EdgeList {
+        long[] users = new long[1024];
+        long[] books = new long[1024];
+        // 对数权重：[档位][边]
+        float[][] weights = new float[DECAY_LAMBDAS.length][1024];
+        // 借阅日（epoch day）
+        int[] days = new int[1024];
+        int size;
+        
+        /**
+         * 添加一次借阅，按各档位计算相对基准日的对数权重
+         */
+        void addBorrow(long userId, long bookId, long baseDay, long borrowDay) {
+            int index = add(userId, bookId);
+            for (int p = 0; p < DECAY_LAMBDAS.length; p++) {
+                weights[p][index] = logRelativeWeight(DECAY_LAMBDAS[p], baseDay, borrowDay);
+            }
+            days[index] = (int) borrowDay;
+        }
+        
+        /**
+         * 添加一条边，权重和借阅日由调用方填写，返回边表下标
+         */
+        int add(long userId, long bookId) {
+            if (size == users.length) {
+                int capacity = size * 2;
+                users = Arrays.copyOf(users, capacity);
+                books = Arrays.copyOf(books, capacity);
+                days = Arrays.copyOf(days, capacity);
+                for (int p = 0; p < weights.length; p++) {
+                    weights[p] = Arrays.copyOf(weights[p], capacity);
+                }
+            }
+            users[size] = userId;
+            books[size] = bookId;
+            return size++;
+        }
+    }
+    
+    /**
+     * 从文件加载的快照及其高水位（快照包含的最大借阅记录ID）
+     */
+    private static class Snapshot {
+        final BorrowGraph graph;
+        final long highWaterMark;
+        
+        Snapshot(BorrowGraph graph, long highWaterMark) {
+            this.graph = graph;
+            this.highWaterMark = highWaterMark;
+        }
+    }
+    
+    /**
+     * 增量合并时同一用户-图书的新边
+     */
+    private static class AddedEdge {
+        // 对数权重，初始为负无穷（权重0）
+        final float[] weights = new float[DECAY_LAMBDAS.length];
+        int lastBorrowDay = Integer.MIN_VALUE;
+        
+        AddedEdge() {
+            Arrays.fill(weights, Float.NEGATIVE_INFINITY);
+        }
+    }
+    
+    /**
+     * 扫描到的借阅记录ID
+     */
+    private static class RecordIds {
+        long[] ids = new long[1024];
+        int size;
+        
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+    
+    /**
+     * 快照已包含的借阅记录：ID不超过高水位且不在空洞中。
+     * 空洞是高水位以下扫描时没见到的ID区间（已删除的记录，或扫描时尚未提交的借阅），按区间存储，通常很少
+     */
+    private static class Coverage {
+        final long highWaterMark;
+        // 升序、互不相交的闭区间[gaps[2k], gaps[2k + 1]]
+        private final long[] gaps;
+        
+        private Coverage(long highWaterMark, long[] gaps) {
+            this.highWaterMark = highWaterMark;
+            this.gaps = gaps;
+        }
+        
+        /**
+         * 由扫描到的记录ID（均大于floor）构建，不超过floor的记录视为已包含
+         */
+        static Coverage after(long floor, RecordIds scanned) {
+            long[] sorted = Arrays.copyOf(scanned.ids, scanned.size);
+            Arrays.sort(sorted);
+            long[] gaps = new long[16];
+            int count = 0;
+            long expected = floor + 1;
+            for (long id : sorted) {
+                if (id > expected) {
+                    if (count == gaps.length) {
+                        gaps = Arrays.copyOf(gaps, count * 2);
+                    }
+                    gaps[count++] = expected;
+                    gaps[count++] = id - 1;
+                }
+                expected = Math.max(expected, id + 1);
+            }
+            return new Coverage(expected - 1, Arrays.copyOf(gaps, count));
+        }
+        
+        boolean covers(long recordId) {
+            if (recordId > highWaterMark) {
+                return false;
+            }
+            int low = 0;
+            int high = gaps.length / 2 - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (gaps[2 * mid] > recordId) {
+                    high = mid - 1;
+                } else if (gaps[2 * mid + 1] < recordId) {
+                    low = mid + 1;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    private static class PendingEdge {
+        final long recordId;
+        final long userId;
+        final long bookId;
+        final long borrowDay;
+        
+        PendingEdge(long recordId, long userId, long bookId, long borrowDay) {
+            this.recordId = recordId;
+            this.userId = userId;
+            this.bookId = bookId;
+            this.borrowDay = borrowDay;
+        }
+    }
+}
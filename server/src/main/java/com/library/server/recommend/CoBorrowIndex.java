@@ -0,0 +1,523 @@
+package com.library.server.recommend;
+
+import com.library.server.dao.DataSourceProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 图书-图书共借相似度索引
+ * 每本书保留共借最多的前topK本书，相似度为余弦：共同借阅人数 / sqrt(两本书各自的借阅人数之积)。
+ * 存储为原始类型数组：bookIds（升序）、offsets、neighbors（bookIds下标，每行升序）、similarities，
+ * 按行号读取即可，"借过X的人也借了Y"变成查表，与用户已借图书（同样按图书ID升序）做一次归并即可得到推荐理由。
+ * 由后台线程从全局借阅图（BorrowGraph，即borrow_records的内存镜像）维护：启动时全量构建，
+ * 之后每REFRESH_INTERVAL_SECONDS秒只重算新借阅涉及的行（借书用户借过的所有图书），每天全量重建一次。
+ * 全量构建结果写入recommend.coBorrow.file指定的文件，重启时直接内存映射该文件，全量构建完成前先用它提供服务
+ */
+public final class CoBorrowIndex {
+    private static final Logger logger = LoggerFactory.getLogger(CoBorrowIndex.class);
+    
+    // 文件格式：魔数、版本、图书数、条目数、构建时间，之后依次为bookIds、offsets、neighbors、similarities
+    private static final int FILE_MAGIC = 0x43424958;
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    
+    private static final int DEFAULT_TOP_K = 20;
+    // 增量刷新间隔（秒）
+    private static final long REFRESH_INTERVAL_SECONDS = 60;
+    // 全量重建间隔（小时）：增量刷新不重算未受影响的行，其中引用的借阅人数会略微过期，由全量重建纠正
+    private static final long REBUILD_INTERVAL_HOURS = 24;
+    
+    private static volatile CoBorrowIndex current = empty();
+    private static final Queue<Borrow> dirty = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean started = new AtomicBoolean(false);
+    private static final ScheduledExecutorService maintainer = Executors.newSingleThreadScheduledExecutor(
+            r -> {
+                Thread t = new Thread(r, "CoBorrowIndexMaintainer");
+                t.setDaemon(true);
+                return t;
+            }
+    );
+    private static int topK = DEFAULT_TOP_K;
+    private static Path file;
+    
+    private final long builtAt;
+    // 行号j对应bookIds[j]，升序
+    private final LongBuffer bookIds;
+    // 行j的条目为[offsets[j], offsets[j + 1])
+    private final IntBuffer offsets;
+    // 条目指向的图书行号，每行升序
+    private final IntBuffer neighbors;
+    private final FloatBuffer similarities;
+    
+    private CoBorrowIndex(long builtAt, LongBuffer bookIds, IntBuffer offsets,
+                          IntBuffer neighbors, FloatBuffer similarities) {
+        this.builtAt = builtAt;
+        this.bookIds = bookIds;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.similarities = similarities;
+    }
+    
+    /**
+     * 启动：加载上次持久化的索引，后台全量构建，之后定期增量刷新、每天全量重建（服务器启动时调用一次）
+     */
+    public static void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        Properties props = DataSourceProvider.loadProperties();
+        topK = Math.max(1, Integer.parseInt(props.getProperty("recommend.coBorrow.topK",
+                String.valueOf(DEFAULT_TOP_K)).trim()));
+        String path = props.getProperty("recommend.coBorrow.file", "").trim();
+        file = path.isEmpty() ? null : Paths.get(path);
+        
+        maintainer.execute(() -> {
+            load();
+            rebuild();
+        });
+        maintainer.scheduleWithFixedDelay(CoBorrowIndex::refresh,
+                REFRESH_INTERVAL_SECONDS, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        maintainer.scheduleAtFixedRate(CoBorrowIndex::rebuild,
+                REBUILD_INTERVAL_HOURS, REBUILD_INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+    
+    /**
+     * 获取当前索引；首次构建完成前为空索引（或上次持久化的索引）
+     */
+    public static CoBorrowIndex get() {
+        return current;
+    }
+    
+    /**
+     * 由给定的借阅图构建索引，不替换当前索引、不写文件
+     */
+    public static CoBorrowIndex build(BorrowGraph graph, int topK) {
+        Builder builder = new Builder(graph, topK);
+        for (int book = 0; book < graph.bookCount(); book++) {
+            builder.computeRow(book);
+        }
+        return builder.finish();
+    }
+    
+    /**
+     * 替换当前索引（离线评估时安装由训练集借阅图构建的索引；后台维护未启动时才有意义）
+     */
+    public static void install(CoBorrowIndex index) {
+        current = index;
+    }
+    
+    /**
+     * 登记一次借阅（借书事务提交后调用），下次增量刷新时重算相关的行
+     */
+    public static void onBorrowed(Long userId, Long bookId) {
+        if (!started.get() || userId == null || bookId == null) {
+            return;
+        }
+        dirty.add(new Borrow(userId, bookId));
+    }
+    
+    /**
+     * 从借阅图全量构建并持久化
+     */
+    private static synchronized void rebuild() {
+        try {
+            long start = System.currentTimeMillis();
+            BorrowGraph graph = BorrowGraph.get();
+            if (graph.getEdgeCount() == 0) {
+                // 借阅图加载失败时退化为空图，保留当前索引和磁盘文件，不用空索引覆盖
+                logger.warn("借阅图为空，跳过本次共借相似度索引构建");
+                return;
+            }
+            CoBorrowIndex index = build(graph, topK);
+            current = index;
+            logger.info("共借相似度索引构建完成: books={}, entries={}, 耗时{}ms",
+                    index.getBookCount(), index.getEntryCount(), System.currentTimeMillis() - start);
+            persist(index);
+        } catch (Exception e) {
+            logger.error("构建共借相似度索引失败", e);
+        }
+    }
+    
+    /**
+     * 增量刷新：用户u借了书b，只有u借过的图书（含b）之间的共借人数变化，只重算这些行，其余行从当前索引复制
+     */
+    private static synchronized void refresh() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        try {
+            BorrowGraph graph = BorrowGraph.get();
+            boolean[] affected = new boolean[graph.bookCount()];
+            List<Borrow> unmerged = new ArrayList<>();
+            int applied = 0;
+            Borrow borrow;
+            while ((borrow = dirty.poll()) != null) {
+                int user = graph.userNode(borrow.userId);
+                int book = graph.bookNode(borrow.bookId);
+                if (user < 0 || book < 0 || graph.findEdge(user, book) < 0) {
+                    // 借阅图尚未合并这次借阅，留到下次
+                    unmerged.add(borrow);
+                    continue;
+                }
+                for (int e = graph.edgeBegin(user); e < graph.edgeEnd(user); e++) {
+                    affected[graph.neighbor(e) - graph.firstBookNode()] = true;
+                }
+                applied++;
+            }
+            dirty.addAll(unmerged);
+            if (applied == 0) {
+                return;
+            }
+            
+            CoBorrowIndex index = current;
+            Builder builder = new Builder(graph, topK);
+            int recomputed = 0;
+            for (int book = 0; book < graph.bookCount(); book++) {
+                int row = affected[book] ? -1 : index.row(graph.bookId(graph.firstBookNode() + book));
+                if (row >= 0) {
+                    builder.copyRow(index, row);
+                } else {
+                    builder.computeRow(book);
+                    recomputed++;
+                }
+            }
+            current = builder.finish();
+            logger.debug("共借相似度索引增量刷新: 借阅{}条，重算{}行", applied, recomputed);
+        } catch (Exception e) {
+            logger.error("刷新共借相似度索引失败", e);
+        }
+    }
+    
+    /**
+     * 内存映射加载持久化的索引，文件不存在或格式不符时忽略
+     */
+    private static void load() {
+        if (file == null || !Files.isRegularFile(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < HEADER_BYTES || buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION) {
+                logger.warn("共借相似度索引文件格式不符，忽略: file={}", file);
+                return;
+            }
+            int bookCount = buffer.getInt(8);
+            int entryCount = buffer.getInt(12);
+            long builtAt = buffer.getLong(16);
+            if (channel.size() != fileSize(bookCount, entryCount)) {
+                logger.warn("共借相似度索引文件长度不符，忽略: file={}", file);
+                return;
+            }
+            
+            int position = HEADER_BYTES;
+            LongBuffer bookIds = buffer.slice(position, bookCount * 8).asLongBuffer();
+            position += bookCount * 8;
+            IntBuffer offsets = buffer.slice(position, (bookCount + 1) * 4).asIntBuffer();
+            position += (bookCount + 1) * 4;
+            IntBuffer neighbors = buffer.slice(position, entryCount * 4).asIntBuffer();
+            position += entryCount * 4;
+            FloatBuffer similarities = buffer.slice(position, entryCount * 4).asFloatBuffer();
+            
+            current = new CoBorrowIndex(builtAt, bookIds, offsets, neighbors, similarities);
+            logger.info("加载共借相似度索引: file={}, books={}, entries={}", file, bookCount, entryCount);
+        } catch (IOException e) {
+            logger.warn("加载共借相似度索引失败: file={}", file, e);
+        }
+    }
+    
+    /**
+     * 写入临时文件后原子替换，失败只记录日志（索引仍在内存中可用）
+     */
+    private static void persist(CoBorrowIndex index) {
+        if (file == null) {
+            return;
+        }
+        int bookCount = index.getBookCount();
+        int entryCount = index.getEntryCount();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(bookCount, entryCount));
+                buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(bookCount).putInt(entryCount).putLong(index.builtAt);
+                for (int row = 0; row < bookCount; row++) {
+                    buffer.putLong(index.bookIds.get(row));
+                }
+                for (int row = 0; row <= bookCount; row++) {
+                    buffer.putInt(index.offsets.get(row));
+                }
+                for (int e = 0; e < entryCount; e++) {
+                    buffer.putInt(index.neighbors.get(e));
+                }
+                for (int e = 0; e < entryCount; e++) {
+                    buffer.putFloat(index.similarities.get(e));
+                }
+                buffer.force();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("保存共借相似度索引失败: file={}", file, e);
+        }
+    }
+    
+    private static long fileSize(int bookCount, int entryCount) {
+        return HEADER_BYTES + 8L * bookCount + 4L * (bookCount + 1) + 8L * entryCount;
+    }
+    
+    private static CoBorrowIndex empty() {
+        return new CoBorrowIndex(0, LongBuffer.allocate(0), IntBuffer.wrap(new int[1]),
+                IntBuffer.allocate(0), FloatBuffer.allocate(0));
+    }
+    
+    /**
+     * 依次遍历用户已借图书中出现在bookId相似行里的图书（按图书ID归并），用于生成"因为您借过X"的推荐理由
+     */
+    void forEachBorrowedNeighbor(BorrowGraph graph, int userNode, long bookId, NeighborVisitor visitor) {
+        int row = row(bookId);
+        if (row < 0) {
+            return;
+        }
+        int e1 = graph.edgeBegin(userNode);
+        int end1 = graph.edgeEnd(userNode);
+        int e2 = rowBegin(row);
+        int end2 = rowEnd(row);
+        while (e1 < end1 && e2 < end2) {
+            long borrowed = graph.bookId(graph.neighbor(e1));
+            long similar = bookIdAt(neighborRow(e2));
+            if (borrowed < similar) {
+                e1++;
+            } else if (borrowed > similar) {
+                e2++;
+            } else {
+                visitor.visit(similar, similarity(e2));
+                e1++;
+                e2++;
+            }
+        }
+    }
+    
+    /**
+     * 图书对应的行号，不存在返回-1
+     */
+    int row(long bookId) {
+        int low = 0;
+        int high = bookIds.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = bookIds.get(mid);
+            if (value < bookId) {
+                low = mid + 1;
+            } else if (value > bookId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * row行中指向neighborRow的条目号，不存在返回-1（每行按行号升序，二分查找）
+     */
+    int findEntry(int row, int neighborRow) {
+        int low = rowBegin(row);
+        int high = rowEnd(row) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = neighbors.get(mid);
+            if (value < neighborRow) {
+                low = mid + 1;
+            } else if (value > neighborRow) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    long bookIdAt(int row) {
+        return bookIds.get(row);
+    }
+    
+    int rowBegin(int row) {
+        return offsets.get(row);
+    }
+    
+    int rowEnd(int row) {
+        return offsets.get(row + 1);
+    }
+    
+    int neighborRow(int entry) {
+        return neighbors.get(entry);
+    }
+    
+    float similarity(int entry) {
+        return similarities.get(entry);
+    }
+    
+    /**
+     * 有相似行的图书数
+     */
+    public int getBookCount() {
+        return bookIds.limit();
+    }
+    
+    /**
+     * 相似条目总数
+     */
+    public int getEntryCount() {
+        return neighbors.limit();
+    }
+    
+    /**
+     * 构建时间（毫秒时间戳），空索引为0
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+    
+    interface NeighborVisitor {
+        void visit(long sourceBookId, float similarity);
+    }
+    
+    /**
+     * 逐行生成索引：行号与借阅图中的图书下标一致
+     */
+    private static final class Builder {
+        private final BorrowGraph graph;
+        private final int topK;
+        private final int firstBook;
+        private final long[] bookIds;
+        // 计算单行时按图书下标累计共借人数，只重置本行触达的图书
+        private final int[] counts;
+        private final int[] touched;
+        private final long[] ranked;
+        
+        private final int[] offsets;
+        private int[] neighbors = new int[1024];
+        private float[] similarities = new float[1024];
+        private int rows;
+        private int size;
+        
+        Builder(BorrowGraph graph, int topK) {
+            this.graph = graph;
+            this.topK = topK;
+            this.firstBook = graph.firstBookNode();
+            int bookCount = graph.bookCount();
+            this.bookIds = new long[bookCount];
+            for (int book = 0; book < bookCount; book++) {
+                bookIds[book] = graph.bookId(firstBook + book);
+            }
+            this.counts = new int[bookCount];
+            this.touched = new int[bookCount];
+            this.ranked = new long[bookCount];
+            this.offsets = new int[bookCount + 1];
+        }
+        
+        /**
+         * 遍历借过该书的用户借的其他图书累计共借人数，按余弦相似度取前topK，再按行号升序写入
+         */
+        void computeRow(int book) {
+            int node = firstBook + book;
+            int touchedCount = 0;
+            for (int e1 = graph.edgeBegin(node); e1 < graph.edgeEnd(node); e1++) {
+                int user = graph.neighbor(e1);
+                for (int e2 = graph.edgeBegin(user); e2 < graph.edgeEnd(user); e2++) {
+                    int other = graph.neighbor(e2) - firstBook;
+                    if (other != book && counts[other]++ == 0) {
+                        touched[touchedCount++] = other;
+                    }
+                }
+            }
+            
+            // 相似度为正数，浮点位模式与大小同序：相似度放高32位、行号放低32位，排序long即按相似度排序
+            double degree = graph.edgeEnd(node) - graph.edgeBegin(node);
+            for (int i = 0; i < touchedCount; i++) {
+                int other = touched[i];
+                int otherDegree = graph.edgeEnd(firstBook + other) - graph.edgeBegin(firstBook + other);
+                float similarity = (float) (counts[other] / Math.sqrt(degree * otherDegree));
+                counts[other] = 0;
+                ranked[i] = ((long) Float.floatToIntBits(similarity) << 32) | other;
+            }
+            Arrays.sort(ranked, 0, touchedCount);
+            int from = Math.max(0, touchedCount - topK);
+            for (int i = from; i < touchedCount; i++) {
+                ranked[i] = (ranked[i] << 32) | (ranked[i] >>> 32);
+            }
+            Arrays.sort(ranked, from, touchedCount);
+            for (int i = from; i < touchedCount; i++) {
+                append((int) (ranked[i] >>> 32), Float.intBitsToFloat((int) ranked[i]));
+            }
+            endRow();
+        }
+        
+        /**
+         * 从旧索引复制一行，行号按图书ID换算到本次的行号
+         */
+        void copyRow(CoBorrowIndex index, int row) {
+            for (int e = index.rowBegin(row); e < index.rowEnd(row); e++) {
+                int other = Arrays.binarySearch(bookIds, index.bookIdAt(index.neighborRow(e)));
+                if (other >= 0) {
+                    append(other, index.similarity(e));
+                }
+            }
+            endRow();
+        }
+        
+        private void append(int neighbor, float similarity) {
+            if (size == neighbors.length) {
+                neighbors = Arrays.copyOf(neighbors, size * 2);
+                similarities = Arrays.copyOf(similarities, size * 2);
+            }
+            neighbors[size] = neighbor;
+            similarities[size] = similarity;
+            size++;
+        }
+        
+        private void endRow() {
+            offsets[++rows] = size;
+        }
+        
+        CoBorrowIndex finish() {
+            return new CoBorrowIndex(System.currentTimeMillis(), LongBuffer.wrap(bookIds), IntBuffer.wrap(offsets),
+                    IntBuffer.wrap(Arrays.copyOf(neighbors, size)), FloatBuffer.wrap(Arrays.copyOf(similarities, size)));
+        }
+    }
+    
+    private static class Borrow {
+        final long userId;
+        final long bookId;
+        
+        Borrow(long userId, long bookId) {
+            this.userId = userId;
+            this.bookId = bookId;
+        }
+    }
+}
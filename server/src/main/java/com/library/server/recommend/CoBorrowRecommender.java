@@ -0,0 +1,170 @@
+package com.library.server.recommend;
+
+import com.library.server.dao.BookDao;
+import com.library.server.model.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * 基于共借相似度索引（CoBorrowIndex）的图书推荐
+ * 取出用户每本已借图书的相似行合并：候选图书的分数为它与各本已借图书相似度之和 / 已借图书数，
+ * 不做图上游走，耗时只与已借图书数 * topK有关。计算过程不访问数据库，仅为最终推荐结果查询书名
+ */
+public class CoBorrowRecommender {
+    private static final Logger logger = LoggerFactory.getLogger(CoBorrowRecommender.class);
+    
+    /**
+     * 执行推荐
+     * @param userId 目标用户ID
+     * @param graph 全局借阅图快照（读取用户已借图书）
+     * @param topN 返回前N个推荐
+     * @return 推荐列表（带解释）
+     */
+    public List<RecommendationExplanation> recommend(Long userId, BorrowGraph graph, int topN) {
+        int source = graph.userNode(userId);
+        if (source < 0) {
+            logger.warn("用户节点不存在: userId={}", userId);
+            return Collections.emptyList();
+        }
+        CoBorrowIndex index = CoBorrowIndex.get();
+        Ranking ranking = rank(graph, index, source, topN);
+        int[] sourceRows = ranking.sourceRows;
+        
+        // 构建推荐解释：已借图书相似行中包含候选图书的，每本作为一条共借路径
+        BookDao bookDao = new BookDao();
+        Map<Long, Book> books = new HashMap<>();
+        List<RecommendationExplanation> recommendations = new ArrayList<>();
+        for (int i = 0; i < ranking.rows.length; i++) {
+            int row = ranking.rows[i];
+            Long bookId = index.bookIdAt(row);
+            Book book = books.computeIfAbsent(bookId, bookDao::findById);
+            if (book == null) continue;
+            
+            RecommendationExplanation explanation = new RecommendationExplanation(bookId, ranking.scores[i]);
+            List<RecommendationExplanation.ExplanationPath> paths = new ArrayList<>();
+            for (int sourceRow : sourceRows) {
+                if (sourceRow < 0) continue;
+                int e = index.findEntry(sourceRow, row);
+                if (e < 0) continue;
+                Long sourceBookId = index.bookIdAt(sourceRow);
+                Book sourceBook = books.computeIfAbsent(sourceBookId, bookDao::findById);
+                if (sourceBook == null) continue;
+                
+                RecommendationExplanation.ExplanationPath path =
+                    new RecommendationExplanation.ExplanationPath(
+                        RecommendationExplanation.ExplanationPath.PathType.CO_BORROWED,
+                        bookId,
+                        book.getTitle(),
+                        (double) index.similarity(e)
+                    );
+                path.setSourceBookId(sourceBookId);
+                path.setSourceBookTitle(sourceBook.getTitle());
+                paths.add(path);
+            }
+            paths.sort(Comparator.comparingDouble(RecommendationExplanation.ExplanationPath::getContribution).reversed());
+            for (RecommendationExplanation.ExplanationPath path : paths) {
+                explanation.addPath(path);
+            }
+            recommendations.add(explanation);
+        }
+        
+        logger.info("共借推荐完成: userId={}, 已借{}本，合并{}个相似条目，推荐{}本书",
+            userId, sourceRows.length, ranking.entryCount, recommendations.size());
+        return recommendations;
+    }
+    
+    /**
+     * 只计算排名，不生成解释、不访问数据库（供离线评估），返回按分数降序的图书ID；用户不在图中时返回空数组
+     */
+    public long[] rank(Long userId, BorrowGraph graph, int topN) {
+        int source = graph.userNode(userId);
+        if (source < 0) {
+            return new long[0];
+        }
+        CoBorrowIndex index = CoBorrowIndex.get();
+        Ranking ranking = rank(graph, index, source, topN);
+        long[] bookIds = new long[ranking.rows.length];
+        for (int i = 0; i < bookIds.length; i++) {
+            bookIds[i] = index.bookIdAt(ranking.rows[i]);
+        }
+        return bookIds;
+    }
+    
+    /**
+     * 合并已借图书的相似行，得到前N个候选的行号和分数
+     */
+    private static Ranking rank(BorrowGraph graph, CoBorrowIndex index, int source, int topN) {
+        int borrowedCount = graph.edgeEnd(source) - graph.edgeBegin(source);
+        
+        // 1. 收集已借图书的相似条目：候选行号放高32位、相似度放低32位，排序后同一候选的条目相邻
+        int[] sourceRows = new int[borrowedCount];
+        int entryCount = 0;
+        for (int i = 0; i < borrowedCount; i++) {
+            sourceRows[i] = index.row(graph.bookId(graph.neighbor(graph.edgeBegin(source) + i)));
+            if (sourceRows[i] >= 0) {
+                entryCount += index.rowEnd(sourceRows[i]) - index.rowBegin(sourceRows[i]);
+            }
+        }
+        long[] entries = new long[entryCount];
+        int size = 0;
+        for (int row : sourceRows) {
+            if (row < 0) continue;
+            for (int e = index.rowBegin(row); e < index.rowEnd(row); e++) {
+                entries[size++] = ((long) index.neighborRow(e) << 32) | Float.floatToIntBits(index.similarity(e));
+            }
+        }
+        Arrays.sort(entries);
+        
+        // 2. 逐组合并分数，跳过已借图书，保留前N个
+        int[] candidates = new int[entryCount];
+        double[] scores = new double[entryCount];
+        int candidateCount = 0;
+        PriorityQueue<int[]> heap = new PriorityQueue<>(topN + 1, Comparator.comparingDouble(entry -> scores[entry[0]]));
+        for (int i = 0; i < entryCount; ) {
+            int row = (int) (entries[i] >>> 32);
+            double sum = 0;
+            for (; i < entryCount && (int) (entries[i] >>> 32) == row; i++) {
+                sum += Float.intBitsToFloat((int) entries[i]);
+            }
+            int node = graph.bookNode(index.bookIdAt(row));
+            if (node >= 0 && graph.findEdge(source, node) >= 0) {
+                continue;
+            }
+            candidates[candidateCount] = row;
+            scores[candidateCount] = sum / borrowedCount;
+            heap.add(new int[]{candidateCount});
+            candidateCount++;
+            if (heap.size() > topN) {
+                heap.poll();
+            }
+        }
+        List<int[]> top = new ArrayList<>(heap);
+        top.sort(Comparator.comparingDouble((int[] entry) -> scores[entry[0]]).reversed());
+        
+        Ranking ranking = new Ranking(sourceRows, entryCount, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            ranking.rows[i] = candidates[top.get(i)[0]];
+            ranking.scores[i] = scores[top.get(i)[0]];
+        }
+        return ranking;
+    }
+    
+    /**
+     * 合并结果：已借图书的相似行号、合并的条目数，以及按分数降序的候选行号和分数
+     */
+    private static class Ranking {
+        final int[] sourceRows;
+        final int entryCount;
+        final int[] rows;
+        final double[] scores;
+        
+        Ranking(int[] sourceRows, int entryCount, int size) {
+            this.sourceRows = sourceRows;
+            this.entryCount = entryCount;
+            this.rows = new int[size];
+            this.scores = new double[size];
+        }
+    }
+}
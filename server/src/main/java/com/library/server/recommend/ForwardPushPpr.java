@@ -0,0 +1,188 @@
+package com.library.server.recommend;
+
+import java.util.Arrays;
+
+/**
+ * 近似PPR：前向推送（forward push）
+ * 与PprKernel在同一张推荐子图上计算（目标用户 -> 已借图书 -> 其他借阅者 -> 候选图书），但不预先收录整个子图，
+ * 只从目标用户出发推送残差：节点残差不低于epsilon * 出度时，留restartProbability比例作为估计值、其余按转移概率分给邻居，
+ * 候选图书没有出边，到达即结算。每个节点的剩余残差低于epsilon * 出度，误差随epsilon线性收敛；
+ * 扫描的边数达到maxEdgeScans时提前结束，借过热门图书（借阅者极多）的用户延迟也有上界。
+ * 实例不是线程安全的，由调用方按线程复用；工作数组只重置本次触达的节点
+ */
+final class ForwardPushPpr implements PprScores {
+    private static final byte LEVEL_UNSEEN = -1;
+    private static final byte LEVEL_SOURCE = 0;
+    private static final byte LEVEL_BORROWED = 1;
+    private static final byte LEVEL_CO_USER = 2;
+    private static final byte LEVEL_CANDIDATE = 3;
+    
+    private double[] estimate = new double[0];
+    private double[] residual = new double[0];
+    private byte[] level = new byte[0];
+    private boolean[] queued = new boolean[0];
+    // 本次触达的节点
+    private int[] touched = new int[0];
+    private int touchedCount;
+    // 循环队列，每个节点同时最多在队列中出现一次，容量为节点数即可
+    private int[] queue = new int[0];
+    private int queueHead;
+    private int queueSize;
+    
+    private int pushes;
+    private long edgeScans;
+    private boolean truncated;
+    
+    /**
+     * 在graph上近似计算source的PPR，结果按触达顺序通过PprScores读取
+     * @return 触达的节点数
+     */
+    int run(BorrowGraph graph, int source, double restartProbability, double epsilon, long maxEdgeScans) {
+        reset();
+        ensureCapacity(graph.getNodeCount());
+        pushes = 0;
+        edgeScans = 0;
+        truncated = false;
+        
+        touch(graph, source, source);
+        residual[source] = 1.0;
+        enqueue(source);
+        double keep = 1 - restartProbability;
+        
+        while (queueSize > 0) {
+            if (edgeScans >= maxEdgeScans) {
+                truncated = true;
+                break;
+            }
+            int node = dequeue();
+            int begin = graph.edgeBegin(node);
+            int end = graph.edgeEnd(node);
+            double r = residual[node];
+            if (r < epsilon * (end - begin)) {
+                continue;
+            }
+            estimate[node] += restartProbability * r;
+            residual[node] = 0;
+            pushes++;
+            
+            // 图中存的是对数权重：各边权重除以出边权重之和（减去其对数再取指数），很久以前的借阅也不会下溢为0；
+            // 已借图书不指回目标用户，出边权重和扣除这条边
+            double logTotal = graph.logWeightSum(node);
+            double totalWeight = 1;
+            if (level[node] == LEVEL_BORROWED) {
+                totalWeight -= Math.exp(graph.logWeight(graph.findEdge(node, source)) - logTotal);
+            }
+            if (totalWeight <= 0) continue;
+            
+            double propagate = keep * r / totalWeight;
+            for (int e = begin; e < end; e++) {
+                int neighbor = graph.neighbor(e);
+                if (neighbor == source) continue;
+                touch(graph, source, neighbor);
+                double amount = propagate * Math.exp(graph.logWeight(e) - logTotal);
+                if (level[neighbor] == LEVEL_CANDIDATE) {
+                    // 候选图书没有出边，残差直接结算
+                    estimate[neighbor] += restartProbability * amount;
+                    continue;
+                }
+                residual[neighbor] += amount;
+                int degree = graph.edgeEnd(neighbor) - graph.edgeBegin(neighbor);
+                if (!queued[neighbor] && residual[neighbor] >= epsilon * degree) {
+                    enqueue(neighbor);
+                }
+            }
+            edgeScans += end - begin;
+        }
+        return touchedCount;
+    }
+    
+    private void touch(BorrowGraph graph, int source, int node) {
+        if (level[node] != LEVEL_UNSEEN) {
+            return;
+        }
+        if (node == source) {
+            level[node] = LEVEL_SOURCE;
+        } else if (!graph.isBook(node)) {
+            level[node] = LEVEL_CO_USER;
+        } else {
+            level[node] = graph.findEdge(source, node) >= 0 ? LEVEL_BORROWED : LEVEL_CANDIDATE;
+        }
+        touched[touchedCount++] = node;
+    }
+    
+    private void enqueue(int node) {
+        queued[node] = true;
+        queue[(queueHead + queueSize) % queue.length] = node;
+        queueSize++;
+    }
+    
+    private int dequeue() {
+        int node = queue[queueHead];
+        queueHead = (queueHead + 1) % queue.length;
+        queueSize--;
+        queued[node] = false;
+        return node;
+    }
+    
+    private void ensureCapacity(int nodeCount) {
+        if (estimate.length >= nodeCount) {
+            return;
+        }
+        int capacity = Math.max(nodeCount, estimate.length * 3 / 2);
+        estimate = new double[capacity];
+        residual = new double[capacity];
+        level = new byte[capacity];
+        Arrays.fill(level, LEVEL_UNSEEN);
+        queued = new boolean[capacity];
+        touched = new int[capacity];
+        queue = new int[capacity];
+    }
+    
+    private void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            int node = touched[i];
+            estimate[node] = 0;
+            residual[node] = 0;
+            level[node] = LEVEL_UNSEEN;
+            queued[node] = false;
+        }
+        touchedCount = 0;
+        queueHead = 0;
+        queueSize = 0;
+    }
+    
+    int pushes() {
+        return pushes;
+    }
+    
+    long edgeScans() {
+        return edgeScans;
+    }
+    
+    /**
+     * 是否因达到扫描上限提前结束
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+    
+    @Override
+    public int size() {
+        return touchedCount;
+    }
+    
+    @Override
+    public boolean isCandidate(int index) {
+        return level[touched[index]] == LEVEL_CANDIDATE;
+    }
+    
+    @Override
+    public int globalNode(int index) {
+        return touched[index];
+    }
+    
+    @Override
+    public double score(int index) {
+        return estimate[touched[index]];
+    }
+}
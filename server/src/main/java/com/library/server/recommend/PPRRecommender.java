@@ -1,252 +1,196 @@
 package com.library.server.recommend;
 
 import com.library.server.dao.BookDao;
-import com.library.server.dao.BorrowRecordDao;
 import com.library.server.model.Book;
-import com.library.server.model.BorrowRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Personalized PageRank推荐器
- * 基于图的随机游走算法进行推荐
+ * 在全局借阅图（BorrowGraph）中目标用户的推荐子图上计算，两种模式：
+ * 精确模式做幂迭代（PprKernel），耗时与子图边数 * 迭代次数成正比；
+ * 近似模式做前向推送（ForwardPushPpr），只触达目标用户附近残差较大的节点，误差由epsilon控制、扫描边数有上限。
+ * 计算过程不访问数据库，仅为最终推荐结果查询书名
  */
 public class PPRRecommender {
     private static final Logger logger = LoggerFactory.getLogger(PPRRecommender.class);
     
+    // 每个线程复用一个内核，数组按图规模增长后保留
+    private static final ThreadLocal<PprKernel> kernels = ThreadLocal.withInitial(PprKernel::new);
+    private static final ThreadLocal<ForwardPushPpr> pushKernels = ThreadLocal.withInitial(ForwardPushPpr::new);
+    
     private final double restartProbability;  // 重启概率（通常0.15）
-    private final int maxIterations;  // 最大迭代次数
+    private final int maxIterations;  // 最大迭代次数（精确模式）
+    private final boolean approximate;
+    private final double epsilon;  // 推送阈值（近似模式）
+    private final long maxEdgeScans;  // 扫描边数上限（近似模式）
     
+    /**
+     * 精确模式（幂迭代）
+     */
     public PPRRecommender(double restartProbability, int maxIterations) {
         this.restartProbability = restartProbability;
         this.maxIterations = maxIterations;
+        this.approximate = false;
+        this.epsilon = 0;
+        this.maxEdgeScans = 0;
+    }
+    
+    /**
+     * 近似模式（前向推送）
+     * @param epsilon 推送阈值，越小越精确、触达的节点越多
+     * @param maxEdgeScans 扫描边数上限，达到后提前结束
+     */
+    public PPRRecommender(double restartProbability, double epsilon, long maxEdgeScans) {
+        this.restartProbability = restartProbability;
+        this.maxIterations = 0;
+        this.approximate = true;
+        this.epsilon = epsilon;
+        this.maxEdgeScans = maxEdgeScans;
     }
     
     /**
      * 执行PPR推荐
      * @param userId 目标用户ID
-     * @param graph 用户子图
+     * @param graph 全局借阅图快照
      * @param topN 返回前N个推荐
      * @return 推荐列表（带解释）
      */
-    public List<RecommendationExplanation> recommend(Long userId, Graph graph, int topN) {
-        String userIdStr = "user:" + userId;
-        
-        if (!graph.containsNode(userIdStr)) {
+    public List<RecommendationExplanation> recommend(Long userId, BorrowGraph graph, int topN) {
+        int source = graph.userNode(userId);
+        if (source < 0) {
             logger.warn("用户节点不存在: userId={}", userId);
             return Collections.emptyList();
         }
         
-        // 1. 初始化PageRank向量（从目标用户开始）
-        Map<String, Double> pprScores = new HashMap<>();
-        pprScores.put(userIdStr, 1.0);
-        
-        // 2. 迭代计算PPR
-        for (int iter = 0; iter < maxIterations; iter++) {
-            Map<String, Double> newScores = new HashMap<>();
-            
-            // 初始化新分数（重启概率部分）
-            for (String nodeId : graph.getAllNodeIds()) {
-                newScores.put(nodeId, nodeId.equals(userIdStr) ? restartProbability : 0.0);
-            }
-            
-            // 传播分数
-            for (Map.Entry<String, Double> entry : pprScores.entrySet()) {
-                String nodeId = entry.getKey();
-                Double score = entry.getValue();
-                
-                GraphNode node = graph.getNode(nodeId);
-                if (node == null) continue;
-                
-                Map<String, Double> edges = node.getEdges();
-                if (edges.isEmpty()) continue;
-                
-                // 归一化边权重
-                double totalWeight = node.getTotalEdgeWeight();
-                if (totalWeight == 0) continue;
-                
-                // 传播到邻居节点
-                double propagateScore = score * (1 - restartProbability);
-                for (Map.Entry<String, Double> edge : edges.entrySet()) {
-                    String neighborId = edge.getKey();
-                    double edgeWeight = edge.getValue();
-                    double normalizedWeight = edgeWeight / totalWeight;
-                    
-                    newScores.put(neighborId, 
-                        newScores.getOrDefault(neighborId, 0.0) + propagateScore * normalizedWeight);
-                }
-            }
-            
-            // 检查收敛
-            double diff = calculateDifference(pprScores, newScores);
-            pprScores = newScores;
-            
-            if (diff < 1e-6) {
-                logger.debug("PPR收敛于迭代{}: diff={}", iter + 1, diff);
-                break;
-            }
-        }
-        
-        // 3. 提取图书节点分数（排除用户节点和已借阅的图书）
-        Set<Long> borrowedBookIds = getBorrowedBookIds(userId);
-        Map<Long, Double> bookScores = new HashMap<>();
-        
-        for (Map.Entry<String, Double> entry : pprScores.entrySet()) {
-            String nodeId = entry.getKey();
-            if (nodeId.startsWith("book:")) {
-                try {
-                    Long bookId = Long.parseLong(nodeId.substring(5));
-                    // 排除已借阅的图书
-                    if (!borrowedBookIds.contains(bookId)) {
-                        bookScores.put(bookId, entry.getValue());
-                    }
-                } catch (NumberFormatException e) {
-                    logger.warn("无法解析图书ID: {}", nodeId);
-                }
-            }
+        // 1. 计算PPR
+        PprScores result = run(graph, source);
+        String stats;
+        if (approximate) {
+            ForwardPushPpr push = (ForwardPushPpr) result;
+            stats = String.format("近似模式，推送%d次，扫描%d条边%s", push.pushes(), push.edgeScans(),
+                push.isTruncated() ? "（达到上限提前结束）" : "");
+        } else {
+            stats = String.format("精确模式，迭代%d次", ((PprKernel) result).iterations());
         }
         
-        // 4. 排序并取前N个
-        List<Map.Entry<Long, Double>> sortedBooks = bookScores.entrySet().stream()
-            .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
-            .limit(topN)
-            .collect(Collectors.toList());
+        // 2. 取分数最高的前N本候选图书（已借阅的图书不是候选）
+        List<int[]> topNodes = topCandidates(result, topN);
         
-        // 5. 构建推荐解释
+        // 3. 构建推荐解释
         BookDao bookDao = new BookDao();
+        Map<Long, Book> books = new HashMap<>();
         List<RecommendationExplanation> recommendations = new ArrayList<>();
-        
-        for (Map.Entry<Long, Double> entry : sortedBooks) {
-            Long bookId = entry.getKey();
-            Double score = entry.getValue();
-            
-            Book book = bookDao.findById(bookId);
+        for (int[] entry : topNodes) {
+            int node = result.globalNode(entry[0]);
+            Long bookId = graph.bookId(node);
+            Book book = books.computeIfAbsent(bookId, bookDao::findById);
             if (book == null) continue;
             
-            RecommendationExplanation explanation = new RecommendationExplanation(bookId, score);
-            
-            // 生成推荐路径解释
-            generateExplanationPaths(userId, bookId, graph, explanation);
-            
+            RecommendationExplanation explanation = new RecommendationExplanation(bookId, result.score(entry[0]));
+            generateExplanationPaths(graph, source, node, book, books, bookDao, explanation);
             recommendations.add(explanation);
         }
         
-        logger.info("PPR推荐完成: userId={}, 推荐{}本书", userId, recommendations.size());
+        logger.info("PPR推荐完成: userId={}, {}，{}个节点，推荐{}本书",
+            userId, stats, result.size(), recommendations.size());
         return recommendations;
     }
     
     /**
-     * 计算两次迭代的差异
+     * 只计算排名，不生成解释、不访问数据库（供离线评估），返回按分数降序的图书ID；用户不在图中时返回空数组
      */
-    private double calculateDifference(Map<String, Double> oldScores, Map<String, Double> newScores) {
-        double diff = 0.0;
-        Set<String> allNodes = new HashSet<>(oldScores.keySet());
-        allNodes.addAll(newScores.keySet());
-        
-        for (String nodeId : allNodes) {
-            double oldScore = oldScores.getOrDefault(nodeId, 0.0);
-            double newScore = newScores.getOrDefault(nodeId, 0.0);
-            diff += Math.abs(newScore - oldScore);
+    public long[] rank(Long userId, BorrowGraph graph, int topN) {
+        int source = graph.userNode(userId);
+        if (source < 0) {
+            return new long[0];
         }
-        
-        return diff;
+        PprScores result = run(graph, source);
+        List<int[]> topNodes = topCandidates(result, topN);
+        long[] bookIds = new long[topNodes.size()];
+        for (int i = 0; i < bookIds.length; i++) {
+            bookIds[i] = graph.bookId(result.globalNode(topNodes.get(i)[0]));
+        }
+        return bookIds;
+    }
+    
+    /**
+     * 在当前线程复用的内核上计算PPR
+     */
+    private PprScores run(BorrowGraph graph, int source) {
+        if (approximate) {
+            ForwardPushPpr push = pushKernels.get();
+            push.run(graph, source, restartProbability, epsilon, maxEdgeScans);
+            return push;
+        }
+        PprKernel kernel = kernels.get();
+        kernel.run(graph, source, restartProbability, maxIterations);
+        return kernel;
     }
     
     /**
-     * 获取用户已借阅的图书ID集合
+     * 分数最高的前N个候选（已借阅的图书不是候选），按分数降序
      */
-    private Set<Long> getBorrowedBookIds(Long userId) {
-        BorrowRecordDao recordDao = new BorrowRecordDao();
-        List<BorrowRecord> records = recordDao.findByUserId(userId);
-        return records.stream()
-            .map(BorrowRecord::getBookId)
-            .collect(Collectors.toSet());
+    private static List<int[]> topCandidates(PprScores result, int topN) {
+        PriorityQueue<int[]> heap = new PriorityQueue<>(topN + 1,
+            Comparator.comparingDouble(entry -> result.score(entry[0])));
+        for (int index = 0; index < result.size(); index++) {
+            if (!result.isCandidate(index) || result.score(index) <= 0) {
+                continue;
+            }
+            heap.add(new int[]{index});
+            if (heap.size() > topN) {
+                heap.poll();
+            }
+        }
+        List<int[]> topNodes = new ArrayList<>(heap);
+        topNodes.sort(Comparator.comparingDouble((int[] entry) -> result.score(entry[0])).reversed());
+        return topNodes;
     }
     
     /**
-     * 生成推荐路径解释
+     * 生成推荐路径解释：目标图书在共借相似度索引中的相似行与用户已借图书归并，
+     * 每本命中的已借图书为一条共借路径（User -> 已借图书 -> 其他用户 -> 目标图书），贡献度为两本书的相似度
      */
-    private void generateExplanationPaths(Long userId, Long targetBookId, Graph graph, 
+    private void generateExplanationPaths(BorrowGraph graph, int source, int target, Book targetBook,
+                                         Map<Long, Book> books, BookDao bookDao,
                                          RecommendationExplanation explanation) {
-        String userIdStr = "user:" + userId;
-        String targetBookIdStr = "book:" + targetBookId;
+        List<RecommendationExplanation.ExplanationPath> paths = new ArrayList<>();
         
-        BookDao bookDao = new BookDao();
-        Book targetBook = bookDao.findById(targetBookId);
-        if (targetBook == null) return;
-        
-        // 查找从用户到目标图书的路径
-        GraphNode userNode = graph.getNode(userIdStr);
-        if (userNode == null) return;
+        CoBorrowIndex.get().forEachBorrowedNeighbor(graph, source, graph.bookId(target), (sourceBookId, similarity) -> {
+            Book sourceBook = books.computeIfAbsent(sourceBookId, bookDao::findById);
+            if (sourceBook == null) return;
+            
+            RecommendationExplanation.ExplanationPath path =
+                new RecommendationExplanation.ExplanationPath(
+                    RecommendationExplanation.ExplanationPath.PathType.CO_BORROWED,
+                    targetBook.getId(),
+                    targetBook.getTitle(),
+                    (double) similarity
+                );
+            path.setSourceBookId(sourceBookId);
+            path.setSourceBookTitle(sourceBook.getTitle());
+            paths.add(path);
+        });
         
-        // 查找用户借阅的图书
-        for (String neighborId : userNode.getEdges().keySet()) {
-            if (neighborId.startsWith("book:")) {
-                try {
-                    Long sourceBookId = Long.parseLong(neighborId.substring(5));
-                    GraphNode sourceBookNode = graph.getNode(neighborId);
-                    
-                    if (sourceBookNode != null) {
-                        // 检查这本书是否连接到目标图书
-                        for (String nextNeighborId : sourceBookNode.getEdges().keySet()) {
-                            if (nextNeighborId.startsWith("user:") && !nextNeighborId.equals(userIdStr)) {
-                                // 找到另一个用户，检查这个用户是否借阅了目标图书
-                                GraphNode otherUserNode = graph.getNode(nextNeighborId);
-                                if (otherUserNode != null) {
-                                    for (String finalBookId : otherUserNode.getEdges().keySet()) {
-                                        if (finalBookId.equals(targetBookIdStr)) {
-                                            // 找到共借路径：User -> Book1 -> User2 -> TargetBook
-                                            Book sourceBook = bookDao.findById(sourceBookId);
-                                            if (sourceBook != null) {
-                                                double contribution = calculatePathContribution(
-                                                    userNode.getEdges().get(neighborId),
-                                                    sourceBookNode.getEdges().get(nextNeighborId),
-                                                    otherUserNode.getEdges().get(targetBookIdStr)
-                                                );
-                                                
-                                                RecommendationExplanation.ExplanationPath path = 
-                                                    new RecommendationExplanation.ExplanationPath(
-                                                        RecommendationExplanation.ExplanationPath.PathType.CO_BORROWED,
-                                                        targetBookId,
-                                                        targetBook.getTitle(),
-                                                        contribution
-                                                    );
-                                                path.setSourceBookId(sourceBookId);
-                                                path.setSourceBookTitle(sourceBook.getTitle());
-                                                explanation.addPath(path);
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                } catch (NumberFormatException e) {
-                    // 忽略
-                }
-            }
+        // 贡献最大的路径在前（作为主要推荐理由）
+        paths.sort(Comparator.comparingDouble(RecommendationExplanation.ExplanationPath::getContribution).reversed());
+        for (RecommendationExplanation.ExplanationPath path : paths) {
+            explanation.addPath(path);
         }
         
         // 无路径时添加通用路径
         if (explanation.getPaths().isEmpty()) {
-            RecommendationExplanation.ExplanationPath path = 
+            RecommendationExplanation.ExplanationPath path =
                 new RecommendationExplanation.ExplanationPath(
                     RecommendationExplanation.ExplanationPath.PathType.SIMILAR_USER,
-                    targetBookId,
+                    targetBook.getId(),
                     targetBook.getTitle(),
                     explanation.getScore()
                 );
             explanation.addPath(path);
         }
     }
-    
-    /**
-     * 计算路径贡献度
-     */
-    private double calculatePathContribution(double weight1, double weight2, double weight3) {
-        return (weight1 + weight2 + weight3) / 3.0;
-    }
 }
@@ -0,0 +1,221 @@
+package com.library.server.recommend;
+
+import java.util.Arrays;
+
+/**
+ * PPR幂迭代内核
+ * 从全局借阅图中取出目标用户的推荐子图：用户 -> 已借图书 -> 借过这些书的其他用户 -> 他们借的图书，
+ * 节点重新编号为稠密的局部id，出边转移概率（边权重 / 出边权重和）预先算好存入double[]，
+ * 图中存的是对数权重，每行先减去行内最大值再取指数，很久以前的借阅也不会下溢为0，
+ * 边的构造与基线GraphBuilder一致：每个共同借阅用户只由第一本（图书ID最小的）共同借阅的已借图书连入，
+ * 这条边的权重取该用户最近一次借阅这本书的权重；用户指向图书的边为多次借阅的权重之和。
+ * 分数向量为两个double[]交替使用（双缓冲），迭代过程中不分配任何对象。
+ * 实例不是线程安全的，由调用方按线程复用；数组按子图规模增长后保留，下次直接复用
+ */
+final class PprKernel implements PprScores {
+    // 局部节点所在层：0目标用户，1已借图书，2共同借阅用户，3候选图书
+    private static final byte LEVEL_SOURCE = 0;
+    private static final byte LEVEL_BORROWED = 1;
+    private static final byte LEVEL_CO_USER = 2;
+    private static final byte LEVEL_CANDIDATE = 3;
+    
+    // 收敛阈值：两次迭代分数差的L1范数
+    private static final double CONVERGENCE_THRESHOLD = 1e-6;
+    
+    // 全局节点 -> 局部id，未收录为-1；长度为全局节点数，只重置本次收录的节点
+    private int[] localOf = new int[0];
+    // 局部id -> 全局节点
+    private int[] globalOf = new int[16];
+    private byte[] level = new byte[16];
+    // 共同借阅用户 -> 连入它的已借图书的局部id
+    private int[] via = new int[16];
+    private int size;
+    
+    // 局部子图的出边（CSR）与转移概率
+    private int[] offsets = new int[17];
+    private int[] targets = new int[16];
+    private double[] transition = new double[16];
+    
+    // 双缓冲分数向量
+    private double[] scores = new double[16];
+    private double[] next = new double[16];
+    
+    private int iterations;
+    
+    /**
+     * 在graph上计算source的PPR，结果通过isCandidate/globalNode/score按局部id读取
+     * @return 子图节点数
+     */
+    int run(BorrowGraph graph, int source, double restartProbability, int maxIterations) {
+        reset();
+        if (localOf.length < graph.getNodeCount()) {
+            localOf = new int[graph.getNodeCount()];
+            Arrays.fill(localOf, -1);
+        }
+        
+        collect(graph, source);
+        buildTransitions(graph, source);
+        iterate(restartProbability, maxIterations);
+        return size;
+    }
+    
+    /**
+     * 按层收录子图节点
+     */
+    private void collect(BorrowGraph graph, int source) {
+        add(source, LEVEL_SOURCE);
+        for (int e = graph.edgeBegin(source); e < graph.edgeEnd(source); e++) {
+            add(graph.neighbor(e), LEVEL_BORROWED);
+        }
+        int borrowedEnd = size;
+        for (int local = 1; local < borrowedEnd; local++) {
+            int book = globalOf[local];
+            for (int e = graph.edgeBegin(book); e < graph.edgeEnd(book); e++) {
+                int user = graph.neighbor(e);
+                if (user != source && localOf[user] < 0) {
+                    add(user, LEVEL_CO_USER);
+                    via[size - 1] = local;
+                }
+            }
+        }
+        int coUserEnd = size;
+        for (int local = borrowedEnd; local < coUserEnd; local++) {
+            int user = globalOf[local];
+            for (int e = graph.edgeBegin(user); e < graph.edgeEnd(user); e++) {
+                int book = graph.neighbor(e);
+                if (localOf[book] < 0) {
+                    add(book, LEVEL_CANDIDATE);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 生成局部出边和转移概率：用户指向其借阅的图书，已借图书指向经它连入的共同借阅用户，候选图书没有出边
+     */
+    private void buildTransitions(BorrowGraph graph, int source) {
+        int edgeCount = 0;
+        for (int local = 0; local < size; local++) {
+            offsets[local] = edgeCount;
+            if (level[local] == LEVEL_CANDIDATE) {
+                continue;
+            }
+            int node = globalOf[local];
+            boolean borrowed = level[local] == LEVEL_BORROWED;
+            int begin = edgeCount;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int e = graph.edgeBegin(node); e < graph.edgeEnd(node); e++) {
+                int neighbor = graph.neighbor(e);
+                if (neighbor == source || borrowed && via[localOf[neighbor]] != local) {
+                    continue;
+                }
+                if (edgeCount == targets.length) {
+                    targets = Arrays.copyOf(targets, edgeCount * 2);
+                    transition = Arrays.copyOf(transition, edgeCount * 2);
+                }
+                double logWeight = borrowed ? graph.latestLogWeight(e) : graph.logWeight(e);
+                targets[edgeCount] = localOf[neighbor];
+                transition[edgeCount] = logWeight;
+                max = Math.max(max, logWeight);
+                edgeCount++;
+            }
+            // 按行内最大值归一化后取指数，行内最大的边权重为1，总和不小于1
+            double total = 0;
+            for (int e = begin; e < edgeCount; e++) {
+                transition[e] = Math.exp(transition[e] - max);
+                total += transition[e];
+            }
+            double inverse = 1.0 / total;
+            for (int e = begin; e < edgeCount; e++) {
+                transition[e] *= inverse;
+            }
+        }
+        offsets[size] = edgeCount;
+    }
+    
+    /**
+     * 幂迭代直到收敛或达到最大迭代次数，目标用户的局部id为0
+     */
+    private void iterate(double restartProbability, int maxIterations) {
+        Arrays.fill(scores, 0, size, 0.0);
+        scores[0] = 1.0;
+        double keep = 1 - restartProbability;
+        
+        iterations = 0;
+        while (iterations < maxIterations) {
+            Arrays.fill(next, 0, size, 0.0);
+            next[0] = restartProbability;
+            for (int local = 0; local < size; local++) {
+                double score = scores[local];
+                if (score == 0) continue;
+                double propagate = score * keep;
+                for (int e = offsets[local]; e < offsets[local + 1]; e++) {
+                    next[targets[e]] += propagate * transition[e];
+                }
+            }
+            
+            double diff = 0;
+            for (int local = 0; local < size; local++) {
+                diff += Math.abs(next[local] - scores[local]);
+            }
+            double[] swap = scores;
+            scores = next;
+            next = swap;
+            iterations++;
+            
+            if (diff < CONVERGENCE_THRESHOLD) {
+                break;
+            }
+        }
+    }
+    
+    private void add(int node, byte nodeLevel) {
+        if (size == globalOf.length) {
+            int capacity = size * 2;
+            globalOf = Arrays.copyOf(globalOf, capacity);
+            level = Arrays.copyOf(level, capacity);
+            via = Arrays.copyOf(via, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+            scores = new double[capacity];
+            next = new double[capacity];
+        }
+        localOf[node] = size;
+        globalOf[size] = node;
+        level[size] = nodeLevel;
+        size++;
+    }
+    
+    private void reset() {
+        for (int local = 0; local < size; local++) {
+            localOf[globalOf[local]] = -1;
+        }
+        size = 0;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    int iterations() {
+        return iterations;
+    }
+    
+    /**
+     * 是否为候选图书（目标用户未借过）
+     */
+    @Override
+    public boolean isCandidate(int local) {
+        return level[local] == LEVEL_CANDIDATE;
+    }
+    
+    @Override
+    public int globalNode(int local) {
+        return globalOf[local];
+    }
+    
+    @Override
+    public double score(int local) {
+        return scores[local];
+    }
+}
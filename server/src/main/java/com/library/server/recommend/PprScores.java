@@ -0,0 +1,14 @@
+package com.library.server.recommend;
+
+/**
+ * PPR计算结果：按结果下标读取节点、分数以及是否为候选图书（目标用户未借过的图书）
+ */
+interface PprScores {
+    int size();
+    
+    boolean isCandidate(int index);
+    
+    int globalNode(int index);
+    
+    double score(int index);
+}
@@ -33,14 +33,29 @@ public class AIRecommendService {
     private static final Logger logger = LoggerFactory.getLogger(AIRecommendService.class);
     
     // 默认参数
-    private static final int DEFAULT_TOP_N = 10;
-    private static final int DEFAULT_USER_PROFILE_K = 10;  // 用户画像使用最近K本借阅书
+    static final int DEFAULT_TOP_N = 10;
+    static final int DEFAULT_USER_PROFILE_K = 10;  // 用户画像使用最近K本借阅书
     private static final double DEFAULT_AI_WEIGHT = 0.3;  // AI推荐权重
     private static final int DEFAULT_EMBEDDING_DIM = 384;  // Embedding维度
     
     private final EmbeddingDao embeddingDao = new EmbeddingDao();
     private final BookDao bookDao = new BookDao();
-    private final BorrowRecordDao recordDao = new BorrowRecordDao();
+    private final BorrowRecordDao recordDao;
+    // 借阅记录来自数据库时已借图书走共享缓存，注入的来源直接查询
+    private final boolean cachedHistory;
+    
+    public AIRecommendService() {
+        this.recordDao = new BorrowRecordDao();
+        this.cachedHistory = true;
+    }
+    
+    /**
+     * 使用指定的借阅记录来源（离线评估用截止到切分时间的训练集）
+     */
+    public AIRecommendService(BorrowRecordDao recordDao) {
+        this.recordDao = recordDao;
+        this.cachedHistory = false;
+    }
     
     /**
      * AI推荐
@@ -54,63 +69,17 @@ public class AIRecommendService {
             int userProfileK = request.getPayload() != null && request.getPayload().has("userProfileK") ?
                     request.getPayload().get("userProfileK").asInt() : DEFAULT_USER_PROFILE_K;
             
-            logger.info("AI推荐: userId={}, topN={}, userProfileK={}", userId, topN, userProfileK);
-            
-            // 1. 构建增强的用户画像
-            EnhancedUserProfile userProfile = buildEnhancedUserProfile(userId, userProfileK);
-            
-            if (userProfile == null || userProfile.getProfileVector() == null) {
-                return Response.error(requestId, ErrorCode.NOT_FOUND, 
-                        JsonUtil.toJsonNode("无法构建用户画像，请先借阅一些图书"));
-            }
-            
-            // 2. 获取候选图书（排除已借阅的）
-            Set<Long> borrowedBookIds = getUserBorrowedBooks(userId);
-            List<Book> candidateBooks = bookDao.searchBooks(null, null, topN * 5, 0)
-                    .stream()
-                    .filter(book -> !borrowedBookIds.contains(book.getId()) && book.getAvailableCount() > 0)
-                    .collect(Collectors.toList());
-            
-            if (candidateBooks.isEmpty()) {
-                return Response.error(requestId, ErrorCode.NOT_FOUND, 
-                        JsonUtil.toJsonNode("没有找到可推荐的图书"));
-            }
-            
-            // 3. 使用AI模型计算匹配分数
-            List<AIRecommendation> recommendations = new ArrayList<>();
-            for (Book book : candidateBooks) {
-                float[] bookEmbedding = embeddingDao.getEmbedding(book.getId());
-                if (bookEmbedding == null) {
-                    continue;  // 跳过没有embedding的图书
-                }
-                
-                // 计算深度匹配分数
-                double matchScore = calculateDeepMatchScore(userProfile, book, bookEmbedding);
-                
-                // 应用多样性调整
-                double diversityBoost = calculateDiversityBoost(book, userProfile.getRecentCategories());
-                double finalScore = matchScore * (1.0 + diversityBoost);
-                
-                recommendations.add(new AIRecommendation(book, finalScore, matchScore, diversityBoost));
-            }
-            
-            // 4. 排序并取TopN
-            recommendations.sort((a, b) -> Double.compare(b.getFinalScore(), a.getFinalScore()));
-            recommendations = recommendations.stream().limit(topN).collect(Collectors.toList());
+            List<AIRecommendation> recommendations = rank(userId, topN, userProfileK);
             
             if (recommendations.isEmpty()) {
                 return Response.error(requestId, ErrorCode.NOT_FOUND, 
                         JsonUtil.toJsonNode("没有找到合适的推荐图书"));
             }
             
-            // 5. 生成AI推荐理由并构建响应
             ArrayNode bookArray = JsonUtil.getObjectMapper().createArrayNode();
             for (AIRecommendation rec : recommendations) {
                 Book book = rec.getBook();
                 
-                // 生成AI推荐理由
-                String aiReason = generateAIReason(userProfile, book, rec);
-                
                 ObjectNode bookNode = JsonUtil.createObjectNode();
                 bookNode.put("bookId", book.getId());
                 bookNode.put("title", book.getTitle());
@@ -122,7 +91,7 @@ public class AIRecommendService {
                 bookNode.put("score", rec.getFinalScore());
                 bookNode.put("matchScore", rec.getMatchScore());
                 bookNode.put("diversityBoost", rec.getDiversityBoost());
-                bookNode.put("reason", aiReason);
+                bookNode.put("reason", rec.getReason());
                 bookNode.put("aiEnhanced", true);  // 标记为AI增强推荐
                 
                 bookArray.add(bookNode);
@@ -133,7 +102,6 @@ public class AIRecommendService {
             data.put("total", bookArray.size());
             data.put("aiModel", "DeepMatch-NeuralNetwork-v1.0");
             
-            logger.info("AI推荐完成: userId={}, 推荐{}本书", userId, bookArray.size());
             return Response.success(requestId, "AI推荐成功", JsonUtil.toJsonNode(data));
             
         } catch (Exception e) {
@@ -142,6 +110,70 @@ public class AIRecommendService {
         }
     }
     
+    /**
+     * AI推荐通道（供综合推荐并行调用），候选分数为最终匹配分数；没有结果时返回空列表
+     */
+    List<RecommendCandidate> candidates(Long userId, int topN, int userProfileK) {
+        List<RecommendCandidate> candidates = new ArrayList<>();
+        for (AIRecommendation rec : rank(userId, topN, userProfileK)) {
+            candidates.add(new RecommendCandidate(rec.getBook(), rec.getFinalScore(), rec.getReason(), true));
+        }
+        return candidates;
+    }
+    
+    /**
+     * 计算AI推荐：构建画像、为候选图书打分、取TopN并生成推荐理由
+     */
+    private List<AIRecommendation> rank(Long userId, int topN, int userProfileK) {
+        logger.info("AI推荐: userId={}, topN={}, userProfileK={}", userId, topN, userProfileK);
+        
+        // 1. 构建增强的用户画像
+        EnhancedUserProfile userProfile = buildEnhancedUserProfile(userId, userProfileK);
+        
+        if (userProfile == null || userProfile.getProfileVector() == null) {
+            logger.info("无法构建用户画像: userId={}", userId);
+            return Collections.emptyList();
+        }
+        
+        // 2. 获取候选图书（排除已借阅的）
+        BorrowedBookCache.BorrowedBooks borrowedBooks = cachedHistory
+                ? BorrowedBookCache.get(userId) : BorrowedBookCache.load(recordDao, userId);
+        List<Book> candidateBooks = bookDao.searchBooks(null, null, topN * 5, 0)
+                .stream()
+                .filter(book -> !borrowedBooks.contains(book.getId()) && book.getAvailableCount() > 0)
+                .collect(Collectors.toList());
+        
+        // 3. 使用AI模型计算匹配分数
+        List<AIRecommendation> recommendations = new ArrayList<>();
+        for (Book book : candidateBooks) {
+            float[] bookEmbedding = embeddingDao.getEmbedding(book.getId());
+            if (bookEmbedding == null) {
+                continue;  // 跳过没有embedding的图书
+            }
+            
+            // 计算深度匹配分数
+            double matchScore = calculateDeepMatchScore(userProfile, book, bookEmbedding);
+            
+            // 应用多样性调整
+            double diversityBoost = calculateDiversityBoost(book, userProfile.getRecentCategories());
+            double finalScore = matchScore * (1.0 + diversityBoost);
+            
+            recommendations.add(new AIRecommendation(book, finalScore, matchScore, diversityBoost));
+        }
+        
+        // 4. 排序并取TopN
+        recommendations.sort((a, b) -> Double.compare(b.getFinalScore(), a.getFinalScore()));
+        recommendations = recommendations.stream().limit(topN).collect(Collectors.toList());
+        
+        // 5. 生成AI推荐理由
+        for (AIRecommendation rec : recommendations) {
+            rec.setReason(generateAIReason(userProfile, rec.getBook(), rec));
+        }
+        
+        logger.info("AI推荐完成: userId={}, 推荐{}本书", userId, recommendations.size());
+        return recommendations;
+    }
+    
     /**
      * 构建增强的用户画像
      * 结合借阅历史、时间权重、类别偏好等多维度特征
@@ -445,21 +477,6 @@ public class AIRecommendService {
         return average;
     }
     
-    /**
-     * 获取用户已借阅的图书ID集合
-     */
-    private Set<Long> getUserBorrowedBooks(Long userId) {
-        try {
-            List<BorrowRecord> records = recordDao.findByUserId(userId);
-            return records.stream()
-                    .map(BorrowRecord::getBookId)
-                    .collect(Collectors.toSet());
-        } catch (Exception e) {
-            logger.error("获取用户借阅记录失败: userId={}", userId, e);
-            return Collections.emptySet();
-        }
-    }
-    
     /**
      * 增强的用户画像
      */
@@ -487,6 +504,7 @@ public class AIRecommendService {
         private final double finalScore;
         private final double matchScore;
         private final double diversityBoost;
+        private String reason;
         
         public AIRecommendation(Book book, double finalScore, double matchScore, double diversityBoost) {
             this.book = book;
@@ -499,6 +517,8 @@ public class AIRecommendService {
         public double getFinalScore() { return finalScore; }
         public double getMatchScore() { return matchScore; }
         public double getDiversityBoost() { return diversityBoost; }
+        public String getReason() { return reason; }
+        public void setReason(String reason) { this.reason = reason; }
     }
 }
 
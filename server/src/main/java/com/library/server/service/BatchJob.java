@@ -0,0 +1,42 @@
+package com.library.server.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 维护类批处理作业
+ * 作业按主键（keyset）顺序分块处理数据，每块由BatchJobRunner在独立的短事务中调用，
+ * 该块的检查点与数据修改在同一事务中提交
+ */
+public interface BatchJob {
+
+    /**
+     * 作业名称（检查点与进度指标的键）
+     */
+    String getName();
+
+    /**
+     * 处理主键大于afterKey的下一块数据，最多chunkSize行
+     * 返回扫描行数为0表示已处理完
+     */
+    ChunkResult processChunk(Connection conn, long afterKey, int chunkSize) throws SQLException;
+
+    /**
+     * 一块的处理结果
+     */
+    class ChunkResult {
+        private final int scanned;
+        private final int affected;
+        private final long lastKey;
+
+        public ChunkResult(int scanned, int affected, long lastKey) {
+            this.scanned = scanned;
+            this.affected = affected;
+            this.lastKey = lastKey;
+        }
+
+        public int getScanned() { return scanned; }
+        public int getAffected() { return affected; }
+        public long getLastKey() { return lastKey; }
+    }
+}
@@ -0,0 +1,233 @@
+package com.library.server.service;
+
+import com.library.server.dao.BatchJobDao;
+import com.library.server.dao.DataSourceProvider;
+import com.library.server.dao.JdbcTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 批处理作业执行器
+ * 按keyset分块执行作业，每块一个短事务（只在该块的行上短暂持锁，不阻塞还书等并发事务），
+ * 每块提交时同时写入检查点；作业中断后下次运行从检查点继续。
+ * 检查点表不存在时仍分块执行，只是不能断点续跑
+ */
+public class BatchJobRunner {
+    private static final Logger logger = LoggerFactory.getLogger(BatchJobRunner.class);
+    
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final long DEFAULT_CHUNK_PAUSE_MILLIS = 20;
+    
+    // 各作业最近一次运行的进度（按作业名）
+    private static final Map<String, Progress> progressByJob = new ConcurrentHashMap<>();
+    
+    private final BatchJobDao jobDao = new BatchJobDao();
+    // 作业修改数据，始终走主库
+    private final JdbcTemplate jdbc = new JdbcTemplate(DataSourceProvider.getDataSource());
+    private final int chunkSize;
+    private final long chunkPauseMillis;
+    
+    /**
+     * 使用application.properties中的job.chunkSize、job.chunkPauseMillis
+     */
+    public BatchJobRunner() {
+        Properties props = DataSourceProvider.loadProperties();
+        this.chunkSize = Math.max(1, Integer.parseInt(props.getProperty("job.chunkSize", 
+                String.valueOf(DEFAULT_CHUNK_SIZE))));
+        this.chunkPauseMillis = Math.max(0, Long.parseLong(props.getProperty("job.chunkPauseMillis", 
+                String.valueOf(DEFAULT_CHUNK_PAUSE_MILLIS))));
+    }
+    
+    /**
+     * @param chunkSize 每块行数
+     * @param chunkPauseMillis 块之间的停顿（毫秒），给并发事务让出资源
+     */
+    public BatchJobRunner(int chunkSize, long chunkPauseMillis) {
+        this.chunkSize = Math.max(1, chunkSize);
+        this.chunkPauseMillis = Math.max(0, chunkPauseMillis);
+    }
+    
+    /**
+     * 运行作业直到处理完、失败或线程被中断
+     * 失败或中断时检查点保持RUNNING状态，下次运行从最后提交的块之后继续
+     */
+    public Progress run(BatchJob job) {
+        String name = job.getName();
+        BatchJobDao.Checkpoint checkpoint = loadCheckpoint(name);
+        boolean checkpointEnabled = checkpoint != null;
+        if (checkpoint == null || !BatchJobDao.STATUS_RUNNING.equals(checkpoint.getStatus())) {
+            checkpoint = new BatchJobDao.Checkpoint();
+            checkpoint.setJobName(name);
+            checkpoint.setLastKey(0);
+            checkpoint.setStartedAt(LocalDateTime.now());
+        } else {
+            logger.info("批处理作业从检查点继续: job={}, lastKey={}, 已扫描{}行", 
+                    name, checkpoint.getLastKey(), checkpoint.getScannedCount());
+        }
+        checkpoint.setStatus(BatchJobDao.STATUS_RUNNING);
+        
+        Progress progress = new Progress(name, chunkSize, checkpoint.getLastKey());
+        progressByJob.put(name, progress);
+        
+        final BatchJobDao.Checkpoint current = checkpoint;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long afterKey = current.getLastKey();
+                BatchJob.ChunkResult result = jdbc.inTransaction(conn -> {
+                    BatchJob.ChunkResult chunk = job.processChunk(conn, afterKey, chunkSize);
+                    if (checkpointEnabled && chunk.getScanned() > 0) {
+                        BatchJobDao.Checkpoint next = copyOf(current);
+                        next.setLastKey(chunk.getLastKey());
+                        next.setScannedCount(current.getScannedCount() + chunk.getScanned());
+                        next.setAffectedCount(current.getAffectedCount() + chunk.getAffected());
+                        jobDao.save(conn, next);
+                    }
+                    return chunk;
+                });
+                if (result.getScanned() == 0) {
+                    break;
+                }
+                current.setLastKey(result.getLastKey());
+                current.setScannedCount(current.getScannedCount() + result.getScanned());
+                current.setAffectedCount(current.getAffectedCount() + result.getAffected());
+                progress.record(result);
+                
+                // 不足一块不代表已到末尾（SKIP LOCKED会跳过被锁住的行），只有空块才结束
+                if (chunkPauseMillis > 0) {
+                    Thread.sleep(chunkPauseMillis);
+                }
+            }
+            
+            if (Thread.currentThread().isInterrupted()) {
+                progress.finish(Progress.STATUS_INTERRUPTED);
+                logger.warn("批处理作业被中断: job={}, lastKey={}", name, current.getLastKey());
+                return progress;
+            }
+            
+            current.setStatus(BatchJobDao.STATUS_COMPLETED);
+            if (checkpointEnabled) {
+                jdbc.inTransaction(conn -> {
+                    jobDao.save(conn, current);
+                    return null;
+                });
+            }
+            progress.finish(Progress.STATUS_COMPLETED);
+            logger.info("批处理作业完成: job={}, chunks={}, scanned={}, affected={}, elapsed={}ms, {}行/秒", 
+                    name, progress.getChunkCount(), progress.getScannedCount(), progress.getAffectedCount(), 
+                    progress.getElapsedMillis(), String.format("%.1f", progress.getRowsPerSecond()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.finish(Progress.STATUS_INTERRUPTED);
+            logger.warn("批处理作业被中断: job={}, lastKey={}", name, current.getLastKey());
+        } catch (Exception e) {
+            progress.finish(Progress.STATUS_FAILED);
+            logger.error("批处理作业失败: job={}, lastKey={}", name, current.getLastKey(), e);
+        }
+        return progress;
+    }
+    
+    /**
+     * 各作业最近一次运行的进度
+     */
+    public static List<Progress> getAllProgress() {
+        return new ArrayList<>(progressByJob.values());
+    }
+    
+    private BatchJobDao.Checkpoint loadCheckpoint(String name) {
+        try {
+            BatchJobDao.Checkpoint checkpoint = jobDao.find(name);
+            if (checkpoint == null) {
+                checkpoint = new BatchJobDao.Checkpoint();
+                checkpoint.setJobName(name);
+            }
+            return checkpoint;
+        } catch (Exception e) {
+            logger.warn("读取作业检查点失败（batch_job_checkpoints表可能未创建），本次不记录检查点: job={}", name, e);
+            return null;
+        }
+    }
+    
+    private static BatchJobDao.Checkpoint copyOf(BatchJobDao.Checkpoint source) {
+        BatchJobDao.Checkpoint copy = new BatchJobDao.Checkpoint();
+        copy.setJobName(source.getJobName());
+        copy.setLastKey(source.getLastKey());
+        copy.setStatus(source.getStatus());
+        copy.setScannedCount(source.getScannedCount());
+        copy.setAffectedCount(source.getAffectedCount());
+        copy.setStartedAt(source.getStartedAt());
+        return copy;
+    }
+    
+    /**
+     * 作业运行进度与吞吐量
+     */
+    public static class Progress {
+        public static final String STATUS_RUNNING = "RUNNING";
+        public static final String STATUS_COMPLETED = "COMPLETED";
+        public static final String STATUS_FAILED = "FAILED";
+        public static final String STATUS_INTERRUPTED = "INTERRUPTED";
+        
+        private final String jobName;
+        private final int chunkSize;
+        private final long startKey;
+        private final long startNanos = System.nanoTime();
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile String status = STATUS_RUNNING;
+        private volatile long lastKey;
+        private volatile long chunkCount;
+        private volatile long scannedCount;
+        private volatile long affectedCount;
+        private volatile long elapsedNanos;
+        
+        Progress(String jobName, int chunkSize, long startKey) {
+            this.jobName = jobName;
+            this.chunkSize = chunkSize;
+            this.startKey = startKey;
+            this.lastKey = startKey;
+        }
+        
+        // 只由运行作业的线程更新
+        void record(BatchJob.ChunkResult result) {
+            lastKey = result.getLastKey();
+            chunkCount++;
+            scannedCount += result.getScanned();
+            affectedCount += result.getAffected();
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+        
+        void finish(String finalStatus) {
+            elapsedNanos = System.nanoTime() - startNanos;
+            status = finalStatus;
+        }
+        
+        public String getJobName() { return jobName; }
+        public int getChunkSize() { return chunkSize; }
+        public long getStartKey() { return startKey; }
+        public LocalDateTime getStartedAt() { return startedAt; }
+        public String getStatus() { return status; }
+        public long getLastKey() { return lastKey; }
+        public long getChunkCount() { return chunkCount; }
+        public long getScannedCount() { return scannedCount; }
+        public long getAffectedCount() { return affectedCount; }
+        
+        public long getElapsedMillis() {
+            long nanos = STATUS_RUNNING.equals(status) ? System.nanoTime() - startNanos : elapsedNanos;
+            return nanos / 1_000_000;
+        }
+        
+        /**
+         * 扫描吞吐量（行/秒）
+         */
+        public double getRowsPerSecond() {
+            long millis = getElapsedMillis();
+            return millis > 0 ? scannedCount * 1000.0 / millis : 0.0;
+        }
+    }
+}
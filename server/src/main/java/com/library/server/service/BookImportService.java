@@ -0,0 +1,302 @@
+package com.library.server.service;
+
+import com.library.common.protocol.ErrorCode;
+import com.library.common.protocol.Request;
+import com.library.common.protocol.Response;
+import com.library.common.util.JsonUtil;
+import com.library.server.dao.BookDao;
+import com.library.server.dao.DataSourceProvider;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分块导入服务
+ * 客户端先开启导入会话，再分多次发送CSV行，最后提交。
+ * 每个会话持有一个事务连接，每块数据解析校验后立即COPY到临时表，提交时一次性合并到books表，
+ * 服务端内存占用只与单块大小有关
+ */
+public class BookImportService {
+    private static final Logger logger = LoggerFactory.getLogger(BookImportService.class);
+
+    // 同时进行的导入会话上限（每个会话占用一个连接）
+    private static final int MAX_SESSIONS = 2;
+    // 单块内容上限（字符）
+    private static final int MAX_CHUNK_CHARS = 4 * 1024 * 1024;
+    // 会话空闲超时，超时后回滚并释放连接
+    private static final long SESSION_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private final BookDao bookDao = new BookDao();
+    private final Map<String, ImportSession> sessions = new ConcurrentHashMap<>();
+    // 会话名额，开启时先占用，会话关闭时归还
+    private final Semaphore sessionSlots = new Semaphore(MAX_SESSIONS);
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ImportSessionSweeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public BookImportService() {
+        sweeper.scheduleWithFixedDelay(this::expireIdleSessions, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 开启导入会话
+     */
+    public Response begin(Request request) {
+        String requestId = request.getRequestId();
+
+        if (!sessionSlots.tryAcquire()) {
+            return Response.error(requestId, ErrorCode.VALIDATION_ERROR,
+                "当前导入任务过多，请稍后再试");
+        }
+
+        Connection conn = null;
+        boolean opened = false;
+        try {
+            conn = DataSourceProvider.getDataSource().getConnection();
+            conn.setAutoCommit(false);
+            bookDao.createImportTable(conn);
+
+            ImportSession session = new ImportSession(UUID.randomUUID().toString(), request.getToken(), conn);
+            sessions.put(session.id, session);
+            opened = true;
+            logger.info("开启导入会话: sessionId={}, fileType={}",
+                session.id, request.getPayloadString("fileType"));
+
+            ObjectNode data = JsonUtil.createObjectNode();
+            data.put("sessionId", session.id);
+            data.put("maxChunkChars", MAX_CHUNK_CHARS);
+            return Response.success(requestId, "导入会话已开启", data);
+        } catch (SQLException e) {
+            logger.error("开启导入会话失败", e);
+            if (conn != null) {
+                rollbackAndClose(conn);
+            }
+            return Response.error(requestId, ErrorCode.DATABASE_ERROR,
+                "开启导入会话失败: " + e.getMessage());
+        } finally {
+            if (!opened) {
+                sessionSlots.release();
+            }
+        }
+    }
+
+    /**
+     * 接收一块CSV行，解析校验后写入临时表，返回当前进度
+     */
+    public Response chunk(Request request) {
+        String requestId = request.getRequestId();
+        ImportSession session = getSession(request);
+        if (session == null) {
+            return Response.error(requestId, ErrorCode.NOT_FOUND, "导入会话不存在或已过期");
+        }
+
+        String content = request.getPayloadString("content");
+        if (content == null) {
+            return Response.error(requestId, ErrorCode.VALIDATION_ERROR, "分块内容不能为空");
+        }
+        if (content.length() > MAX_CHUNK_CHARS) {
+            return Response.error(requestId, ErrorCode.VALIDATION_ERROR,
+                String.format("分块内容过大，单块不能超过%d个字符", MAX_CHUNK_CHARS));
+        }
+
+        synchronized (session) {
+            if (session.closed) {
+                return Response.error(requestId, ErrorCode.NOT_FOUND, "导入会话不存在或已过期");
+            }
+            session.lastAccess = System.currentTimeMillis();
+            try (CsvBookReader reader = new CsvBookReader(content, session.nextLineNumber,
+                    session.errors, BookService.MAX_IMPORT_ERRORS)) {
+                session.acceptedCount += bookDao.copyToImportTable(session.conn, reader, session.acceptedCount);
+                session.nextLineNumber = reader.getLineNumber() + 1;
+                session.rowCount += reader.getRowCount();
+                session.errorCount += reader.getErrorCount();
+                session.chunkCount++;
+            } catch (Exception e) {
+                logger.error("处理导入分块失败: sessionId={}, chunk={}", session.id, session.chunkCount, e);
+                closeSession(session);
+                return Response.error(requestId, ErrorCode.DATABASE_ERROR,
+                    "处理导入分块失败，导入已取消: " + e.getMessage());
+            }
+
+            ObjectNode data = JsonUtil.createObjectNode();
+            data.put("sessionId", session.id);
+            data.put("chunkCount", session.chunkCount);
+            data.put("rowCount", session.rowCount);
+            data.put("acceptedCount", session.acceptedCount);
+            data.put("failCount", session.errorCount);
+            return Response.success(requestId, "已接收", data);
+        }
+    }
+
+    /**
+     * 提交导入会话：合并临时表并提交事务
+     */
+    public Response commit(Request request) {
+        String requestId = request.getRequestId();
+        ImportSession session = getSession(request);
+        if (session == null) {
+            return Response.error(requestId, ErrorCode.NOT_FOUND, "导入会话不存在或已过期");
+        }
+
+        synchronized (session) {
+            if (session.closed) {
+                return Response.error(requestId, ErrorCode.NOT_FOUND, "导入会话不存在或已过期");
+            }
+            try {
+                BookDao.BulkImportResult result = bookDao.mergeImportTable(session.conn);
+                session.conn.commit();
+                StockReservation.invalidateAll();
+                HoldService.onCopiesAdded(result.getReleases());
+
+                for (String rejected : result.getRejected()) {
+                    if (session.errors.size() < BookService.MAX_IMPORT_ERRORS) {
+                        session.errors.add(rejected);
+                    }
+                }
+                int successCount = result.getSuccessCount();
+                int failCount = session.errorCount + result.getRejected().size();
+                logger.info("导入会话提交: sessionId={}, chunks={}, total={}, inserted={}, updated={}, failed={}",
+                    session.id, session.chunkCount, session.rowCount,
+                    result.getInsertedCount(), result.getUpdatedCount(), failCount);
+
+                ObjectNode data = JsonUtil.createObjectNode();
+                data.put("successCount", successCount);
+                data.put("failCount", failCount);
+                data.put("totalCount", session.rowCount);
+                data.put("insertedCount", result.getInsertedCount());
+                data.put("updatedCount", result.getUpdatedCount());
+
+                String message = String.format("导入完成：成功%d本，失败%d本", successCount, failCount);
+                if (!session.errors.isEmpty()) {
+                    ArrayNode errorsArray = JsonUtil.getObjectMapper().createArrayNode();
+                    for (String error : session.errors) {
+                        errorsArray.add(error);
+                    }
+                    data.set("errors", errorsArray);
+                    if (failCount > session.errors.size()) {
+                        message += String.format("（显示前%d个错误）", session.errors.size());
+                    }
+                }
+                return Response.success(requestId, message, data);
+            } catch (SQLException e) {
+                logger.error("提交导入会话失败: sessionId={}", session.id, e);
+                return Response.error(requestId, ErrorCode.DATABASE_ERROR,
+                    "提交导入失败: " + e.getMessage());
+            } finally {
+                closeSession(session);
+            }
+        }
+    }
+
+    /**
+     * 取消导入会话，回滚已写入的数据
+     */
+    public Response abort(Request request) {
+        String requestId = request.getRequestId();
+        ImportSession session = getSession(request);
+        if (session == null) {
+            return Response.error(requestId, ErrorCode.NOT_FOUND, "导入会话不存在或已过期");
+        }
+        synchronized (session) {
+            closeSession(session);
+        }
+        logger.info("取消导入会话: sessionId={}", session.id);
+        return Response.success(requestId, "导入已取消", null);
+    }
+
+    /**
+     * 按sessionId查找会话，只允许开启会话的Token访问
+     */
+    private ImportSession getSession(Request request) {
+        String sessionId = request.getPayloadString("sessionId");
+        if (sessionId == null) {
+            return null;
+        }
+        ImportSession session = sessions.get(sessionId);
+        if (session == null || !session.ownerToken.equals(request.getToken())) {
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * 回滚并释放空闲超时的会话
+     */
+    private void expireIdleSessions() {
+        long now = System.currentTimeMillis();
+        for (ImportSession session : sessions.values()) {
+            if (now - session.lastAccess > SESSION_IDLE_TIMEOUT_MILLIS) {
+                synchronized (session) {
+                    if (!session.closed && now - session.lastAccess > SESSION_IDLE_TIMEOUT_MILLIS) {
+                        logger.warn("导入会话空闲超时，已回滚: sessionId={}", session.id);
+                        closeSession(session);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 关闭会话（未提交的数据回滚）
+     */
+    private void closeSession(ImportSession session) {
+        sessions.remove(session.id);
+        if (!session.closed) {
+            session.closed = true;
+            rollbackAndClose(session.conn);
+            sessionSlots.release();
+        }
+    }
+
+    private void rollbackAndClose(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.error("回滚导入事务失败", e);
+        }
+        try {
+            conn.setAutoCommit(true);
+            conn.close();
+        } catch (SQLException e) {
+            logger.error("关闭连接失败", e);
+        }
+    }
+
+    /**
+     * 导入会话
+     */
+    private static class ImportSession {
+        final String id;
+        final String ownerToken;
+        final Connection conn;
+        final List<String> errors = new ArrayList<>();
+        volatile long lastAccess = System.currentTimeMillis();
+        boolean closed;
+        int nextLineNumber = 1;
+        int chunkCount;
+        int rowCount;
+        int acceptedCount;
+        int errorCount;
+
+        ImportSession(String id, String ownerToken, Connection conn) {
+            this.id = id;
+            this.ownerToken = ownerToken;
+            this.conn = conn;
+        }
+    }
+}
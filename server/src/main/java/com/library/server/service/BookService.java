@@ -14,14 +14,15 @@ import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.ArrayList;
-import java.io.StringReader;
-import java.io.BufferedReader;
 
 /**
  * 图书服务
  */
 public class BookService {
     private static final Logger logger = LoggerFactory.getLogger(BookService.class);
+    // 导入时最多返回的错误信息条数，避免响应过大
+    static final int MAX_IMPORT_ERRORS = 10;
+    
     private final BookDao bookDao = new BookDao();
     
     /**
@@ -161,6 +162,7 @@ public class BookService {
             }
             
             boolean updated = bookDao.updateBook(existingBook);
+            StockReservation.invalidate(bookId);
             
             if (updated) {
                 return Response.success(requestId, "更新图书成功", null);
@@ -193,6 +195,8 @@ public class BookService {
             }
             
             boolean deleted = bookDao.deleteBook(bookId);
+            StockReservation.invalidate(bookId);
+            HoldQueue.invalidate(bookId);
             
             if (deleted) {
                 return Response.success(requestId, "删除图书成功", null);
@@ -210,6 +214,7 @@ public class BookService {
      * 批量导入图书
      * 支持CSV/TXT/EXCEL格式
      * 格式：isbn,title,author,category,publisher,description,totalCount
+     * 逐行校验后通过COPY写入临时表并一次性合并，校验失败的行收集为错误信息
      */
     public Response importBooks(Request request) {
         String requestId = request.getRequestId();
@@ -222,75 +227,41 @@ public class BookService {
                     "文件内容不能为空");
             }
             
-            // 解析CSV格式的内容（无论是CSV、TXT还是EXCEL转换后的内容）
-            List<Book> books = parseCsvContent(content);
-            
-            int successCount = 0;
-            int failCount = 0;
+            // 解析CSV格式的内容（无论是CSV、TXT还是EXCEL转换后的内容），边解析边写入
             List<String> errorMessages = new ArrayList<>();
-            
-            // 批量插入图书
-            for (Book book : books) {
-                try {
-                    // 验证必填字段
-                    if (book.getIsbn() == null || book.getIsbn().trim().isEmpty() ||
-                        book.getTitle() == null || book.getTitle().trim().isEmpty() ||
-                        book.getAuthor() == null || book.getAuthor().trim().isEmpty() ||
-                        book.getCategory() == null || book.getCategory().trim().isEmpty()) {
-                        failCount++;
-                        errorMessages.add(String.format("ISBN %s: 必填字段不能为空", 
-                            book.getIsbn() != null ? book.getIsbn() : "未知"));
-                        continue;
-                    }
-                    
-                    // 检查ISBN是否已存在
-                    Book existingBook = bookDao.findByIsbn(book.getIsbn());
-                    if (existingBook != null) {
-                        // 如果已存在，更新图书信息
-                        existingBook.setTitle(book.getTitle());
-                        existingBook.setAuthor(book.getAuthor());
-                        existingBook.setCategory(book.getCategory());
-                        existingBook.setPublisher(book.getPublisher());
-                        existingBook.setDescription(book.getDescription());
-                        
-                        // 更新总数，同时更新可用数
-                        int delta = book.getTotalCount() - existingBook.getTotalCount();
-                        existingBook.setTotalCount(book.getTotalCount());
-                        existingBook.setAvailableCount(existingBook.getAvailableCount() + delta);
-                        
-                        bookDao.updateBook(existingBook);
-                        successCount++;
-                    } else {
-                        // 新图书，插入
-                        book.setAvailableCount(book.getTotalCount());
-                        book.setCreatedAt(LocalDateTime.now());
-                        bookDao.insertBook(book);
-                        successCount++;
+            int successCount;
+            int failCount;
+            int totalCount;
+            try (CsvBookReader reader = new CsvBookReader(content, 1, errorMessages, MAX_IMPORT_ERRORS)) {
+                BookDao.BulkImportResult result = bookDao.bulkUpsert(reader);
+                StockReservation.invalidateAll();
+                HoldService.onCopiesAdded(result.getReleases());
+                for (String rejected : result.getRejected()) {
+                    if (errorMessages.size() < MAX_IMPORT_ERRORS) {
+                        errorMessages.add(rejected);
                     }
-                } catch (Exception e) {
-                    failCount++;
-                    errorMessages.add(String.format("ISBN %s: %s", 
-                        book.getIsbn() != null ? book.getIsbn() : "未知", e.getMessage()));
-                    logger.warn("导入图书失败: ISBN={}, error={}", book.getIsbn(), e.getMessage());
                 }
+                successCount = result.getSuccessCount();
+                failCount = reader.getErrorCount() + result.getRejected().size();
+                totalCount = reader.getRowCount();
+                logger.info("批量导入图书: total={}, inserted={}, updated={}, failed={}", 
+                    totalCount, result.getInsertedCount(), result.getUpdatedCount(), failCount);
             }
             
             ObjectNode data = JsonUtil.createObjectNode();
             data.put("successCount", successCount);
             data.put("failCount", failCount);
-            data.put("totalCount", books.size());
+            data.put("totalCount", totalCount);
             
             String message = String.format("导入完成：成功%d本，失败%d本", successCount, failCount);
             if (failCount > 0 && errorMessages.size() > 0) {
-                // 只返回前10个错误信息，避免响应过大
-                int maxErrors = Math.min(10, errorMessages.size());
                 ArrayNode errorsArray = JsonUtil.getObjectMapper().createArrayNode();
-                for (int i = 0; i < maxErrors; i++) {
-                    errorsArray.add(errorMessages.get(i));
+                for (String error : errorMessages) {
+                    errorsArray.add(error);
                 }
                 data.set("errors", errorsArray);
-                if (errorMessages.size() > maxErrors) {
-                    message += String.format("（显示前%d个错误）", maxErrors);
+                if (failCount > errorMessages.size()) {
+                    message += String.format("（显示前%d个错误）", errorMessages.size());
                 }
             }
             
@@ -301,62 +272,4 @@ public class BookService {
                 "批量导入图书失败: " + e.getMessage());
         }
     }
-    
-    /**
-     * 解析CSV格式的内容
-     * 格式：isbn,title,author,category,publisher,description,totalCount
-     */
-    private List<Book> parseCsvContent(String content) throws Exception {
-        List<Book> books = new ArrayList<>();
-        
-        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
-            String line;
-            int lineNumber = 0;
-            
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                line = line.trim();
-                
-                // 跳过空行
-                if (line.isEmpty()) {
-                    continue;
-                }
-                
-                // 跳过表头行（如果第一行包含"isbn"等关键字）
-                if (lineNumber == 1 && line.toLowerCase().contains("isbn")) {
-                    continue;
-                }
-                
-                // 解析CSV行（简单处理，不支持引号内的逗号）
-                String[] parts = line.split(",");
-                if (parts.length < 4) {
-                    // 至少需要isbn,title,author,category
-                    continue;
-                }
-                
-                Book book = new Book();
-                book.setIsbn(parts[0].trim());
-                book.setTitle(parts.length > 1 ? parts[1].trim() : "");
-                book.setAuthor(parts.length > 2 ? parts[2].trim() : "");
-                book.setCategory(parts.length > 3 ? parts[3].trim() : "");
-                book.setPublisher(parts.length > 4 ? parts[4].trim() : "");
-                book.setDescription(parts.length > 5 ? parts[5].trim() : "");
-                
-                // 解析totalCount
-                int totalCount = 0;
-                if (parts.length > 6) {
-                    try {
-                        totalCount = Integer.parseInt(parts[6].trim());
-                    } catch (NumberFormatException e) {
-                        totalCount = 0;
-                    }
-                }
-                book.setTotalCount(totalCount);
-                
-                books.add(book);
-            }
-        }
-        
-        return books;
-    }
 }
@@ -6,21 +6,24 @@ import com.library.common.protocol.Response;
 import com.library.common.util.JsonUtil;
 import com.library.server.dao.BookDao;
 import com.library.server.dao.BorrowRecordDao;
+import com.library.server.dao.CirculationDao;
 import com.library.server.dao.UserDao;
 import com.library.server.model.Book;
 import com.library.server.model.BorrowRecord;
+import com.library.server.recommend.BorrowGraph;
+import com.library.server.recommend.CoBorrowIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import com.library.server.service.FineService;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 借阅服务
@@ -30,110 +33,126 @@ public class BorrowService {
     private final BorrowRecordDao recordDao = new BorrowRecordDao();
     private final BookDao bookDao = new BookDao();
     private final UserDao userDao = new UserDao();
+    private final CirculationDao circulationDao = new CirculationDao();
+    
+    // 借阅期限（天）
+    private static final int LOAN_DAYS = 30;
+    // 借书写库等待上限（秒）
+    private static final long COMMIT_TIMEOUT_SECONDS = 10;
+    // 借还书分组提交器：借书始终合并已排队的请求写库；还书只在启用circulation.groupCommit时经此写库
+    private static final CirculationBatcher batcher = CirculationBatcher.create(LOAN_DAYS);
     
     /**
      * 借书
      * 借书设置 due_time = borrow_time + 30天
+     * 先用内存中的用户借阅状态检查资格、在内存库存计数器上预留（不满足条件立即拒绝，不访问数据库），
+     * 再调用circulation_borrow在一次往返内完成管理员检查、逾期检查、扣库存和插入记录（经分组提交，与排队中的借书合并为一个事务）；
+     * 读者来取预约分配给他的副本时不占用可借库存。库存不足时返回排队人数，提示读者预约而不是反复重试
      */
     public Response borrowBook(Request request, Long userId) {
         String requestId = request.getRequestId();
-        Connection conn = null;
         
         try {
-            com.library.server.model.User user = userDao.findById(userId);
-            if (user != null && user.isAdmin()) {
-                return Response.error(requestId, ErrorCode.FORBIDDEN, 
-                        JsonUtil.toJsonNode("管理员账户不能借书"));
-            }
-            
             Long bookId = request.getPayloadLong("bookId");
             if (bookId == null) {
                 return Response.error(requestId, ErrorCode.VALIDATION_ERROR, 
                         JsonUtil.toJsonNode("图书ID不能为空"));
             }
             
-            if (recordDao.hasOverdueBooks(userId)) {
-                return Response.error(requestId, ErrorCode.OVERDUE_BOOK, 
-                        JsonUtil.toJsonNode("存在逾期图书，无法继续借阅"));
+            switch (UserCirculationCache.checkBorrow(userId)) {
+                case ADMIN:
+                    return circulationError(requestId, "ADMIN_FORBIDDEN");
+                case OVERDUE:
+                    return circulationError(requestId, "OVERDUE");
+                default:
+                    break;
             }
             
-            Book book = bookDao.findById(bookId);
-            if (book == null) {
-                return Response.error(requestId, ErrorCode.NOT_FOUND, 
-                        JsonUtil.toJsonNode("图书不存在"));
+            // 有预约副本分配给该读者时直接取书，不在可借库存计数器上预留
+            boolean pickup = HoldQueue.isReadyFor(bookId, userId);
+            long reservation = pickup ? 0 : StockReservation.tryReserve(bookId);
+            if (reservation == StockReservation.REJECTED) {
+                return noStock(requestId, bookId);
             }
             
-            conn = com.library.server.dao.DataSourceProvider.getDataSource().getConnection();
-            conn.setAutoCommit(false);
-            
-            boolean stockUpdated = bookDao.updateBookStock(conn, bookId, -1);
-            if (!stockUpdated) {
-                conn.rollback();
-                return Response.error(requestId, ErrorCode.NO_STOCK, 
-                        JsonUtil.toJsonNode("库存不足"));
+            CirculationDao.BorrowOutcome outcome;
+            try {
+                outcome = batcher.submitBorrow(userId, bookId).await(COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException | RuntimeException e) {
+                // 已回滚，归还预留
+                if (!pickup) {
+                    StockReservation.release(bookId, reservation);
+                }
+                logger.error("借书失败: userId={}, bookId={}", userId, bookId, 
+                        e instanceof ExecutionException ? e.getCause() : e);
+                return Response.error(requestId, ErrorCode.SERVER_ERROR);
+            } catch (TimeoutException e) {
+                // 排队超时已取消，不会再执行，归还预留
+                if (!pickup) {
+                    StockReservation.release(bookId, reservation);
+                }
+                logger.error("借书写库排队超时，已取消: userId={}, bookId={}", userId, bookId);
+                return Response.error(requestId, ErrorCode.SERVER_ERROR);
             }
             
-            BorrowRecord record = new BorrowRecord();
-            record.setUserId(userId);
-            record.setBookId(bookId);
-            record.setBorrowTime(LocalDateTime.now());
-            record.setDueTime(LocalDateTime.now().plusDays(30));
-            record.setStatus("BORROWED");
-            record.setCreatedAt(LocalDateTime.now());
-            
-            Long recordId = recordDao.insertBorrowRecord(conn, record);
+            if (!outcome.isOk()) {
+                if (CirculationDao.RESULT_NO_STOCK.equals(outcome.getResultCode())) {
+                    // 计数器或预约镜像与数据库不一致，以数据库为准重新加载
+                    StockReservation.invalidate(bookId);
+                    HoldQueue.invalidate(bookId);
+                    return noStock(requestId, bookId);
+                }
+                if (!pickup) {
+                    StockReservation.release(bookId, reservation);
+                }
+                return circulationError(requestId, outcome.getResultCode());
+            }
+            // 预约镜像可能过期，以数据库实际走的分支为准校正计数器
+            if (pickup && !outcome.isFromHold()) {
+                // 预约已失效，数据库改从可借库存扣减，而计数器未预留
+                StockReservation.invalidate(bookId);
+            } else if (!pickup && outcome.isFromHold()) {
+                // 借出的是预约副本，数据库未扣可借库存，归还预留
+                StockReservation.release(bookId, reservation);
+            }
+            HoldQueue.onRemoved(bookId, userId);
             
-            conn.commit();
+            Long recordId = outcome.getRecordId();
+            OverdueScheduler.track(recordId, outcome.getDueTime());
+            UserCirculationCache.onBorrowed(userId, recordId, outcome.getDueTime());
+            BorrowGraph.onBorrowed(recordId, userId, bookId, outcome.getBorrowTime());
+            CoBorrowIndex.onBorrowed(userId, bookId);
+            RecommendationPrecomputer.onBorrowed(userId, bookId);
+            BorrowedBookCache.onBorrowed(userId, bookId);
             
             ObjectNode data = JsonUtil.createObjectNode();
             data.put("recordId", recordId);
             data.put("bookId", bookId);
-            data.put("bookTitle", book.getTitle());
-            data.put("borrowTime", record.getBorrowTime().toString());
-            data.put("dueTime", record.getDueTime().toString());
+            data.put("bookTitle", outcome.getBookTitle());
+            data.put("borrowTime", outcome.getBorrowTime().toString());
+            data.put("dueTime", outcome.getDueTime().toString());
             
             logger.info("借书成功: userId={}, bookId={}, recordId={}", userId, bookId, recordId);
             return Response.success(requestId, "借书成功", JsonUtil.toJsonNode(data));
             
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    logger.error("回滚事务失败", ex);
-                }
-            }
-            logger.error("借书失败: userId={}", userId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("借书被中断: userId={}", userId);
             return Response.error(requestId, ErrorCode.SERVER_ERROR);
         } catch (Exception e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    logger.error("回滚事务失败", ex);
-                }
-            }
             logger.error("借书失败: userId={}", userId, e);
             return Response.error(requestId, ErrorCode.SERVER_ERROR);
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    logger.error("关闭连接失败", e);
-                }
-            }
         }
     }
     
     /**
      * 还书
      * 返回时若逾期则在响应里返回 overdueDays
+     * 调用circulation_return在一次往返内完成归属检查、标记归还、罚款结算和恢复库存；
+     * 有人预约时副本直接分配给队首读者并通知其取书，不回到可借库存
      */
     public Response returnBook(Request request, Long userId) {
         String requestId = request.getRequestId();
-        Connection conn = null;
         
         try {
             Long recordId = request.getPayloadLong("recordId");
@@ -142,46 +161,41 @@ public class BorrowService {
                         JsonUtil.toJsonNode("借阅记录ID不能为空"));
             }
             
-            // 查找借阅记录
-            BorrowRecord record = recordDao.findById(recordId);
-            if (record == null) {
-                return Response.error(requestId, ErrorCode.NOT_FOUND, 
-                        JsonUtil.toJsonNode("借阅记录不存在"));
+            FineSchedule schedule = FineService.getSchedule();
+            // 写库前取得代号，写库后才加载的计数器已包含本次恢复的库存
+            long generation = StockReservation.currentGeneration();
+            CirculationDao.ReturnOutcome outcome;
+            try {
+                outcome = batcher.batchesReturns()
+                        ? batcher.submitReturn(userId, recordId, schedule).await(COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        : circulationDao.returnBook(userId, recordId,
+                                schedule.getTierStartDays(), schedule.getTierEndDays(),
+                                schedule.getTierBaseFines(), schedule.getTierRates());
+            } catch (ExecutionException e) {
+                logger.error("还书失败: userId={}, recordId={}", userId, recordId, e.getCause());
+                return Response.error(requestId, ErrorCode.SERVER_ERROR);
+            } catch (TimeoutException e) {
+                // 排队超时已取消，不会再执行，借阅记录保持未归还
+                logger.error("还书写库排队超时，已取消: userId={}, recordId={}", userId, recordId);
+                return Response.error(requestId, ErrorCode.SERVER_ERROR);
             }
-            
-            // 检查是否是该用户的记录
-            if (!record.getUserId().equals(userId)) {
-                return Response.error(requestId, ErrorCode.FORBIDDEN, 
-                        JsonUtil.toJsonNode("无权操作此借阅记录"));
+            if (!outcome.isOk()) {
+                return circulationError(requestId, outcome.getResultCode());
             }
-            
-            // 检查是否已归还
-            if ("RETURNED".equals(record.getStatus())) {
-                return Response.error(requestId, ErrorCode.VALIDATION_ERROR, 
-                        JsonUtil.toJsonNode("该图书已经归还"));
+            if (outcome.getHoldUserId() != null) {
+                HoldService.onCopyAssigned(outcome.getBookId(), outcome.getHoldUserId());
+            } else if (outcome.isStockRestored()) {
+                StockReservation.release(outcome.getBookId(), generation);
             }
+            UserCirculationCache.onReturned(userId, recordId, outcome.getFineAmount());
             
-            long overdueDays = FineService.calculateOverdueDays(record.getDueTime());
-            double fineAmount = FineService.calculateFine(overdueDays);
-            
-            conn = com.library.server.dao.DataSourceProvider.getDataSource().getConnection();
-            conn.setAutoCommit(false);
-            
-            recordDao.markReturned(conn, recordId, fineAmount);
-            
-            if (fineAmount > 0) {
-                UserDao userDao = new UserDao();
-                userDao.addFineAmount(conn, userId, fineAmount);
-            }
-            
-            bookDao.updateBookStock(conn, record.getBookId(), 1);
-            
-            conn.commit();
+            long overdueDays = outcome.getOverdueDays();
+            double fineAmount = outcome.getFineAmount();
             
             ObjectNode data = JsonUtil.createObjectNode();
             data.put("recordId", recordId);
-            data.put("bookId", record.getBookId());
-            data.put("returnTime", LocalDateTime.now().toString());
+            data.put("bookId", outcome.getBookId());
+            data.put("returnTime", outcome.getReturnTime().toString());
             data.put("overdueDays", overdueDays);
             data.put("fineAmount", fineAmount);
             
@@ -195,35 +209,52 @@ public class BorrowService {
                     userId, recordId, overdueDays);
             return Response.success(requestId, "还书成功", JsonUtil.toJsonNode(data));
             
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    logger.error("回滚事务失败", ex);
-                }
-            }
-            logger.error("还书失败: userId={}", userId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("还书被中断: userId={}", userId);
             return Response.error(requestId, ErrorCode.SERVER_ERROR);
         } catch (Exception e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    logger.error("回滚事务失败", ex);
-                }
-            }
             logger.error("还书失败: userId={}", userId, e);
             return Response.error(requestId, ErrorCode.SERVER_ERROR);
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    logger.error("关闭连接失败", e);
-                }
-            }
+        }
+    }
+    
+    /**
+     * 库存不足响应，附带排队人数供客户端提示预约
+     */
+    private static Response noStock(String requestId, Long bookId) {
+        ObjectNode data = JsonUtil.createObjectNode();
+        data.put("bookId", bookId);
+        data.put("canHold", true);
+        data.put("waitingCount", HoldQueue.waitingCount(bookId));
+        data.put("message", "库存不足，可预约排队，有书归还时将通知您");
+        return Response.error(requestId, ErrorCode.NO_STOCK, JsonUtil.toJsonNode(data));
+    }
+    
+    /**
+     * 将借还书函数的result_code映射为错误响应
+     */
+    private static Response circulationError(String requestId, String resultCode) {
+        switch (resultCode) {
+            case "USER_NOT_FOUND":
+                return Response.error(requestId, ErrorCode.NOT_FOUND, JsonUtil.toJsonNode("用户不存在"));
+            case "ADMIN_FORBIDDEN":
+                return Response.error(requestId, ErrorCode.FORBIDDEN, JsonUtil.toJsonNode("管理员账户不能借书"));
+            case "OVERDUE":
+                return Response.error(requestId, ErrorCode.OVERDUE_BOOK, JsonUtil.toJsonNode("存在逾期图书，无法继续借阅"));
+            case "BOOK_NOT_FOUND":
+                return Response.error(requestId, ErrorCode.NOT_FOUND, JsonUtil.toJsonNode("图书不存在"));
+            case CirculationDao.RESULT_NO_STOCK:
+                return Response.error(requestId, ErrorCode.NO_STOCK, JsonUtil.toJsonNode("库存不足"));
+            case "RECORD_NOT_FOUND":
+                return Response.error(requestId, ErrorCode.NOT_FOUND, JsonUtil.toJsonNode("借阅记录不存在"));
+            case "NOT_OWNER":
+                return Response.error(requestId, ErrorCode.FORBIDDEN, JsonUtil.toJsonNode("无权操作此借阅记录"));
+            case "ALREADY_RETURNED":
+                return Response.error(requestId, ErrorCode.VALIDATION_ERROR, JsonUtil.toJsonNode("该图书已经归还"));
+            default:
+                logger.error("未知的借还书结果: {}", resultCode);
+                return Response.error(requestId, ErrorCode.SERVER_ERROR);
         }
     }
     
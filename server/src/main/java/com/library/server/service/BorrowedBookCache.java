@@ -0,0 +1,178 @@
+package com.library.server.service;
+
+import com.library.server.dao.BorrowRecordDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 用户已借图书缓存（LRU）
+ * 每个用户借过的图书ID存为升序long[]，推荐各通道排除已借图书时二分查找，不装箱、不分配对象；
+ * 同一次RECOMMEND的三路通道共享同一份集合，跨请求复用。未命中时从数据库加载，
+ * 借书成功后由BorrowService直接追加（写穿），条目过期后重新加载以纠正其他途径对借阅记录的修改；
+ * 加载期间该用户借了书时加载结果可能不含这本书，只用于本次请求，不写入缓存
+ */
+final class BorrowedBookCache {
+    private static final Logger logger = LoggerFactory.getLogger(BorrowedBookCache.class);
+    
+    private static final int MAX_USERS = 10000;
+    // 条目有效期（毫秒）
+    private static final long REFRESH_MILLIS = 5 * 60_000;
+    
+    private static final BorrowRecordDao recordDao = new BorrowRecordDao();
+    private static final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_USERS;
+        }
+    };
+    // 正在加载的用户（由entries的锁保护）
+    private static final Map<Long, PendingLoad> loading = new HashMap<>();
+    
+    private BorrowedBookCache() {
+    }
+    
+    /**
+     * 用户借过的图书；加载失败时返回空集合（不缓存），推荐照常进行
+     */
+    static BorrowedBooks get(Long userId) {
+        Entry entry = peek(userId);
+        if (entry != null && System.currentTimeMillis() - entry.loadedAt < REFRESH_MILLIS) {
+            return entry.books;
+        }
+        PendingLoad load;
+        synchronized (entries) {
+            load = loading.computeIfAbsent(userId, id -> new PendingLoad());
+            load.loaders++;
+        }
+        BorrowedBooks books = BorrowedBooks.EMPTY;
+        boolean failed = false;
+        try {
+            books = new BorrowedBooks(recordDao.findBorrowedBookIds(userId));
+        } catch (Exception e) {
+            logger.warn("加载用户已借图书失败: userId={}", userId, e);
+            failed = true;
+        }
+        synchronized (entries) {
+            if (--load.loaders == 0) {
+                loading.remove(userId);
+            }
+            if (!failed && !load.stale) {
+                entries.put(userId, new Entry(books));
+            }
+        }
+        return books;
+    }
+    
+    /**
+     * 从指定的借阅记录来源直接加载，不读写缓存（离线评估使用截止到切分时间的来源）
+     */
+    static BorrowedBooks load(BorrowRecordDao source, Long userId) {
+        return new BorrowedBooks(source.findBorrowedBookIds(userId));
+    }
+    
+    /**
+     * 借书成功后追加图书（写时复制，正在使用旧集合的请求不受影响）
+     */
+    static void onBorrowed(Long userId, Long bookId) {
+        if (userId == null || bookId == null) {
+            return;
+        }
+        Entry entry;
+        synchronized (entries) {
+            markStale(userId);
+            entry = entries.get(userId);
+        }
+        if (entry != null) {
+            synchronized (entry) {
+                entry.books = entry.books.with(bookId);
+            }
+        }
+    }
+    
+    /**
+     * 作废用户的缓存条目
+     */
+    static void invalidate(Long userId) {
+        synchronized (entries) {
+            markStale(userId);
+            entries.remove(userId);
+        }
+    }
+    
+    private static void markStale(Long userId) {
+        PendingLoad load = loading.get(userId);
+        if (load != null) {
+            load.stale = true;
+        }
+    }
+    
+    private static Entry peek(Long userId) {
+        synchronized (entries) {
+            return entries.get(userId);
+        }
+    }
+    
+    /**
+     * 不可变的已借图书集合
+     */
+    static final class BorrowedBooks {
+        static final BorrowedBooks EMPTY = new BorrowedBooks(new long[0]);
+        
+        // 升序、去重
+        private final long[] bookIds;
+        
+        private BorrowedBooks(long[] bookIds) {
+            this.bookIds = bookIds;
+        }
+        
+        boolean contains(long bookId) {
+            return Arrays.binarySearch(bookIds, bookId) >= 0;
+        }
+        
+        int size() {
+            return bookIds.length;
+        }
+        
+        boolean isEmpty() {
+            return bookIds.length == 0;
+        }
+        
+        /**
+         * 加入一本书后的新集合，已包含时返回自身
+         */
+        BorrowedBooks with(long bookId) {
+            int index = Arrays.binarySearch(bookIds, bookId);
+            if (index >= 0) {
+                return this;
+            }
+            int insert = -index - 1;
+            long[] result = new long[bookIds.length + 1];
+            System.arraycopy(bookIds, 0, result, 0, insert);
+            result[insert] = bookId;
+            System.arraycopy(bookIds, insert, result, insert + 1, bookIds.length - insert);
+            return new BorrowedBooks(result);
+        }
+    }
+    
+    /**
+     * 进行中的加载，期间该用户借了书时标记为过时
+     */
+    private static class PendingLoad {
+        int loaders;
+        boolean stale;
+    }
+    
+    private static class Entry {
+        final long loadedAt = System.currentTimeMillis();
+        volatile BorrowedBooks books;
+        
+        Entry(BorrowedBooks books) {
+            this.books = books;
+        }
+    }
+}
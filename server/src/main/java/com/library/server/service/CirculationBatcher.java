@@ -0,0 +1,408 @@
+package com.library.server.service;
+
+import com.library.server.dao.CirculationDao;
+import com.library.server.dao.DataSourceProvider;
+import com.library.server.dao.JdbcTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 借还书分组提交：借书始终经此写库，上一批执行期间排队的借书合并为一个事务，不额外等待；
+ * circulation.groupCommit.enabled=true时还书也经此写库，并收集windowMillis毫秒内到达的请求，
+ * 在一个事务中执行并只提交一次（一次WAL刷盘），
+ * 每个操作有自己的保存点，单个操作出错只回滚该操作，不影响同批其他操作。
+ * 同批的借书先合并为一条语句执行（按bookId排序），该语句出错时再逐条执行。
+ * 调用方等待超时时，尚未被取出执行的操作直接取消；已开始执行的操作继续等待实际结果，不会出现调用方收到错误而事务随后提交的情况
+ */
+class CirculationBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(CirculationBatcher.class);
+    
+    private static final long DEFAULT_WINDOW_MILLIS = 3;
+    // 每个保存点占用一个子事务ID，单事务超过64个子事务时PostgreSQL的子事务缓存溢出，拖慢其他会话的快照
+    private static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    
+    private final BlockingQueue<Operation> queue = new LinkedBlockingQueue<>();
+    private final Statements statements;
+    private final JdbcTemplate jdbc;
+    private final int dueDays;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final boolean batchReturns;
+    
+    /**
+     * @param dueDays 借阅期限（天）
+     * @param windowMillis 收集窗口（毫秒），从一批的第一个请求到达开始计时
+     * @param maxBatchSize 单个事务最多合并的操作数
+     * @param batchReturns 还书是否也经分组提交写库
+     */
+    CirculationBatcher(int dueDays, long windowMillis, int maxBatchSize, boolean batchReturns) {
+        // 写操作始终走主库
+        this(new DaoStatements(new CirculationDao()), new JdbcTemplate(DataSourceProvider.getDataSource()),
+                dueDays, windowMillis, maxBatchSize, batchReturns);
+    }
+    
+    /**
+     * @param statements 借还书写库语句，在jdbc开启的事务连接上执行
+     */
+    CirculationBatcher(Statements statements, JdbcTemplate jdbc, int dueDays, long windowMillis, int maxBatchSize,
+                       boolean batchReturns) {
+        this.statements = statements;
+        this.jdbc = jdbc;
+        this.dueDays = dueDays;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.batchReturns = batchReturns;
+        Thread worker = new Thread(this::run, "CirculationBatcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    /**
+     * 按application.properties创建；未启用circulation.groupCommit时只合并借书，收集窗口为0
+     */
+    static CirculationBatcher create(int dueDays) {
+        Properties props = DataSourceProvider.loadProperties();
+        if (!Boolean.parseBoolean(props.getProperty("circulation.groupCommit.enabled", "false").trim())) {
+            return new CirculationBatcher(dueDays, 0, DEFAULT_MAX_BATCH_SIZE, false);
+        }
+        long windowMillis = Long.parseLong(props.getProperty("circulation.groupCommit.windowMillis", 
+                String.valueOf(DEFAULT_WINDOW_MILLIS)));
+        int maxBatchSize = Integer.parseInt(props.getProperty("circulation.groupCommit.maxBatchSize", 
+                String.valueOf(DEFAULT_MAX_BATCH_SIZE)));
+        logger.info("启用借还书分组提交: windowMillis={}, maxBatchSize={}", windowMillis, maxBatchSize);
+        return new CirculationBatcher(dueDays, windowMillis, maxBatchSize, true);
+    }
+    
+    /**
+     * 还书是否经分组提交写库，否则由调用方各自提交
+     */
+    boolean batchesReturns() {
+        return batchReturns;
+    }
+    
+    /**
+     * 提交借书请求
+     */
+    Pending<CirculationDao.BorrowOutcome> submitBorrow(Long userId, Long bookId) {
+        BorrowOperation op = new BorrowOperation(userId, bookId);
+        queue.add(op);
+        return new Pending<>(op, op.future);
+    }
+    
+    /**
+     * 提交还书请求，罚款按提交时的梯度表计算
+     */
+    Pending<CirculationDao.ReturnOutcome> submitReturn(Long userId, Long recordId, FineSchedule schedule) {
+        ReturnOperation op = new ReturnOperation(userId, recordId, schedule);
+        queue.add(op);
+        return new Pending<>(op, op.future);
+    }
+    
+    private void run() {
+        List<Operation> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Operation next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // 跳过调用方已取消的操作，其余的标记为执行中，之后不能再取消
+                batch.removeIf(op -> !op.claim());
+                if (!batch.isEmpty()) {
+                    commitBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("借还书分组提交异常", e);
+                for (Operation op : batch) {
+                    op.fail(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void commitBatch(List<Operation> batch) {
+        List<BorrowOperation> borrows = new ArrayList<>();
+        List<ReturnOperation> returns = new ArrayList<>();
+        for (Operation op : batch) {
+            if (op instanceof BorrowOperation) {
+                borrows.add((BorrowOperation) op);
+            } else {
+                returns.add((ReturnOperation) op);
+            }
+        }
+        // 借书按bookId、还书按recordId排序，减少与其他事务的锁顺序冲突
+        borrows.sort(Comparator.comparing(op -> op.bookId));
+        returns.sort(Comparator.comparing(op -> op.recordId));
+        
+        try {
+            jdbc.inTransaction(conn -> {
+                executeBorrows(conn, borrows);
+                for (ReturnOperation op : returns) {
+                    executeWithSavepoint(conn, op);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("借还书分组提交失败: count={}", batch.size(), e);
+            for (Operation op : batch) {
+                op.fail(e);
+            }
+            return;
+        }
+        
+        // 提交成功后再通知调用方
+        for (Operation op : batch) {
+            op.complete();
+        }
+        if (batch.size() > 1) {
+            logger.debug("借还书分组提交: borrows={}, returns={}", borrows.size(), returns.size());
+        }
+    }
+    
+    private void executeBorrows(Connection conn, List<BorrowOperation> borrows) throws SQLException {
+        if (borrows.isEmpty()) {
+            return;
+        }
+        if (borrows.size() > 1) {
+            Long[] userIds = new Long[borrows.size()];
+            Long[] bookIds = new Long[borrows.size()];
+            for (int i = 0; i < borrows.size(); i++) {
+                userIds[i] = borrows.get(i).userId;
+                bookIds[i] = borrows.get(i).bookId;
+            }
+            Savepoint savepoint = conn.setSavepoint();
+            try {
+                List<CirculationDao.BorrowOutcome> outcomes = statements.borrowBatch(conn, userIds, bookIds, dueDays);
+                conn.releaseSavepoint(savepoint);
+                for (int i = 0; i < borrows.size(); i++) {
+                    borrows.get(i).outcome = outcomes.get(i);
+                }
+                return;
+            } catch (SQLException e) {
+                conn.rollback(savepoint);
+                logger.warn("合并借书语句失败，逐条执行: count={}", borrows.size(), e);
+            }
+        }
+        for (BorrowOperation op : borrows) {
+            executeWithSavepoint(conn, op);
+        }
+    }
+    
+    private void executeWithSavepoint(Connection conn, Operation op) throws SQLException {
+        Savepoint savepoint = conn.setSavepoint();
+        try {
+            op.execute(conn);
+            conn.releaseSavepoint(savepoint);
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback(savepoint);
+            op.error = e;
+        }
+    }
+    
+    /**
+     * 借还书写库语句，在调用方给定的事务连接上执行
+     */
+    interface Statements {
+        List<CirculationDao.BorrowOutcome> borrowBatch(Connection conn, Long[] userIds, Long[] bookIds, int dueDays)
+                throws SQLException;
+        
+        CirculationDao.ReturnOutcome returnBook(Connection conn, Long userId, Long recordId, FineSchedule schedule)
+                throws SQLException;
+    }
+    
+    /**
+     * 由CirculationDao调用circulation_borrow/circulation_return执行
+     */
+    private static final class DaoStatements implements Statements {
+        private final CirculationDao circulationDao;
+        
+        DaoStatements(CirculationDao circulationDao) {
+            this.circulationDao = circulationDao;
+        }
+        
+        @Override
+        public List<CirculationDao.BorrowOutcome> borrowBatch(Connection conn, Long[] userIds, Long[] bookIds,
+                                                              int dueDays) throws SQLException {
+            return circulationDao.borrowBatch(conn, userIds, bookIds, dueDays);
+        }
+        
+        @Override
+        public CirculationDao.ReturnOutcome returnBook(Connection conn, Long userId, Long recordId,
+                                                       FineSchedule schedule) throws SQLException {
+            return circulationDao.returnBook(conn, userId, recordId, schedule.getTierStartDays(),
+                    schedule.getTierEndDays(), schedule.getTierBaseFines(), schedule.getTierRates());
+        }
+    }
+    
+    /**
+     * 已提交的借还书操作，供调用方等待结果
+     */
+    static final class Pending<T> {
+        private final Operation op;
+        private final CompletableFuture<T> future;
+        
+        private Pending(Operation op, CompletableFuture<T> future) {
+            this.op = op;
+            this.future = future;
+        }
+        
+        /**
+         * 等待操作结果。超时时若操作还在排队则取消并抛出TimeoutException（保证不会再执行）；
+         * 已开始执行则继续等待，返回实际结果
+         */
+        T await(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                return future.get(timeout, unit);
+            } catch (TimeoutException | InterruptedException e) {
+                if (op.cancel()) {
+                    future.cancel(false);
+                    throw e;
+                }
+                logger.warn("借还书写库超过{}毫秒仍未完成，操作已在执行，等待实际结果", unit.toMillis(timeout));
+                return awaitUninterruptibly(e instanceof InterruptedException);
+            }
+        }
+        
+        private T awaitUninterruptibly(boolean interrupted) throws ExecutionException {
+            try {
+                while (true) {
+                    try {
+                        return future.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+    
+    /**
+     * 排队中的借还书操作
+     */
+    private abstract static class Operation {
+        private static final int QUEUED = 0;
+        private static final int CLAIMED = 1;
+        private static final int CANCELLED = 2;
+        
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        // 该操作自身出错（已回滚到保存点）
+        Exception error;
+        
+        /**
+         * 工作线程取出执行，已取消时返回false
+         */
+        boolean claim() {
+            return state.compareAndSet(QUEUED, CLAIMED);
+        }
+        
+        /**
+         * 调用方取消，已开始执行时返回false
+         */
+        boolean cancel() {
+            return state.compareAndSet(QUEUED, CANCELLED);
+        }
+        
+        abstract void execute(Connection conn) throws SQLException;
+        
+        abstract void complete();
+        
+        abstract void fail(Exception e);
+    }
+    
+    private class BorrowOperation extends Operation {
+        final Long userId;
+        final Long bookId;
+        final CompletableFuture<CirculationDao.BorrowOutcome> future = new CompletableFuture<>();
+        CirculationDao.BorrowOutcome outcome;
+        
+        BorrowOperation(Long userId, Long bookId) {
+            this.userId = userId;
+            this.bookId = bookId;
+        }
+        
+        @Override
+        void execute(Connection conn) throws SQLException {
+            outcome = statements.borrowBatch(conn, new Long[] {userId}, new Long[] {bookId}, dueDays).get(0);
+        }
+        
+        @Override
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(outcome);
+            }
+        }
+        
+        @Override
+        void fail(Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+    
+    private class ReturnOperation extends Operation {
+        final Long userId;
+        final Long recordId;
+        final FineSchedule schedule;
+        final CompletableFuture<CirculationDao.ReturnOutcome> future = new CompletableFuture<>();
+        CirculationDao.ReturnOutcome outcome;
+        
+        ReturnOperation(Long userId, Long recordId, FineSchedule schedule) {
+            this.userId = userId;
+            this.recordId = recordId;
+            this.schedule = schedule;
+        }
+        
+        @Override
+        void execute(Connection conn) throws SQLException {
+            outcome = statements.returnBook(conn, userId, recordId, schedule);
+        }
+        
+        @Override
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(outcome);
+            }
+        }
+        
+        @Override
+        void fail(Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.library.server.service;
+
+import com.library.server.model.Book;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * CSV图书读取器
+ * 按行解析并校验，只返回校验通过的图书，失败的行计数并记录前若干条错误信息
+ * 格式：isbn,title,author,category,publisher,description,totalCount
+ */
+class CsvBookReader implements Iterator<Book>, AutoCloseable {
+    private final BufferedReader reader;
+    private final List<String> errors;
+    private final int maxErrors;
+    private final int firstLineNumber;
+    private Book next;
+    private int lineNumber;
+    private int rowCount = 0;
+    private int errorCount = 0;
+
+    /**
+     * @param content CSV内容（完整文件或分块上传中的一块）
+     * @param firstLineNumber 内容第一行在整个文件中的行号，为1时检测并跳过表头
+     * @param errors 错误信息列表（最多追加到maxErrors条）
+     * @param maxErrors 错误信息条数上限
+     */
+    CsvBookReader(String content, int firstLineNumber, List<String> errors, int maxErrors) {
+        this.reader = new BufferedReader(new StringReader(content));
+        this.firstLineNumber = firstLineNumber;
+        this.lineNumber = firstLineNumber - 1;
+        this.errors = errors;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * 已读取的数据行数（不含空行和表头）
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 校验失败的行数
+     */
+    int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * 已读取的最后一行的行号
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            String line;
+            try {
+                line = reader.readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (line == null) {
+                return false;
+            }
+            lineNumber++;
+            line = line.trim();
+
+            // 跳过空行
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            // 跳过表头行（如果文件第一行包含"isbn"等关键字）
+            if (lineNumber == 1 && firstLineNumber == 1 && line.toLowerCase().contains("isbn")) {
+                continue;
+            }
+
+            rowCount++;
+            next = parseLine(line);
+        }
+        return true;
+    }
+
+    @Override
+    public Book next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Book book = next;
+        next = null;
+        return book;
+    }
+
+    /**
+     * 解析并校验一行，校验失败返回null
+     */
+    private Book parseLine(String line) {
+        // 解析CSV行（简单处理，不支持引号内的逗号）
+        String[] parts = line.split(",");
+        String isbn = parts[0].trim();
+        String label = isbn.isEmpty() ? "第" + lineNumber + "行" : "ISBN " + isbn;
+
+        // 至少需要isbn,title,author,category
+        if (parts.length < 4) {
+            addError(String.format("%s: 字段不足，至少需要isbn,title,author,category", label));
+            return null;
+        }
+
+        Book book = new Book();
+        book.setIsbn(isbn);
+        book.setTitle(parts[1].trim());
+        book.setAuthor(parts[2].trim());
+        book.setCategory(parts[3].trim());
+        book.setPublisher(parts.length > 4 ? parts[4].trim() : "");
+        book.setDescription(parts.length > 5 ? parts[5].trim() : "");
+
+        // 验证必填字段
+        if (book.getIsbn().isEmpty() || book.getTitle().isEmpty() ||
+            book.getAuthor().isEmpty() || book.getCategory().isEmpty()) {
+            addError(String.format("%s: 必填字段不能为空", label));
+            return null;
+        }
+
+        // 验证字段长度（与books表定义一致）
+        if (book.getIsbn().length() > 20 || book.getTitle().length() > 200 ||
+            book.getAuthor().length() > 100 || book.getCategory().length() > 50 ||
+            book.getPublisher().length() > 100) {
+            addError(String.format("%s: 字段长度超出限制", label));
+            return null;
+        }
+
+        // 解析totalCount
+        int totalCount = 0;
+        if (parts.length > 6 && !parts[6].trim().isEmpty()) {
+            try {
+                totalCount = Integer.parseInt(parts[6].trim());
+            } catch (NumberFormatException e) {
+                addError(String.format("%s: 总数量格式错误: %s", label, parts[6].trim()));
+                return null;
+            }
+        }
+        if (totalCount < 0) {
+            addError(String.format("%s: 总数量不能为负数", label));
+            return null;
+        }
+        book.setTotalCount(totalCount);
+        return book;
+    }
+
+    private void addError(String message) {
+        errorCount++;
+        if (errors.size() < maxErrors) {
+            errors.add(message);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,108 @@
+package com.library.server.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 到期时间轮（哈希时间轮）
+ * 按固定刻度把借阅记录的到期时间散列到环形槽中，推进时只检查经过的槽，
+ * 添加和到期检查的开销与记录总数无关。同一记录在到期取出前只保留一份，重复添加被忽略
+ */
+class DueTimerWheel {
+    private final long tickMillis;
+    private final int mask;
+    private final Slot[] slots;
+    // 已处理到的刻度（该刻度及之前到期的记录都已取出）
+    private long currentTick;
+    // 添加时已经到期的记录，下次推进时直接取出
+    private final List<Long> expiredOnAdd = new ArrayList<>();
+    // 尚未取出的记录ID，用于去重
+    private final Set<Long> pending = new HashSet<>();
+
+    /**
+     * @param tickMillis 刻度长度（毫秒）
+     * @param slotCount 槽数量（向上取整为2的幂）
+     * @param nowMillis 当前时间
+     */
+    DueTimerWheel(long tickMillis, int slotCount, long nowMillis) {
+        int n = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = n - 1;
+        this.slots = new Slot[n];
+        for (int i = 0; i < n; i++) {
+            slots[i] = new Slot();
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * 添加一条记录的到期时间，记录已在时间轮中时忽略
+     * @return 是否新加入
+     */
+    synchronized boolean add(long recordId, long dueMillis) {
+        if (!pending.add(recordId)) {
+            return false;
+        }
+        long deadlineTick = dueMillis / tickMillis;
+        if (deadlineTick <= currentTick) {
+            expiredOnAdd.add(recordId);
+        } else {
+            slots[(int) (deadlineTick & mask)].entries.add(new Entry(recordId, deadlineTick));
+        }
+        return true;
+    }
+
+    /**
+     * 推进到当前时间，返回已到期的记录ID
+     * 只检查经过的槽；暂停超过一整圈时每个槽最多检查一次
+     */
+    synchronized List<Long> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        List<Long> expired = new ArrayList<>(expiredOnAdd);
+        expiredOnAdd.clear();
+
+        long steps = Math.min(targetTick - currentTick, slots.length);
+        for (long i = 1; i <= steps; i++) {
+            Iterator<Entry> it = slots[(int) ((currentTick + i) & mask)].entries.iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.deadlineTick <= targetTick) {
+                    expired.add(entry.recordId);
+                    it.remove();
+                }
+            }
+        }
+        if (targetTick > currentTick) {
+            currentTick = targetTick;
+        }
+        pending.removeAll(expired);
+        return expired;
+    }
+
+    /**
+     * 时间轮中尚未到期的记录数
+     */
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * 槽：一个刻度散列到的记录
+     */
+    private static class Slot {
+        final List<Entry> entries = new ArrayList<>();
+    }
+
+    private static class Entry {
+        final long recordId;
+        final long deadlineTick;
+
+        Entry(long recordId, long deadlineTick) {
+            this.recordId = recordId;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
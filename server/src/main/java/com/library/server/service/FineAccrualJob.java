@@ -0,0 +1,41 @@
+package com.library.server.service;
+
+import com.library.server.dao.FineLedgerDao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * 逾期罚款计提作业
+ * 按id顺序分块计算未归还逾期借阅截至本次运行时的罚款，增量更新罚款台账和用户累计
+ */
+class FineAccrualJob implements BatchJob {
+    static final String NAME = "fine-accrual";
+    
+    private final FineLedgerDao ledgerDao = new FineLedgerDao();
+    private final LocalDateTime now;
+    private final FineSchedule schedule;
+    
+    /**
+     * @param now 计提时间点，一次运行内保持不变
+     * @param schedule 本次运行使用的梯度表
+     */
+    FineAccrualJob(LocalDateTime now, FineSchedule schedule) {
+        this.now = now;
+        this.schedule = schedule;
+    }
+    
+    @Override
+    public String getName() {
+        return NAME;
+    }
+    
+    @Override
+    public ChunkResult processChunk(Connection conn, long afterKey, int chunkSize) throws SQLException {
+        FineLedgerDao.AccrualChunk chunk = ledgerDao.accrueChunk(conn, afterKey, now, chunkSize,
+                schedule.getTierStartDays(), schedule.getTierEndDays(),
+                schedule.getTierBaseFines(), schedule.getTierRates());
+        return new ChunkResult(chunk.getScanned(), chunk.getChanged(), chunk.getLastId());
+    }
+}
@@ -4,9 +4,9 @@ import com.library.common.protocol.ErrorCode;
 import com.library.common.protocol.Request;
 import com.library.common.protocol.Response;
 import com.library.common.util.JsonUtil;
-import com.library.server.dao.BorrowRecordDao;
+import com.library.server.dao.FineLedgerDao;
+import com.library.server.dao.ReadOnlyScope;
 import com.library.server.dao.UserDao;
-import com.library.server.model.BorrowRecord;
 import com.library.server.model.User;
 import com.library.server.service.NotificationService;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -21,54 +21,52 @@ import java.util.List;
 public class FineQueryService {
     private static final Logger logger = LoggerFactory.getLogger(FineQueryService.class);
     private final UserDao userDao = new UserDao();
-    private final BorrowRecordDao recordDao = new BorrowRecordDao();
+    private final FineLedgerDao ledgerDao = new FineLedgerDao();
+    
+    private static final int DEFAULT_FINE_PAGE_SIZE = 50;
+    private static final int MAX_FINE_PAGE_SIZE = 500;
     
     public Response getUserFine(Request request, Long userId) {
         String requestId = request.getRequestId();
         
         try {
-            User user = userDao.findById(userId);
-            if (user == null) {
-                return Response.error(requestId, ErrorCode.NOT_FOUND, 
-                    JsonUtil.toJsonNode("用户不存在"));
+            // 已产生罚款优先取借阅状态缓存，取不到时查询用户
+            Double fineAmount = UserCirculationCache.getAccruedFine(userId);
+            if (fineAmount == null) {
+                User user = userDao.findById(userId);
+                if (user == null) {
+                    return Response.error(requestId, ErrorCode.NOT_FOUND, 
+                        JsonUtil.toJsonNode("用户不存在"));
+                }
+                // 安全地获取欠费金额，避免null
+                fineAmount = user.getFineAmount();
             }
-            
-            // 安全地获取欠费金额，避免null
-            Double fineAmount = user.getFineAmount();
             double totalFine = fineAmount != null ? fineAmount : 0.0;
             
-            List<BorrowRecord> overdueRecords = recordDao.findOverdueRecordsByUserId(userId);
-            
+            // 台账只计提到上次逾期扫描（accruedUntil），读取时按当前逾期天数补上之后尚未计提的部分
+            FineSchedule schedule = FineService.getSchedule();
             double currentOverdueFine = 0.0;
             ArrayNode overdueArray = JsonUtil.getObjectMapper().createArrayNode();
-            
-            for (BorrowRecord record : overdueRecords) {
-                try {
-                    if (record.getDueTime() == null) {
-                        logger.warn("借阅记录dueTime为null: recordId={}", record.getId());
-                        continue;
-                    }
-                    long overdueDays = FineService.calculateOverdueDays(record.getDueTime());
-                    double fine = FineService.calculateFine(overdueDays);
-                    currentOverdueFine += fine;
-                    
-                    ObjectNode recordNode = JsonUtil.createObjectNode();
-                    recordNode.put("recordId", record.getId());
-                    recordNode.put("bookId", record.getBookId());
-                    recordNode.put("overdueDays", overdueDays);
-                    recordNode.put("fineAmount", fine);
-                    recordNode.put("dueTime", record.getDueTime().toString());
-                    overdueArray.add(recordNode);
-                } catch (Exception e) {
-                    logger.warn("计算逾期罚款失败: recordId={}", record.getId(), e);
-                    // 继续处理下一条记录
-                }
+            List<FineLedgerDao.LedgerEntry> entries = ledgerDao.findOverdueByUser(userId);
+            for (FineLedgerDao.LedgerEntry entry : entries) {
+                long overdueDays = FineService.calculateOverdueDays(entry.getDueTime());
+                double fine = currentFine(schedule, entry, overdueDays);
+                currentOverdueFine += fine;
+                
+                ObjectNode recordNode = JsonUtil.createObjectNode();
+                recordNode.put("recordId", entry.getRecordId());
+                recordNode.put("bookId", entry.getBookId());
+                recordNode.put("overdueDays", overdueDays);
+                recordNode.put("fineAmount", fine);
+                recordNode.put("dueTime", entry.getDueTime().toString());
+                overdueArray.add(recordNode);
             }
             
             ObjectNode data = JsonUtil.createObjectNode();
             data.put("totalFine", totalFine);
             data.put("currentOverdueFine", currentOverdueFine);
             data.put("totalOwed", totalFine + currentOverdueFine);
+            data.put("overdueCount", entries.size());
             data.set("overdueRecords", overdueArray);
             
             String notification = NotificationService.getAndClearNotification(userId);
@@ -84,44 +82,36 @@ public class FineQueryService {
         }
     }
     
+    /**
+     * 分页查询欠费用户（只读查询，优先路由到只读副本）
+     * 逾期罚款读取罚款台账的用户累计，只返回欠费用户，按欠费总额降序
+     */
     public Response getAllUsersFine(Request request) {
         String requestId = request.getRequestId();
         
         try {
-            List<User> users = userDao.findAllUsers();
-            ArrayNode userArray = JsonUtil.getObjectMapper().createArrayNode();
+            int limit = Math.min(Math.max(request.getPayloadInt("limit", DEFAULT_FINE_PAGE_SIZE), 1), MAX_FINE_PAGE_SIZE);
+            int offset = Math.max(request.getPayloadInt("offset", 0), 0);
             
-            for (User user : users) {
-                if (user.isAdmin()) {
-                    continue;
-                }
-                
-                double totalFine = user.getFineAmount();
-                List<BorrowRecord> overdueRecords = recordDao.findOverdueRecordsByUserId(user.getId());
-                
-                double currentOverdueFine = 0.0;
-                for (BorrowRecord record : overdueRecords) {
-                    long overdueDays = FineService.calculateOverdueDays(record.getDueTime());
-                    currentOverdueFine += FineService.calculateFine(overdueDays);
-                }
-                
-                double totalOwed = totalFine + currentOverdueFine;
-                
-                if (totalOwed > 0) {
-                    ObjectNode userNode = JsonUtil.createObjectNode();
-                    userNode.put("userId", user.getId());
-                    userNode.put("username", user.getUsername());
-                    userNode.put("totalFine", totalFine);
-                    userNode.put("currentOverdueFine", currentOverdueFine);
-                    userNode.put("totalOwed", totalOwed);
-                    userNode.put("overdueCount", overdueRecords.size());
-                    userArray.add(userNode);
-                }
+            UserDao.FineDebtorPage page = ReadOnlyScope.call(() -> userDao.findFineDebtors(limit, offset));
+            
+            ArrayNode userArray = JsonUtil.getObjectMapper().createArrayNode();
+            for (UserDao.FineDebtor debtor : page.getDebtors()) {
+                ObjectNode userNode = JsonUtil.createObjectNode();
+                userNode.put("userId", debtor.getUserId());
+                userNode.put("username", debtor.getUsername());
+                userNode.put("totalFine", debtor.getTotalFine());
+                userNode.put("currentOverdueFine", debtor.getCurrentOverdueFine());
+                userNode.put("totalOwed", debtor.getTotalOwed());
+                userNode.put("overdueCount", debtor.getOverdueCount());
+                userArray.add(userNode);
             }
             
             ObjectNode data = JsonUtil.createObjectNode();
             data.set("users", userArray);
-            data.put("total", userArray.size());
+            data.put("total", page.getTotal());
+            data.put("limit", limit);
+            data.put("offset", offset);
             
             return Response.success(requestId, "查询成功", JsonUtil.toJsonNode(data));
             
@@ -150,12 +140,12 @@ public class FineQueryService {
             }
             
             double totalFine = user.getFineAmount();
-            List<BorrowRecord> overdueRecords = recordDao.findOverdueRecordsByUserId(userId);
-            
+            FineSchedule schedule = FineService.getSchedule();
+            List<FineLedgerDao.LedgerEntry> entries = ledgerDao.findOverdueByUser(userId);
+            int overdueCount = entries.size();
             double currentOverdueFine = 0.0;
-            for (BorrowRecord record : overdueRecords) {
-                long overdueDays = FineService.calculateOverdueDays(record.getDueTime());
-                currentOverdueFine += FineService.calculateFine(overdueDays);
+            for (FineLedgerDao.LedgerEntry entry : entries) {
+                currentOverdueFine += currentFine(schedule, entry, FineService.calculateOverdueDays(entry.getDueTime()));
             }
             
             double totalOwed = totalFine + currentOverdueFine;
@@ -164,7 +154,7 @@ public class FineQueryService {
                 StringBuilder defaultMessage = new StringBuilder();
                 defaultMessage.append("尊敬的读者 ").append(user.getUsername()).append("，您好！\n\n");
                 defaultMessage.append("您目前有逾期未还的图书，请尽快归还。\n");
-                defaultMessage.append("逾期图书数量：").append(overdueRecords.size()).append("本\n");
+                defaultMessage.append("逾期图书数量：").append(overdueCount).append("本\n");
                 if (totalOwed > 0) {
                     defaultMessage.append("当前欠费总额：").append(String.format("%.2f", totalOwed)).append("元\n");
                     defaultMessage.append("（其中已产生罚款：").append(String.format("%.2f", totalFine)).append("元，");
@@ -179,7 +169,7 @@ public class FineQueryService {
             data.put("username", user.getUsername());
             data.put("message", message);
             data.put("totalOwed", totalOwed);
-            data.put("overdueCount", overdueRecords.size());
+            data.put("overdueCount", overdueCount);
             
             com.library.server.service.NotificationService.addNotification(userId, message);
             
@@ -193,15 +183,15 @@ public class FineQueryService {
             return Response.error(requestId, ErrorCode.SERVER_ERROR);
         }
     }
+    
+    /**
+     * 借阅截至当前的逾期罚款
+     * 逾期天数与台账一致时直接使用台账计提值；尚未计提或计提之后又跨过整天的，按梯度表补算到当前
+     */
+    private static double currentFine(FineSchedule schedule, FineLedgerDao.LedgerEntry entry, long overdueDays) {
+        if (entry.getAccruedUntil() != null && entry.getOverdueDays() == overdueDays) {
+            return entry.getAccruedFine();
+        }
+        return schedule.fineFor(overdueDays);
+    }
 }
-
-
-
-
-
-
-
-
-
-
-
@@ -126,6 +126,7 @@ public class FineRateConfigService {
             try {
                 boolean updated = configDao.update(config);
                 if (updated) {
+                    FineService.reloadSchedule();
                     logger.info("更新罚款梯度配置成功: id={}, dayRangeStart={}, dayRangeEnd={}, ratePerDay={}", 
                         id, dayRangeStart, dayRangeEnd, ratePerDay);
                     return Response.success(requestId, "更新成功", JsonUtil.toJsonNode("{}"));
@@ -199,6 +200,7 @@ public class FineRateConfigService {
             config.setDisplayOrder(displayOrder);
             
             Long id = configDao.insert(config);
+            FineService.reloadSchedule();
             
             ObjectNode data = JsonUtil.createObjectNode();
             data.put("id", id);
@@ -225,6 +227,7 @@ public class FineRateConfigService {
             
             boolean deleted = configDao.delete(id);
             if (deleted) {
+                FineService.reloadSchedule();
                 return Response.success(requestId, "删除成功", JsonUtil.toJsonNode("{}"));
             } else {
                 return Response.error(requestId, ErrorCode.NOT_FOUND, 
@@ -0,0 +1,174 @@
+package com.library.server.service;
+
+import com.library.server.dao.FineRateConfigDao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 编译后的罚款梯度表（不可变）
+ * 按显示顺序依次消耗各梯度的天数，预先计算每个梯度结束时的累计天数和累计罚款，
+ * 计算N天的罚款只需定位所在梯度再加上该梯度内的部分
+ */
+public final class FineSchedule {
+    // 各有界梯度结束时的累计天数（严格递增）
+    private final long[] boundaryDays;
+    // 各有界梯度结束时的累计罚款
+    private final double[] boundaryFines;
+    // 各有界梯度的每日费率
+    private final double[] rates;
+    // 所有有界梯度之后的每日费率（没有无界梯度时为0，超出部分不再计费）
+    private final double tailRate;
+    private final String tierDescription;
+
+    private FineSchedule(long[] boundaryDays, double[] boundaryFines, double[] rates,
+                         double tailRate, String tierDescription) {
+        this.boundaryDays = boundaryDays;
+        this.boundaryFines = boundaryFines;
+        this.rates = rates;
+        this.tailRate = tailRate;
+        this.tierDescription = tierDescription;
+    }
+
+    /**
+     * 由fine_rate_config配置编译（configs需按显示顺序排列）
+     * 无界梯度之后的配置不参与计算
+     */
+    public static FineSchedule compile(List<FineRateConfigDao.FineRateConfig> configs) {
+        List<Long> days = new ArrayList<>();
+        List<Double> fines = new ArrayList<>();
+        List<Double> tierRates = new ArrayList<>();
+        double tailRate = 0.0;
+        long cumulativeDays = 0;
+        double cumulativeFine = 0.0;
+        StringBuilder desc = new StringBuilder();
+
+        for (FineRateConfigDao.FineRateConfig config : configs) {
+            int start = config.getDayRangeStart();
+            Integer end = config.getDayRangeEnd();
+            double rate = config.getRatePerDay();
+
+            if (desc.length() > 0) {
+                desc.append("，");
+            }
+            if (end == null) {
+                desc.append("第").append(start).append("天以上每天").append(rate).append("元");
+                tailRate = rate;
+                break;
+            }
+            desc.append("第").append(start).append("-").append(end).append("天每天").append(rate).append("元");
+
+            int rangeDays = end - start + 1;
+            if (rangeDays <= 0) {
+                continue;
+            }
+            cumulativeDays += rangeDays;
+            cumulativeFine += rangeDays * rate;
+            days.add(cumulativeDays);
+            fines.add(cumulativeFine);
+            tierRates.add(rate);
+        }
+
+        long[] boundaryDays = new long[days.size()];
+        double[] boundaryFines = new double[days.size()];
+        double[] rates = new double[days.size()];
+        for (int i = 0; i < boundaryDays.length; i++) {
+            boundaryDays[i] = days.get(i);
+            boundaryFines[i] = fines.get(i);
+            rates[i] = tierRates.get(i);
+        }
+        return new FineSchedule(boundaryDays, boundaryFines, rates, tailRate, desc.toString());
+    }
+
+    /**
+     * 默认梯度：前7天每天1元，第8-30天每天2元，31天以上每天5元
+     */
+    public static FineSchedule defaults() {
+        return new FineSchedule(new long[] {7, 30}, new double[] {7.0, 53.0}, new double[] {1.0, 2.0}, 5.0,
+            "前7天每天1.0元，第8-30天每天2.0元，31天以上每天5.0元");
+    }
+
+    /**
+     * 计算逾期N天的罚款
+     */
+    public double fineFor(long overdueDays) {
+        if (overdueDays <= 0) {
+            return 0.0;
+        }
+        int n = boundaryDays.length;
+        if (n == 0 || overdueDays > boundaryDays[n - 1]) {
+            long lastDays = n == 0 ? 0 : boundaryDays[n - 1];
+            double lastFine = n == 0 ? 0.0 : boundaryFines[n - 1];
+            return lastFine + (overdueDays - lastDays) * tailRate;
+        }
+
+        // 梯度数量很少，二分定位第一个累计天数 >= overdueDays 的梯度
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (boundaryDays[mid] < overdueDays) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        long prevDays = lo == 0 ? 0 : boundaryDays[lo - 1];
+        double prevFine = lo == 0 ? 0.0 : boundaryFines[lo - 1];
+        return prevFine + (overdueDays - prevDays) * rates[lo];
+    }
+
+    /**
+     * 各梯度的起始累计天数（不含），最后一项为无界尾段
+     * 与getTierEndDays/getTierBaseFines/getTierRates一一对应，供数据库端按相同规则计算罚款：
+     * 逾期天数d落在(start, end]内时，罚款 = baseFine + (d - start) * rate
+     */
+    public Long[] getTierStartDays() {
+        Long[] starts = new Long[boundaryDays.length + 1];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = i == 0 ? 0L : boundaryDays[i - 1];
+        }
+        return starts;
+    }
+
+    /**
+     * 各梯度的结束累计天数（含），无界尾段为null
+     */
+    public Long[] getTierEndDays() {
+        Long[] ends = new Long[boundaryDays.length + 1];
+        for (int i = 0; i < boundaryDays.length; i++) {
+            ends[i] = boundaryDays[i];
+        }
+        return ends;
+    }
+
+    /**
+     * 进入各梯度前已累计的罚款
+     */
+    public Double[] getTierBaseFines() {
+        Double[] bases = new Double[boundaryDays.length + 1];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = i == 0 ? 0.0 : boundaryFines[i - 1];
+        }
+        return bases;
+    }
+
+    /**
+     * 各梯度的每日费率
+     */
+    public Double[] getTierRates() {
+        Double[] tierRates = new Double[boundaryDays.length + 1];
+        for (int i = 0; i < rates.length; i++) {
+            tierRates[i] = rates[i];
+        }
+        tierRates[rates.length] = tailRate;
+        return tierRates;
+    }
+
+    /**
+     * 梯度说明，如"第1-7天每天1.0元，第8-30天每天2.0元，第31天以上每天5.0元"
+     */
+    public String getTierDescription() {
+        return tierDescription;
+    }
+}
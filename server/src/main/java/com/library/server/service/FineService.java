@@ -16,59 +16,46 @@ public class FineService {
     private static final double DEFAULT_FINE_RATE_8_30 = 2.0;
     private static final double DEFAULT_FINE_RATE_31_PLUS = 5.0;
     
+    // 默认梯度（配置表为空或加载失败时使用）
+    private static final FineSchedule DEFAULT_SCHEDULE = FineSchedule.defaults();
+    
+    // 当前生效的梯度表，配置变更时整体替换（写时复制），读取无需加锁
+    private static volatile FineSchedule schedule;
+    
     public static double calculateFine(long overdueDays) {
         if (overdueDays <= 0) {
             return 0.0;
         }
-        
-        try {
-            List<FineRateConfigDao.FineRateConfig> configs = configDao.findAll();
-            if (configs.isEmpty()) {
-                return calculateFineWithDefaults(overdueDays);
-            }
-            
-            double totalFine = 0.0;
-            long remainingDays = overdueDays;
-            
-            for (FineRateConfigDao.FineRateConfig config : configs) {
-                int start = config.getDayRangeStart();
-                Integer end = config.getDayRangeEnd();
-                double rate = config.getRatePerDay();
-                
-                if (remainingDays <= 0) {
-                    break;
-                }
-                
-                if (end == null) {
-                    totalFine += remainingDays * rate;
-                    break;
-                } else {
-                    int rangeDays = end - start + 1;
-                    if (remainingDays <= rangeDays) {
-                        totalFine += remainingDays * rate;
-                        break;
-                    } else {
-                        totalFine += rangeDays * rate;
-                        remainingDays -= rangeDays;
-                    }
-                }
+        return getSchedule().fineFor(overdueDays);
+    }
+    
+    /**
+     * 获取当前梯度表，首次使用时从数据库加载
+     */
+    static FineSchedule getSchedule() {
+        FineSchedule current = schedule;
+        if (current != null) {
+            return current;
+        }
+        synchronized (FineService.class) {
+            if (schedule == null) {
+                reloadSchedule();
             }
-            
-            return totalFine;
-        } catch (Exception e) {
-            logger.error("计算罚款失败，使用默认配置", e);
-            return calculateFineWithDefaults(overdueDays);
+            return schedule != null ? schedule : DEFAULT_SCHEDULE;
         }
     }
     
-    private static double calculateFineWithDefaults(long overdueDays) {
-        if (overdueDays <= 7) {
-            return overdueDays * DEFAULT_FINE_RATE_1_7;
-        } else if (overdueDays <= 30) {
-            return 7 * DEFAULT_FINE_RATE_1_7 + (overdueDays - 7) * DEFAULT_FINE_RATE_8_30;
-        } else {
-            return 7 * DEFAULT_FINE_RATE_1_7 + 23 * DEFAULT_FINE_RATE_8_30 + 
-                   (overdueDays - 30) * DEFAULT_FINE_RATE_31_PLUS;
+    /**
+     * 重新加载罚款梯度配置并编译（配置增删改后调用）
+     * 加载失败时保留原梯度表；尚未加载过则本次使用默认梯度，下次计算时重试
+     */
+    public static void reloadSchedule() {
+        try {
+            List<FineRateConfigDao.FineRateConfig> configs = configDao.findAll();
+            schedule = configs.isEmpty() ? DEFAULT_SCHEDULE : FineSchedule.compile(configs);
+            logger.info("罚款梯度表已加载: tiers={}", configs.size());
+        } catch (Exception e) {
+            logger.error("加载罚款梯度配置失败，使用{}", schedule != null ? "原梯度表" : "默认配置", e);
         }
     }
     
@@ -90,42 +77,21 @@ public class FineService {
             return "无逾期";
         }
         
-        double fine = calculateFine(overdueDays);
+        FineSchedule current = getSchedule();
+        double fine = current.fineFor(overdueDays);
         StringBuilder desc = new StringBuilder();
         desc.append("逾期").append(overdueDays).append("天，");
         
-        try {
-            List<FineRateConfigDao.FineRateConfig> configs = configDao.findAll();
-            if (configs.isEmpty()) {
-                desc.append("前7天每天").append(DEFAULT_FINE_RATE_1_7).append("元");
-                if (overdueDays > 7) {
-                    desc.append("，第8-30天每天").append(DEFAULT_FINE_RATE_8_30).append("元");
-                }
-                if (overdueDays > 30) {
-                    desc.append("，31天以上每天").append(DEFAULT_FINE_RATE_31_PLUS).append("元");
-                }
-            } else {
-                boolean first = true;
-                for (FineRateConfigDao.FineRateConfig config : configs) {
-                    int start = config.getDayRangeStart();
-                    Integer end = config.getDayRangeEnd();
-                    double rate = config.getRatePerDay();
-                    
-                    if (!first) {
-                        desc.append("，");
-                    }
-                    first = false;
-                    
-                    if (end == null) {
-                        desc.append("第").append(start).append("天以上每天").append(rate).append("元");
-                    } else {
-                        desc.append("第").append(start).append("-").append(end).append("天每天").append(rate).append("元");
-                    }
-                }
+        if (current == DEFAULT_SCHEDULE) {
+            desc.append("前7天每天").append(DEFAULT_FINE_RATE_1_7).append("元");
+            if (overdueDays > 7) {
+                desc.append("，第8-30天每天").append(DEFAULT_FINE_RATE_8_30).append("元");
             }
-        } catch (Exception e) {
-            logger.error("生成罚款描述失败", e);
-            desc.append("按默认费率计算");
+            if (overdueDays > 30) {
+                desc.append("，31天以上每天").append(DEFAULT_FINE_RATE_31_PLUS).append("元");
+            }
+        } else {
+            desc.append(current.getTierDescription());
         }
         
         desc.append("，合计：").append(String.format("%.2f", fine)).append("元");
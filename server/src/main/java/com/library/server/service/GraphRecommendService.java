@@ -6,30 +6,34 @@ import com.library.common.protocol.Response;
 import com.library.common.util.JsonUtil;
 import com.library.server.dao.BookDao;
 import com.library.server.model.Book;
-import com.library.server.recommend.Graph;
-import com.library.server.recommend.GraphBuilder;
+import com.library.server.recommend.BorrowGraph;
+import com.library.server.recommend.CoBorrowRecommender;
 import com.library.server.recommend.PPRRecommender;
 import com.library.server.recommend.RecommendationExplanation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * 图推荐服务
- * 基于Personalized PageRank的协同过滤推荐
+ * 基于Personalized PageRank的协同过滤推荐，在全局借阅图（BorrowGraph）上计算，请求过程不查询借阅记录；
+ * algorithm为ITEM时改用共借相似度索引（CoBorrowIndex）查表合并
  */
 public class GraphRecommendService {
     private static final Logger logger = LoggerFactory.getLogger(GraphRecommendService.class);
     
     // 默认参数
-    private static final double DEFAULT_LAMBDA = 0.05;  // 时间衰减参数
-    private static final double DEFAULT_BEHAVIOR_WEIGHT = 1.0;  // 行为权重
     private static final double DEFAULT_RESTART_PROBABILITY = 0.15;  // 重启概率
     private static final int DEFAULT_MAX_ITERATIONS = 30;  // 最大迭代次数
+    private static final double DEFAULT_EPSILON = 1e-5;  // 近似模式推送阈值
+    private static final long DEFAULT_MAX_EDGE_SCANS = 200_000;  // 近似模式扫描边数上限
     private static final int DEFAULT_TOP_N = 10;  // 默认推荐数量
     
     private final BookDao bookDao = new BookDao();
@@ -41,32 +45,19 @@ public class GraphRecommendService {
         String requestId = request.getRequestId();
         
         try {
-            // 获取参数
-            double lambda = request.getPayload() != null && request.getPayload().has("lambda") ?
-                    request.getPayload().get("lambda").asDouble() : DEFAULT_LAMBDA;
-            double behaviorWeight = request.getPayload() != null && request.getPayload().has("behaviorWeight") ?
-                    request.getPayload().get("behaviorWeight").asDouble() : DEFAULT_BEHAVIOR_WEIGHT;
-            double restartProb = request.getPayload() != null && request.getPayload().has("restartProbability") ?
-                    request.getPayload().get("restartProbability").asDouble() : DEFAULT_RESTART_PROBABILITY;
-            int maxIter = request.getPayload() != null && request.getPayload().has("maxIterations") ?
-                    request.getPayload().get("maxIterations").asInt() : DEFAULT_MAX_ITERATIONS;
-            int topN = request.getPayload() != null && request.getPayload().has("topN") ?
-                    request.getPayload().get("topN").asInt() : DEFAULT_TOP_N;
+            Params params = Params.from(request.getPayload());
             
-            logger.info("生成图推荐: userId={}, lambda={}, topN={}", userId, lambda, topN);
+            BorrowGraph graph = graphFor(params);
             
-            // 构建子图
-            GraphBuilder graphBuilder = new GraphBuilder(lambda, behaviorWeight);
-            Graph graph = graphBuilder.buildUserSubgraph(userId);
+            logger.info("生成图推荐: userId={}, topN={}, lambda={}, itemBased={}, approximate={}",
+                    userId, params.topN, graph.getDecayLambda(), params.itemBased, params.approximate);
             
-            if (graph.getNodeCount() == 0) {
+            if (!graph.containsUser(userId)) {
                 return Response.error(requestId, ErrorCode.NOT_FOUND, 
                         JsonUtil.toJsonNode("用户没有借阅历史，无法生成推荐"));
             }
             
-            // 执行PPR推荐
-            PPRRecommender recommender = new PPRRecommender(restartProb, maxIter);
-            List<RecommendationExplanation> recommendations = recommender.recommend(userId, graph, topN);
+            List<RecommendationExplanation> recommendations = explain(userId, graph, params);
             
             if (recommendations.isEmpty()) {
                 return Response.error(requestId, ErrorCode.NOT_FOUND, 
@@ -123,23 +114,76 @@ public class GraphRecommendService {
             return Response.error(requestId, ErrorCode.SERVER_ERROR);
         }
     }
+    
+    /**
+     * 图推荐通道（供综合推荐并行调用）：用户没有借阅历史或没有结果时返回空列表
+     */
+    List<RecommendCandidate> candidates(Long userId, Params params) {
+        BorrowGraph graph = graphFor(params);
+        if (!graph.containsUser(userId)) {
+            return Collections.emptyList();
+        }
+        List<RecommendCandidate> candidates = new ArrayList<>();
+        for (RecommendationExplanation explanation : explain(userId, graph, params)) {
+            Book book = bookDao.findById(explanation.getBookId());
+            if (book == null) {
+                continue;
+            }
+            candidates.add(new RecommendCandidate(book, explanation.getScore(), explanation.getMainReason(), false));
+        }
+        logger.info("图推荐完成: userId={}, 推荐{}本书", userId, candidates.size());
+        return candidates;
+    }
+    
+    /**
+     * 当前借阅图快照；请求指定lambda时取最接近的预计算衰减档位，行为权重对归一化后的游走没有影响，不再按请求调整
+     */
+    private BorrowGraph graphFor(Params params) {
+        BorrowGraph graph = BorrowGraph.get();
+        return params.lambda != null && params.lambda > 0 ? graph.withDecay(params.lambda) : graph;
+    }
+    
+    private List<RecommendationExplanation> explain(Long userId, BorrowGraph graph, Params params) {
+        if (params.itemBased) {
+            return new CoBorrowRecommender().recommend(userId, graph, params.topN);
+        }
+        // 执行PPR推荐
+        PPRRecommender recommender = params.approximate
+                ? new PPRRecommender(params.restartProbability, params.epsilon, params.maxEdgeScans)
+                : new PPRRecommender(params.restartProbability, params.maxIterations);
+        return recommender.recommend(userId, graph, params.topN);
+    }
+    
+    /**
+     * 图推荐参数
+     */
+    static class Params {
+        double restartProbability = DEFAULT_RESTART_PROBABILITY;
+        int maxIterations = DEFAULT_MAX_ITERATIONS;
+        // 时间衰减参数，为空时使用借阅图的默认档位
+        Double lambda;
+        // algorithm: PPR（默认）/ ITEM（共借相似度索引，只查表合并）
+        boolean itemBased;
+        // pprMode: EXACT（默认，幂迭代）/ APPROXIMATE（前向推送，延迟有上界）
+        boolean approximate;
+        double epsilon = DEFAULT_EPSILON;
+        long maxEdgeScans = DEFAULT_MAX_EDGE_SCANS;
+        int topN = DEFAULT_TOP_N;
+        
+        static Params from(JsonNode payload) {
+            Params params = new Params();
+            if (payload == null) {
+                return params;
+            }
+            if (payload.has("restartProbability")) params.restartProbability = payload.get("restartProbability").asDouble();
+            if (payload.has("maxIterations")) params.maxIterations = payload.get("maxIterations").asInt();
+            if (payload.has("lambda")) params.lambda = payload.get("lambda").asDouble();
+            params.itemBased = payload.has("algorithm") && "ITEM".equalsIgnoreCase(payload.get("algorithm").asText());
+            params.approximate = payload.has("pprMode") && "APPROXIMATE".equalsIgnoreCase(payload.get("pprMode").asText());
+            if (payload.has("epsilon")) params.epsilon = payload.get("epsilon").asDouble();
+            if (payload.has("maxEdgeScans")) params.maxEdgeScans = payload.get("maxEdgeScans").asLong();
+            if (payload.has("topN")) params.topN = payload.get("topN").asInt();
+            return params;
+        }
+    }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
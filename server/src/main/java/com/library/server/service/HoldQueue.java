@@ -0,0 +1,149 @@
+package com.library.server.service;
+
+import com.library.server.dao.HoldDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 图书预约队列的内存镜像
+ * 每本书一个FIFO（排队中的读者）和已分配副本的读者集合，首次使用时从book_holds加载；
+ * 借书时据此判断读者是否来取分配给他的副本（不占用可借库存计数器），库存不足时告知排队人数，
+ * 均不访问数据库。排队和分配以数据库函数为准，镜像只在本进程的预约/还书/借书后跟随更新，过期后重新加载
+ */
+final class HoldQueue {
+    private static final Logger logger = LoggerFactory.getLogger(HoldQueue.class);
+    
+    // 镜像有效期，过期后从数据库重新加载，纠正其他进程对预约的修改
+    private static final long REFRESH_MILLIS = 60_000;
+    
+    private static final Map<Long, BookHolds> queues = new ConcurrentHashMap<>();
+    private static final HoldDao holdDao = new HoldDao();
+    
+    private HoldQueue() {
+    }
+    
+    /**
+     * 是否有副本分配给该读者（READY）
+     */
+    static boolean isReadyFor(Long bookId, Long userId) {
+        BookHolds holds = getHolds(bookId);
+        return holds != null && holds.isReady(userId);
+    }
+    
+    /**
+     * 排队人数
+     */
+    static int waitingCount(Long bookId) {
+        BookHolds holds = getHolds(bookId);
+        return holds != null ? holds.waitingCount() : 0;
+    }
+    
+    /**
+     * 读者入队（预约成功后调用）
+     */
+    static void onPlaced(Long bookId, Long userId) {
+        BookHolds holds = queues.get(bookId);
+        if (holds != null) {
+            holds.enqueue(userId);
+        }
+    }
+    
+    /**
+     * 副本分配给读者（还书、取消或过期释放副本后调用）
+     */
+    static void onAssigned(Long bookId, Long userId) {
+        BookHolds holds = queues.get(bookId);
+        if (holds != null) {
+            holds.assign(userId);
+        }
+    }
+    
+    /**
+     * 读者的预约结束（借到书、取消或过期后调用）
+     */
+    static void onRemoved(Long bookId, Long userId) {
+        BookHolds holds = queues.get(bookId);
+        if (holds != null) {
+            holds.remove(userId);
+        }
+    }
+    
+    /**
+     * 作废镜像，下次使用时从数据库重新加载（删除图书时调用）
+     */
+    static void invalidate(Long bookId) {
+        queues.remove(bookId);
+    }
+    
+    private static BookHolds getHolds(Long bookId) {
+        BookHolds holds = queues.get(bookId);
+        if (holds != null && System.currentTimeMillis() - holds.loadedAt < REFRESH_MILLIS) {
+            return holds;
+        }
+        if (holds != null) {
+            queues.remove(bookId, holds);
+        }
+        // 在computeIfAbsent之外查询数据库，避免查询期间占住ConcurrentHashMap的桶锁；并发加载时保留先放入的
+        BookHolds loaded = load(bookId);
+        if (loaded == null) {
+            return null;
+        }
+        BookHolds existing = queues.putIfAbsent(bookId, loaded);
+        return existing != null ? existing : loaded;
+    }
+    
+    private static BookHolds load(Long bookId) {
+        try {
+            BookHolds holds = new BookHolds();
+            for (HoldDao.Hold hold : holdDao.findActiveByBook(bookId)) {
+                if (HoldDao.STATUS_READY.equals(hold.getStatus())) {
+                    holds.ready.add(hold.getUserId());
+                } else {
+                    holds.waiting.add(hold.getUserId());
+                }
+            }
+            return holds;
+        } catch (RuntimeException e) {
+            // 不缓存，按无预约处理，由数据库函数兜底
+            logger.warn("加载预约队列失败: bookId={}", bookId, e);
+            return null;
+        }
+    }
+    
+    private static class BookHolds {
+        final Deque<Long> waiting = new ArrayDeque<>();
+        final Set<Long> ready = new HashSet<>();
+        final long loadedAt = System.currentTimeMillis();
+        
+        synchronized boolean isReady(Long userId) {
+            return ready.contains(userId);
+        }
+        
+        synchronized int waitingCount() {
+            return waiting.size();
+        }
+        
+        synchronized void enqueue(Long userId) {
+            if (!waiting.contains(userId) && !ready.contains(userId)) {
+                waiting.addLast(userId);
+            }
+        }
+        
+        synchronized void assign(Long userId) {
+            waiting.remove(userId);
+            ready.add(userId);
+        }
+        
+        synchronized void remove(Long userId) {
+            waiting.remove(userId);
+            ready.remove(userId);
+        }
+    }
+}
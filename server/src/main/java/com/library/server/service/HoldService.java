@@ -0,0 +1,223 @@
+package com.library.server.service;
+
+import com.library.common.protocol.ErrorCode;
+import com.library.common.protocol.Request;
+import com.library.common.protocol.Response;
+import com.library.common.util.JsonUtil;
+import com.library.server.dao.BookDao;
+import com.library.server.dao.HoldDao;
+import com.library.server.model.Book;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * 图书预约服务
+ * 库存为0时读者预约排队，有副本归还时由circulation_return直接分配给队首读者并通知其在取书期限内借阅，
+ * 读者不必反复查询库存、重试借书
+ */
+public class HoldService {
+    private static final Logger logger = LoggerFactory.getLogger(HoldService.class);
+    private static final HoldDao holdDao = new HoldDao();
+    private static final BookDao bookDao = new BookDao();
+    
+    // 取书期限（天），与database/add_book_holds.sql中circulation_release_copy的默认值一致
+    static final int PICKUP_DAYS = 3;
+    // 每次处理的过期预约数
+    private static final int EXPIRE_BATCH_SIZE = 500;
+    
+    /**
+     * 预约图书
+     */
+    public Response placeHold(Request request, Long userId) {
+        String requestId = request.getRequestId();
+        
+        try {
+            Long bookId = request.getPayloadLong("bookId");
+            if (bookId == null) {
+                return Response.error(requestId, ErrorCode.VALIDATION_ERROR,
+                        JsonUtil.toJsonNode("图书ID不能为空"));
+            }
+            
+            HoldDao.PlaceOutcome outcome = holdDao.placeHold(userId, bookId);
+            if (!outcome.isOk()) {
+                return holdError(requestId, outcome.getResultCode());
+            }
+            HoldQueue.onPlaced(bookId, userId);
+            
+            ObjectNode data = JsonUtil.createObjectNode();
+            data.put("holdId", outcome.getHoldId());
+            data.put("bookId", bookId);
+            data.put("queuePosition", outcome.getQueuePosition());
+            
+            logger.info("预约成功: userId={}, bookId={}, position={}", userId, bookId, outcome.getQueuePosition());
+            return Response.success(requestId, "预约成功", JsonUtil.toJsonNode(data));
+        
+        } catch (Exception e) {
+            logger.error("预约失败: userId={}", userId, e);
+            return Response.error(requestId, ErrorCode.SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * 取消预约
+     */
+    public Response cancelHold(Request request, Long userId) {
+        String requestId = request.getRequestId();
+        
+        try {
+            Long holdId = request.getPayloadLong("holdId");
+            if (holdId == null) {
+                return Response.error(requestId, ErrorCode.VALIDATION_ERROR,
+                        JsonUtil.toJsonNode("预约ID不能为空"));
+            }
+            
+            long generation = StockReservation.currentGeneration();
+            HoldDao.Release release = holdDao.cancelHold(userId, holdId);
+            if (!release.isOk()) {
+                return holdError(requestId, release.getResultCode());
+            }
+            HoldQueue.onRemoved(release.getBookId(), userId);
+            onCopyReleased(release, generation);
+            
+            logger.info("取消预约: userId={}, holdId={}", userId, holdId);
+            return Response.success(requestId, "已取消预约", null);
+        
+        } catch (Exception e) {
+            logger.error("取消预约失败: userId={}", userId, e);
+            return Response.error(requestId, ErrorCode.SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * 我的预约
+     */
+    public Response getMyHolds(Request request, Long userId) {
+        String requestId = request.getRequestId();
+        
+        try {
+            List<HoldDao.Hold> holds = holdDao.findActiveByUser(userId);
+            
+            ArrayNode holdArray = JsonUtil.getObjectMapper().createArrayNode();
+            for (HoldDao.Hold hold : holds) {
+                ObjectNode holdNode = JsonUtil.createObjectNode();
+                holdNode.put("holdId", hold.getId());
+                holdNode.put("bookId", hold.getBookId());
+                holdNode.put("bookTitle", hold.getBookTitle());
+                holdNode.put("status", hold.getStatus());
+                holdNode.put("createdAt", hold.getCreatedAt().toString());
+                if (HoldDao.STATUS_READY.equals(hold.getStatus())) {
+                    holdNode.put("expiresAt", hold.getExpiresAt().toString());
+                } else {
+                    holdNode.put("queuePosition", hold.getQueuePosition());
+                }
+                holdArray.add(holdNode);
+            }
+            
+            ObjectNode data = JsonUtil.createObjectNode();
+            data.set("holds", holdArray);
+            data.put("total", holds.size());
+            
+            return Response.success(requestId, "查询成功", JsonUtil.toJsonNode(data));
+        
+        } catch (Exception e) {
+            logger.error("查询预约失败: userId={}", userId, e);
+            return Response.error(requestId, ErrorCode.SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * 处理取书期限已过的预约（由调度器定期调用），副本转给下一位或恢复库存
+     */
+    static void expireReadyHolds() {
+        try {
+            int expired = 0;
+            List<HoldDao.Release> releases;
+            do {
+                long generation = StockReservation.currentGeneration();
+                releases = holdDao.expireReadyHolds(EXPIRE_BATCH_SIZE);
+                for (HoldDao.Release release : releases) {
+                    HoldQueue.onRemoved(release.getBookId(), release.getExpiredUserId());
+                    onCopyReleased(release, generation);
+                }
+                expired += releases.size();
+            } while (releases.size() == EXPIRE_BATCH_SIZE);
+            if (expired > 0) {
+                logger.info("处理过期预约: {}条", expired);
+            }
+        } catch (Exception e) {
+            logger.error("处理过期预约失败", e);
+        }
+    }
+    
+    /**
+     * 副本已分配给预约读者：更新预约镜像并通知读者取书（还书、取消或过期释放副本的事务提交后调用）
+     */
+    static void onCopyAssigned(Long bookId, Long holdUserId) {
+        HoldQueue.onAssigned(bookId, holdUserId);
+        String title = null;
+        try {
+            Book book = bookDao.findById(bookId);
+            title = book != null ? book.getTitle() : null;
+        } catch (Exception e) {
+            logger.warn("查询图书失败: bookId={}", bookId, e);
+        }
+        NotificationService.addNotification(holdUserId, String.format("您预约的《%s》已到馆，请在%d天内借阅，逾期预约将自动取消",
+                title != null ? title : "图书" + bookId, PICKUP_DAYS));
+        logger.info("预约副本已分配: bookId={}, userId={}", bookId, holdUserId);
+    }
+    
+    /**
+     * 批量导入新增的副本已释放（导入事务提交后调用）：通知分配到副本的读者，库存计数器由调用方整体作废
+     */
+    static void onCopiesAdded(List<HoldDao.Release> releases) {
+        for (HoldDao.Release release : releases) {
+            if (release.getHoldUserId() != null) {
+                onCopyAssigned(release.getBookId(), release.getHoldUserId());
+            }
+        }
+    }
+    
+    /**
+     * generation为写库前取得的库存计数器代号
+     */
+    private static void onCopyReleased(HoldDao.Release release, long generation) {
+        if (release.getHoldUserId() != null) {
+            onCopyAssigned(release.getBookId(), release.getHoldUserId());
+        } else if (release.isStockRestored()) {
+            StockReservation.release(release.getBookId(), generation);
+        }
+    }
+    
+    /**
+     * 将预约函数的result_code映射为错误响应
+     */
+    private static Response holdError(String requestId, String resultCode) {
+        switch (resultCode) {
+            case "USER_NOT_FOUND":
+                return Response.error(requestId, ErrorCode.NOT_FOUND, JsonUtil.toJsonNode("用户不存在"));
+            case "ADMIN_FORBIDDEN":
+                return Response.error(requestId, ErrorCode.FORBIDDEN, JsonUtil.toJsonNode("管理员账户不能预约"));
+            case "BOOK_NOT_FOUND":
+                return Response.error(requestId, ErrorCode.NOT_FOUND, JsonUtil.toJsonNode("图书不存在"));
+            case "AVAILABLE":
+                return Response.error(requestId, ErrorCode.VALIDATION_ERROR, JsonUtil.toJsonNode("图书有库存，请直接借阅"));
+            case "ALREADY_BORROWED":
+                return Response.error(requestId, ErrorCode.BOOK_ALREADY_BORROWED, JsonUtil.toJsonNode("您已借阅该图书"));
+            case "ALREADY_HELD":
+                return Response.error(requestId, ErrorCode.ALREADY_EXISTS, JsonUtil.toJsonNode("您已预约该图书"));
+            case "HOLD_NOT_FOUND":
+                return Response.error(requestId, ErrorCode.NOT_FOUND, JsonUtil.toJsonNode("预约不存在"));
+            case "NOT_OWNER":
+                return Response.error(requestId, ErrorCode.FORBIDDEN, JsonUtil.toJsonNode("无权操作此预约"));
+            case "HOLD_NOT_ACTIVE":
+                return Response.error(requestId, ErrorCode.VALIDATION_ERROR, JsonUtil.toJsonNode("该预约已结束"));
+            default:
+                logger.error("未知的预约结果: {}", resultCode);
+                return Response.error(requestId, ErrorCode.SERVER_ERROR);
+        }
+    }
+}
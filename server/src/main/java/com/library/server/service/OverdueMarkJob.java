@@ -0,0 +1,36 @@
+package com.library.server.service;
+
+import com.library.server.dao.BorrowRecordDao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * 全量逾期对账作业
+ * 按id顺序分块把未归还且due_time早于截止时间的借阅记录标记为OVERDUE
+ */
+class OverdueMarkJob implements BatchJob {
+    static final String NAME = "overdue-mark";
+    
+    private final BorrowRecordDao recordDao = new BorrowRecordDao();
+    private final LocalDateTime cutoff;
+    
+    /**
+     * @param cutoff 截止时间（通常为本次运行开始时间），一次运行内保持不变
+     */
+    OverdueMarkJob(LocalDateTime cutoff) {
+        this.cutoff = cutoff;
+    }
+    
+    @Override
+    public String getName() {
+        return NAME;
+    }
+    
+    @Override
+    public ChunkResult processChunk(Connection conn, long afterKey, int chunkSize) throws SQLException {
+        BorrowRecordDao.OverdueChunk chunk = recordDao.markOverdueChunk(conn, afterKey, cutoff, chunkSize);
+        return new ChunkResult(chunk.getScanned(), chunk.getUpdated(), chunk.getLastId());
+    }
+}
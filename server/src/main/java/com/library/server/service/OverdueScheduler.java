@@ -2,6 +2,7 @@ package com.library.server.service;
 
 import com.library.server.dao.BorrowRecordDao;
 import com.library.server.dao.DataSourceProvider;
+import com.library.server.model.BorrowRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,16 +10,40 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 逾期扫描调度器
- * 每天扫描未归还且due_time < now的记录，标记为OVERDUE
+ * 增量检测：将未来HORIZON_HOURS小时内到期的借阅记录装入到期时间轮，每个刻度取出已到期的记录分批标记为OVERDUE；
+ * 新借出的记录由BorrowService通过track()加入。
+ * 每天凌晨2点（以及启动时）仍全量扫描一次未归还且due_time < now的记录，作为兜底对账（OverdueMarkJob，分块短事务执行）；
+ * 对账后以及每ACCRUAL_INTERVAL_MINUTES分钟计提一次逾期罚款（FineAccrualJob），供欠费查询直接读取；
+ * 每HOLD_EXPIRY_INTERVAL_MINUTES分钟处理一次取书期限已过的预约
  */
 public class OverdueScheduler {
     private static final Logger logger = LoggerFactory.getLogger(OverdueScheduler.class);
+    
+    // 时间轮刻度（秒）
+    private static final long TICK_SECONDS = 30;
+    // 时间轮槽数量
+    private static final int WHEEL_SLOTS = 512;
+    // 预装载窗口（小时），窗口剩余不足一半时向后补装
+    private static final long HORIZON_HOURS = 24;
+    // 每批标记的记录数
+    private static final int BATCH_SIZE = 500;
+    // 罚款计提间隔（分钟），罚款按整天累计，台账最多滞后一个间隔
+    private static final long ACCRUAL_INTERVAL_MINUTES = 60;
+    // 过期预约处理间隔（分钟）
+    private static final long HOLD_EXPIRY_INTERVAL_MINUTES = 10;
+    
+    // 当前运行的调度器，供借书时登记到期时间
+    private static volatile OverdueScheduler instance;
+    
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
             r -> {
                 Thread t = new Thread(r, "OverdueScheduler");
@@ -28,10 +53,14 @@ public class OverdueScheduler {
     );
     
     private final BorrowRecordDao recordDao = new BorrowRecordDao();
+    private final BatchJobRunner jobRunner = new BatchJobRunner();
     private volatile boolean running = false;
+    private volatile DueTimerWheel wheel;
+    // 时间轮已装载到的到期时间上界
+    private volatile LocalDateTime loadedUntil;
     
     /**
-     * 启动调度器（每天凌晨2点执行）
+     * 启动调度器：立即对账一次并装载时间轮，之后按刻度增量检测，每天凌晨2点全量对账
      */
     public void start() {
         if (running) {
@@ -40,14 +69,26 @@ public class OverdueScheduler {
         }
         
         running = true;
-        // 计算到下一个凌晨2点的延迟
-        long initialDelay = calculateDelayToNext2AM();
+        wheel = new DueTimerWheel(TimeUnit.SECONDS.toMillis(TICK_SECONDS), WHEEL_SLOTS, System.currentTimeMillis());
+        instance = this;
         
-        // 每天执行一次
+        // 启动时先对账（覆盖服务停机期间到期的记录），再装载时间轮
+        scheduler.execute(() -> {
+            scanOverdueRecords();
+            loadUpcoming();
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+        
+        // 计算到下一个凌晨2点的延迟，每天执行一次
+        long initialDelay = calculateDelayToNext2AM();
         scheduler.scheduleAtFixedRate(this::scanOverdueRecords, 
-                initialDelay, 24, TimeUnit.HOURS);
+                initialDelay, TimeUnit.DAYS.toSeconds(1), TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(this::accrueFines, 
+                ACCRUAL_INTERVAL_MINUTES, ACCRUAL_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        scheduler.scheduleWithFixedDelay(HoldService::expireReadyHolds, 
+                HOLD_EXPIRY_INTERVAL_MINUTES, HOLD_EXPIRY_INTERVAL_MINUTES, TimeUnit.MINUTES);
         
-        logger.info("逾期扫描调度器已启动，将在每天凌晨2点执行");
+        logger.info("逾期扫描调度器已启动: 刻度{}秒，预装载{}小时，每天凌晨2点全量对账", TICK_SECONDS, HORIZON_HOURS);
     }
     
     /**
@@ -59,6 +100,9 @@ public class OverdueScheduler {
         }
         
         running = false;
+        if (instance == this) {
+            instance = null;
+        }
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
@@ -72,87 +116,113 @@ public class OverdueScheduler {
     }
     
     /**
-     * 扫描逾期记录
+     * 登记新借阅记录的到期时间（借书事务提交后调用）
+     * 只要落在最大装载窗口内就直接加入，不依赖loadedUntil：正在进行的装载可能既没查到这条记录、
+     * 又还没推进loadedUntil。与装载重复的记录由时间轮按ID去重；超出窗口的记录由后续补装负责
      */
-    private void scanOverdueRecords() {
-        logger.info("开始扫描逾期记录...");
-        
-        Connection conn = null;
-        PreparedStatement updateStmt = null;
-        PreparedStatement countStmt = null;
-        ResultSet rs = null;
-        
+    public static void track(Long recordId, LocalDateTime dueTime) {
+        OverdueScheduler current = instance;
+        if (current == null || recordId == null || dueTime == null) {
+            return;
+        }
+        if (!dueTime.isAfter(LocalDateTime.now().plusHours(HORIZON_HOURS))) {
+            current.wheel.add(recordId, toEpochMillis(dueTime));
+        }
+    }
+    
+    /**
+     * 推进时间轮，分批标记已到期的记录
+     */
+    private void tick() {
         try {
-            conn = DataSourceProvider.getDataSource().getConnection();
-            conn.setAutoCommit(false);
-            countStmt = conn.prepareStatement(
-                "SELECT COUNT(*) FROM borrow_records " +
-                "WHERE status = 'BORROWED' " +
-                "AND due_time < CURRENT_TIMESTAMP " +
-                "AND return_time IS NULL"
-            );
-            rs = countStmt.executeQuery();
-            int count = 0;
-            if (rs.next()) {
-                count = rs.getInt(1);
-            }
-            rs.close();
-            countStmt.close();
-            
-            if (count == 0) {
-                logger.info("没有逾期记录需要更新");
-                return;
+            List<Long> expired = wheel.advance(System.currentTimeMillis());
+            if (!expired.isEmpty()) {
+                LocalDateTime now = LocalDateTime.now();
+                int updated = 0;
+                for (int from = 0; from < expired.size(); from += BATCH_SIZE) {
+                    List<Long> batch = expired.subList(from, Math.min(from + BATCH_SIZE, expired.size()));
+                    try {
+                        updated += recordDao.markOverdue(batch, now);
+                    } catch (Exception e) {
+                        // 放回时间轮，下个刻度重试
+                        logger.warn("标记逾期失败，下个刻度重试: count={}", batch.size(), e);
+                        long nowMillis = System.currentTimeMillis();
+                        for (Long id : batch) {
+                            wheel.add(id, nowMillis);
+                        }
+                    }
+                }
+                if (updated > 0) {
+                    logger.info("增量逾期检测: 到期{}条，标记逾期{}条", expired.size(), updated);
+                }
             }
             
-            // 更新逾期记录
-            updateStmt = conn.prepareStatement(
-                "UPDATE borrow_records " +
-                "SET status = 'OVERDUE' " +
-                "WHERE status = 'BORROWED' " +
-                "AND due_time < CURRENT_TIMESTAMP " +
-                "AND return_time IS NULL"
-            );
-            
-            int updated = updateStmt.executeUpdate();
-            conn.commit();
-            
-            logger.info("逾期扫描完成: 更新了{}条记录", updated);
-            
-            // 记录详细信息（可选）
-            if (updated > 0) {
-                logOverdueDetails(conn);
+            LocalDateTime until = loadedUntil;
+            if (until == null || until.isBefore(LocalDateTime.now().plusHours(HORIZON_HOURS / 2))) {
+                loadUpcoming();
             }
-            
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    logger.error("回滚事务失败", ex);
+        } catch (Exception e) {
+            logger.error("增量逾期检测异常", e);
+        }
+    }
+    
+    /**
+     * 将(loadedUntil, now + HORIZON_HOURS]内到期的未归还记录装入时间轮
+     */
+    private void loadUpcoming() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime from = loadedUntil != null ? loadedUntil : now.minusSeconds(TICK_SECONDS);
+        LocalDateTime to = now.plusHours(HORIZON_HOURS);
+        try {
+            List<BorrowRecord> records = recordDao.findBorrowedDueBetween(from, to);
+            int added = 0;
+            for (BorrowRecord record : records) {
+                if (wheel.add(record.getId(), toEpochMillis(record.getDueTime()))) {
+                    added++;
                 }
             }
-            logger.error("扫描逾期记录失败", e);
+            loadedUntil = to;
+            logger.info("逾期时间轮已装载至{}: 新增{}条，待到期{}条", to, added, wheel.size());
         } catch (Exception e) {
-            logger.error("扫描逾期记录异常", e);
-        } finally {
-            if (rs != null) {
-                try { rs.close(); } catch (SQLException e) {}
-            }
-            if (updateStmt != null) {
-                try { updateStmt.close(); } catch (SQLException e) {}
-            }
-            if (countStmt != null) {
-                try { countStmt.close(); } catch (SQLException e) {}
-            }
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
+            logger.error("装载逾期时间轮失败", e);
+        }
+    }
+    
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    /**
+     * 全量扫描逾期记录（对账），随后计提罚款
+     * 通过BatchJobRunner按id分块提交，避免单个长事务长时间锁住大量借阅记录而阻塞还书
+     */
+    private void scanOverdueRecords() {
+        logger.info("开始扫描逾期记录...");
+        BatchJobRunner.Progress progress = jobRunner.run(new OverdueMarkJob(LocalDateTime.now()));
+        if (!BatchJobRunner.Progress.STATUS_COMPLETED.equals(progress.getStatus())) {
+            logger.warn("逾期扫描未完成: status={}，下次从检查点继续", progress.getStatus());
+        } else {
+            logger.info("逾期扫描完成: 更新了{}条记录", progress.getAffectedCount());
+            if (progress.getAffectedCount() > 0) {
+                try (Connection conn = DataSourceProvider.getDataSource().getConnection()) {
+                    logOverdueDetails(conn);
                 } catch (SQLException e) {
-                    logger.error("关闭连接失败", e);
+                    logger.warn("记录逾期详情失败", e);
                 }
             }
         }
+        accrueFines();
+    }
+    
+    /**
+     * 计提逾期罚款，更新罚款台账（fine_ledger）和用户逾期累计（user_fine_totals）
+     */
+    private void accrueFines() {
+        BatchJobRunner.Progress progress = jobRunner.run(
+                new FineAccrualJob(LocalDateTime.now(), FineService.getSchedule()));
+        logger.info("罚款计提{}: 扫描{}条，变更{}条", 
+                BatchJobRunner.Progress.STATUS_COMPLETED.equals(progress.getStatus()) ? "完成" : "未完成",
+                progress.getScannedCount(), progress.getAffectedCount());
     }
     
     /**
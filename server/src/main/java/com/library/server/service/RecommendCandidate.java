@@ -0,0 +1,42 @@
+package com.library.server.service;
+
+import com.library.server.model.Book;
+
+/**
+ * 推荐通道产出的候选图书：图书、通道内分数和推荐理由
+ * 图推荐、语义召回、AI推荐三路通道直接向RecommendService交付候选列表，不经过Response/JsonNode往返
+ */
+final class RecommendCandidate {
+    private final Book book;
+    private final double score;
+    private final String reason;
+    // AI生成的个性化理由，融合时优先采用
+    private final boolean aiEnhanced;
+
+    RecommendCandidate(Book book, double score, String reason, boolean aiEnhanced) {
+        this.book = book;
+        this.score = score;
+        this.reason = reason;
+        this.aiEnhanced = aiEnhanced;
+    }
+
+    Long getBookId() {
+        return book.getId();
+    }
+
+    Book getBook() {
+        return book;
+    }
+
+    double getScore() {
+        return score;
+    }
+
+    String getReason() {
+        return reason;
+    }
+
+    boolean isAiEnhanced() {
+        return aiEnhanced;
+    }
+}
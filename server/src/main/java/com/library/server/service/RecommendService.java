@@ -5,6 +5,8 @@ import com.library.common.protocol.Request;
 import com.library.common.protocol.Response;
 import com.library.common.util.JsonUtil;
 import com.library.server.dao.BorrowRecordDao;
+import com.library.server.dao.DataSourceProvider;
+import com.library.server.model.Book;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,11 +15,18 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 综合推荐服务（AI增强版）
  * 结合图推荐（GraphRecommendService）、语义召回（SemanticRecallService）和AI推荐（AIRecommendService）
- * 提供更全面、更智能的推荐结果
+ * 提供更全面、更智能的推荐结果；三路通道并行执行，单路超时按空结果降级
  */
 public class RecommendService {
     private static final Logger logger = LoggerFactory.getLogger(RecommendService.class);
@@ -25,7 +34,9 @@ public class RecommendService {
     private final GraphRecommendService graphRecommendService;
     private final SemanticRecallService semanticRecallService;
     private final AIRecommendService aiRecommendService;
-    private final BorrowRecordDao borrowRecordDao = new BorrowRecordDao();
+    private final BorrowRecordDao borrowRecordDao;
+    // 借阅记录来自数据库时读写预计算结果和已借图书缓存；注入的来源（离线评估）每次现场计算、直接查询
+    private final boolean cachedHistory;
     
     // 默认权重：图推荐40%，语义召回30%，AI推荐30%
     private static final double DEFAULT_GRAPH_WEIGHT = 0.4;
@@ -36,28 +47,87 @@ public class RecommendService {
     private static final double POPULARITY_WEIGHT_NEW_USER = 0.2;
     private static final double POPULARITY_WEIGHT_OLD_USER = 0.1;
     
+    // 三路通道专用线程池（在线请求的RecommendService实例共享），大小为recommend.channel.threads，默认CPU核数 * 3
+    private static final ExecutorService channelExecutor = createChannelExecutor();
+    
+    // 本实例提交通道任务的线程池
+    private final ExecutorService executor;
+    
+    // 各通道超时（毫秒），从三路同时提交时开始计算
+    private final long graphTimeoutMillis;
+    private final long semanticTimeoutMillis;
+    private final long aiTimeoutMillis;
+    
     public RecommendService() {
+        this(channelExecutor);
+    }
+    
+    /**
+     * 使用指定的通道线程池（后台预计算用自己的线程池，不占用在线请求的通道线程）
+     */
+    RecommendService(ExecutorService executor) {
+        this(executor, new BorrowRecordDao(), true);
+    }
+    
+    /**
+     * 使用指定的借阅记录来源（离线评估用截止到切分时间的训练集），语义召回和AI推荐通道共用该来源
+     */
+    public RecommendService(BorrowRecordDao borrowRecordDao) {
+        this(channelExecutor, borrowRecordDao, false);
+    }
+    
+    private RecommendService(ExecutorService executor, BorrowRecordDao borrowRecordDao, boolean cachedHistory) {
+        this.executor = executor;
+        this.borrowRecordDao = borrowRecordDao;
+        this.cachedHistory = cachedHistory;
         this.graphRecommendService = new GraphRecommendService();
-        this.semanticRecallService = new SemanticRecallService();
-        this.aiRecommendService = new AIRecommendService();
+        this.semanticRecallService = cachedHistory
+                ? new SemanticRecallService() : new SemanticRecallService(borrowRecordDao);
+        this.aiRecommendService = cachedHistory
+                ? new AIRecommendService() : new AIRecommendService(borrowRecordDao);
+        
+        Properties props = DataSourceProvider.loadProperties();
+        this.graphTimeoutMillis = Long.parseLong(props.getProperty("recommend.channel.graph.timeoutMillis", "1000").trim());
+        this.semanticTimeoutMillis = Long.parseLong(props.getProperty("recommend.channel.semantic.timeoutMillis", "1000").trim());
+        this.aiTimeoutMillis = Long.parseLong(props.getProperty("recommend.channel.ai.timeoutMillis", "1500").trim());
     }
     
     /**
      * 综合推荐（AI增强版）
-     * 结合图推荐、语义召回和AI推荐的结果，使用三路融合策略
+     * 默认参数的请求优先返回后台预计算的结果（RecommendationPrecomputer），未命中时现场计算并写入缓存
      */
     public Response recommend(Request request, Long userId) {
+        if (!cachedHistory) {
+            return compute(request, userId);
+        }
+        Response cached = RecommendationPrecomputer.lookup(request, userId);
+        if (cached != null) {
+            logger.debug("命中预计算推荐: userId={}", userId);
+            return cached;
+        }
+        Response response = compute(request, userId);
+        RecommendationPrecomputer.store(request, userId, response);
+        return response;
+    }
+    
+    /**
+     * 现场计算综合推荐
+     * 图推荐、语义召回、AI推荐三路通道在channelExecutor上并行召回，各自有超时，
+     * 超时或失败的通道按空结果降级（记入degradedChannels），总耗时取决于最慢的通道而不是三路之和
+     */
+    Response compute(Request request, Long userId) {
         String requestId = request.getRequestId();
         
         try {
-            double graphWeight = request.getPayload() != null && request.getPayload().has("graphWeight") ?
-                    request.getPayload().get("graphWeight").asDouble() : DEFAULT_GRAPH_WEIGHT;
-            double semanticWeight = request.getPayload() != null && request.getPayload().has("semanticWeight") ?
-                    request.getPayload().get("semanticWeight").asDouble() : DEFAULT_SEMANTIC_WEIGHT;
-            double aiWeight = request.getPayload() != null && request.getPayload().has("aiWeight") ?
-                    request.getPayload().get("aiWeight").asDouble() : DEFAULT_AI_WEIGHT;
-            int topN = request.getPayload() != null && request.getPayload().has("topN") ?
-                    request.getPayload().get("topN").asInt() : 20;
+            JsonNode payload = request.getPayload();
+            double graphWeight = payload != null && payload.has("graphWeight") ?
+                    payload.get("graphWeight").asDouble() : DEFAULT_GRAPH_WEIGHT;
+            double semanticWeight = payload != null && payload.has("semanticWeight") ?
+                    payload.get("semanticWeight").asDouble() : DEFAULT_SEMANTIC_WEIGHT;
+            double aiWeight = payload != null && payload.has("aiWeight") ?
+                    payload.get("aiWeight").asDouble() : DEFAULT_AI_WEIGHT;
+            int topN = payload != null && payload.has("topN") ?
+                    payload.get("topN").asInt() : 20;
             
             // 归一化权重
             double totalWeight = graphWeight + semanticWeight + aiWeight;
@@ -70,113 +140,72 @@ public class RecommendService {
             logger.info("AI增强综合推荐: userId={}, graphWeight={}, semanticWeight={}, aiWeight={}, topN={}", 
                     userId, graphWeight, semanticWeight, aiWeight, topN);
             
-            Map<Long, RecommendationScore> bookScores = new HashMap<>();
-            Response graphResponse = graphRecommendService.recommend(request, userId);
-            int graphBookCount = 0;
+            // 1. 三路通道并行召回（请求参数只解析一次，通道之间交换类型化的候选列表）
+            GraphRecommendService.Params graphParams = GraphRecommendService.Params.from(payload);
+            Integer channelTopN = request.getPayloadInt("topN");
+            Integer userProfileK = request.getPayloadInt("userProfileK");
+            int semanticTopN = channelTopN != null ? channelTopN : SemanticRecallService.DEFAULT_TOP_N;
+            int semanticProfileK = userProfileK != null ? userProfileK : SemanticRecallService.DEFAULT_USER_PROFILE_K;
+            int aiTopN = channelTopN != null ? channelTopN : AIRecommendService.DEFAULT_TOP_N;
+            int aiProfileK = userProfileK != null ? userProfileK : AIRecommendService.DEFAULT_USER_PROFILE_K;
             
-            if (graphResponse.isSuccess() && graphResponse.getData() != null) {
-                JsonNode booksNode = graphResponse.getData().get("books");
-                if (booksNode != null && booksNode.isArray()) {
-                    for (JsonNode bookNode : booksNode) {
-                        Long bookId = bookNode.has("bookId") ? bookNode.get("bookId").asLong() : null;
-                        if (bookId != null) {
-                            double score = bookNode.has("score") ? bookNode.get("score").asDouble() : 0.0;
-                            String reason = bookNode.has("reason") ? bookNode.get("reason").asText() : "图推荐";
-                            
-                            RecommendationScore recScore = bookScores.getOrDefault(bookId, new RecommendationScore(bookId));
-                            double normalizedScore = Math.min(score, 1.0);
-                            recScore.addGraphScore(normalizedScore * graphWeight);
-                            recScore.setReason(reason);
-                            recScore.setBookData(bookNode);
-                            bookScores.put(bookId, recScore);
-                            graphBookCount++;
-                            
-                            logger.debug("图推荐: bookId={}, score={}, normalized={}, weighted={}", 
-                                    bookId, score, normalizedScore, normalizedScore * graphWeight);
-                        }
-                    }
-                }
-                logger.info("图推荐成功: 返回{}本书", graphBookCount);
-            } else {
-                logger.warn("图推荐失败: {}", graphResponse != null ? graphResponse.getMessage() : "未知错误");
-            }
+            // 先加载已借图书：三路通道排除已借图书时直接命中缓存，不再各自查询
+            BorrowedBookCache.BorrowedBooks borrowedBooks = cachedHistory
+                    ? BorrowedBookCache.get(userId) : BorrowedBookCache.load(borrowRecordDao, userId);
             
-            Response semanticResponse = semanticRecallService.recommend(request, userId);
-            int semanticBookCount = 0;
+            long start = System.currentTimeMillis();
+            Future<List<RecommendCandidate>> graphFuture = executor.submit(
+                    () -> graphRecommendService.candidates(userId, graphParams));
+            Future<List<RecommendCandidate>> semanticFuture = executor.submit(
+                    () -> semanticRecallService.candidates(userId, semanticTopN, semanticProfileK));
+            Future<List<RecommendCandidate>> aiFuture = executor.submit(
+                    () -> aiRecommendService.candidates(userId, aiTopN, aiProfileK));
             
-            if (semanticResponse.isSuccess() && semanticResponse.getData() != null) {
-                JsonNode booksNode = semanticResponse.getData().get("books");
-                if (booksNode != null && booksNode.isArray()) {
-                    for (JsonNode bookNode : booksNode) {
-                        Long bookId = bookNode.has("bookId") ? bookNode.get("bookId").asLong() : null;
-                        if (bookId != null) {
-                            double similarity = bookNode.has("similarity") ? bookNode.get("similarity").asDouble() : 0.0;
-                            String reason = bookNode.has("reason") ? bookNode.get("reason").asText() : "语义推荐";
-                            
-                            RecommendationScore recScore = bookScores.getOrDefault(bookId, new RecommendationScore(bookId));
-                            double normalizedSimilarity = Math.min(Math.max(similarity, 0.0), 1.0);
-                            recScore.addSemanticScore(normalizedSimilarity * semanticWeight);
-                            if (recScore.getReason() == null || recScore.getReason().isEmpty()) {
-                                recScore.setReason(reason);
-                            }
-                            if (recScore.getBookData() == null) {
-                                recScore.setBookData(bookNode);
-                            }
-                            bookScores.put(bookId, recScore);
-                            semanticBookCount++;
-                            
-                            logger.debug("语义召回: bookId={}, similarity={}, normalized={}, weighted={}", 
-                                    bookId, similarity, normalizedSimilarity, normalizedSimilarity * semanticWeight);
-                        }
-                    }
-                }
-                logger.info("语义召回成功: 返回{}本书", semanticBookCount);
-            } else {
-                logger.warn("语义召回失败: {}", semanticResponse != null ? semanticResponse.getMessage() : "未知错误");
+            List<String> degradedChannels = new ArrayList<>();
+            List<RecommendCandidate> graphCandidates =
+                    await("graph", graphFuture, start + graphTimeoutMillis, degradedChannels, userId);
+            List<RecommendCandidate> semanticCandidates =
+                    await("semantic", semanticFuture, start + semanticTimeoutMillis, degradedChannels, userId);
+            List<RecommendCandidate> aiCandidates =
+                    await("ai", aiFuture, start + aiTimeoutMillis, degradedChannels, userId);
+            logger.info("三路召回完成: userId={}, 图:{} 语义:{} AI:{}, 降级通道={}, 耗时{}ms",
+                    userId, graphCandidates.size(), semanticCandidates.size(), aiCandidates.size(),
+                    degradedChannels, System.currentTimeMillis() - start);
+            
+            // 2. 融合
+            Map<Long, RecommendationScore> bookScores = new HashMap<>();
+            for (RecommendCandidate candidate : graphCandidates) {
+                RecommendationScore recScore = bookScores.computeIfAbsent(candidate.getBookId(),
+                        id -> new RecommendationScore(candidate.getBook()));
+                double normalizedScore = Math.min(candidate.getScore(), 1.0);
+                recScore.addGraphScore(normalizedScore * graphWeight);
+                recScore.setReason(candidate.getReason());
             }
             
-            // 3. AI推荐
-            Response aiResponse = aiRecommendService.recommend(request, userId);
-            int aiBookCount = 0;
+            for (RecommendCandidate candidate : semanticCandidates) {
+                RecommendationScore recScore = bookScores.computeIfAbsent(candidate.getBookId(),
+                        id -> new RecommendationScore(candidate.getBook()));
+                double normalizedSimilarity = Math.min(Math.max(candidate.getScore(), 0.0), 1.0);
+                recScore.addSemanticScore(normalizedSimilarity * semanticWeight);
+                if (recScore.getReason() == null || recScore.getReason().isEmpty()) {
+                    recScore.setReason(candidate.getReason());
+                }
+            }
             
-            if (aiResponse.isSuccess() && aiResponse.getData() != null) {
-                JsonNode booksNode = aiResponse.getData().get("books");
-                if (booksNode != null && booksNode.isArray()) {
-                    for (JsonNode bookNode : booksNode) {
-                        Long bookId = bookNode.has("bookId") ? bookNode.get("bookId").asLong() : null;
-                        if (bookId != null) {
-                            double score = bookNode.has("score") ? bookNode.get("score").asDouble() : 0.0;
-                            String reason = bookNode.has("reason") ? bookNode.get("reason").asText() : "AI推荐";
-                            
-                            RecommendationScore recScore = bookScores.getOrDefault(bookId, new RecommendationScore(bookId));
-                            double normalizedScore = Math.min(Math.max(score, 0.0), 1.0);
-                            recScore.addAIScore(normalizedScore * aiWeight);
-                            
-                            // AI推荐理由优先级更高（更个性化）
-                            if (bookNode.has("aiEnhanced") && bookNode.get("aiEnhanced").asBoolean()) {
-                                recScore.setReason(reason);
-                            } else if (recScore.getReason() == null || recScore.getReason().isEmpty()) {
-                                recScore.setReason(reason);
-                            }
-                            
-                            if (recScore.getBookData() == null) {
-                                recScore.setBookData(bookNode);
-                            }
-                            bookScores.put(bookId, recScore);
-                            aiBookCount++;
-                            
-                            logger.debug("AI推荐: bookId={}, score={}, normalized={}, weighted={}", 
-                                    bookId, score, normalizedScore, normalizedScore * aiWeight);
-                        }
-                    }
+            for (RecommendCandidate candidate : aiCandidates) {
+                RecommendationScore recScore = bookScores.computeIfAbsent(candidate.getBookId(),
+                        id -> new RecommendationScore(candidate.getBook()));
+                double normalizedScore = Math.min(Math.max(candidate.getScore(), 0.0), 1.0);
+                recScore.addAIScore(normalizedScore * aiWeight);
+                
+                // AI推荐理由优先级更高（更个性化）
+                if (candidate.isAiEnhanced() || recScore.getReason() == null || recScore.getReason().isEmpty()) {
+                    recScore.setReason(candidate.getReason());
                 }
-                logger.info("AI推荐成功: 返回{}本书", aiBookCount);
-            } else {
-                logger.warn("AI推荐失败: {}", aiResponse != null ? aiResponse.getMessage() : "未知错误");
             }
             
             // 检查是否为新用户（无借阅记录）
-            boolean isNewUser = borrowRecordDao.findByUserId(userId).isEmpty();
+            boolean isNewUser = borrowedBooks.isEmpty();
             double popularityWeight = isNewUser ? POPULARITY_WEIGHT_NEW_USER : POPULARITY_WEIGHT_OLD_USER;
             
             if (isNewUser) {
@@ -195,39 +224,22 @@ public class RecommendService {
             
             // 为每本书添加借阅次数权重
             for (Map.Entry<Long, Integer> entry : borrowCounts.entrySet()) {
-                Long bookId = entry.getKey();
-                int borrowCount = entry.getValue();
-                
-                RecommendationScore recScore = bookScores.get(bookId);
+                RecommendationScore recScore = bookScores.get(entry.getKey());
                 if (recScore != null) {
                     // 归一化借阅次数到[0, 1]
                     double normalizedBorrowCount = maxBorrowCount > 0 ? 
-                            (double) borrowCount / maxBorrowCount : 0.0;
-                    
-                    // 添加借阅次数权重分数
-                    double popularityScore = normalizedBorrowCount * popularityWeight;
-                    recScore.addPopularityScore(popularityScore);
-                    
-                    logger.debug("借阅次数权重: bookId={}, borrowCount={}, normalized={}, weight={}, score={}", 
-                            bookId, borrowCount, normalizedBorrowCount, popularityWeight, popularityScore);
+                            (double) entry.getValue() / maxBorrowCount : 0.0;
+                    recScore.addPopularityScore(normalizedBorrowCount * popularityWeight);
                 }
             }
             
             if (bookScores.isEmpty()) {
-                if (!graphResponse.isSuccess() && !semanticResponse.isSuccess() && !aiResponse.isSuccess()) {
-                    // 新用户时，返回热门图书
-                    if (isNewUser) {
-                        return getPopularBooksForNewUser(requestId, topN);
-                    }
-                    return Response.error(requestId, ErrorCode.NOT_FOUND, 
-                            JsonUtil.toJsonNode("无法生成推荐，请先借阅一些图书"));
-                } else if (!graphResponse.isSuccess() && !semanticResponse.isSuccess()) {
-                    return aiResponse;  // 至少AI推荐成功
-                } else if (!graphResponse.isSuccess() && !aiResponse.isSuccess()) {
-                    return semanticResponse;  // 至少语义召回成功
-                } else if (!semanticResponse.isSuccess() && !aiResponse.isSuccess()) {
-                    return graphResponse;  // 至少图推荐成功
+                // 新用户时，返回热门图书
+                if (isNewUser) {
+                    return getPopularBooksForNewUser(requestId, topN);
                 }
+                return Response.error(requestId, ErrorCode.NOT_FOUND, 
+                        JsonUtil.toJsonNode("无法生成推荐，请先借阅一些图书"));
             }
             
             List<RecommendationScore> sortedScores = new ArrayList<>(bookScores.values());
@@ -242,51 +254,40 @@ public class RecommendService {
             
             for (int i = 0; i < count; i++) {
                 RecommendationScore recScore = sortedScores.get(i);
-                JsonNode bookData = recScore.getBookData();
+                Book book = recScore.getBook();
+                double totalScore = recScore.getTotalScore();
                 
-                if (bookData != null) {
-                    double totalScore = recScore.getTotalScore();
-                    
-                    double normalizedScore;
-                    if (scoreRange > 0.001) {
-                        normalizedScore = ((totalScore - minScore) / scoreRange) * 10.0;
-                    } else if (totalScore > 0.001) {
-                        normalizedScore = totalScore * 10.0;
-                    } else {
-                        normalizedScore = 0.1;
-                    }
-                    
-                    normalizedScore = Math.max(0.0, Math.min(10.0, normalizedScore));
-                    
-                    ObjectNode bookNode = JsonUtil.createObjectNode();
-                    bookNode.put("bookId", recScore.getBookId());
-                    bookNode.put("title", bookData.has("title") ? bookData.get("title").asText() : "");
-                    bookNode.put("author", bookData.has("author") ? bookData.get("author").asText() : "");
-                    bookNode.put("category", bookData.has("category") ? bookData.get("category").asText() : "");
-                    bookNode.put("publisher", bookData.has("publisher") ? bookData.get("publisher").asText() : "");
-                    bookNode.put("description", bookData.has("description") ? bookData.get("description").asText() : "");
-                    bookNode.put("availableCount", bookData.has("availableCount") ? bookData.get("availableCount").asInt() : 0);
-                    bookNode.put("score", normalizedScore);
-                    bookNode.put("reason", recScore.getReason());
-                    
-                    logger.debug("推荐图书: bookId={}, 原始分数={}, 规范化分数={}", 
-                            recScore.getBookId(), String.format("%.6f", totalScore), String.format("%.2f", normalizedScore));
-                    
-                    bookArray.add(bookNode);
+                double normalizedScore;
+                if (scoreRange > 0.001) {
+                    normalizedScore = ((totalScore - minScore) / scoreRange) * 10.0;
+                } else if (totalScore > 0.001) {
+                    normalizedScore = totalScore * 10.0;
+                } else {
+                    normalizedScore = 0.1;
                 }
+                
+                normalizedScore = Math.max(0.0, Math.min(10.0, normalizedScore));
+                
+                ObjectNode bookNode = toBookNode(book, normalizedScore, recScore.getReason());
+                
+                logger.debug("推荐图书: bookId={}, 原始分数={}, 规范化分数={}", 
+                        book.getId(), String.format("%.6f", totalScore), String.format("%.2f", normalizedScore));
+                
+                bookArray.add(bookNode);
             }
             
             ObjectNode data = JsonUtil.createObjectNode();
             data.set("books", bookArray);
             data.put("total", bookArray.size());
-            data.put("graphCount", graphBookCount);
-            data.put("semanticCount", semanticBookCount);
-            data.put("aiCount", aiBookCount);
+            data.put("graphCount", graphCandidates.size());
+            data.put("semanticCount", semanticCandidates.size());
+            data.put("aiCount", aiCandidates.size());
             data.put("fusionStrategy", "graph+semantic+ai");
+            ArrayNode degradedArray = data.putArray("degradedChannels");
+            degradedChannels.forEach(degradedArray::add);
             
-            logger.info("AI增强综合推荐完成: userId={}, 推荐{}本书 (图:{} 语义:{} AI:{}), 分数范围=[{}, {}], 规范化到[0, 10]", 
-                    userId, bookArray.size(), graphBookCount, semanticBookCount, aiBookCount,
-                    String.format("%.3f", minScore), String.format("%.3f", maxScore));
+            logger.info("AI增强综合推荐完成: userId={}, 推荐{}本书, 分数范围=[{}, {}], 规范化到[0, 10]", 
+                    userId, bookArray.size(), String.format("%.3f", minScore), String.format("%.3f", maxScore));
             return Response.success(requestId, "AI增强推荐成功", JsonUtil.toJsonNode(data));
             
         } catch (Exception e) {
@@ -295,6 +296,27 @@ public class RecommendService {
         }
     }
     
+    /**
+     * 等待通道结果直到deadline，超时（取消任务）或失败时返回空列表并记入degraded
+     */
+    private List<RecommendCandidate> await(String channel, Future<List<RecommendCandidate>> future, long deadline,
+                                           List<String> degraded, Long userId) {
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            logger.warn("推荐通道超时，按空结果降级: channel={}, userId={}", channel, userId);
+        } catch (ExecutionException e) {
+            logger.warn("推荐通道失败，按空结果降级: channel={}, userId={}", channel, userId, e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            logger.warn("等待推荐通道被中断: channel={}, userId={}", channel, userId);
+        }
+        degraded.add(channel);
+        return Collections.emptyList();
+    }
+    
     /**
      * 为新用户获取热门图书（按借阅次数排序）
      */
@@ -360,6 +382,44 @@ public class RecommendService {
         }
     }
     
+    private static ExecutorService createChannelExecutor() {
+        int threads = Integer.parseInt(DataSourceProvider.loadProperties()
+                .getProperty("recommend.channel.threads", "0").trim());
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors() * 3;
+        }
+        return newChannelExecutor(threads, "RecommendChannel-");
+    }
+    
+    /**
+     * 固定大小的通道线程池（守护线程）
+     */
+    static ExecutorService newChannelExecutor(int threads, String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, namePrefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    
+    /**
+     * 推荐列表中的一本书（预计算命中时也用它按最新图书详情组装）
+     */
+    static ObjectNode toBookNode(Book book, double score, String reason) {
+        ObjectNode bookNode = JsonUtil.createObjectNode();
+        bookNode.put("bookId", book.getId());
+        bookNode.put("title", book.getTitle() != null ? book.getTitle() : "");
+        bookNode.put("author", book.getAuthor() != null ? book.getAuthor() : "");
+        bookNode.put("category", book.getCategory() != null ? book.getCategory() : "");
+        bookNode.put("publisher", book.getPublisher() != null ? book.getPublisher() : "");
+        bookNode.put("description", book.getDescription() != null ? book.getDescription() : "");
+        bookNode.put("availableCount", book.getAvailableCount() != null ? book.getAvailableCount() : 0);
+        bookNode.put("score", score);
+        bookNode.put("reason", reason);
+        return bookNode;
+    }
+    
     /**
      * 推荐分数类（支持三路融合+借阅次数权重）
      */
@@ -370,10 +430,11 @@ public class RecommendService {
         private double aiScore = 0.0;
         private double popularityScore = 0.0;
         private String reason;
-        private JsonNode bookData;
+        private final Book book;
         
-        public RecommendationScore(Long bookId) {
-            this.bookId = bookId;
+        public RecommendationScore(Book book) {
+            this.bookId = book.getId();
+            this.book = book;
         }
         
         public void addGraphScore(double score) {
@@ -399,7 +460,6 @@ public class RecommendService {
         public Long getBookId() { return bookId; }
         public String getReason() { return reason; }
         public void setReason(String reason) { this.reason = reason; }
-        public JsonNode getBookData() { return bookData; }
-        public void setBookData(JsonNode bookData) { this.bookData = bookData; }
+        public Book getBook() { return book; }
     }
 }
@@ -0,0 +1,374 @@
+package com.library.server.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.library.common.protocol.OpCode;
+import com.library.common.protocol.Request;
+import com.library.common.protocol.Response;
+import com.library.common.util.JsonUtil;
+import com.library.server.dao.BookDao;
+import com.library.server.dao.BorrowRecordDao;
+import com.library.server.dao.DataSourceProvider;
+import com.library.server.model.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 个人推荐列表预计算
+ * 综合推荐每次要同步跑图推荐、语义召回、AI推荐三路并各自查库，后台为活跃用户（最近activeDays天借过书或请求过推荐）
+ * 预先算好默认参数下的前PRECOMPUTED_TOP_N本融合结果，RECOMMEND请求使用默认权重时直接截取返回。
+ * 每intervalMinutes分钟在ForkJoinPool上按CPU核数并行全量刷新，三路通道在预计算自己的线程池上执行，不占用在线请求的通道线程；
+ * 用户借书后立即从列表中去掉刚借的书，DIRTY_DELAY_SECONDS秒内（借阅图合并新借阅之后）单独重算。
+ * 未命中的冷用户由请求线程现场计算并写入缓存；有通道降级的结果不缓存。
+ * 每个用户只存图书ID、分数和推荐理由，命中时按图书ID批量查询最新的图书详情（书名、可借数量等）组装响应
+ */
+public final class RecommendationPrecomputer {
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationPrecomputer.class);
+    
+    // 预计算的推荐数量，请求的topN不超过它时可直接截取
+    static final int PRECOMPUTED_TOP_N = 20;
+    // 借书后单独重算的检查间隔（秒）
+    private static final long DIRTY_DELAY_SECONDS = 15;
+    // ForkJoin拆分阈值（每个子任务计算的用户数）
+    private static final int SPLIT_THRESHOLD = 8;
+    private static final int MAX_USERS = 50000;
+    
+    private static final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private static final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            r -> {
+                Thread t = new Thread(r, "RecommendationPrecomputer");
+                t.setDaemon(true);
+                return t;
+            }
+    );
+    private static final BorrowRecordDao borrowRecordDao = new BorrowRecordDao();
+    private static final BookDao bookDao = new BookDao();
+    
+    private static volatile boolean enabled = false;
+    private static ForkJoinPool pool;
+    private static ExecutorService channelExecutor;
+    private static RecommendService recommendService;
+    private static long activeDays;
+    
+    private RecommendationPrecomputer() {
+    }
+    
+    /**
+     * 启动：立即全量计算一次，之后定期全量刷新并重算借过书的用户（服务器启动时调用一次）
+     * 使用application.properties中的recommend.precompute.*配置
+     */
+    public static synchronized void start() {
+        if (enabled) {
+            return;
+        }
+        Properties props = DataSourceProvider.loadProperties();
+        if (!Boolean.parseBoolean(props.getProperty("recommend.precompute.enabled", "true").trim())) {
+            logger.info("推荐预计算未启用，RECOMMEND请求现场计算");
+            return;
+        }
+        long intervalMinutes = Math.max(1, Long.parseLong(
+                props.getProperty("recommend.precompute.intervalMinutes", "30").trim()));
+        activeDays = Math.max(1, Long.parseLong(props.getProperty("recommend.precompute.activeDays", "30").trim()));
+        int parallelism = Integer.parseInt(props.getProperty("recommend.precompute.parallelism", "0").trim());
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        
+        pool = new ForkJoinPool(parallelism);
+        // 每个并行任务同时最多占用三路通道
+        channelExecutor = RecommendService.newChannelExecutor(parallelism * 3, "RecommendPrecomputeChannel-");
+        recommendService = new RecommendService(channelExecutor);
+        enabled = true;
+        scheduler.scheduleWithFixedDelay(RecommendationPrecomputer::refreshAll, 0, intervalMinutes, TimeUnit.MINUTES);
+        scheduler.scheduleWithFixedDelay(RecommendationPrecomputer::refreshDirty,
+                DIRTY_DELAY_SECONDS, DIRTY_DELAY_SECONDS, TimeUnit.SECONDS);
+        logger.info("推荐预计算已启动: intervalMinutes={}, activeDays={}, parallelism={}",
+                intervalMinutes, activeDays, parallelism);
+    }
+    
+    /**
+     * 查找预计算的推荐；请求带自定义参数、topN超出预计算数量或缓存未命中时返回null
+     */
+    static Response lookup(Request request, Long userId) {
+        if (!enabled || !isDefaultRequest(request)) {
+            return null;
+        }
+        Entry entry = entries.get(userId);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastRequested = System.currentTimeMillis();
+        
+        Map<Long, Book> details;
+        try {
+            details = bookDao.findByIds(entry.bookIds);
+        } catch (Exception e) {
+            logger.warn("查询预计算推荐的图书详情失败，现场计算: userId={}", userId, e);
+            return null;
+        }
+        
+        // 已删除的图书跳过
+        int topN = request.getPayloadInt("topN", PRECOMPUTED_TOP_N);
+        ArrayNode books = JsonUtil.getObjectMapper().createArrayNode();
+        for (int i = 0; i < entry.bookIds.length && books.size() < topN; i++) {
+            Book book = details.get(entry.bookIds[i]);
+            if (book != null) {
+                books.add(RecommendService.toBookNode(book, entry.scores[i], entry.reasons[i]));
+            }
+        }
+        ObjectNode data = entry.meta.deepCopy();
+        data.set("books", books);
+        data.put("total", books.size());
+        return Response.success(request.getRequestId(), entry.message, data);
+    }
+    
+    /**
+     * 保存现场计算的结果（仅默认参数、没有通道降级的成功结果），冷用户之后纳入定期刷新
+     */
+    static void store(Request request, Long userId, Response response) {
+        if (!enabled || !isDefaultRequest(request) || request.getPayloadInt("topN", PRECOMPUTED_TOP_N) != PRECOMPUTED_TOP_N) {
+            return;
+        }
+        if (!isComplete(response) || (entries.size() >= MAX_USERS && !entries.containsKey(userId))) {
+            return;
+        }
+        Entry entry = toEntry(response);
+        entry.lastRequested = System.currentTimeMillis();
+        entries.put(userId, entry);
+    }
+    
+    /**
+     * 借书成功后调用：从缓存列表中去掉刚借的书，稍后重算该用户
+     */
+    static void onBorrowed(Long userId, Long bookId) {
+        if (!enabled || userId == null || bookId == null) {
+            return;
+        }
+        entries.computeIfPresent(userId, (id, entry) -> entry.without(bookId));
+        dirty.add(userId);
+    }
+    
+    /**
+     * 只有不带参数或只带topN的请求使用默认权重
+     */
+    private static boolean isDefaultRequest(Request request) {
+        JsonNode payload = request.getPayload();
+        if (payload == null || payload.isNull()) {
+            return true;
+        }
+        Iterator<String> fields = payload.fieldNames();
+        while (fields.hasNext()) {
+            if (!"topN".equals(fields.next())) {
+                return false;
+            }
+        }
+        return request.getPayloadInt("topN", PRECOMPUTED_TOP_N) <= PRECOMPUTED_TOP_N;
+    }
+    
+    /**
+     * 全量刷新：最近借过书的用户加上最近请求过推荐的用户，长期不活跃的条目清除
+     */
+    private static void refreshAll() {
+        try {
+            long start = System.currentTimeMillis();
+            Set<Long> users = new HashSet<>(borrowRecordDao.findBorrowerIdsSince(LocalDateTime.now().minusDays(activeDays)));
+            long idleCutoff = start - TimeUnit.DAYS.toMillis(activeDays);
+            entries.entrySet().removeIf(e -> !users.contains(e.getKey()) && e.getValue().lastRequested < idleCutoff);
+            users.addAll(entries.keySet());
+            if (users.size() > MAX_USERS) {
+                logger.warn("活跃用户数{}超过上限{}，只预计算前{}个", users.size(), MAX_USERS, MAX_USERS);
+            }
+            long[] userIds = users.stream().mapToLong(Long::longValue).limit(MAX_USERS).toArray();
+            
+            int built = pool.invoke(new BuildTask(userIds, 0, userIds.length));
+            logger.info("推荐预计算完成: 用户{}个，成功{}个，耗时{}ms",
+                    userIds.length, built, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("推荐预计算失败", e);
+        }
+    }
+    
+    /**
+     * 重算借过书的用户
+     */
+    private static void refreshDirty() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        try {
+            List<Long> users = new ArrayList<>(dirty);
+            dirty.removeAll(users);
+            long[] userIds = users.stream().mapToLong(Long::longValue).toArray();
+            int built = pool.invoke(new BuildTask(userIds, 0, userIds.length));
+            logger.debug("借书后重算推荐: 用户{}个，成功{}个", userIds.length, built);
+        } catch (Exception e) {
+            logger.error("借书后重算推荐失败", e);
+        }
+    }
+    
+    /**
+     * 计算单个用户的默认推荐并写入缓存，失败时移除旧条目（之后的请求现场计算）；
+     * 有通道降级时保留旧条目，等下次刷新
+     */
+    private static boolean build(long userId) {
+        try {
+            Request request = new Request("precompute-" + userId, OpCode.RECOMMEND, null, null);
+            Response response = recommendService.compute(request, userId);
+            if (!isSuccess(response)) {
+                entries.remove(userId);
+                return false;
+            }
+            if (!isComplete(response)) {
+                logger.debug("预计算推荐有通道降级，不缓存: userId={}", userId);
+                return false;
+            }
+            Entry entry = toEntry(response);
+            Entry previous = entries.get(userId);
+            if (previous != null) {
+                entry.lastRequested = previous.lastRequested;
+            }
+            entries.put(userId, entry);
+            return true;
+        } catch (Exception e) {
+            logger.warn("预计算用户推荐失败: userId={}", userId, e);
+            return false;
+        }
+    }
+    
+    private static boolean isSuccess(Response response) {
+        return response != null && response.isSuccess() && response.getData() != null
+                && response.getData().isObject() && response.getData().has("books");
+    }
+    
+    /**
+     * 成功且没有通道降级（超时或失败的通道按空结果参与了融合，这样的结果不能缓存）
+     */
+    private static boolean isComplete(Response response) {
+        if (!isSuccess(response)) {
+            return false;
+        }
+        JsonNode degraded = response.getData().get("degradedChannels");
+        return degraded == null || degraded.size() == 0;
+    }
+    
+    /**
+     * 把推荐响应拆成紧凑条目：只留图书ID、分数和理由，图书详情在命中时重新查询
+     */
+    private static Entry toEntry(Response response) {
+        JsonNode books = response.getData().get("books");
+        long[] bookIds = new long[books.size()];
+        double[] scores = new double[books.size()];
+        String[] reasons = new String[books.size()];
+        for (int i = 0; i < books.size(); i++) {
+            JsonNode book = books.get(i);
+            bookIds[i] = book.get("bookId").asLong();
+            scores[i] = book.has("score") ? book.get("score").asDouble() : 0.0;
+            reasons[i] = book.has("reason") ? book.get("reason").asText() : null;
+        }
+        ObjectNode meta = ((ObjectNode) response.getData()).deepCopy();
+        meta.remove("books");
+        return new Entry(bookIds, scores, reasons, meta, response.getMessage());
+    }
+    
+    /**
+     * 按用户区间拆分的预计算任务，返回成功计算的用户数
+     */
+    private static class BuildTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+        
+        private final long[] userIds;
+        private final int from;
+        private final int to;
+        
+        BuildTask(long[] userIds, int from, int to) {
+            this.userIds = userIds;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected Integer compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                int built = 0;
+                for (int i = from; i < to; i++) {
+                    if (build(userIds[i])) {
+                        built++;
+                    }
+                }
+                return built;
+            }
+            int mid = (from + to) >>> 1;
+            BuildTask left = new BuildTask(userIds, from, mid);
+            left.fork();
+            int right = new BuildTask(userIds, mid, to).compute();
+            return left.join() + right;
+        }
+    }
+    
+    /**
+     * 单个用户的预计算结果，不可变（借书后整体替换）
+     */
+    private static class Entry {
+        final long[] bookIds;
+        final double[] scores;
+        final String[] reasons;
+        // 响应中除books以外的字段（total、各路数量、融合策略）
+        final ObjectNode meta;
+        final String message;
+        volatile long lastRequested;
+        
+        Entry(long[] bookIds, double[] scores, String[] reasons, ObjectNode meta, String message) {
+            this.bookIds = bookIds;
+            this.scores = scores;
+            this.reasons = reasons;
+            this.meta = meta;
+            this.message = message;
+        }
+        
+        Entry without(Long bookId) {
+            int index = -1;
+            for (int i = 0; i < bookIds.length; i++) {
+                if (bookIds[i] == bookId) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return this;
+            }
+            Entry entry = new Entry(remove(bookIds, index), remove(scores, index), remove(reasons, index), meta, message);
+            entry.lastRequested = lastRequested;
+            return entry;
+        }
+        
+        private static long[] remove(long[] values, int index) {
+            long[] result = Arrays.copyOf(values, values.length - 1);
+            System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+            return result;
+        }
+        
+        private static double[] remove(double[] values, int index) {
+            double[] result = Arrays.copyOf(values, values.length - 1);
+            System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+            return result;
+        }
+        
+        private static String[] remove(String[] values, int index) {
+            String[] result = Arrays.copyOf(values, values.length - 1);
+            System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+            return result;
+        }
+    }
+}
@@ -23,8 +23,10 @@ public class RequestDispatcher {
     
     private final UserService userService;
     private final BookService bookService;
+    private final BookImportService bookImportService;
     private final TrendingService trendingService;
     private final BorrowService borrowService;
+    private final HoldService holdService;
     private final FineQueryService fineQueryService;
     private final FineRateConfigService fineRateConfigService;
     private final StatisticsService statisticsService;
@@ -36,8 +38,10 @@ public class RequestDispatcher {
         this.tokenService = tokenService;
         this.userService = new UserService();
         this.bookService = new BookService();
+        this.bookImportService = new BookImportService();
         this.trendingService = new TrendingService();
         this.borrowService = new BorrowService();
+        this.holdService = new HoldService();
         this.fineQueryService = new FineQueryService();
         this.fineRateConfigService = new FineRateConfigService();
         this.statisticsService = new StatisticsService();
@@ -59,12 +63,19 @@ public class RequestDispatcher {
         handlers.put(OpCode.BORROW_BOOK, this::handleBorrowBook);
         handlers.put(OpCode.RETURN_BOOK, this::handleReturnBook);
         handlers.put(OpCode.MY_RECORDS, this::handleMyRecords);
+        handlers.put(OpCode.PLACE_HOLD, this::handlePlaceHold);
+        handlers.put(OpCode.CANCEL_HOLD, this::handleCancelHold);
+        handlers.put(OpCode.MY_HOLDS, this::handleMyHolds);
         handlers.put(OpCode.RECOMMEND, this::handleRecommend);
         handlers.put(OpCode.GET_USER_FINE, this::handleGetUserFine);
         handlers.put(OpCode.ADMIN_ADD_BOOK, this::handleAdminAddBook);
         handlers.put(OpCode.ADMIN_UPDATE_BOOK, this::handleAdminUpdateBook);
         handlers.put(OpCode.ADMIN_DELETE_BOOK, this::handleAdminDeleteBook);
         handlers.put(OpCode.ADMIN_IMPORT_BOOKS, this::handleAdminImportBooks);
+        handlers.put(OpCode.ADMIN_IMPORT_BEGIN, this::handleAdminImportBegin);
+        handlers.put(OpCode.ADMIN_IMPORT_CHUNK, this::handleAdminImportChunk);
+        handlers.put(OpCode.ADMIN_IMPORT_COMMIT, this::handleAdminImportCommit);
+        handlers.put(OpCode.ADMIN_IMPORT_ABORT, this::handleAdminImportAbort);
         handlers.put(OpCode.ADMIN_USER_FREEZE, this::handleAdminUserFreeze);
         handlers.put(OpCode.ADMIN_USER_UNFREEZE, this::handleAdminUserUnfreeze);
         handlers.put(OpCode.ADMIN_ALL_RECORDS, this::handleAdminAllRecords);
@@ -184,6 +195,42 @@ public class RequestDispatcher {
         return borrowService.getMyRecords(request, userId);
     }
     
+    private Response handlePlaceHold(Request request) {
+        if (!validateToken(request, false)) {
+            return Response.error(request.getRequestId(), ErrorCode.AUTH_FAILED);
+        }
+        Long userId = tokenService.validateToken(request.getToken());
+        if (userId == null) {
+            return Response.error(request.getRequestId(), ErrorCode.AUTH_FAILED);
+        }
+        logger.info("处理预约请求: requestId={}, userId={}", request.getRequestId(), userId);
+        return holdService.placeHold(request, userId);
+    }
+    
+    private Response handleCancelHold(Request request) {
+        if (!validateToken(request, false)) {
+            return Response.error(request.getRequestId(), ErrorCode.AUTH_FAILED);
+        }
+        Long userId = tokenService.validateToken(request.getToken());
+        if (userId == null) {
+            return Response.error(request.getRequestId(), ErrorCode.AUTH_FAILED);
+        }
+        logger.info("处理取消预约请求: requestId={}, userId={}", request.getRequestId(), userId);
+        return holdService.cancelHold(request, userId);
+    }
+    
+    private Response handleMyHolds(Request request) {
+        if (!validateToken(request, false)) {
+            return Response.error(request.getRequestId(), ErrorCode.AUTH_FAILED);
+        }
+        Long userId = tokenService.validateToken(request.getToken());
+        if (userId == null) {
+            return Response.error(request.getRequestId(), ErrorCode.AUTH_FAILED);
+        }
+        logger.info("处理我的预约请求: requestId={}, userId={}", request.getRequestId(), userId);
+        return holdService.getMyHolds(request, userId);
+    }
+    
     private Response handleRecommend(Request request) {
         if (!validateToken(request, false)) {
             return Response.error(request.getRequestId(), ErrorCode.AUTH_FAILED);
@@ -228,6 +275,38 @@ public class RequestDispatcher {
         return bookService.importBooks(request);
     }
     
+    private Response handleAdminImportBegin(Request request) {
+        if (!validateToken(request, true)) {
+            return Response.error(request.getRequestId(), ErrorCode.FORBIDDEN);
+        }
+        logger.info("处理管理员开启分块导入请求: requestId={}", request.getRequestId());
+        return bookImportService.begin(request);
+    }
+    
+    private Response handleAdminImportChunk(Request request) {
+        if (!validateToken(request, true)) {
+            return Response.error(request.getRequestId(), ErrorCode.FORBIDDEN);
+        }
+        logger.debug("处理管理员导入分块请求: requestId={}", request.getRequestId());
+        return bookImportService.chunk(request);
+    }
+    
+    private Response handleAdminImportCommit(Request request) {
+        if (!validateToken(request, true)) {
+            return Response.error(request.getRequestId(), ErrorCode.FORBIDDEN);
+        }
+        logger.info("处理管理员提交分块导入请求: requestId={}", request.getRequestId());
+        return bookImportService.commit(request);
+    }
+    
+    private Response handleAdminImportAbort(Request request) {
+        if (!validateToken(request, true)) {
+            return Response.error(request.getRequestId(), ErrorCode.FORBIDDEN);
+        }
+        logger.info("处理管理员取消分块导入请求: requestId={}", request.getRequestId());
+        return bookImportService.abort(request);
+    }
+    
     private Response handleAdminUserFreeze(Request request) {
         if (!validateToken(request, true)) {
             return Response.error(request.getRequestId(), ErrorCode.FORBIDDEN);
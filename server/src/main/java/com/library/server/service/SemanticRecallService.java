@@ -17,8 +17,8 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -29,12 +29,27 @@ public class SemanticRecallService {
     private static final Logger logger = LoggerFactory.getLogger(SemanticRecallService.class);
     
     // 默认参数
-    private static final int DEFAULT_USER_PROFILE_K = 5;  // 用户画像使用最近K本借阅书
-    private static final int DEFAULT_TOP_N = 10;  // 默认推荐数量
+    static final int DEFAULT_USER_PROFILE_K = 5;  // 用户画像使用最近K本借阅书
+    static final int DEFAULT_TOP_N = 10;  // 默认推荐数量
     
     private final EmbeddingDao embeddingDao = new EmbeddingDao();
     private final BookDao bookDao = new BookDao();
-    private final BorrowRecordDao recordDao = new BorrowRecordDao();
+    private final BorrowRecordDao recordDao;
+    // 借阅记录来自数据库时已借图书走共享缓存，注入的来源直接查询
+    private final boolean cachedHistory;
+    
+    public SemanticRecallService() {
+        this.recordDao = new BorrowRecordDao();
+        this.cachedHistory = true;
+    }
+    
+    /**
+     * 使用指定的借阅记录来源（离线评估用截止到切分时间的训练集）
+     */
+    public SemanticRecallService(BorrowRecordDao recordDao) {
+        this.recordDao = recordDao;
+        this.cachedHistory = false;
+    }
     
     /**
      * 语义召回推荐
@@ -48,75 +63,33 @@ public class SemanticRecallService {
             int userProfileK = request.getPayload() != null && request.getPayload().has("userProfileK") ?
                     request.getPayload().get("userProfileK").asInt() : DEFAULT_USER_PROFILE_K;
             
-            logger.info("语义召回推荐: userId={}, topN={}, userProfileK={}", userId, topN, userProfileK);
-            
-            // 构建用户画像向量
-            float[] userProfileVector = buildUserProfile(userId, userProfileK);
+            List<RecommendCandidate> candidates = candidates(userId, topN, userProfileK);
             
-            if (userProfileVector == null) {
+            if (candidates.isEmpty()) {
                 return Response.error(requestId, ErrorCode.NOT_FOUND, 
-                        JsonUtil.toJsonNode("无法构建用户画像，请先借阅一些图书"));
-            }
-            
-            // 查询相似图书
-            List<SimilarBook> similarBooks = embeddingDao.querySimilarBooks(userProfileVector, topN * 2);
-            
-            if (similarBooks.isEmpty()) {
-                return Response.error(requestId, ErrorCode.NOT_FOUND, 
-                        JsonUtil.toJsonNode("没有找到语义相似的图书"));
+                        JsonUtil.toJsonNode("没有找到合适的推荐图书"));
             }
             
-            // 获取用户已借过的书
-            Set<Long> borrowedBooks = getUserBorrowedBooks(userId);
-            
-            // 获取用户最近借阅的K本书（用于生成推荐理由）
-            List<Long> recentBookIds = getRecentBorrowedBooks(userId, userProfileK);
-            
-            // 过滤并构建响应
             ArrayNode bookArray = JsonUtil.getObjectMapper().createArrayNode();
-            int count = 0;
-            
-            for (SimilarBook similarBook : similarBooks) {
-                if (count >= topN) break;
-                
-                // 排除已借过的书
-                if (borrowedBooks.contains(similarBook.bookId)) {
-                    continue;
-                }
-                
-                Book book = bookDao.findById(similarBook.bookId);
-                if (book == null || book.getAvailableCount() <= 0) {
-                    continue;
-                }
-                
+            for (RecommendCandidate candidate : candidates) {
+                Book book = candidate.getBook();
                 ObjectNode bookNode = JsonUtil.createObjectNode();
-                bookNode.put("bookId", similarBook.bookId);
+                bookNode.put("bookId", book.getId());
                 bookNode.put("title", book.getTitle());
                 bookNode.put("author", book.getAuthor());
                 bookNode.put("category", book.getCategory());
                 bookNode.put("publisher", book.getPublisher());
                 bookNode.put("description", book.getDescription());
                 bookNode.put("availableCount", book.getAvailableCount());
-                bookNode.put("similarity", similarBook.similarity);
-                
-                // 生成推荐理由
-                String reason = generateReason(recentBookIds, book);
-                bookNode.put("reason", reason);
-                
+                bookNode.put("similarity", candidate.getScore());
+                bookNode.put("reason", candidate.getReason());
                 bookArray.add(bookNode);
-                count++;
-            }
-            
-            if (bookArray.size() == 0) {
-                return Response.error(requestId, ErrorCode.NOT_FOUND, 
-                        JsonUtil.toJsonNode("没有找到合适的推荐图书"));
             }
             
             ObjectNode data = JsonUtil.createObjectNode();
             data.set("books", bookArray);
             data.put("total", bookArray.size());
             
-            logger.info("语义召回完成: userId={}, 推荐{}本书", userId, bookArray.size());
             return Response.success(requestId, "推荐成功", JsonUtil.toJsonNode(data));
             
         } catch (Exception e) {
@@ -125,6 +98,58 @@ public class SemanticRecallService {
         }
     }
     
+    /**
+     * 语义召回通道（供综合推荐并行调用），候选分数为与用户画像的相似度；无法构建画像或没有结果时返回空列表
+     */
+    List<RecommendCandidate> candidates(Long userId, int topN, int userProfileK) {
+        logger.info("语义召回推荐: userId={}, topN={}, userProfileK={}", userId, topN, userProfileK);
+        
+        // 构建用户画像向量
+        float[] userProfileVector = buildUserProfile(userId, userProfileK);
+        
+        if (userProfileVector == null) {
+            logger.info("无法构建用户画像: userId={}", userId);
+            return Collections.emptyList();
+        }
+        
+        // 查询相似图书
+        List<SimilarBook> similarBooks = embeddingDao.querySimilarBooks(userProfileVector, topN * 2);
+        
+        if (similarBooks.isEmpty()) {
+            logger.info("没有找到语义相似的图书: userId={}", userId);
+            return Collections.emptyList();
+        }
+        
+        // 获取用户已借过的书
+        BorrowedBookCache.BorrowedBooks borrowedBooks = cachedHistory
+                ? BorrowedBookCache.get(userId) : BorrowedBookCache.load(recordDao, userId);
+        
+        // 获取用户最近借阅的K本书（用于生成推荐理由）
+        List<Long> recentBookIds = getRecentBorrowedBooks(userId, userProfileK);
+        
+        List<RecommendCandidate> candidates = new ArrayList<>();
+        for (SimilarBook similarBook : similarBooks) {
+            if (candidates.size() >= topN) break;
+            
+            // 排除已借过的书
+            if (borrowedBooks.contains(similarBook.bookId)) {
+                continue;
+            }
+            
+            Book book = bookDao.findById(similarBook.bookId);
+            if (book == null || book.getAvailableCount() <= 0) {
+                continue;
+            }
+            
+            // 生成推荐理由
+            String reason = generateReason(recentBookIds, book);
+            candidates.add(new RecommendCandidate(book, similarBook.similarity, reason, false));
+        }
+        
+        logger.info("语义召回完成: userId={}, 推荐{}本书", userId, candidates.size());
+        return candidates;
+    }
+    
     /**
      * 构建用户画像向量
      * 最近K本借阅书的embedding平均
@@ -224,21 +249,6 @@ public class SemanticRecallService {
         }
     }
     
-    /**
-     * 获取用户已借过的书
-     */
-    private Set<Long> getUserBorrowedBooks(Long userId) {
-        try {
-            List<BorrowRecord> records = recordDao.findByUserId(userId);
-            return records.stream()
-                    .map(BorrowRecord::getBookId)
-                    .collect(Collectors.toSet());
-        } catch (Exception e) {
-            logger.error("获取用户借阅记录失败: userId={}", userId, e);
-            return java.util.Collections.emptySet();
-        }
-    }
-    
     /**
      * 生成推荐理由
      */
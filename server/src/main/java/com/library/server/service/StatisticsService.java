@@ -4,6 +4,9 @@ import com.library.common.protocol.ErrorCode;
 import com.library.common.protocol.Request;
 import com.library.common.protocol.Response;
 import com.library.common.util.JsonUtil;
+import com.library.server.dao.DataSourceProvider;
+import com.library.server.dao.PoolMetrics;
+import com.library.server.dao.ReadOnlyScope;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
@@ -21,7 +24,14 @@ import java.util.List;
 public class StatisticsService {
     private static final Logger logger = LoggerFactory.getLogger(StatisticsService.class);
 
+    /**
+     * 获取统计数据（只读查询，优先路由到只读副本）
+     */
     public Response getStatistics(Request request) {
+        return ReadOnlyScope.call(() -> doGetStatistics(request));
+    }
+
+    private Response doGetStatistics(Request request) {
         String requestId = request.getRequestId();
         logger.info("开始获取统计数据: requestId={}", requestId);
 
@@ -59,6 +69,35 @@ public class StatisticsService {
             data.set("trendData", trendArray);
             logger.debug("趋势数据: 天数={}", trendData.size());
 
+            // 连接池指标
+            PoolMetrics.Snapshot pool = DataSourceProvider.getPoolMetrics();
+            ObjectNode poolNode = JsonUtil.createObjectNode();
+            poolNode.put("active", pool.active);
+            poolNode.put("idle", pool.idle);
+            poolNode.put("total", pool.total);
+            poolNode.put("pending", pool.pending);
+            poolNode.put("avgWaitMillis", pool.avgWaitMillis);
+            poolNode.put("maxWaitMillis", pool.maxWaitMillis);
+            poolNode.put("timeoutCount", pool.timeoutCount);
+            data.set("dbPool", poolNode);
+
+            // 批处理作业进度
+            ArrayNode jobArray = JsonUtil.getObjectMapper().createArrayNode();
+            for (BatchJobRunner.Progress job : BatchJobRunner.getAllProgress()) {
+                ObjectNode jobNode = JsonUtil.createObjectNode();
+                jobNode.put("name", job.getJobName());
+                jobNode.put("status", job.getStatus());
+                jobNode.put("startedAt", job.getStartedAt().toString());
+                jobNode.put("lastKey", job.getLastKey());
+                jobNode.put("chunks", job.getChunkCount());
+                jobNode.put("scanned", job.getScannedCount());
+                jobNode.put("affected", job.getAffectedCount());
+                jobNode.put("elapsedMillis", job.getElapsedMillis());
+                jobNode.put("rowsPerSecond", job.getRowsPerSecond());
+                jobArray.add(jobNode);
+            }
+            data.set("batchJobs", jobArray);
+
             logger.info("获取统计数据成功: requestId={}, totalBorrowed={}, totalCategories={}", 
                     requestId, totalBorrowed, totalCategories);
             return Response.success(requestId, "查询成功", JsonUtil.toJsonNode(data));
@@ -84,7 +123,7 @@ public class StatisticsService {
         String sql = "SELECT COUNT(*) FROM borrow_records br " +
                      "INNER JOIN users u ON br.user_id = u.id " +
                      "WHERE br.status = 'BORROWED' AND u.role != 'ADMIN'";
-        try (Connection conn = com.library.server.dao.DataSourceProvider.getDataSource().getConnection();
+        try (Connection conn = DataSourceProvider.getReadDataSource().getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
             if (rs.next()) {
@@ -105,7 +144,7 @@ public class StatisticsService {
                      "WHERE u.role != 'ADMIN' " +
                      "GROUP BY b.category " +
                      "ORDER BY count DESC";
-        try (Connection conn = com.library.server.dao.DataSourceProvider.getDataSource().getConnection();
+        try (Connection conn = DataSourceProvider.getReadDataSource().getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
@@ -129,7 +168,7 @@ public class StatisticsService {
      */
     private int getAllCategoriesCount() {
         String sql = "SELECT COUNT(DISTINCT category) FROM books WHERE category IS NOT NULL AND category != ''";
-        try (Connection conn = com.library.server.dao.DataSourceProvider.getDataSource().getConnection();
+        try (Connection conn = DataSourceProvider.getReadDataSource().getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
             if (rs.next()) {
@@ -163,7 +202,7 @@ public class StatisticsService {
         String sql = "SELECT COUNT(*) FROM borrow_records br " +
                      "INNER JOIN users u ON br.user_id = u.id " +
                      "WHERE DATE(br.borrow_time) = ? AND u.role != 'ADMIN'";
-        try (Connection conn = com.library.server.dao.DataSourceProvider.getDataSource().getConnection();
+        try (Connection conn = DataSourceProvider.getReadDataSource().getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setDate(1, java.sql.Date.valueOf(date));
             try (ResultSet rs = stmt.executeQuery()) {
@@ -0,0 +1,122 @@
+package com.library.server.service;
+
+import com.library.server.dao.BookDao;
+import com.library.server.model.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 图书库存预留
+ * 每本书一个内存计数器（首次借阅时从books.available_count加载），借书先在计数器上CAS扣减，
+ * 库存不足的请求直接拒绝，不开启事务也不触碰books行；通过的请求再调用circulation_borrow写库，
+ * 数据库的库存约束仍然生效，写库被拒绝时作废计数器重新加载。
+ * 计数器按书分散在ConcurrentHashMap中，不同图书之间互不竞争；
+ * 每个计数器带有加载时分配的递增代号，归还时只作用于调用方取得代号之前已加载的计数器，
+ * 避免计数器过期重载后旧预留的归还或已写库的还书再加到新计数器上
+ */
+final class StockReservation {
+    private static final Logger logger = LoggerFactory.getLogger(StockReservation.class);
+    
+    // 计数器有效期，过期后从数据库重新加载，纠正其他途径（如脚本）对库存的修改
+    private static final long REFRESH_MILLIS = 60_000;
+    
+    // tryReserve库存不足时的返回值
+    static final long REJECTED = -1;
+    
+    private static final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+    private static final AtomicLong generations = new AtomicLong();
+    private static final BookDao bookDao = new BookDao();
+    
+    private StockReservation() {
+    }
+    
+    /**
+     * 预留一本库存，库存不足返回REJECTED，否则返回预留所在计数器的代号（供release使用）
+     * 图书不存在时放行（不占用计数器），由circulation_borrow返回BOOK_NOT_FOUND
+     */
+    static long tryReserve(Long bookId) {
+        Counter counter = getCounter(bookId);
+        if (counter == null) {
+            return 0;
+        }
+        AtomicInteger available = counter.available;
+        while (true) {
+            int current = available.get();
+            if (current <= 0) {
+                return REJECTED;
+            }
+            if (available.compareAndSet(current, current - 1)) {
+                return counter.generation;
+            }
+        }
+    }
+    
+    /**
+     * 当前代号，还书或释放预约副本前（写库之前）取得，写库后传给release
+     */
+    static long currentGeneration() {
+        return generations.get();
+    }
+    
+    /**
+     * 归还一本库存（还书成功，或预留后写库失败且未改动数据库时调用）
+     * 计数器在generation之后重新加载过时不做任何事：新计数器已从数据库读到准确库存
+     */
+    static void release(Long bookId, long generation) {
+        Counter counter = counters.get(bookId);
+        if (counter != null && counter.generation <= generation) {
+            counter.available.incrementAndGet();
+        }
+    }
+    
+    /**
+     * 作废计数器，下次借阅时从数据库重新加载（管理员修改库存、删除图书或数据库拒绝扣减时调用）
+     */
+    static void invalidate(Long bookId) {
+        counters.remove(bookId);
+    }
+    
+    /**
+     * 作废全部计数器（批量导入后调用）
+     */
+    static void invalidateAll() {
+        counters.clear();
+    }
+    
+    private static Counter getCounter(Long bookId) {
+        Counter counter = counters.get(bookId);
+        if (counter != null && System.currentTimeMillis() - counter.loadedAt < REFRESH_MILLIS) {
+            return counter;
+        }
+        if (counter != null) {
+            counters.remove(bookId, counter);
+        }
+        return counters.computeIfAbsent(bookId, StockReservation::load);
+    }
+    
+    private static Counter load(Long bookId) {
+        Book book = bookDao.findById(bookId);
+        if (book == null) {
+            return null;
+        }
+        logger.debug("加载库存计数器: bookId={}, available={}", bookId, book.getAvailableCount());
+        // 代号在读库之后分配：代号不大于调用方所取代号的计数器，读到的一定是其写库之前的库存
+        return new Counter(book.getAvailableCount(), generations.incrementAndGet());
+    }
+    
+    private static class Counter {
+        final AtomicInteger available;
+        final long generation;
+        final long loadedAt = System.currentTimeMillis();
+        
+        Counter(int available, long generation) {
+            this.available = new AtomicInteger(available);
+            this.generation = generation;
+        }
+    }
+}
@@ -6,6 +6,8 @@ import com.library.common.protocol.Response;
 import com.library.common.util.JsonUtil;
 import com.library.server.dao.BookDao;
 import com.library.server.dao.BorrowRecordDao;
+import com.library.server.dao.DataSourceProvider;
+import com.library.server.dao.ReadOnlyScope;
 import com.library.server.model.Book;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +34,11 @@ public class TrendingService {
      * 获取热门图书
      */
     public Response getTrending(Request request) {
+        // 榜单可以容忍轻微延迟，优先路由到只读副本
+        return ReadOnlyScope.call(() -> doGetTrending(request));
+    }
+    
+    private Response doGetTrending(Request request) {
         String requestId = request.getRequestId();
         
         try {
@@ -99,7 +106,7 @@ public class TrendingService {
         ResultSet rs = null;
         
         try {
-            conn = com.library.server.dao.DataSourceProvider.getDataSource().getConnection();
+            conn = DataSourceProvider.getReadDataSource().getConnection();
             stmt = conn.prepareStatement(sql);
             rs = stmt.executeQuery();
             
@@ -0,0 +1,209 @@
+package com.library.server.service;
+
+import com.library.server.dao.UserDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 用户借阅状态缓存（LRU）
+ * 缓存每个用户的未归还借阅（记录ID与到期时间）、是否管理员和已产生罚款，借书资格检查只读内存；
+ * 未命中时从数据库加载。借书、还书成功后由BorrowService直接更新（写穿），
+ * 逾期状态由缓存的到期时间按当前时间推导，逾期扫描不必逐条通知。
+ * 加载期间该用户发生了借还书时，加载结果可能早于这次修改，不写入缓存，避免旧数据覆盖新状态。
+ * 缓存只用于提前拒绝，最终仍以circulation_borrow在数据库中的校验为准
+ */
+final class UserCirculationCache {
+    private static final Logger logger = LoggerFactory.getLogger(UserCirculationCache.class);
+    
+    private static final int MAX_USERS = 10000;
+    // 条目有效期，过期后重新加载，纠正其他途径（如管理员、脚本）对数据的修改
+    private static final long REFRESH_MILLIS = 5 * 60_000;
+    
+    private static final UserDao userDao = new UserDao();
+    private static final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_USERS;
+        }
+    };
+    // 正在加载的用户（由entries的锁保护）
+    private static final Map<Long, PendingLoad> loading = new HashMap<>();
+    
+    private UserCirculationCache() {
+    }
+    
+    /**
+     * 借书资格检查结果
+     */
+    enum Eligibility {
+        ELIGIBLE,
+        ADMIN,
+        OVERDUE,
+        // 用户不存在或状态加载失败，交由数据库判断
+        UNKNOWN
+    }
+    
+    /**
+     * 检查借书资格：管理员不能借书，存在已过期未归还的借阅不能借书
+     */
+    static Eligibility checkBorrow(Long userId) {
+        Entry entry = getEntry(userId);
+        if (entry == null) {
+            return Eligibility.UNKNOWN;
+        }
+        synchronized (entry) {
+            if (entry.admin) {
+                return Eligibility.ADMIN;
+            }
+            LocalDateTime nearestDue = entry.nearestDue();
+            if (nearestDue != null && nearestDue.isBefore(LocalDateTime.now())) {
+                return Eligibility.OVERDUE;
+            }
+            return Eligibility.ELIGIBLE;
+        }
+    }
+    
+    /**
+     * 已产生的罚款（不含未归还借阅的预计罚款），用户不存在或加载失败返回null
+     */
+    static Double getAccruedFine(Long userId) {
+        Entry entry = getEntry(userId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.fineAmount;
+        }
+    }
+    
+    /**
+     * 借书成功后写入新借阅
+     */
+    static void onBorrowed(Long userId, Long recordId, LocalDateTime dueTime) {
+        Entry entry = peekForUpdate(userId);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.openLoans.put(recordId, dueTime);
+            }
+        }
+    }
+    
+    /**
+     * 还书成功后移除借阅并累加罚款
+     */
+    static void onReturned(Long userId, Long recordId, double fineAmount) {
+        Entry entry = peekForUpdate(userId);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.openLoans.remove(recordId);
+                entry.fineAmount += fineAmount;
+            }
+        }
+    }
+    
+    /**
+     * 作废用户的缓存条目
+     */
+    static void invalidate(Long userId) {
+        synchronized (entries) {
+            entries.remove(userId);
+            markStale(userId);
+        }
+    }
+    
+    private static Entry peek(Long userId) {
+        synchronized (entries) {
+            return entries.get(userId);
+        }
+    }
+    
+    /**
+     * 修改前取条目，同时让该用户正在进行的加载作废
+     */
+    private static Entry peekForUpdate(Long userId) {
+        synchronized (entries) {
+            markStale(userId);
+            return entries.get(userId);
+        }
+    }
+    
+    private static void markStale(Long userId) {
+        PendingLoad load = loading.get(userId);
+        if (load != null) {
+            load.stale = true;
+        }
+    }
+    
+    private static Entry getEntry(Long userId) {
+        Entry entry = peek(userId);
+        if (entry != null && System.currentTimeMillis() - entry.loadedAt < REFRESH_MILLIS) {
+            return entry;
+        }
+        PendingLoad load;
+        synchronized (entries) {
+            load = loading.computeIfAbsent(userId, id -> new PendingLoad());
+            load.loaders++;
+        }
+        UserDao.CirculationState state = null;
+        boolean failed = false;
+        try {
+            state = userDao.findCirculationState(userId);
+        } catch (Exception e) {
+            logger.warn("加载用户借阅状态失败: userId={}", userId, e);
+            failed = true;
+        }
+        synchronized (entries) {
+            if (--load.loaders == 0) {
+                loading.remove(userId);
+            }
+            if (failed || load.stale) {
+                // 加载期间发生了借还书，结果可能已过时，交由数据库判断
+                return null;
+            }
+            if (state == null) {
+                entries.remove(userId);
+                return null;
+            }
+            entry = new Entry(state);
+            entries.put(userId, entry);
+            return entry;
+        }
+    }
+    
+    /**
+     * 进行中的加载，期间该用户的状态被修改时标记为过时
+     */
+    private static class PendingLoad {
+        int loaders;
+        boolean stale;
+    }
+    
+    private static class Entry {
+        final boolean admin;
+        final long loadedAt = System.currentTimeMillis();
+        double fineAmount;
+        // 未归还借阅：记录ID -> 到期时间（每个用户只有几条）
+        final Map<Long, LocalDateTime> openLoans;
+        
+        Entry(UserDao.CirculationState state) {
+            this.admin = state.isAdmin();
+            this.fineAmount = state.getFineAmount();
+            this.openLoans = new HashMap<>(state.getOpenLoans());
+        }
+        
+        LocalDateTime nearestDue() {
+            LocalDateTime nearest = null;
+            for (LocalDateTime due : openLoans.values()) {
+                if (due != null && (nearest == null || due.isBefore(nearest))) {
+                    nearest = due;
+                }
+            }
+            return nearest;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.library.common.protocol.Response;
 import com.library.common.util.JsonUtil;
 import com.library.server.dao.BorrowRecordDao;
 import com.library.server.dao.DataSourceProvider;
+import com.library.server.dao.ReadOnlyScope;
 import com.library.server.dao.UserDao;
 import com.library.server.model.User;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -25,6 +26,11 @@ public class UserRecommendationService {
     private final BorrowRecordDao borrowRecordDao = new BorrowRecordDao();
     
     public Response recommendUsers(Request request, Long userId) {
+        // 相似用户计算需要扫描全部借阅记录，优先路由到只读副本
+        return ReadOnlyScope.call(() -> doRecommendUsers(request, userId));
+    }
+    
+    private Response doRecommendUsers(Request request, Long userId) {
         String requestId = request.getRequestId();
         
         try {
@@ -100,6 +106,10 @@ public class UserRecommendationService {
     }
     
     public Response searchUsers(Request request) {
+        return ReadOnlyScope.call(() -> doSearchUsers(request));
+    }
+    
+    private Response doSearchUsers(Request request) {
         String requestId = request.getRequestId();
         
         try {
@@ -115,7 +125,7 @@ public class UserRecommendationService {
                          "ORDER BY username LIMIT 20";
             
             List<User> users = new ArrayList<>();
-            try (Connection conn = DataSourceProvider.getDataSource().getConnection();
+            try (Connection conn = DataSourceProvider.getReadDataSource().getConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setString(1, "%" + keyword.trim() + "%");
                 try (ResultSet rs = stmt.executeQuery()) {
@@ -5,10 +5,8 @@ import com.library.common.protocol.Request;
 import com.library.common.protocol.Response;
 import com.library.common.util.JsonUtil;
 import com.library.server.dao.UserDao;
-import com.library.server.dao.BorrowRecordDao;
+import com.library.server.dao.FineLedgerDao;
 import com.library.server.model.User;
-import com.library.server.model.BorrowRecord;
-import com.library.server.service.FineService;
 import com.library.server.util.PasswordUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 用户服务
@@ -23,7 +22,7 @@ import java.util.List;
 public class UserService {
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
     private final UserDao userDao = new UserDao();
-    private final BorrowRecordDao recordDao = new BorrowRecordDao();
+    private final FineLedgerDao ledgerDao = new FineLedgerDao();
     
     /**
      * 用户注册
@@ -197,6 +196,8 @@ public class UserService {
         
         try {
             List<User> users = userDao.findAllUsers();
+            // 逾期罚款一次性读取罚款台账的用户累计
+            Map<Long, FineLedgerDao.UserFineTotal> overdueTotals = ledgerDao.findAllUserTotals();
             
             ArrayNode userArray = JsonUtil.getObjectMapper().createArrayNode();
             for (User user : users) {
@@ -208,13 +209,8 @@ public class UserService {
                 
                 // 计算总欠费：已记录的欠费 + 当前逾期的欠费
                 double totalFine = user.getFineAmount(); // 已记录的欠费
-                List<BorrowRecord> overdueRecords = recordDao.findOverdueRecordsByUserId(user.getId());
-                
-                double currentOverdueFine = 0.0;
-                for (BorrowRecord record : overdueRecords) {
-                    long overdueDays = FineService.calculateOverdueDays(record.getDueTime());
-                    currentOverdueFine += FineService.calculateFine(overdueDays);
-                }
+                FineLedgerDao.UserFineTotal overdueTotal = overdueTotals.get(user.getId());
+                double currentOverdueFine = overdueTotal != null ? overdueTotal.getAccruedFine() : 0.0;
                 
                 double totalOwed = totalFine + currentOverdueFine;
                 
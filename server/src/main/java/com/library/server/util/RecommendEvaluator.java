@@ -0,0 +1,563 @@
+package com.library.server.util;
+
+import com.library.common.protocol.OpCode;
+import com.library.common.protocol.Request;
+import com.library.common.protocol.Response;
+import com.library.common.util.JsonUtil;
+import com.library.server.dao.BorrowRecordDao;
+import com.library.server.dao.DataSourceProvider;
+import com.library.server.dao.SqlMetrics;
+import com.library.server.model.BorrowRecord;
+import com.library.server.recommend.BorrowGraph;
+import com.library.server.recommend.CoBorrowIndex;
+import com.library.server.recommend.CoBorrowRecommender;
+import com.library.server.recommend.PPRRecommender;
+import com.library.server.service.AIRecommendService;
+import com.library.server.service.RecommendService;
+import com.library.server.service.SemanticRecallService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * 推荐离线评估工具
+ * 按时间切分借阅记录：切分时间之前的借阅为训练集，之后的为测试集。对在训练集中有借阅、且切分后借了新书的用户
+ * 逐个请求推荐，统计precision@K、recall@K、NDCG@K、覆盖率（推荐过的不同图书 / 训练集图书数）、
+ * 单次请求耗时的p50/p99和平均执行的SQL语句数。
+ * POPULAR（热门基线）、PPR、PPR_PUSH、ITEM在训练集构建的内存借阅图上计算，可使用内置合成数据集或CSV，不需要数据库；
+ * SEMANTIC、AI、FUSED走服务的正常请求路径，借阅历史由内存中的训练集回答（TrainingBorrowRecordDao），
+ * 图书和向量仍查询数据库，需要连接本地PostgreSQL。
+ *
+ * 用法: RecommendEvaluator [--source db|synthetic|文件.csv] [--split yyyy-MM-dd] [--k 10] [--users 500]
+ *                          [--warmup 20] [--algorithms PPR,ITEM,...] [--payload '{"graphWeight":0.6}']
+ * CSV每行为 user_id,book_id,borrow_time（ISO日期或日期时间），首行可以是表头；
+ * 未指定切分日期时取借阅时间的80%分位；--payload附加到FUSED请求，用于比较融合权重
+ */
+public class RecommendEvaluator {
+    private static final Logger logger = LoggerFactory.getLogger(RecommendEvaluator.class);
+    
+    // 与图推荐（GraphRecommendService）的默认参数一致
+    private static final double RESTART_PROBABILITY = 0.15;
+    private static final int MAX_ITERATIONS = 30;
+    private static final double EPSILON = 1e-5;
+    private static final long MAX_EDGE_SCANS = 200_000;
+    private static final int CO_BORROW_TOP_K = 20;
+    // 合成数据和用户抽样的随机种子，保证多次运行结果可比
+    private static final long SEED = 42;
+    
+    /**
+     * 可评估的推荐器
+     */
+    enum Algorithm {
+        POPULAR(false),
+        PPR(false),
+        PPR_PUSH(false),
+        ITEM(false),
+        SEMANTIC(true),
+        AI(true),
+        FUSED(true);
+        
+        final boolean needsDatabase;
+        
+        Algorithm(boolean needsDatabase) {
+            this.needsDatabase = needsDatabase;
+        }
+    }
+    
+    /**
+     * 单个推荐器：返回按排名排列的图书ID
+     */
+    @FunctionalInterface
+    interface Recommender {
+        long[] recommend(long userId, int k) throws Exception;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("用法: RecommendEvaluator [--source db|synthetic|文件.csv] [--split yyyy-MM-dd] [--k 10] "
+                    + "[--users 500] [--warmup 20] [--algorithms PPR,ITEM,...] [--payload JSON]");
+            System.exit(1);
+            return;
+        }
+        
+        try {
+            new RecommendEvaluator().run(options);
+        } finally {
+            if (options.usesDatabase()) {
+                DataSourceProvider.close();
+            }
+        }
+    }
+    
+    private void run(Options options) throws Exception {
+        // 1. 加载借阅并按时间切分
+        Borrows borrows = load(options.source);
+        if (borrows.size == 0) {
+            System.out.println("没有借阅记录，无法评估");
+            return;
+        }
+        LocalDateTime split = options.split != null ? options.split.atStartOfDay() : borrows.quantile(0.8);
+        long splitSecond = split.toEpochSecond(ZoneOffset.UTC);
+        
+        BorrowGraph.Builder builder = new BorrowGraph.Builder(split.toLocalDate());
+        Map<Long, Set<Long>> trainBooks = new HashMap<>();
+        Map<Long, Set<Long>> testBooks = new HashMap<>();
+        Map<Long, Integer> popularity = new HashMap<>();
+        Map<Long, List<BorrowRecord>> trainRecords = new HashMap<>();
+        int trainCount = 0;
+        for (int i = 0; i < borrows.size; i++) {
+            long userId = borrows.users[i];
+            long bookId = borrows.books[i];
+            if (borrows.times[i] < splitSecond) {
+                builder.add(userId, bookId, borrows.dateAt(i));
+                trainBooks.computeIfAbsent(userId, id -> new HashSet<>()).add(bookId);
+                popularity.merge(bookId, 1, Integer::sum);
+                trainRecords.computeIfAbsent(userId, id -> new ArrayList<>()).add(borrows.recordAt(i));
+                trainCount++;
+            } else {
+                testBooks.computeIfAbsent(userId, id -> new HashSet<>()).add(bookId);
+            }
+        }
+        
+        // 2. 测试用户：训练集中有借阅，且切分后借了训练集中没借过的书（这些书即为应当命中的目标）
+        Map<Long, Set<Long>> relevant = new HashMap<>();
+        for (Map.Entry<Long, Set<Long>> entry : testBooks.entrySet()) {
+            Set<Long> history = trainBooks.get(entry.getKey());
+            if (history == null) {
+                continue;
+            }
+            Set<Long> target = new HashSet<>(entry.getValue());
+            target.removeAll(history);
+            if (!target.isEmpty()) {
+                relevant.put(entry.getKey(), target);
+            }
+        }
+        List<Long> users = new ArrayList<>(relevant.keySet());
+        Collections.sort(users);
+        Collections.shuffle(users, new Random(SEED));
+        if (users.size() > options.users) {
+            users = users.subList(0, options.users);
+        }
+        if (users.isEmpty()) {
+            System.out.println("切分时间" + split + "之后没有可评估的用户（需在切分前后都有借阅）");
+            return;
+        }
+        
+        // 3. 安装训练集借阅图和共借索引，图推荐通道和服务路径都只看到切分前的借阅；
+        //    服务路径的借阅记录查询由训练集回答
+        long start = System.currentTimeMillis();
+        BorrowGraph graph = builder.build();
+        BorrowGraph.install(graph);
+        CoBorrowIndex.install(CoBorrowIndex.build(graph, CO_BORROW_TOP_K));
+        logger.info("训练集借阅图和共借索引构建完成: 耗时{}ms", System.currentTimeMillis() - start);
+        
+        System.out.printf("数据来源: %s，借阅%d条，切分时间%s，训练集%d条，测试集%d条，训练集图书%d本%n",
+                options.source, borrows.size, split, trainCount, borrows.size - trainCount, popularity.size());
+        System.out.printf("评估用户%d个（共%d个可评估），K=%d，预热%d次%n",
+                users.size(), relevant.size(), options.k, Math.min(options.warmup, users.size()));
+        System.out.println();
+        System.out.printf("%-10s %6s %9s %9s %9s %8s %9s %9s %9s%n",
+                "算法", "用户数", "P@" + options.k, "R@" + options.k, "NDCG@" + options.k, "覆盖率",
+                "p50(ms)", "p99(ms)", "SQL/请求");
+        
+        // 4. 逐个推荐器评估
+        for (Algorithm algorithm : options.algorithms) {
+            Recommender recommender = create(algorithm, graph, trainBooks, trainRecords, popularity, options.payload);
+            Result result = evaluate(recommender, users, relevant, options);
+            double coverage = popularity.isEmpty() ? 0 : (double) result.recommendedBooks.size() / popularity.size();
+            System.out.printf("%-10s %6d %9.4f %9.4f %9.4f %8.4f %9.2f %9.2f %9.2f%n",
+                    algorithm, result.users, result.precision / result.users, result.recall / result.users,
+                    result.ndcg / result.users, coverage, result.latencyPercentile(0.5), result.latencyPercentile(0.99),
+                    (double) result.queries / result.users);
+        }
+    }
+    
+    private Recommender create(Algorithm algorithm, BorrowGraph graph, Map<Long, Set<Long>> trainBooks,
+                               Map<Long, List<BorrowRecord>> trainRecords, Map<Long, Integer> popularity,
+                               ObjectNode payload) {
+        switch (algorithm) {
+            case POPULAR: {
+                long[] ranked = popularity.entrySet().stream()
+                        .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                                .thenComparing(Map.Entry.comparingByKey()))
+                        .mapToLong(Map.Entry::getKey)
+                        .toArray();
+                return (userId, k) -> {
+                    Set<Long> history = trainBooks.getOrDefault(userId, Collections.emptySet());
+                    long[] result = new long[k];
+                    int size = 0;
+                    for (int i = 0; i < ranked.length && size < k; i++) {
+                        if (!history.contains(ranked[i])) {
+                            result[size++] = ranked[i];
+                        }
+                    }
+                    return Arrays.copyOf(result, size);
+                };
+            }
+            case PPR: {
+                PPRRecommender recommender = new PPRRecommender(RESTART_PROBABILITY, MAX_ITERATIONS);
+                return (userId, k) -> recommender.rank(userId, graph, k);
+            }
+            case PPR_PUSH: {
+                PPRRecommender recommender = new PPRRecommender(RESTART_PROBABILITY, EPSILON, MAX_EDGE_SCANS);
+                return (userId, k) -> recommender.rank(userId, graph, k);
+            }
+            case ITEM: {
+                CoBorrowRecommender recommender = new CoBorrowRecommender();
+                return (userId, k) -> recommender.rank(userId, graph, k);
+            }
+            case SEMANTIC: {
+                SemanticRecallService service = new SemanticRecallService(
+                        new TrainingBorrowRecordDao(trainRecords, popularity));
+                return (userId, k) -> bookIds(service.recommend(request(k, null), userId));
+            }
+            case AI: {
+                AIRecommendService service = new AIRecommendService(
+                        new TrainingBorrowRecordDao(trainRecords, popularity));
+                return (userId, k) -> bookIds(service.recommend(request(k, null), userId));
+            }
+            case FUSED: {
+                RecommendService service = new RecommendService(new TrainingBorrowRecordDao(trainRecords, popularity));
+                return (userId, k) -> bookIds(service.recommend(request(k, payload), userId));
+            }
+            default:
+                throw new IllegalArgumentException("未知的推荐器: " + algorithm);
+        }
+    }
+    
+    /**
+     * 先预热（不计入统计），再逐个用户请求推荐并累计指标
+     */
+    private Result evaluate(Recommender recommender, List<Long> users, Map<Long, Set<Long>> relevant,
+                            Options options) throws Exception {
+        for (int i = 0; i < Math.min(options.warmup, users.size()); i++) {
+            recommender.recommend(users.get(i), options.k);
+        }
+        
+        Result result = new Result(users.size());
+        for (Long userId : users) {
+            long queries = SqlMetrics.totalCount();
+            long start = System.nanoTime();
+            long[] recommended = recommender.recommend(userId, options.k);
+            result.latencies[result.users] = (System.nanoTime() - start) / 1_000_000.0;
+            result.queries += SqlMetrics.totalCount() - queries;
+            
+            Set<Long> target = relevant.get(userId);
+            int hits = 0;
+            double dcg = 0;
+            int limit = Math.min(options.k, recommended.length);
+            for (int i = 0; i < limit; i++) {
+                result.recommendedBooks.add(recommended[i]);
+                if (target.contains(recommended[i])) {
+                    hits++;
+                    dcg += 1.0 / log2(i + 2);
+                }
+            }
+            double idcg = 0;
+            for (int i = 0; i < Math.min(options.k, target.size()); i++) {
+                idcg += 1.0 / log2(i + 2);
+            }
+            result.precision += (double) hits / options.k;
+            result.recall += (double) hits / target.size();
+            result.ndcg += dcg / idcg;
+            result.users++;
+        }
+        return result;
+    }
+    
+    private static double log2(int x) {
+        return Math.log(x) / Math.log(2);
+    }
+    
+    private static Request request(int k, ObjectNode extra) {
+        ObjectNode payload = JsonUtil.createObjectNode();
+        if (extra != null) {
+            payload.setAll(extra);
+        }
+        payload.put("topN", k);
+        return new Request("eval-" + UUID.randomUUID(), OpCode.RECOMMEND, null, payload);
+    }
+    
+    /**
+     * 从推荐响应的books数组中取出图书ID，失败的响应视为没有推荐
+     */
+    private static long[] bookIds(Response response) {
+        if (response == null || !response.isSuccess() || response.getData() == null
+                || !response.getData().has("books")) {
+            return new long[0];
+        }
+        JsonNode books = response.getData().get("books");
+        long[] result = new long[books.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = books.get(i).get("bookId").asLong();
+        }
+        return result;
+    }
+    
+    private static Borrows load(String source) throws Exception {
+        Borrows borrows = new Borrows();
+        if ("db".equals(source)) {
+            new BorrowRecordDao().forEachBorrow((recordId, userId, bookId, borrowTime) ->
+                    borrows.add(userId, bookId, borrowTime));
+        } else if ("synthetic".equals(source)) {
+            synthetic(borrows);
+        } else {
+            readCsv(source, borrows);
+        }
+        return borrows;
+    }
+    
+    /**
+     * 内置合成数据集：2000个用户、20个类别各50本书，每个用户偏好两个类别（80%的借阅落在偏好类别），
+     * 类别内按对数均匀分布挑书（少数图书热门），借阅时间均匀分布在一年内
+     */
+    private static void synthetic(Borrows borrows) {
+        int userCount = 2000;
+        int categoryCount = 20;
+        int booksPerCategory = 50;
+        LocalDateTime end = LocalDate.of(2025, 1, 1).atStartOfDay();
+        Random random = new Random(SEED);
+        for (long userId = 1; userId <= userCount; userId++) {
+            int[] favorites = {random.nextInt(categoryCount), random.nextInt(categoryCount)};
+            int borrowCount = 5 + random.nextInt(30);
+            for (int i = 0; i < borrowCount; i++) {
+                int category = random.nextDouble() < 0.8 ? favorites[random.nextInt(2)] : random.nextInt(categoryCount);
+                int rank = (int) Math.pow(booksPerCategory + 1, random.nextDouble()) - 1;
+                long bookId = 1 + (long) category * booksPerCategory + rank;
+                borrows.add(userId, bookId, end.minusMinutes(random.nextInt(365 * 24 * 60)));
+            }
+        }
+    }
+    
+    private static void readCsv(String file, Borrows borrows) throws Exception {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || (lineNumber == 1 && !Character.isDigit(line.charAt(0)))) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 3) {
+                    throw new IllegalArgumentException("CSV第" + lineNumber + "行格式错误: " + line);
+                }
+                String time = fields[2].trim();
+                LocalDateTime borrowTime = time.length() <= 10
+                        ? LocalDate.parse(time).atStartOfDay()
+                        : LocalDateTime.parse(time.replace(' ', 'T'));
+                borrows.add(Long.parseLong(fields[0].trim()), Long.parseLong(fields[1].trim()), borrowTime);
+            }
+        }
+    }
+    
+    /**
+     * 命令行参数
+     */
+    private static class Options {
+        String source = "db";
+        LocalDate split;
+        int k = 10;
+        int users = 500;
+        int warmup = 20;
+        List<Algorithm> algorithms;
+        ObjectNode payload;
+        
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("参数缺少取值: " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--source":
+                        options.source = value;
+                        break;
+                    case "--split":
+                        options.split = LocalDate.parse(value);
+                        break;
+                    case "--k":
+                        options.k = Integer.parseInt(value);
+                        break;
+                    case "--users":
+                        options.users = Integer.parseInt(value);
+                        break;
+                    case "--warmup":
+                        options.warmup = Integer.parseInt(value);
+                        break;
+                    case "--algorithms":
+                        options.algorithms = new ArrayList<>();
+                        for (String algorithm : value.split(",")) {
+                            options.algorithms.add(Algorithm.valueOf(algorithm.trim().toUpperCase()));
+                        }
+                        break;
+                    case "--payload":
+                        JsonNode payload = JsonUtil.parseJson(value);
+                        if (!(payload instanceof ObjectNode)) {
+                            throw new IllegalArgumentException("--payload必须是JSON对象: " + value);
+                        }
+                        options.payload = (ObjectNode) payload;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("未知参数: " + name);
+                }
+            }
+            if (options.k <= 0 || options.users <= 0) {
+                throw new IllegalArgumentException("--k和--users必须大于0");
+            }
+            
+            boolean database = "db".equals(options.source);
+            if (options.algorithms == null) {
+                options.algorithms = new ArrayList<>();
+                for (Algorithm algorithm : Algorithm.values()) {
+                    if (database || !algorithm.needsDatabase) {
+                        options.algorithms.add(algorithm);
+                    }
+                }
+            }
+            for (Algorithm algorithm : options.algorithms) {
+                if (algorithm.needsDatabase && !database) {
+                    throw new IllegalArgumentException(algorithm + "走服务请求路径，只能在--source db时评估");
+                }
+            }
+            return options;
+        }
+        
+        boolean usesDatabase() {
+            return "db".equals(source);
+        }
+    }
+    
+    /**
+     * 可增长的借阅数组（借阅时间存为UTC秒数）
+     */
+    private static class Borrows {
+        long[] users = new long[1024];
+        long[] books = new long[1024];
+        long[] times = new long[1024];
+        int size;
+        
+        void add(long userId, long bookId, LocalDateTime borrowTime) {
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+                books = Arrays.copyOf(books, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            users[size] = userId;
+            books[size] = bookId;
+            times[size] = borrowTime.toEpochSecond(ZoneOffset.UTC);
+            size++;
+        }
+        
+        LocalDate dateAt(int i) {
+            return LocalDateTime.ofEpochSecond(times[i], 0, ZoneOffset.UTC).toLocalDate();
+        }
+        
+        BorrowRecord recordAt(int i) {
+            BorrowRecord record = new BorrowRecord();
+            record.setUserId(users[i]);
+            record.setBookId(books[i]);
+            record.setBorrowTime(LocalDateTime.ofEpochSecond(times[i], 0, ZoneOffset.UTC));
+            return record;
+        }
+        
+        /**
+         * 借阅时间的分位点
+         */
+        LocalDateTime quantile(double q) {
+            long[] sorted = Arrays.copyOf(times, size);
+            Arrays.sort(sorted);
+            return LocalDateTime.ofEpochSecond(sorted[(int) Math.min(size - 1, (long) (size * q))], 0, ZoneOffset.UTC);
+        }
+    }
+    
+    /**
+     * 截止到切分时间的借阅记录来源：推荐服务查询用户借阅记录、已借图书和图书借阅次数时
+     * 由内存中的训练集回答，不访问borrow_records
+     */
+    private static class TrainingBorrowRecordDao extends BorrowRecordDao {
+        // 用户ID -> 训练集借阅（按借阅时间降序）
+        private final Map<Long, List<BorrowRecord>> records;
+        // 图书ID -> 训练集借阅次数
+        private final Map<Long, Integer> borrowCounts;
+        
+        TrainingBorrowRecordDao(Map<Long, List<BorrowRecord>> records, Map<Long, Integer> borrowCounts) {
+            this.records = new HashMap<>();
+            for (Map.Entry<Long, List<BorrowRecord>> entry : records.entrySet()) {
+                List<BorrowRecord> sorted = new ArrayList<>(entry.getValue());
+                sorted.sort((a, b) -> b.getBorrowTime().compareTo(a.getBorrowTime()));
+                this.records.put(entry.getKey(), sorted);
+            }
+            this.borrowCounts = borrowCounts;
+        }
+        
+        @Override
+        public List<BorrowRecord> findByUserId(Long userId) {
+            return new ArrayList<>(records.getOrDefault(userId, Collections.emptyList()));
+        }
+        
+        @Override
+        public long[] findBorrowedBookIds(Long userId) {
+            return records.getOrDefault(userId, Collections.emptyList()).stream()
+                    .mapToLong(BorrowRecord::getBookId)
+                    .distinct()
+                    .sorted()
+                    .toArray();
+        }
+        
+        @Override
+        public Map<Long, Integer> getBorrowCountsByBookIds(List<Long> bookIds) {
+            Map<Long, Integer> result = new HashMap<>();
+            if (bookIds != null) {
+                for (Long bookId : bookIds) {
+                    result.put(bookId, borrowCounts.getOrDefault(bookId, 0));
+                }
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * 单个推荐器的累计指标
+     */
+    private static class Result {
+        final double[] latencies;
+        final Set<Long> recommendedBooks = new HashSet<>();
+        int users;
+        double precision;
+        double recall;
+        double ndcg;
+        long queries;
+        
+        Result(int capacity) {
+            this.latencies = new double[capacity];
+        }
+        
+        double latencyPercentile(double p) {
+            if (users == 0) {
+                return 0;
+            }
+            double[] sorted = Arrays.copyOf(latencies, users);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(p * users) - 1)];
+        }
+    }
+}
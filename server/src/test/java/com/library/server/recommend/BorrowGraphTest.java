@@ -0,0 +1,164 @@
+package com.library.server.recommend;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BorrowGraph的CSR快照：增量合并与全量构建一致，对数权重不下溢、按行归一化，移动基准日不改变转移概率
+ */
+class BorrowGraphTest {
+    private static final double[] LAMBDAS = {0.01, 0.02, 0.05, 0.1};
+    private static final double DELTA = 1e-4;
+    private static final LocalDate BASE = LocalDate.of(2025, 1, 1);
+    
+    @Test
+    void mergeMatchesFullBuild() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 50; trial++) {
+            List<long[]> borrows = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                borrows.add(new long[]{1 + random.nextInt(30), 100 + random.nextInt(60), random.nextInt(3000)});
+            }
+            
+            BorrowGraph.Builder full = new BorrowGraph.Builder(BASE);
+            BorrowGraph.Builder base = new BorrowGraph.Builder(BASE);
+            BorrowGraph.Builder delta = new BorrowGraph.Builder(BASE);
+            for (int i = 0; i < borrows.size(); i++) {
+                long[] borrow = borrows.get(i);
+                add(full, borrow);
+                add(i < 200 ? base : delta, borrow);
+            }
+            // 增量中既有新用户、新图书，也有已有边的重复借阅
+            for (int i = 0; i < 40; i++) {
+                long[] borrow = random.nextBoolean()
+                        ? borrows.get(random.nextInt(200)).clone()
+                        : new long[]{1 + random.nextInt(40), 100 + random.nextInt(70), 0};
+                borrow[2] = random.nextInt(3000);
+                add(full, borrow);
+                add(delta, borrow);
+            }
+            
+            assertSameGraph(full.build(), delta.mergeInto(base.build()));
+        }
+    }
+    
+    @Test
+    void mergeRequiresSameBaseDay() {
+        BorrowGraph graph = new BorrowGraph.Builder(BASE).add(1, 100, BASE).build();
+        BorrowGraph.Builder delta = new BorrowGraph.Builder(BASE.plusDays(1)).add(2, 100, BASE);
+        
+        assertThrows(IllegalArgumentException.class, () -> delta.mergeInto(graph));
+    }
+    
+    @Test
+    void oldBorrowsKeepFiniteNormalizedWeights() {
+        // 两万天前的借阅：线性权重exp(-0.1 * 20000)在float/double中都会下溢为0
+        BorrowGraph graph = new BorrowGraph.Builder(BASE)
+                .add(1, 100, BASE.minusDays(20000))
+                .add(1, 101, BASE.minusDays(20010))
+                .add(2, 101, BASE)
+                .build()
+                .withDecay(0.1);
+        
+        int user = graph.userNode(1);
+        int first = graph.findEdge(user, graph.bookNode(100));
+        int second = graph.findEdge(user, graph.bookNode(101));
+        assertTrue(Float.isFinite(graph.logWeight(first)));
+        assertTrue(Float.isFinite(graph.logWeightSum(user)));
+        assertEquals(-2000.0, graph.logWeight(first), DELTA * 2000);
+        // 两条边相差10天，转移概率之比为exp(0.1 * 10)
+        assertEquals(Math.E, Math.exp(graph.logWeight(first) - graph.logWeight(second)), DELTA);
+        
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            assertEquals(1.0, transitionSum(graph, node), DELTA);
+        }
+    }
+    
+    @Test
+    void repeatedBorrowsAccumulateWeight() {
+        BorrowGraph graph = new BorrowGraph.Builder(BASE)
+                .add(1, 100, BASE.minusDays(10))
+                .add(1, 100, BASE)
+                .build()
+                .withDecay(0.05);
+        
+        assertEquals(1, graph.getEdgeCount());
+        int edge = graph.findEdge(graph.userNode(1), graph.bookNode(100));
+        assertEquals(Math.log(1 + Math.exp(-0.5)), graph.logWeight(edge), DELTA);
+        assertEquals(0.0, graph.latestLogWeight(edge), DELTA);
+    }
+    
+    @Test
+    void rebasePreservesTransitionProbabilities() {
+        Random random = new Random(11);
+        BorrowGraph.Builder builder = new BorrowGraph.Builder(BASE);
+        for (int i = 0; i < 200; i++) {
+            builder.add(1 + random.nextInt(20), 100 + random.nextInt(40), BASE.minusDays(random.nextInt(5000)));
+        }
+        BorrowGraph graph = builder.build();
+        BorrowGraph rebased = BorrowGraph.rebase(graph, BASE.plusDays(30).toEpochDay());
+        
+        for (double lambda : LAMBDAS) {
+            BorrowGraph before = graph.withDecay(lambda);
+            BorrowGraph after = rebased.withDecay(lambda);
+            for (int node = 0; node < before.getNodeCount(); node++) {
+                for (int e = before.edgeBegin(node); e < before.edgeEnd(node); e++) {
+                    assertEquals(before.logWeight(e) - lambda * 30, after.logWeight(e), DELTA * 10);
+                    assertEquals(before.latestLogWeight(e) - lambda * 30, after.latestLogWeight(e), DELTA * 10);
+                    assertEquals(Math.exp(before.logWeight(e) - before.logWeightSum(node)),
+                            Math.exp(after.logWeight(e) - after.logWeightSum(node)), DELTA);
+                }
+            }
+        }
+    }
+    
+    private static void add(BorrowGraph.Builder builder, long[] borrow) {
+        builder.add(borrow[0], borrow[1], BASE.minusDays(borrow[2]));
+    }
+    
+    private static double transitionSum(BorrowGraph graph, int node) {
+        double sum = 0;
+        for (int e = graph.edgeBegin(node); e < graph.edgeEnd(node); e++) {
+            sum += Math.exp(graph.logWeight(e) - graph.logWeightSum(node));
+        }
+        return sum;
+    }
+    
+    /**
+     * 节点编号、每行邻居和各衰减档位的权重都一致（两图的用户、图书集合相同时节点号一一对应）
+     */
+    private static void assertSameGraph(BorrowGraph expected, BorrowGraph actual) {
+        assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+        assertEquals(expected.firstBookNode(), actual.firstBookNode());
+        for (int node = expected.firstBookNode(); node < expected.getNodeCount(); node++) {
+            assertEquals(expected.bookId(node), actual.bookId(node));
+        }
+        for (double lambda : LAMBDAS) {
+            BorrowGraph left = expected.withDecay(lambda);
+            BorrowGraph right = actual.withDecay(lambda);
+            for (int node = 0; node < left.getNodeCount(); node++) {
+                assertEquals(left.edgeBegin(node), right.edgeBegin(node));
+                assertEquals(left.edgeEnd(node), right.edgeEnd(node));
+                assertEquals(left.logWeightSum(node), right.logWeightSum(node), DELTA);
+                for (int e = left.edgeBegin(node); e < left.edgeEnd(node); e++) {
+                    assertEquals(left.neighbor(e), right.neighbor(e));
+                    assertEquals(left.logWeight(e), right.logWeight(e), DELTA);
+                    assertEquals(left.latestLogWeight(e), right.latestLogWeight(e), DELTA);
+                }
+            }
+        }
+        for (long userId = 1; userId <= 40; userId++) {
+            assertEquals(expected.userNode(userId), actual.userNode(userId));
+            assertEquals(expected.containsUser(userId), actual.containsUser(userId));
+        }
+    }
+}
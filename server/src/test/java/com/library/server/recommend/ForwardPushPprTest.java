@@ -0,0 +1,143 @@
+package com.library.server.recommend;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ForwardPushPpr的误差界：与同一子图上迭代求得的精确PPR相比只会低估，
+ * 低估总量不超过epsilon * 2 * 边数（剩余残差之和的上界），达到扫描上限时提前结束
+ */
+class ForwardPushPprTest {
+    private static final LocalDate TODAY = LocalDate.of(2025, 1, 1);
+    private static final double RESTART = 0.15;
+    private static final double TOLERANCE = 1e-12;
+    
+    @Test
+    void errorStaysWithinResidualBound() {
+        Random random = new Random(13);
+        ForwardPushPpr push = new ForwardPushPpr();
+        for (int trial = 0; trial < 30; trial++) {
+            BorrowGraph graph = randomGraph(random);
+            int source = graph.userNode(1 + random.nextInt(40));
+            if (source < 0) {
+                continue;
+            }
+            double[] exact = exact(graph, source);
+            
+            double totalError = 0;
+            for (double epsilon : new double[]{1e-3, 1e-5, 1e-7, 1e-9}) {
+                push.run(graph, source, RESTART, epsilon, Long.MAX_VALUE);
+                assertFalse(push.isTruncated());
+                
+                totalError = totalError(graph, push, exact);
+                assertTrue(totalError <= epsilon * 2 * graph.getEdgeCount() + TOLERANCE,
+                        "trial " + trial + ", epsilon " + epsilon + ", error " + totalError);
+            }
+            assertTrue(totalError < 1e-6);
+        }
+    }
+    
+    @Test
+    void stopsAtEdgeScanLimit() {
+        BorrowGraph graph = randomGraph(new Random(17));
+        int source = graph.userNode(1);
+        assertTrue(source >= 0);
+        double[] exact = exact(graph, source);
+        ForwardPushPpr push = new ForwardPushPpr();
+        
+        push.run(graph, source, RESTART, 1e-9, 1);
+        assertTrue(push.isTruncated());
+        assertEquals(1, push.pushes());
+        // 提前结束的估计值仍然只低估
+        totalError(graph, push, exact);
+        
+        push.run(graph, source, RESTART, 1e-9, Long.MAX_VALUE);
+        assertFalse(push.isTruncated());
+        assertTrue(push.pushes() > 1);
+    }
+    
+    /**
+     * 40个用户、100本图书，借阅日期分散在二十年内（覆盖对数权重很小的旧借阅）
+     */
+    private static BorrowGraph randomGraph(Random random) {
+        BorrowGraph.Builder builder = new BorrowGraph.Builder(TODAY);
+        for (int i = 0; i < 400; i++) {
+            builder.add(1 + random.nextInt(40), 100 + random.nextInt(100), TODAY.minusDays(random.nextInt(7300)));
+        }
+        return builder.build().withDecay(0.05);
+    }
+    
+    /**
+     * 每个节点的低估量非负，返回低估总量
+     */
+    private static double totalError(BorrowGraph graph, ForwardPushPpr push, double[] exact) {
+        double[] estimate = new double[graph.getNodeCount()];
+        for (int i = 0; i < push.size(); i++) {
+            estimate[push.globalNode(i)] = push.score(i);
+        }
+        double total = 0;
+        for (int node = 0; node < exact.length; node++) {
+            double error = exact[node] - estimate[node];
+            assertTrue(error >= -TOLERANCE, "node " + node + " overestimated by " + -error);
+            total += error;
+        }
+        return total;
+    }
+    
+    /**
+     * 同一子图上的精确PPR：到达量s满足 s = e_source + (1 - restart) * s * P'（候选图书不再转出，
+     * 已借图书不指回目标用户并对其余出边重新归一化），迭代至收敛，PPR为restart * s
+     */
+    private static double[] exact(BorrowGraph graph, int source) {
+        int nodeCount = graph.getNodeCount();
+        double[] arrival = new double[nodeCount];
+        arrival[source] = 1;
+        for (int iteration = 0; iteration < 10000; iteration++) {
+            double[] next = new double[nodeCount];
+            next[source] = 1;
+            for (int node = 0; node < nodeCount; node++) {
+                if (arrival[node] == 0 || isCandidate(graph, source, node)) {
+                    continue;
+                }
+                boolean borrowed = node != source && graph.isBook(node);
+                double logTotal = graph.logWeightSum(node);
+                double totalWeight = 1;
+                if (borrowed) {
+                    totalWeight -= Math.exp(graph.logWeight(graph.findEdge(node, source)) - logTotal);
+                }
+                if (totalWeight <= 0) {
+                    continue;
+                }
+                for (int e = graph.edgeBegin(node); e < graph.edgeEnd(node); e++) {
+                    int neighbor = graph.neighbor(e);
+                    if (neighbor != source) {
+                        next[neighbor] += (1 - RESTART) * arrival[node]
+                                * Math.exp(graph.logWeight(e) - logTotal) / totalWeight;
+                    }
+                }
+            }
+            double diff = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                diff += Math.abs(next[node] - arrival[node]);
+            }
+            arrival = next;
+            if (diff < 1e-15) {
+                break;
+            }
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            arrival[node] *= RESTART;
+        }
+        return arrival;
+    }
+    
+    private static boolean isCandidate(BorrowGraph graph, int source, int node) {
+        return graph.isBook(node) && graph.findEdge(source, node) < 0;
+    }
+}
@@ -0,0 +1,145 @@
+package com.library.server.recommend;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PprKernel与基线GraphBuilder的逐图书分数一致：基线按原实现用Map建子图、做幂迭代
+ */
+class PprKernelTest {
+    private static final LocalDate TODAY = LocalDate.of(2025, 1, 1);
+    private static final double LAMBDA = 0.05;
+    private static final double RESTART = 0.15;
+    private static final int MAX_ITERATIONS = 50;
+    
+    @Test
+    void matchesBaselineOnRandomGraphs() {
+        Random random = new Random(7);
+        // 同一实例跨图复用，数组按子图规模增长后保留
+        PprKernel kernel = new PprKernel();
+        for (int trial = 0; trial < 200; trial++) {
+            BorrowGraph.Builder builder = new BorrowGraph.Builder(TODAY);
+            List<long[]> borrows = new ArrayList<>();
+            int count = 20 + random.nextInt(200);
+            for (int i = 0; i < count; i++) {
+                long[] borrow = {1 + random.nextInt(15), 100 + random.nextInt(30), random.nextInt(4000)};
+                borrows.add(borrow);
+                builder.add(borrow[0], borrow[1], TODAY.minusDays(borrow[2]));
+            }
+            BorrowGraph graph = builder.build().withDecay(LAMBDA);
+            long target = borrows.get(0)[0];
+            Map<Long, Double> expected = baseline(borrows, target);
+            
+            kernel.run(graph, graph.userNode(target), RESTART, MAX_ITERATIONS);
+            int books = 0;
+            for (int i = 0; i < kernel.size(); i++) {
+                int node = kernel.globalNode(i);
+                if (graph.isBook(node)) {
+                    long bookId = graph.bookId(node);
+                    assertTrue(expected.containsKey(bookId), "子图多出图书: " + bookId);
+                    assertEquals(expected.get(bookId), kernel.score(i), 1e-5, "trial " + trial + ", book " + bookId);
+                    books++;
+                }
+            }
+            assertEquals(expected.size(), books);
+        }
+    }
+    
+    /**
+     * 基线：目标用户 -> 已借图书（多次借阅权重相加）；按图书ID升序处理已借图书，
+     * 每个共同借阅用户只由第一本连入，权重取其最近一次借阅这本书；共同借阅用户 -> 其借的图书（权重相加）。
+     * borrows的元素为{userId, bookId, 距今天数}，返回各图书的PPR分数
+     */
+    private static Map<Long, Double> baseline(List<long[]> borrows, long target) {
+        Map<String, Map<String, Double>> edges = new HashMap<>();
+        Set<String> nodes = new HashSet<>();
+        String source = "user:" + target;
+        nodes.add(source);
+        TreeSet<Long> borrowed = new TreeSet<>();
+        for (long[] borrow : borrows) {
+            if (borrow[0] == target) {
+                borrowed.add(borrow[1]);
+                link(edges, nodes, source, "book:" + borrow[1], borrow[2]);
+            }
+        }
+        
+        Set<Long> processed = new HashSet<>();
+        processed.add(target);
+        for (Long bookId : borrowed) {
+            List<long[]> coBorrows = new ArrayList<>();
+            for (long[] borrow : borrows) {
+                if (borrow[1] == bookId) {
+                    coBorrows.add(borrow);
+                }
+            }
+            // 距今天数升序，即借阅时间倒序
+            coBorrows.sort(Comparator.comparingLong(borrow -> borrow[2]));
+            for (long[] coBorrow : coBorrows) {
+                if (!processed.add(coBorrow[0])) {
+                    continue;
+                }
+                String coUser = "user:" + coBorrow[0];
+                link(edges, nodes, "book:" + bookId, coUser, coBorrow[2]);
+                for (long[] borrow : borrows) {
+                    if (borrow[0] == coBorrow[0]) {
+                        link(edges, nodes, coUser, "book:" + borrow[1], borrow[2]);
+                    }
+                }
+            }
+        }
+        
+        Map<String, Double> scores = new HashMap<>();
+        scores.put(source, 1.0);
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            Map<String, Double> next = new HashMap<>();
+            for (String node : nodes) {
+                next.put(node, node.equals(source) ? RESTART : 0.0);
+            }
+            for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                Map<String, Double> out = edges.getOrDefault(entry.getKey(), Map.of());
+                double total = out.values().stream().mapToDouble(Double::doubleValue).sum();
+                if (total == 0) {
+                    continue;
+                }
+                for (Map.Entry<String, Double> edge : out.entrySet()) {
+                    next.merge(edge.getKey(), entry.getValue() * (1 - RESTART) * edge.getValue() / total, Double::sum);
+                }
+            }
+            double diff = 0;
+            for (String node : nodes) {
+                diff += Math.abs(next.getOrDefault(node, 0.0) - scores.getOrDefault(node, 0.0));
+            }
+            scores = next;
+            if (diff < 1e-6) {
+                break;
+            }
+        }
+        
+        Map<Long, Double> bookScores = new HashMap<>();
+        for (String node : nodes) {
+            if (node.startsWith("book:")) {
+                bookScores.put(Long.parseLong(node.substring(5)), scores.getOrDefault(node, 0.0));
+            }
+        }
+        return bookScores;
+    }
+    
+    private static void link(Map<String, Map<String, Double>> edges, Set<String> nodes, String from, String to,
+                             long daysAgo) {
+        nodes.add(to);
+        edges.computeIfAbsent(from, k -> new HashMap<>()).merge(to, Math.exp(-LAMBDA * daysAgo), Double::sum);
+    }
+}
@@ -0,0 +1,217 @@
+package com.library.server.service;
+
+import com.library.server.dao.CirculationDao;
+import com.library.server.dao.JdbcTemplate;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * CirculationBatcher的保存点回退：合并借书语句失败时回滚到保存点逐条执行，单个操作出错只回滚该操作，整批只提交一次。
+ * 连接和数据源为记录调用的代理，不访问数据库
+ */
+class CirculationBatcherTest {
+    private static final long TIMEOUT_SECONDS = 5;
+    // 窗口足够长，一批凑满maxBatchSize后立即执行
+    private static final long WINDOW_MILLIS = 10_000;
+    
+    @Test
+    void mergedBorrowSucceedsWithSingleSavepoint() throws Exception {
+        FakeStatements statements = new FakeStatements(false, Set.of());
+        RecordingConnection conn = new RecordingConnection();
+        CirculationBatcher batcher = new CirculationBatcher(statements, conn.template(), 14, WINDOW_MILLIS, 3, true);
+        
+        CirculationBatcher.Pending<CirculationDao.BorrowOutcome> third = batcher.submitBorrow(1L, 30L);
+        CirculationBatcher.Pending<CirculationDao.BorrowOutcome> first = batcher.submitBorrow(2L, 10L);
+        CirculationBatcher.Pending<CirculationDao.BorrowOutcome> second = batcher.submitBorrow(3L, 20L);
+        
+        // 合并语句按bookId排序执行，结果按位置分回各操作
+        assertSame(statements.outcomeFor(10L), first.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(statements.outcomeFor(20L), second.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(statements.outcomeFor(30L), third.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(List.of("borrow [10, 20, 30]"), statements.calls());
+        assertEquals(List.of("savepoint 1", "release 1", "commit"), conn.events());
+    }
+    
+    @Test
+    void failedMergedBorrowFallsBackToPerOperationSavepoints() throws Exception {
+        FakeStatements statements = new FakeStatements(true, Set.of(20L));
+        RecordingConnection conn = new RecordingConnection();
+        CirculationBatcher batcher = new CirculationBatcher(statements, conn.template(), 14, WINDOW_MILLIS, 3, true);
+        
+        CirculationBatcher.Pending<CirculationDao.BorrowOutcome> first = batcher.submitBorrow(1L, 10L);
+        CirculationBatcher.Pending<CirculationDao.BorrowOutcome> failing = batcher.submitBorrow(2L, 20L);
+        CirculationBatcher.Pending<CirculationDao.BorrowOutcome> third = batcher.submitBorrow(3L, 30L);
+        
+        assertSame(statements.outcomeFor(10L), first.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(statements.outcomeFor(30L), third.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> failing.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("bookId=20", error.getCause().getMessage());
+        
+        assertEquals(List.of("borrow [10, 20, 30]", "borrow [10]", "borrow [20]", "borrow [30]"), statements.calls());
+        // 合并语句回滚到保存点1；出错的操作回滚到自己的保存点3，其余释放；整批只提交一次
+        assertEquals(List.of("savepoint 1", "rollback 1",
+                "savepoint 2", "release 2",
+                "savepoint 3", "rollback 3",
+                "savepoint 4", "release 4",
+                "commit"), conn.events());
+    }
+    
+    @Test
+    void failedReturnOnlyRollsBackItself() throws Exception {
+        FakeStatements statements = new FakeStatements(false, Set.of(200L));
+        RecordingConnection conn = new RecordingConnection();
+        CirculationBatcher batcher = new CirculationBatcher(statements, conn.template(), 14, WINDOW_MILLIS, 3, true);
+        FineSchedule schedule = FineSchedule.defaults();
+        
+        CirculationBatcher.Pending<CirculationDao.BorrowOutcome> borrow = batcher.submitBorrow(1L, 10L);
+        CirculationBatcher.Pending<CirculationDao.ReturnOutcome> failing = batcher.submitReturn(2L, 200L, schedule);
+        CirculationBatcher.Pending<CirculationDao.ReturnOutcome> returned = batcher.submitReturn(3L, 100L, schedule);
+        
+        assertSame(statements.outcomeFor(10L), borrow.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(statements.returnOutcomeFor(100L), returned.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> failing.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("recordId=200", error.getCause().getMessage());
+        
+        // 单本借书走逐条执行；还书按recordId排序
+        assertEquals(List.of("borrow [10]", "return 100", "return 200"), statements.calls());
+        assertEquals(List.of("savepoint 1", "release 1",
+                "savepoint 2", "release 2",
+                "savepoint 3", "rollback 3",
+                "commit"), conn.events());
+    }
+    
+    /**
+     * 记录调用的写库语句：mergedFails时多本合并的借书语句抛出SQLException，
+     * failing中的bookId/recordId单独执行时出错（借书抛SQLException，还书抛RuntimeException）
+     */
+    private static class FakeStatements implements CirculationBatcher.Statements {
+        private final boolean mergedFails;
+        private final Set<Long> failing;
+        private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        private final Map<Long, CirculationDao.BorrowOutcome> borrowOutcomes = new ConcurrentHashMap<>();
+        private final Map<Long, CirculationDao.ReturnOutcome> returnOutcomes = new ConcurrentHashMap<>();
+        
+        FakeStatements(boolean mergedFails, Set<Long> failing) {
+            this.mergedFails = mergedFails;
+            this.failing = failing;
+        }
+        
+        @Override
+        public List<CirculationDao.BorrowOutcome> borrowBatch(Connection conn, Long[] userIds, Long[] bookIds,
+                                                              int dueDays) throws SQLException {
+            calls.add("borrow " + Arrays.toString(bookIds));
+            if (bookIds.length > 1 && mergedFails) {
+                throw new SQLException("merged borrow failed");
+            }
+            List<CirculationDao.BorrowOutcome> outcomes = new ArrayList<>();
+            for (Long bookId : bookIds) {
+                if (failing.contains(bookId)) {
+                    throw new SQLException("bookId=" + bookId);
+                }
+                outcomes.add(outcomeFor(bookId));
+            }
+            return outcomes;
+        }
+        
+        @Override
+        public CirculationDao.ReturnOutcome returnBook(Connection conn, Long userId, Long recordId,
+                                                       FineSchedule schedule) {
+            calls.add("return " + recordId);
+            if (failing.contains(recordId)) {
+                throw new IllegalStateException("recordId=" + recordId);
+            }
+            return returnOutcomeFor(recordId);
+        }
+        
+        CirculationDao.BorrowOutcome outcomeFor(Long bookId) {
+            return borrowOutcomes.computeIfAbsent(bookId, id -> new CirculationDao.BorrowOutcome());
+        }
+        
+        CirculationDao.ReturnOutcome returnOutcomeFor(Long recordId) {
+            return returnOutcomes.computeIfAbsent(recordId, id -> new CirculationDao.ReturnOutcome());
+        }
+        
+        List<String> calls() {
+            synchronized (calls) {
+                return new ArrayList<>(calls);
+            }
+        }
+    }
+    
+    /**
+     * 只支持事务和保存点调用的连接代理，按顺序记录保存点、回滚和提交
+     */
+    private static class RecordingConnection {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        private int savepoints;
+        
+        JdbcTemplate template() {
+            Connection conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setSavepoint":
+                                return savepoint(++savepoints);
+                            case "releaseSavepoint":
+                                events.add("release " + ((Savepoint) args[0]).getSavepointId());
+                                return null;
+                            case "rollback":
+                                events.add(args == null ? "rollback" : "rollback " + ((Savepoint) args[0]).getSavepointId());
+                                return null;
+                            case "commit":
+                                events.add("commit");
+                                return null;
+                            case "setAutoCommit":
+                            case "close":
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+            DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("getConnection")) {
+                            return conn;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+            return new JdbcTemplate(dataSource);
+        }
+        
+        private Savepoint savepoint(int id) {
+            events.add("savepoint " + id);
+            return (Savepoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {Savepoint.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("getSavepointId")) {
+                            return id;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+        
+        List<String> events() {
+            synchronized (events) {
+                return new ArrayList<>(events);
+            }
+        }
+    }
+}
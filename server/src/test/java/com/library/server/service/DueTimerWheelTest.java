@@ -0,0 +1,90 @@
+package com.library.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * DueTimerWheel：按刻度入槽、跨圈不提前到期、重复添加去重
+ */
+class DueTimerWheelTest {
+    private static final long TICK = 1000;
+    private static final long START = 100 * TICK;
+    
+    @Test
+    void expiresOnlyAfterDeadlineTick() {
+        DueTimerWheel wheel = new DueTimerWheel(TICK, 8, START);
+        assertTrue(wheel.add(1L, START + 3 * TICK + 500));
+        
+        assertEquals(List.of(), wheel.advance(START + 2 * TICK));
+        assertEquals(List.of(), wheel.advance(START + 3 * TICK - 1));
+        assertEquals(List.of(1L), wheel.advance(START + 3 * TICK));
+        assertEquals(0, wheel.size());
+    }
+    
+    @Test
+    void sameSlotNextRevolutionIsNotExpiredEarly() {
+        DueTimerWheel wheel = new DueTimerWheel(TICK, 8, START);
+        // 8个槽：第2和第10个刻度落在同一个槽
+        wheel.add(1L, START + 2 * TICK);
+        wheel.add(2L, START + 10 * TICK);
+        
+        assertEquals(List.of(1L), wheel.advance(START + 2 * TICK));
+        assertEquals(1, wheel.size());
+        assertEquals(List.of(), wheel.advance(START + 9 * TICK));
+        assertEquals(List.of(2L), wheel.advance(START + 10 * TICK));
+    }
+    
+    @Test
+    void pauseLongerThanRevolutionExpiresEverything() {
+        DueTimerWheel wheel = new DueTimerWheel(TICK, 8, START);
+        for (long id = 1; id <= 20; id++) {
+            wheel.add(id, START + id * TICK);
+        }
+        
+        List<Long> expired = wheel.advance(START + 100 * TICK);
+        assertEquals(20, expired.size());
+        assertEquals(0, wheel.size());
+    }
+    
+    @Test
+    void alreadyDueRecordIsReturnedOnNextAdvance() {
+        DueTimerWheel wheel = new DueTimerWheel(TICK, 8, START);
+        assertTrue(wheel.add(1L, START - 5 * TICK));
+        
+        assertEquals(List.of(1L), wheel.advance(START));
+    }
+    
+    @Test
+    void duplicateAddIsIgnoredUntilExpired() {
+        DueTimerWheel wheel = new DueTimerWheel(TICK, 8, START);
+        assertTrue(wheel.add(1L, START + 2 * TICK));
+        assertFalse(wheel.add(1L, START + 5 * TICK));
+        assertEquals(1, wheel.size());
+        
+        // 只按第一次添加的到期时间取出一次
+        assertEquals(List.of(1L), wheel.advance(START + 2 * TICK));
+        assertEquals(List.of(), wheel.advance(START + 6 * TICK));
+        
+        // 取出之后可以重新加入
+        assertTrue(wheel.add(1L, START + 7 * TICK));
+        assertEquals(List.of(1L), wheel.advance(START + 7 * TICK));
+    }
+    
+    @Test
+    void slotCountIsRoundedUpToPowerOfTwo() {
+        // 5个槽向上取整为8：第1和第9个刻度同槽，第1和第6个刻度不同槽
+        DueTimerWheel wheel = new DueTimerWheel(TICK, 5, START);
+        wheel.add(1L, START + TICK);
+        wheel.add(2L, START + 6 * TICK);
+        wheel.add(3L, START + 9 * TICK);
+        
+        assertEquals(List.of(1L), wheel.advance(START + TICK));
+        assertEquals(List.of(2L), wheel.advance(START + 8 * TICK));
+        assertEquals(List.of(3L), wheel.advance(START + 9 * TICK));
+    }
+}
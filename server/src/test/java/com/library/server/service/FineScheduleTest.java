@@ -0,0 +1,92 @@
+package com.library.server.service;
+
+import com.library.server.dao.FineRateConfigDao;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * FineSchedule.fineFor：梯度边界、无界尾段，以及供数据库端计算的梯度数组与fineFor一致
+ */
+class FineScheduleTest {
+    private static final double DELTA = 1e-9;
+    
+    @Test
+    void defaultTierBoundaries() {
+        FineSchedule schedule = FineSchedule.defaults();
+        
+        assertEquals(0.0, schedule.fineFor(-3), DELTA);
+        assertEquals(0.0, schedule.fineFor(0), DELTA);
+        assertEquals(1.0, schedule.fineFor(1), DELTA);
+        assertEquals(7.0, schedule.fineFor(7), DELTA);
+        // 第8天进入每天2元的梯度
+        assertEquals(9.0, schedule.fineFor(8), DELTA);
+        assertEquals(53.0, schedule.fineFor(30), DELTA);
+        // 第31天进入每天5元的无界尾段
+        assertEquals(58.0, schedule.fineFor(31), DELTA);
+        assertEquals(103.0, schedule.fineFor(40), DELTA);
+    }
+    
+    @Test
+    void compiledScheduleMatchesDayByDaySum() {
+        FineSchedule schedule = FineSchedule.compile(List.of(
+                config(1, 3, 0.5), config(4, 10, 1.5), config(11, 20, 3.0), config(21, null, 4.0)));
+        
+        double expected = 0.0;
+        for (int day = 1; day <= 60; day++) {
+            expected += day <= 3 ? 0.5 : day <= 10 ? 1.5 : day <= 20 ? 3.0 : 4.0;
+            assertEquals(expected, schedule.fineFor(day), DELTA, "day " + day);
+        }
+    }
+    
+    @Test
+    void withoutUnboundedTierFineStopsGrowing() {
+        FineSchedule schedule = FineSchedule.compile(List.of(config(1, 5, 1.0), config(6, 10, 2.0)));
+        
+        assertEquals(15.0, schedule.fineFor(10), DELTA);
+        assertEquals(15.0, schedule.fineFor(11), DELTA);
+        assertEquals(15.0, schedule.fineFor(365), DELTA);
+    }
+    
+    @Test
+    void emptyRangesAndTiersAfterUnboundedAreIgnored() {
+        FineSchedule schedule = FineSchedule.compile(List.of(
+                config(1, 5, 1.0), config(6, 5, 9.0), config(6, null, 2.0), config(30, 40, 100.0)));
+        
+        assertEquals(5.0, schedule.fineFor(5), DELTA);
+        assertEquals(7.0, schedule.fineFor(6), DELTA);
+        assertEquals(95.0, schedule.fineFor(50), DELTA);
+    }
+    
+    @Test
+    void tierArraysReproduceFineFor() {
+        FineSchedule schedule = FineSchedule.compile(List.of(
+                config(1, 7, 1.0), config(8, 30, 2.0), config(31, null, 5.0)));
+        Long[] starts = schedule.getTierStartDays();
+        Long[] ends = schedule.getTierEndDays();
+        Double[] bases = schedule.getTierBaseFines();
+        Double[] rates = schedule.getTierRates();
+        
+        // 与FineLedgerDao.accrueChunk中的SQL相同的规则：d落在(start, end]内时 baseFine + (d - start) * rate
+        for (long day = 0; day <= 100; day++) {
+            double fine = 0.0;
+            for (int i = 0; i < starts.length; i++) {
+                if (day > starts[i] && (ends[i] == null || day <= ends[i])) {
+                    fine = bases[i] + (day - starts[i]) * rates[i];
+                }
+            }
+            assertEquals(schedule.fineFor(day), fine, DELTA, "day " + day);
+        }
+    }
+    
+    private static FineRateConfigDao.FineRateConfig config(int start, Integer end, double rate) {
+        FineRateConfigDao.FineRateConfig config = new FineRateConfigDao.FineRateConfig();
+        config.setDayRangeStart(start);
+        config.setDayRangeEnd(end);
+        config.setRatePerDay(rate);
+        return config;
+    }
+}